@@ -1,27 +1,40 @@
 package com.github.reload;
 
 import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
 import javax.inject.Named;
 import javax.inject.Singleton;
+import com.github.reload.Overlay.GlobalEvent;
+import com.github.reload.Overlay.GlobalEvent.TYPE;
 import com.github.reload.net.MessageRouter;
 import com.github.reload.net.NetModule;
 import com.github.reload.net.codecs.MessageBuilder;
 import com.github.reload.net.ice.ICEHelper;
 import com.github.reload.routing.DefaultPathCompressor;
+import com.github.reload.routing.MaintenanceScheduler;
 import com.github.reload.routing.MessageHandlers;
 import com.github.reload.routing.PathCompressor;
 import com.google.common.eventbus.EventBus;
+import com.google.common.eventbus.Subscribe;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import dagger.Module;
 import dagger.ObjectGraph;
 import dagger.Provides;
 
 @Module(injects = {Overlay.class, ObjectGraph.class, MessageBuilder.class,
 					MessageRouter.class, DefaultPathCompressor.class,
+					MaintenanceScheduler.class,
 					ICEHelper.class, MessageHandlers.class,
 					EventBus.class}, includes = {NetModule.class}, complete = false)
 public class CoreModule {
 
+	// Threads of the shared scheduler, its tasks are short and mostly hand
+	// the work over to the packets looper
+	private static final int SCHEDULER_THREADS = 2;
+
 	ObjectGraph graph;
 
 	public void loadModules(Class<?>... modules) {
@@ -52,9 +65,42 @@ public class CoreModule {
 		return Executors.newSingleThreadExecutor();
 	}
 
+	/**
+	 * Scheduler shared by the timers of the overlay services, its daemon
+	 * threads are stopped when the overlay is shut down
+	 */
+	@Provides
+	@Singleton
+	@Named("scheduler")
+	ScheduledExecutorService provideScheduler(EventBus eventBus) {
+		ThreadFactory threads = new ThreadFactoryBuilder().setNameFormat("reload-scheduler-%d").setDaemon(true).build();
+		ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(SCHEDULER_THREADS, threads);
+		eventBus.register(new ExecutorShutdown(scheduler));
+		return scheduler;
+	}
+
 	@Provides
 	@Singleton
 	PathCompressor providePathCompressor() {
 		return new DefaultPathCompressor();
 	}
+
+	/**
+	 * Shuts down the given executor when the overlay is shut down
+	 */
+	public static class ExecutorShutdown {
+
+		private final ExecutorService executor;
+
+		public ExecutorShutdown(ExecutorService executor) {
+			this.executor = executor;
+		}
+
+		@Subscribe
+		public void shutdown(GlobalEvent ev) {
+			if (ev.type == TYPE.SHUTDOWN) {
+				executor.shutdown();
+			}
+		}
+	}
 }
@@ -15,6 +15,7 @@ import com.github.reload.routing.TopologyPlugin;
 import com.github.reload.services.AppAttachService;
 import com.github.reload.services.AttachService;
 import com.github.reload.services.PingService;
+import com.github.reload.services.RouteQueryService;
 import com.google.common.util.concurrent.FutureCallback;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
@@ -80,6 +81,7 @@ class OverlayConnector {
 		overlay.getService(AttachService.class);
 		overlay.getService(PingService.class);
 		overlay.getService(AppAttachService.class);
+		overlay.getService(RouteQueryService.class);
 	}
 
 	private ListenableFuture<Connection> connectToBootstrap(final Set<InetSocketAddress> bootstrapNodes, Set<OverlayLinkType> linkTypes) {
@@ -21,6 +21,10 @@ public interface Configuration {
 	public static final AttributeKey<Set<OverlayLinkType>> LINK_TYPES = AttributeKey.valueOf("linkTypes");
 	public static final AttributeKey<Boolean> NO_ICE = AttributeKey.valueOf("noIce");
 	public static final AttributeKey<String> TOPOLOGY = AttributeKey.valueOf("topology-plugin");
+	public static final AttributeKey<Boolean> TRUSTED_REPLICAS = AttributeKey.valueOf("trustedReplicas");
+	public static final AttributeKey<Long> STORAGE_CAPACITY = AttributeKey.valueOf("storageCapacity");
+	public static final AttributeKey<Long> IDENTITY_QUOTA = AttributeKey.valueOf("identityQuota");
+	public static final AttributeKey<String> STORAGE_SNAPSHOT = AttributeKey.valueOf("storageSnapshot");
 
 	public <T> T get(AttributeKey<T> name);
 
@@ -39,9 +39,8 @@ public class Signer {
 	}
 
 	public void update(ByteBuf b) throws SignatureException {
-		byte[] buf = new byte[b.readableBytes()];
-		b.readBytes(buf);
-		update(buf);
+		signer.update(b.nioBuffer());
+		b.skipBytes(b.readableBytes());
 	}
 
 	public Signature sign() throws SignatureException {
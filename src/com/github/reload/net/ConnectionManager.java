@@ -14,7 +14,6 @@ import io.netty.util.concurrent.FutureListener;
 import java.net.InetSocketAddress;
 import java.security.cert.Certificate;
 import java.security.cert.CertificateException;
-import java.util.Collections;
 import java.util.Map;
 import java.util.concurrent.Executor;
 import javax.inject.Inject;
@@ -40,6 +39,7 @@ import com.github.reload.net.stack.ReloadStack;
 import com.github.reload.net.stack.ReloadStackBuilder.ClientStackBuilder;
 import com.github.reload.net.stack.ReloadStackBuilder.ServerStackBuilder;
 import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Maps;
 import com.google.common.eventbus.EventBus;
 import com.google.common.eventbus.Subscribe;
@@ -80,7 +80,8 @@ public class ConnectionManager {
 	@Inject
 	Provider<ServerStackBuilder> serverBuilderProv;
 
-	private final Map<NodeID, Connection> connections = Maps.newHashMap();
+	// Immutable snapshot replaced on every change, read without locking
+	private volatile ImmutableMap<NodeID, Connection> connections = ImmutableMap.of();
 
 	private ReloadStack attachServer;
 
@@ -194,10 +195,24 @@ public class ConnectionManager {
 		keystore.addCertificate(cert);
 		Connection c = new Connection(cert.getNodeId(), stack);
 
-		connections.put(cert.getNodeId(), c);
+		synchronized (this) {
+			Map<NodeID, Connection> updated = Maps.newHashMap(connections);
+			updated.put(cert.getNodeId(), c);
+			connections = ImmutableMap.copyOf(updated);
+		}
 		return c;
 	}
 
+	private synchronized void removeConnection(Connection c) {
+		// The node may be already connected again through another connection
+		if (connections.get(c.getNodeId()) != c)
+			return;
+
+		Map<NodeID, Connection> updated = Maps.newHashMap(connections);
+		updated.remove(c.getNodeId());
+		connections = ImmutableMap.copyOf(updated);
+	}
+
 	private ReloadCertificate extractRemoteCert(Channel ch) throws CertificateException {
 		try {
 			ChannelPipeline pipeline = ch.pipeline();
@@ -216,6 +231,9 @@ public class ConnectionManager {
 				l.debug(String.format("Connection from %s at %s accepted", event.connection.getNodeId(), event.connection.getStack().getChannel().remoteAddress()));
 				break;
 			case CLOSED :
+				if (event.connection == null)
+					break;
+				removeConnection(event.connection);
 				l.debug(String.format("Connection with %s closed", event.connection.getNodeId()));
 				break;
 			case ESTABLISHED :
@@ -256,8 +274,12 @@ public class ConnectionManager {
 
 	}
 
+	/**
+	 * @return the connections established when the method is called, later
+	 *         changes are not reflected in the returned map
+	 */
 	public Map<NodeID, Connection> getConnections() {
-		return Collections.unmodifiableMap(connections);
+		return connections;
 	}
 
 	/**
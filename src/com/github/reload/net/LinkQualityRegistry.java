@@ -0,0 +1,130 @@
+package com.github.reload.net;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import com.github.reload.net.ConnectionManager.ConnectionStatusEvent;
+import com.github.reload.net.codecs.header.NodeID;
+import com.google.common.collect.Maps;
+import com.google.common.eventbus.EventBus;
+import com.google.common.eventbus.Subscribe;
+
+/**
+ * Quality of the links to the neighbors as measured by the link layer. The
+ * link handlers publish the state of their link after each acknowledged or
+ * lost frame and any component can read it to prefer the best neighbors.
+ * 
+ */
+@Singleton
+public class LinkQualityRegistry {
+
+	private final ConcurrentMap<NodeID, LinkQuality> links = Maps.newConcurrentMap();
+
+	@Inject
+	public LinkQualityRegistry(EventBus eventBus) {
+		eventBus.register(this);
+	}
+
+	public void update(NodeID neighbor, LinkQuality quality) {
+		links.put(neighbor, quality);
+	}
+
+	/**
+	 * @return the last quality published for the link to the given neighbor,
+	 *         null if not measured yet
+	 */
+	public LinkQuality get(NodeID neighbor) {
+		return links.get(neighbor);
+	}
+
+	/**
+	 * @return the cost of sending through the given neighbor, neighbors not
+	 *         measured yet get the cost of a link with the default timeout
+	 */
+	public double getCost(NodeID neighbor) {
+		LinkQuality q = links.get(neighbor);
+		if (q == null)
+			return LinkQuality.UNKNOWN.getCost();
+		return q.getCost();
+	}
+
+	public Map<NodeID, LinkQuality> getLinks() {
+		return Collections.unmodifiableMap(links);
+	}
+
+	@Subscribe
+	public void handleConnectionEvent(ConnectionStatusEvent e) {
+		if (e.type == ConnectionStatusEvent.Type.CLOSED && e.connection != null) {
+			links.remove(e.connection.getNodeId());
+		}
+	}
+
+	/**
+	 * Snapshot of the state of a link
+	 */
+	public static class LinkQuality {
+
+		// Weight of the loss rate in the link cost
+		private static final double LOSS_WEIGHT = 4;
+
+		// Quality assumed for links without measurements
+		static final LinkQuality UNKNOWN = new LinkQuality(-1, 1000, 0, 0);
+
+		private final double smoothedRtt;
+		private final long timeout;
+		private final double lossRate;
+		private final int queueDepth;
+
+		public LinkQuality(double smoothedRtt, long timeout, double lossRate, int queueDepth) {
+			this.smoothedRtt = smoothedRtt;
+			this.timeout = timeout;
+			this.lossRate = lossRate;
+			this.queueDepth = queueDepth;
+		}
+
+		/**
+		 * @return the smoothed round-trip time in milliseconds, -1 if not
+		 *         measured yet
+		 */
+		public double getSmoothedRtt() {
+			return smoothedRtt;
+		}
+
+		/**
+		 * @return the retransmission timeout in milliseconds
+		 */
+		public long getTimeout() {
+			return timeout;
+		}
+
+		/**
+		 * @return the fraction of recent frames not acknowledged in time
+		 */
+		public double getLossRate() {
+			return lossRate;
+		}
+
+		/**
+		 * @return the number of frames waiting for an acknowledgment
+		 */
+		public int getQueueDepth() {
+			return queueDepth;
+		}
+
+		/**
+		 * @return the expected delay in milliseconds of a message sent on the
+		 *         link, increased by losses and queued frames
+		 */
+		public double getCost() {
+			double rtt = smoothedRtt >= 0 ? smoothedRtt : timeout;
+			return rtt * (1 + LOSS_WEIGHT * lossRate) * (1 + queueDepth);
+		}
+
+		@Override
+		public String toString() {
+			return "LinkQuality [smoothedRtt=" + smoothedRtt + ", timeout=" + timeout + ", lossRate=" + lossRate + ", queueDepth=" + queueDepth + "]";
+		}
+	}
+}
@@ -3,8 +3,10 @@ package com.github.reload.net;
 import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelFutureListener;
 import java.security.GeneralSecurityException;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.Executor;
@@ -16,6 +18,7 @@ import javax.inject.Named;
 import javax.inject.Singleton;
 import org.apache.log4j.Logger;
 import com.github.reload.net.ConnectionManager.Connection;
+import com.github.reload.net.ConnectionManager.ConnectionStatusEvent;
 import com.github.reload.net.codecs.ForwardMessage;
 import com.github.reload.net.codecs.Header;
 import com.github.reload.net.codecs.Message;
@@ -25,13 +28,21 @@ import com.github.reload.net.codecs.content.ContentType;
 import com.github.reload.net.codecs.content.Error;
 import com.github.reload.net.codecs.content.Error.ErrorMessageException;
 import com.github.reload.net.codecs.content.Error.ErrorType;
+import com.github.reload.net.codecs.header.DestinationList;
 import com.github.reload.net.codecs.header.NodeID;
 import com.github.reload.net.codecs.header.RoutableID;
 import com.github.reload.routing.MessageHandlers;
 import com.github.reload.routing.MessageHandlers.MessageHandler;
+import com.github.reload.routing.PathCompressor;
 import com.github.reload.routing.TopologyPlugin;
+import com.github.reload.routing.TopologyPlugin.TopologyEvent;
 import com.google.common.base.Optional;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
 import com.google.common.collect.Maps;
+import com.google.common.eventbus.EventBus;
+import com.google.common.eventbus.Subscribe;
 import com.google.common.util.concurrent.FutureCallback;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
@@ -46,6 +57,16 @@ public class MessageRouter {
 
 	private final Logger l = Logger.getRootLogger();
 
+	// Maximum number of destinations whose next hops are cached
+	private static final int ROUTE_CACHE_SIZE = 4096;
+
+	// Time in seconds a cached route is used, routing table changes not
+	// notified by events are picked up after this time
+	private static final int ROUTE_CACHE_EXPIRATION = 30;
+
+	// Via list length above which the forwarded hops are compressed
+	private static final int VIA_COMPRESSION_THRESHOLD = 3;
+
 	@Inject
 	ConnectionManager connManager;
 
@@ -55,15 +76,21 @@ public class MessageRouter {
 	@Inject
 	TopologyPlugin topology;
 
+	@Inject
+	PathCompressor compressor;
+
 	@Inject
 	@Named("packetsLooper")
 	Executor exec;
 
 	private final RequestManager reqManager = new RequestManager();
 
+	private final Cache<RoutableID, Set<NodeID>> routeCache = CacheBuilder.newBuilder().maximumSize(ROUTE_CACHE_SIZE).expireAfterWrite(ROUTE_CACHE_EXPIRATION, TimeUnit.SECONDS).recordStats().build();
+
 	@Inject
-	public MessageRouter(MessageHandlers msgHandlers) {
+	public MessageRouter(MessageHandlers msgHandlers, EventBus eventBus) {
 		msgHandlers.register(this);
+		eventBus.register(this);
 	}
 
 	/**
@@ -119,8 +146,35 @@ public class MessageRouter {
 	private Set<NodeID> getNextHops(RoutableID dest) {
 		if (dest instanceof NodeID && isDirectlyConnected((NodeID) dest))
 			return Collections.singleton((NodeID) dest);
-		else
-			return topology.getRoutingTable().getNextHops(dest);
+
+		Set<NodeID> hops = routeCache.getIfPresent(dest);
+		if (hops != null)
+			return hops;
+
+		hops = topology.getRoutingTable().getNextHops(dest);
+
+		if (!hops.isEmpty()) {
+			routeCache.put(dest, hops);
+		}
+
+		return hops;
+	}
+
+	/**
+	 * @return the hit rate and the other statistics of the next hops cache
+	 */
+	public CacheStats getRouteCacheStats() {
+		return routeCache.stats();
+	}
+
+	@Subscribe
+	public void invalidateRoutes(ConnectionStatusEvent e) {
+		routeCache.invalidateAll();
+	}
+
+	@Subscribe
+	public void invalidateRoutes(TopologyEvent e) {
+		routeCache.invalidateAll();
 	}
 
 	private boolean isDirectlyConnected(NodeID nextDest) {
@@ -166,6 +220,8 @@ public class MessageRouter {
 		// Change message header to be forwarded
 		header.toForward(header.getAttribute(Header.PREV_HOP));
 
+		compressViaList(header.getViaList());
+
 		// If destination node is directly connected forward message to it
 		if (msg.getHeader().getNextHop() instanceof NodeID) {
 			final Optional<Connection> directConn = connManager.getConnection((NodeID) msg.getHeader().getNextHop());
@@ -205,6 +261,25 @@ public class MessageRouter {
 		}
 	}
 
+	/**
+	 * Replace the hops after the sender in the via list with an opaque-id.
+	 * The answer destination list is the reverse of the via list, so the hops
+	 * are compressed in reverse order and restored when the answer passes
+	 * through the local peer.
+	 */
+	private void compressViaList(DestinationList viaList) {
+		if (viaList.size() <= VIA_COMPRESSION_THRESHOLD)
+			return;
+
+		List<RoutableID> hops = new ArrayList<RoutableID>(viaList.subList(1, viaList.size()));
+		Collections.reverse(hops);
+
+		RoutableID compressed = compressor.compress(new DestinationList(hops));
+
+		viaList.subList(1, viaList.size()).clear();
+		viaList.add(compressed);
+	}
+
 	public ListenableFuture<NodeID> sendAnswer(Header requestHdr, Content answer) {
 		return sendMessage(msgBuilder.newResponseMessage(requestHdr, answer));
 	}
@@ -29,7 +29,8 @@ import dagger.Provides;
 					MessagePayloadDecoder.class, MessageAuthenticator.class,
 					MessageEncoder.class, FramedMessageCodec.class,
 					MessageDispatcher.class, Codec.class, SRLinkHandler.class,
-					StackInitializer.class}, library = true, complete = false)
+					StackInitializer.class, LinkQualityRegistry.class,
+					TrafficMonitor.class}, library = true, complete = false)
 public class NetModule {
 
 	@Provides
@@ -0,0 +1,110 @@
+package com.github.reload.net;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import com.github.reload.net.ConnectionManager.ConnectionStatusEvent;
+import com.github.reload.net.codecs.content.ContentType;
+import com.github.reload.net.codecs.header.NodeID;
+import com.google.common.collect.Maps;
+import com.google.common.eventbus.EventBus;
+import com.google.common.eventbus.Subscribe;
+
+/**
+ * Counts the traffic sent by the local peer and the last time each neighbor
+ * was heard. The link handlers account all the frames sent on the links,
+ * including the forwarded messages, while the message encoder accounts the
+ * messages originated by the local peer by content type.
+ * 
+ */
+@Singleton
+public class TrafficMonitor {
+
+	private final AtomicLong sentBytes = new AtomicLong();
+
+	private final AtomicLong sentMessagesBytes = new AtomicLong();
+
+	private final Map<ContentType, AtomicLong> sentMessageBytes = new EnumMap<ContentType, AtomicLong>(ContentType.class);
+
+	private final ConcurrentMap<NodeID, Long> lastReceived = Maps.newConcurrentMap();
+
+	@Inject
+	public TrafficMonitor(EventBus eventBus) {
+		for (ContentType t : ContentType.values()) {
+			sentMessageBytes.put(t, new AtomicLong());
+		}
+		eventBus.register(this);
+	}
+
+	/**
+	 * Account a frame of the given length sent on a link
+	 */
+	public void frameSent(int bytes) {
+		sentBytes.addAndGet(bytes);
+	}
+
+	/**
+	 * Account a message of the given type and encoded length originated by the
+	 * local peer
+	 */
+	public void messageSent(ContentType type, int bytes) {
+		sentMessageBytes.get(type).addAndGet(bytes);
+		sentMessagesBytes.addAndGet(bytes);
+	}
+
+	/**
+	 * Record that some data was received from the given neighbor, proving the
+	 * neighbor is alive
+	 */
+	public void frameReceived(NodeID neighbor) {
+		lastReceived.put(neighbor, System.currentTimeMillis());
+	}
+
+	/**
+	 * @return the time in milliseconds of the last data received from the given
+	 *         neighbor, 0 if nothing was received
+	 */
+	public long getLastReceived(NodeID neighbor) {
+		Long time = lastReceived.get(neighbor);
+		if (time == null)
+			return 0;
+		return time;
+	}
+
+	/**
+	 * @return the bytes sent on all the links
+	 */
+	public long getSentBytes() {
+		return sentBytes.get();
+	}
+
+	/**
+	 * @return the bytes of all the messages originated by the local peer
+	 */
+	public long getSentMessageBytes() {
+		return sentMessagesBytes.get();
+	}
+
+	/**
+	 * @return the bytes of the messages of the given types originated by the
+	 *         local peer
+	 */
+	public long getSentBytes(Set<ContentType> types) {
+		long bytes = 0;
+		for (ContentType t : types) {
+			bytes += sentMessageBytes.get(t).get();
+		}
+		return bytes;
+	}
+
+	@Subscribe
+	public void handleConnectionEvent(ConnectionStatusEvent e) {
+		if (e.type == ConnectionStatusEvent.Type.CLOSED && e.connection != null) {
+			lastReceived.remove(e.connection.getNodeId());
+		}
+	}
+}
@@ -226,6 +226,11 @@ public abstract class Codec<T> {
 
 	public static byte[] toUnsigned(BigInteger signedValue) {
 		byte[] signed = signedValue.toByteArray();
+
+		// Only the leading sign byte has to be removed
+		if (signed.length == 1 || signed[0] != 0)
+			return signed;
+
 		byte[] out = new byte[signed.length - 1];
 		System.arraycopy(signed, 1, out, 0, out.length);
 		return out;
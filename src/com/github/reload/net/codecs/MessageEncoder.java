@@ -14,6 +14,7 @@ import javax.inject.Singleton;
 import org.apache.log4j.Logger;
 import com.github.reload.crypto.CryptoHelper;
 import com.github.reload.crypto.Signer;
+import com.github.reload.net.TrafficMonitor;
 import com.github.reload.net.codecs.content.Content;
 import com.github.reload.net.codecs.secBlock.GenericCertificate;
 import com.github.reload.net.codecs.secBlock.SecurityBlock;
@@ -50,6 +51,9 @@ public class MessageEncoder extends MessageToByteEncoder<Message> {
 	@Inject
 	CryptoHelper cryptoHelper;
 
+	@Inject
+	TrafficMonitor traffic;
+
 	@Override
 	protected void encode(ChannelHandlerContext ctx, Message msg, ByteBuf out) throws Exception {
 		out.capacity(MAX_MESSAGE_SIZE);
@@ -67,6 +71,8 @@ public class MessageEncoder extends MessageToByteEncoder<Message> {
 
 		setMessageLength(out, messageStart);
 
+		traffic.messageSent(msg.content.getType(), out.writerIndex() - messageStart);
+
 		Logger.getRootLogger().trace(String.format("Message %#x encoded", msg.getHeader().getTransactionId()));
 	}
 
@@ -67,9 +67,10 @@ public abstract class Content {
 		private void encodeExtensions(Content obj, ByteBuf buf) throws com.github.reload.net.codecs.Codec.CodecException {
 			Field lenFld = allocateField(buf, EXTENSIONS_LENGTH_FIELD);
 
+			// The extension header is written by the generic extension codec
+			Codec<MessageExtension> codec = getCodec(MessageExtension.class);
+
 			for (MessageExtension ex : obj.getMessageExtensions()) {
-				@SuppressWarnings("unchecked")
-				Codec<MessageExtension> codec = (Codec<MessageExtension>) getCodec(ex.getClass());
 				codec.encode(ex, buf);
 			}
 
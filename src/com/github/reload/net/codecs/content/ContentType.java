@@ -5,10 +5,14 @@ import com.github.reload.services.storage.net.FetchAnswer;
 import com.github.reload.services.storage.net.FetchRequest;
 import com.github.reload.services.storage.net.FindAnswer;
 import com.github.reload.services.storage.net.FindRequest;
+import com.github.reload.services.storage.net.NotifyAnswer;
+import com.github.reload.services.storage.net.NotifyRequest;
 import com.github.reload.services.storage.net.StatAnswer;
 import com.github.reload.services.storage.net.StatRequest;
 import com.github.reload.services.storage.net.StoreAnswer;
 import com.github.reload.services.storage.net.StoreRequest;
+import com.github.reload.services.storage.net.SyncAnswer;
+import com.github.reload.services.storage.net.SyncRequest;
 
 /**
  * Message type codes, also used to create message content object instances for
@@ -42,6 +46,11 @@ public enum ContentType {
 	APPATTACH_ANS((short) 0x1e, AppAttachMessage.class),
 	CONFIG_UPDATE_REQ((short) 0x21, ConfigUpdateRequest.class),
 	CONFIG_UPDATE_ANS((short) 0x22, ConfigUpdateAnswer.class),
+	// Replica anti-entropy, uses the experimental exp_a codes
+	SYNC_REQ((short) 0x23, SyncRequest.class),
+	SYNC_ANS((short) 0x24, SyncAnswer.class),
+	NOTIFY_REQ((short) 0x25, NotifyRequest.class),
+	NOTIFY_ANS((short) 0x26, NotifyAnswer.class),
 	ERROR((short) 0xffff, Error.class);
 
 	private final short code;
@@ -6,6 +6,7 @@ import dagger.ObjectGraph;
 import com.github.reload.net.codecs.Codec;
 import com.github.reload.net.codecs.Codec.ReloadCodec;
 import com.github.reload.net.codecs.content.MessageExtension.MessageExtensionCodec;
+import com.github.reload.services.storage.net.SubscriptionExtension;
 
 /**
  * Message extension contained in the message content
@@ -14,7 +15,8 @@ import com.github.reload.net.codecs.content.MessageExtension.MessageExtensionCod
 public abstract class MessageExtension {
 
 	public enum MessageExtensionType {
-		UNKNOWN((short) 0);
+		UNKNOWN((short) 0),
+		SUBSCRIPTION((short) 0xf001);
 
 		private final short code;
 
@@ -79,6 +81,9 @@ public abstract class MessageExtension {
 				case UNKNOWN :
 					extension = buildUnknownExtension();
 					break;
+				case SUBSCRIPTION :
+					extension = getCodec(SubscriptionExtension.class).decode(buf);
+					break;
 			}
 
 			assert (extension != null);
@@ -1,7 +1,6 @@
 package com.github.reload.net.codecs.content;
 
 import io.netty.buffer.ByteBuf;
-import java.math.BigInteger;
 import dagger.ObjectGraph;
 import com.github.reload.net.codecs.Codec;
 import com.github.reload.net.codecs.Codec.ReloadCodec;
@@ -11,9 +10,9 @@ import com.github.reload.net.codecs.content.PingAnswer.PingAnswerCodec;
 public class PingAnswer extends Content {
 
 	private final long responseId;
-	private final BigInteger responseTime;
+	private final long responseTime;
 
-	public PingAnswer(long responseId, BigInteger responseTime) {
+	public PingAnswer(long responseId, long responseTime) {
 		this.responseId = responseId;
 		this.responseTime = responseTime;
 	}
@@ -28,7 +27,7 @@ public class PingAnswer extends Content {
 	/**
 	 * @return The time this answer was generated in UNIX time format
 	 */
-	public BigInteger getResponseTime() {
+	public long getResponseTime() {
 		return responseTime;
 	}
 
@@ -44,8 +43,6 @@ public class PingAnswer extends Content {
 
 	static class PingAnswerCodec extends Codec<PingAnswer> {
 
-		private static final int RESPONSE_TIME_SIZE = U_INT64;
-
 		public PingAnswerCodec(ObjectGraph ctx) {
 			super(ctx);
 		}
@@ -53,25 +50,13 @@ public class PingAnswer extends Content {
 		@Override
 		public void encode(PingAnswer obj, ByteBuf buf, Object... params) throws CodecException {
 			buf.writeLong(obj.responseId);
-
-			if (obj.responseTime.compareTo(BigInteger.ZERO) < 0 || obj.responseTime.bitCount() > 8 * RESPONSE_TIME_SIZE)
-				throw new CodecException("Invalid response time");
-
-			byte[] respTime = toUnsigned(obj.responseTime);
-
-			// Add zeros padding to response time to ensure the field has always
-			// the size specified in RESPONSE_TIME_SIZE
-			buf.writeZero(RESPONSE_TIME_SIZE - respTime.length);
-
-			buf.writeBytes(respTime);
+			buf.writeLong(obj.responseTime);
 		}
 
 		@Override
 		public PingAnswer decode(ByteBuf buf, Object... params) throws CodecException {
 			long responseId = buf.readLong();
-			byte[] resposeTimeData = new byte[RESPONSE_TIME_SIZE];
-			buf.readBytes(resposeTimeData);
-			BigInteger responseTime = new BigInteger(1, resposeTimeData);
+			long responseTime = buf.readLong();
 
 			return new PingAnswer(responseId, responseTime);
 		}
@@ -1,34 +1,33 @@
 package com.github.reload.net.codecs.header;
 
 import io.netty.buffer.ByteBuf;
-import java.util.HashMap;
-import java.util.Map;
 import dagger.ObjectGraph;
 import com.github.reload.net.codecs.Codec;
 import com.github.reload.net.codecs.Codec.ReloadCodec;
 import com.github.reload.net.codecs.header.NodeID.NodeIdCodec;
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
 
 /**
- * The identifier of a node
+ * The identifier of a node. Node-ids are interned, so equal ids decoded from
+ * different messages share the same instance as long as it is referenced.
  * 
  */
 @ReloadCodec(NodeIdCodec.class)
 public class NodeID extends RoutableID {
 
-	private static final Map<byte[], NodeID> INSTANCES = new HashMap<byte[], NodeID>();
+	// Canonical instances, they are collected when no longer referenced
+	private static final Interner<NodeID> INSTANCES = Interners.newWeakInterner();
+
 	private final byte[] id;
 
 	NodeID(byte[] id) {
+		super(id);
 		this.id = id;
 	}
 
 	public static NodeID valueOf(byte[] id) {
-		NodeID node = INSTANCES.get(id);
-		if (node == null) {
-			node = new NodeID(id);
-			INSTANCES.put(id, node);
-		}
-		return node;
+		return INSTANCES.intern(new NodeID(id));
 	}
 
 	public static NodeID valueOf(int idLength, byte[] id) {
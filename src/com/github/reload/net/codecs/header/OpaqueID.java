@@ -17,6 +17,7 @@ public class OpaqueID extends RoutableID {
 	private final byte[] id;
 
 	private OpaqueID(byte[] id) {
+		super(id);
 		this.id = id;
 	}
 
@@ -16,6 +16,7 @@ public final class ResourceID extends RoutableID {
 	private final byte[] id;
 
 	private ResourceID(byte[] id) {
+		super(id);
 		this.id = id;
 	}
 
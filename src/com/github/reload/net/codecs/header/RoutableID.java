@@ -5,10 +5,12 @@ import java.util.Arrays;
 import java.util.EnumSet;
 import com.github.reload.net.codecs.Codec;
 import com.github.reload.net.codecs.Codec.ReloadCodec;
+import com.google.common.primitives.UnsignedLongs;
 
 /**
  * A routable identitier that can be used as destination for the resource based
- * routing algorithm
+ * routing algorithm. The value of the id is also kept as two longs, so that ids
+ * up to 128 bits are compared and placed on the ring without allocations.
  * 
  */
 @ReloadCodec(RoutableIDCodec.class)
@@ -31,8 +33,51 @@ public abstract class RoutableID implements Comparable<RoutableID> {
 		}
 	}
 
+	private static final int LONG_BYTES = 8;
+	private static final int RING_BYTES = 2 * LONG_BYTES;
+	private static final int RING_BITS = RING_BYTES * 8;
+
+	// The 128 least significant bits of the id value
+	private final long high;
+	private final long low;
+
+	// Ids longer than 128 bits are compared by their whole value
+	private final boolean isWide;
+
+	protected RoutableID(byte[] data) {
+		isWide = data.length > RING_BYTES;
+
+		long h = 0;
+		long l = 0;
+		for (int i = Math.max(data.length - RING_BYTES, 0); i < data.length; i++) {
+			int shift = (data.length - 1 - i) * 8;
+			long b = data[i] & 0xff;
+			if (shift < 64) {
+				l |= b << shift;
+			} else {
+				h |= b << (shift - 64);
+			}
+		}
+		high = h;
+		low = l;
+	}
+
 	public abstract byte[] getData();
 
+	/**
+	 * @return the 64 most significant bits of the 128 bit id value
+	 */
+	public long getHigh() {
+		return high;
+	}
+
+	/**
+	 * @return the 64 least significant bits of the 128 bit id value
+	 */
+	public long getLow() {
+		return low;
+	}
+
 	public abstract DestinationType getType();
 
 	protected static byte[] hexToByte(String str) {
@@ -45,14 +90,21 @@ public abstract class RoutableID implements Comparable<RoutableID> {
 
 	@Override
 	public int compareTo(RoutableID o) {
-		return new BigInteger(1, getData()).compareTo(new BigInteger(1, o.getData()));
+		if (isWide || o.isWide)
+			return new BigInteger(1, getData()).compareTo(new BigInteger(1, o.getData()));
+
+		return compare(high, low, o.high, o.low);
 	}
 
 	@Override
 	public int hashCode() {
+		if (isWide)
+			return Arrays.hashCode(getData());
+
 		final int prime = 31;
 		int result = 1;
-		result = prime * result + Arrays.hashCode(getData());
+		result = prime * result + (int) (high ^ (high >>> 32));
+		result = prime * result + (int) (low ^ (low >>> 32));
 		return result;
 	}
 
@@ -83,6 +135,97 @@ public abstract class RoutableID implements Comparable<RoutableID> {
 	 * @return True if this id is the wildcard id, false otherwise
 	 */
 	public boolean isWildcard() {
-		return (getType() == DestinationType.NODEID) && new BigInteger(getData()).equals(BigInteger.ZERO);
+		if (getType() != DestinationType.NODEID)
+			return false;
+
+		if (isWide) {
+			for (byte b : getData())
+				if (b != 0)
+					return false;
+			return true;
+		}
+
+		return high == 0 && low == 0;
+	}
+
+	/**
+	 * Compare the clockwise distances on the 128 bit ring from the origin to
+	 * the given ids
+	 * 
+	 * @return a negative value, zero or a positive value if the first id is
+	 *         closer, at the same distance or farther than the second id
+	 */
+	public static int compareClockwiseDistance(RoutableID origin, RoutableID a, RoutableID b) {
+		long aLow = a.low - origin.low;
+		long aHigh = a.high - origin.high - borrow(a.low, origin.low);
+		long bLow = b.low - origin.low;
+		long bHigh = b.high - origin.high - borrow(b.low, origin.low);
+		return compare(aHigh, aLow, bHigh, bLow);
+	}
+
+	/**
+	 * @return true if the id is in the clockwise interval (from, to] of the
+	 *         128 bit ring, the interval is the whole ring if the bounds are
+	 *         the same
+	 */
+	public static boolean isBetween(RoutableID id, RoutableID from, RoutableID to) {
+		long rangeLow = to.low - from.low;
+		long rangeHigh = to.high - from.high - borrow(to.low, from.low);
+
+		if (rangeHigh == 0 && rangeLow == 0)
+			return true;
+
+		long distLow = id.low - from.low;
+		long distHigh = id.high - from.high - borrow(id.low, from.low);
+
+		if (distHigh == 0 && distLow == 0)
+			return false;
+
+		return compare(distHigh, distLow, rangeHigh, rangeLow) <= 0;
+	}
+
+	/**
+	 * @return the number of significant bits of the clockwise distance on the
+	 *         128 bit ring from the source to the destination
+	 */
+	public static int getClockwiseDistanceBits(RoutableID source, RoutableID dest) {
+		long distLow = dest.low - source.low;
+		long distHigh = dest.high - source.high - borrow(dest.low, source.low);
+		return getBitLength(distHigh, distLow);
+	}
+
+	/**
+	 * Compare the XOR distances of the given ids from the target
+	 * 
+	 * @return a negative value, zero or a positive value if the first id is
+	 *         closer, at the same distance or farther than the second id
+	 */
+	public static int compareXorDistance(RoutableID target, RoutableID a, RoutableID b) {
+		return compare(a.high ^ target.high, a.low ^ target.low, b.high ^ target.high, b.low ^ target.low);
+	}
+
+	/**
+	 * @return the number of significant bits of the XOR distance between the
+	 *         ids, that is the length of the first differing prefix
+	 */
+	public static int getXorDistanceBits(RoutableID a, RoutableID b) {
+		return getBitLength(a.high ^ b.high, a.low ^ b.low);
+	}
+
+	private static long borrow(long minuendLow, long subtrahendLow) {
+		return UnsignedLongs.compare(minuendLow, subtrahendLow) < 0 ? 1 : 0;
+	}
+
+	private static int compare(long aHigh, long aLow, long bHigh, long bLow) {
+		int c = UnsignedLongs.compare(aHigh, bHigh);
+		if (c != 0)
+			return c;
+		return UnsignedLongs.compare(aLow, bLow);
+	}
+
+	private static int getBitLength(long high, long low) {
+		if (high != 0)
+			return RING_BITS - Long.numberOfLeadingZeros(high);
+		return 64 - Long.numberOfLeadingZeros(low);
 	}
 }
@@ -46,7 +46,9 @@ public abstract class SignerIdentityValue {
 
 	@Override
 	public int hashCode() {
-		return Objects.hash(super.hashCode(), getHashAlgorithm(), getHashValue());
+		// Consistent with equals, identities are used as keys of the storage
+		// usage counters
+		return Objects.hash(getHashAlgorithm(), Arrays.hashCode(getHashValue()));
 	}
 
 	@Override
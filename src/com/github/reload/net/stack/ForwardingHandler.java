@@ -137,6 +137,7 @@ public class ForwardingHandler extends ChannelInboundHandlerAdapter {
 		OpaqueID compressed = (OpaqueID) destList.get(0);
 
 		DestinationList original = compressor.decompress(compressed);
+		destList.remove(0);
 		destList.addAll(0, original);
 	}
 
@@ -12,19 +12,27 @@ import org.apache.log4j.Logger;
 import com.github.reload.net.ConnectionManager;
 import com.github.reload.net.ConnectionManager.Connection;
 import com.github.reload.net.ConnectionManager.ConnectionStatusEvent.Type;
+import com.github.reload.net.LinkQualityRegistry;
+import com.github.reload.net.LinkQualityRegistry.LinkQuality;
 import com.github.reload.net.NetworkException;
+import com.github.reload.net.TrafficMonitor;
 import com.github.reload.net.codecs.FramedMessage;
 import com.github.reload.net.codecs.FramedMessage.FramedAck;
 import com.github.reload.net.codecs.FramedMessage.FramedData;
 import com.google.common.eventbus.EventBus;
 
 /**
- * Subclasses will implement a specific link layer protocol to control the link
+ * Subclasses will implement a specific link layer protocol to control the link.
+ * The state of the link is published to the {@link LinkQualityRegistry} after
+ * each acknowledged or lost frame.
  */
 public abstract class LinkHandler extends ChannelDuplexHandler {
 
 	private final Logger l = Logger.getRootLogger();
 
+	// Weight of the last frame in the loss rate estimation
+	private static final double LOSS_ALPHA = 1.0 / 8;
+
 	private ChannelHandlerContext ctx;
 
 	private final Map<Long, Transmission> transmissions = new LinkedHashMap<Long, Transmission>();
@@ -32,6 +40,15 @@ public abstract class LinkHandler extends ChannelDuplexHandler {
 	@Inject
 	EventBus eventBus;
 
+	@Inject
+	LinkQualityRegistry linkQuality;
+
+	@Inject
+	TrafficMonitor traffic;
+
+	// Smoothed fraction of frames not acknowledged in time
+	private double lossRate = 0;
+
 	@Override
 	public void handlerAdded(ChannelHandlerContext ctx) throws Exception {
 		this.ctx = ctx;
@@ -53,6 +70,10 @@ public abstract class LinkHandler extends ChannelDuplexHandler {
 		switch (frame.getType()) {
 			case DATA :
 				handleData((FramedData) frame);
+				Connection c = ctx.attr(Connection.CONNECTION).get();
+				if (c != null) {
+					traffic.frameReceived(c.getNodeId());
+				}
 				l.trace("Passing DATA frame " + frame.getSequence() + " to upper layer...");
 				ctx.fireChannelRead(((FramedData) frame).getPayload());
 				break;
@@ -61,9 +82,11 @@ public abstract class LinkHandler extends ChannelDuplexHandler {
 				Transmission t = transmissions.remove(frame.getSequence());
 				if (t != null) {
 					handleAck((FramedAck) frame, t);
+					updateLinkQuality(false);
 				} else {
 					l.trace("Unexpected ACK message on " + ctx);
 				}
+				break;
 			default :
 				assert false;
 				break;
@@ -72,8 +95,10 @@ public abstract class LinkHandler extends ChannelDuplexHandler {
 
 	@Override
 	public void write(final ChannelHandlerContext ctx, Object msg, ChannelPromise promise) throws Exception {
+		traffic.frameSent(((ByteBuf) msg).readableBytes());
 		FramedData data = getDataFrame((ByteBuf) msg);
 		Transmission t = new Transmission();
+		t.sequence = data.getSequence();
 		t.promise = promise;
 		transmissions.put(data.getSequence(), t);
 		l.trace("Passing DATA frame " + data.getSequence() + " to lower layer...");
@@ -111,9 +136,28 @@ public abstract class LinkHandler extends ChannelDuplexHandler {
 		return 0;
 	}
 
+	/**
+	 * @return the smoothed round-trip time of the link in milliseconds, -1 if
+	 *         not measured by the link protocol
+	 */
+	protected double getSmoothedRtt() {
+		return -1;
+	}
+
+	private void updateLinkQuality(boolean lost) {
+		lossRate = (1 - LOSS_ALPHA) * lossRate + (lost ? LOSS_ALPHA : 0);
+
+		Connection c = ctx != null ? ctx.attr(Connection.CONNECTION).get() : null;
+		if (c == null)
+			return;
+
+		linkQuality.update(c.getNodeId(), new LinkQuality(getSmoothedRtt(), getLinkTimeout(), lossRate, transmissions.size()));
+	}
+
 	class Transmission {
 
 		public long startTime = System.currentTimeMillis();
+		public long sequence;
 		public ChannelPromise promise;
 
 		public int getRTT() {
@@ -125,7 +169,12 @@ public abstract class LinkHandler extends ChannelDuplexHandler {
 
 				@Override
 				public void run() {
-					promise.setFailure(new NetworkException("Unacked message from neighbor"));
+					// Already acknowledged
+					if (transmissions.remove(sequence) == null)
+						return;
+
+					promise.tryFailure(new NetworkException("Unacked message from neighbor"));
+					updateLinkQuality(true);
 				}
 			}, timeout, TimeUnit.MILLISECONDS);
 		}
@@ -25,8 +25,8 @@ public class SRLinkHandler extends LinkHandler {
 
 	// Constants for timeout calculation (see RFC6298 Section 2)
 	private static final double K = 4;
-	private static final double ALPHA = 1 / 8;
-	private static final double BETA = 1 / 4;
+	private static final double ALPHA = 1.0 / 8;
+	private static final double BETA = 1.0 / 4;
 	// The smoothed round-trip time
 	private double sRtt = -1;
 	// The round-trip time variation
@@ -103,7 +103,7 @@ public class SRLinkHandler extends LinkHandler {
 		// First misuration
 		if (sRtt == -1) {
 			sRtt = rtt;
-			rttVar = rtt / 2;
+			rttVar = rtt / 2.0;
 		} else {
 			rttVar = (1 - BETA) * rttVar + BETA * Math.abs(sRtt - rtt);
 			sRtt = (1 - ALPHA) * sRtt + ALPHA * rtt;
@@ -122,4 +122,9 @@ public class SRLinkHandler extends LinkHandler {
 	protected long getLinkTimeout() {
 		return linkTimeout;
 	}
+
+	@Override
+	protected double getSmoothedRtt() {
+		return sRtt;
+	}
 }
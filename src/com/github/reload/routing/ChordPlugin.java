@@ -0,0 +1,1121 @@
+package com.github.reload.routing;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+import org.apache.log4j.Logger;
+import com.github.reload.Overlay;
+import com.github.reload.conf.Configuration;
+import com.github.reload.net.ConnectionManager;
+import com.github.reload.net.ConnectionManager.Connection;
+import com.github.reload.net.ConnectionManager.ConnectionStatusEvent;
+import com.github.reload.net.LinkQualityRegistry;
+import com.github.reload.net.TrafficMonitor;
+import com.github.reload.net.MessageRouter;
+import com.github.reload.net.codecs.Codec;
+import com.github.reload.net.codecs.Codec.CodecException;
+import com.github.reload.net.codecs.Header;
+import com.github.reload.net.codecs.Message;
+import com.github.reload.net.codecs.MessageBuilder;
+import com.github.reload.net.codecs.content.ContentType;
+import com.github.reload.net.codecs.content.Error.ErrorType;
+import com.github.reload.net.codecs.content.JoinAnswer;
+import com.github.reload.net.codecs.content.JoinRequest;
+import com.github.reload.net.codecs.content.LeaveRequest;
+import com.github.reload.net.codecs.content.PingAnswer;
+import com.github.reload.net.codecs.content.PingRequest;
+import com.github.reload.net.codecs.content.UpdateAnswer;
+import com.github.reload.net.codecs.content.UpdateRequest;
+import com.github.reload.net.codecs.header.DestinationList;
+import com.github.reload.net.codecs.header.NodeID;
+import com.github.reload.net.codecs.header.ResourceID;
+import com.github.reload.net.codecs.header.RoutableID;
+import com.github.reload.net.ice.HostCandidate.OverlayLinkType;
+import com.github.reload.routing.MessageHandlers.MessageHandler;
+import com.github.reload.services.AttachService;
+import com.github.reload.services.PingService;
+import com.google.common.base.Function;
+import com.google.common.base.Optional;
+import com.google.common.collect.ConcurrentHashMultiset;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Sets;
+import com.google.common.eventbus.EventBus;
+import com.google.common.eventbus.Subscribe;
+import com.google.common.hash.Hashing;
+import com.google.common.primitives.UnsignedLongs;
+import com.google.common.util.concurrent.AsyncFunction;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import dagger.Module;
+import dagger.ObjectGraph;
+import dagger.Provides;
+
+/**
+ * Topology plugin implementing the CHORD-RELOAD algorithm. The peers are
+ * placed on a ring of 128 bit identifiers and each resource is stored by the
+ * first peer following its id on the ring. Each peer keeps a neighbor table
+ * with its closest successors and predecessors, that is exchanged with update
+ * messages, and a finger table pointing to the peers responsible for the ids
+ * at exponentially growing distances, that is filled by attaching to those
+ * ids. Messages are forwarded to the known peer closest to the destination
+ * that doesn't pass over it, so a lookup takes O(log N) hops. Among the peers
+ * leaving the same number of hops to the destination the one with the best
+ * link is chosen.
+ * 
+ * The plugin is used by returning the {@link ChordModule} among the provider
+ * modules of the bootstrap.
+ * 
+ */
+@Singleton
+public class ChordPlugin implements TopologyPlugin {
+
+	/**
+	 * Name of the topology plugin in the overlay configuration
+	 */
+	public static final String NAME = "CHORD-RELOAD";
+
+	private static final Logger l = Logger.getRootLogger();
+
+	// Length in bytes of node-ids and resource-ids
+	static final int ID_LENGTH = 16;
+
+	private static final int ID_BITS = ID_LENGTH * 8;
+
+	// Number of successors and predecessors in the neighbor table
+	static final int NEIGHBORS_SIZE = 3;
+
+	// Number of successors storing a replica of each resource
+	static final int REPLICAS = 2;
+
+	// Bounds in milliseconds of the interval between two updates sent to the
+	// neighbors
+	static final int MIN_UPDATE_INTERVAL = 5000;
+	static final int MAX_UPDATE_INTERVAL = 60000;
+
+	// Bounds in milliseconds of the interval between two checks of the
+	// missing fingers
+	static final int MIN_FIX_FINGERS_INTERVAL = 1000;
+	static final int MAX_FIX_FINGERS_INTERVAL = 10000;
+
+	// Bounds in milliseconds of the interval between two lookups of a known
+	// finger
+	static final int MIN_REFRESH_FINGER_INTERVAL = 10000;
+	static final int MAX_REFRESH_FINGER_INTERVAL = 120000;
+
+	// Bounds in milliseconds of the time a neighbor can be silent before it is
+	// pinged
+	static final int MIN_LIVENESS_INTERVAL = 5000;
+	static final int MAX_LIVENESS_INTERVAL = 30000;
+
+	// Number of consecutive unanswered pings before a neighbor is dropped
+	static final int MAX_PING_FAILURES = 3;
+
+	@Inject
+	Overlay overlay;
+
+	@Inject
+	Configuration conf;
+
+	@Inject
+	ConnectionManager connMgr;
+
+	@Inject
+	MessageRouter router;
+
+	@Inject
+	LinkQualityRegistry linkQuality;
+
+	@Inject
+	TrafficMonitor traffic;
+
+	@Inject
+	MaintenanceScheduler scheduler;
+
+	@Inject
+	MessageBuilder msgBuilder;
+
+	@Inject
+	MessageHandlers msgHandlers;
+
+	@Inject
+	EventBus eventBus;
+
+	@Inject
+	ObjectGraph graph;
+
+	@Inject
+	@Named("packetsLooper")
+	Executor packetsLooper;
+
+	private final ChordRoutingTable table = new ChordRoutingTable();
+
+	// Nodes the local peer is attaching to as new neighbors
+	private final Set<NodeID> pendingAttaches = Sets.newConcurrentHashSet();
+
+	private final long startTime = System.currentTimeMillis();
+
+	private Codec<ChordUpdate> updateCodec;
+
+	volatile boolean isJoined = false;
+
+	// Finger index the local peer is attaching to, -1 if none
+	private volatile int pendingFinger = -1;
+
+	// Consecutive unanswered pings of each neighbor
+	private final ConcurrentHashMultiset<NodeID> pingFailures = ConcurrentHashMultiset.create();
+
+	// Time of the last update sent to the neighbors
+	private volatile long lastNeighborsUpdate = 0;
+
+	// Finger index where the next finger refresh starts
+	private int refreshIndex = 0;
+
+	@Inject
+	public ChordPlugin() {
+	}
+
+	@Override
+	public void startAgent() {
+		updateCodec = Codec.getCodec(ChordUpdate.class, graph);
+
+		if (overlay.isOverlayInitiator()) {
+			isJoined = true;
+			try {
+				addLoopback().get();
+			} catch (InterruptedException | ExecutionException e) {
+				l.warn("Loopback connection failed", e);
+			}
+		}
+
+		msgHandlers.register(this);
+		eventBus.register(this);
+
+		scheduler.schedule("stabilize", MIN_UPDATE_INTERVAL, MAX_UPDATE_INTERVAL, new Runnable() {
+
+			@Override
+			public void run() {
+				stabilize();
+			}
+		});
+
+		scheduler.schedule("fix-fingers", MIN_FIX_FINGERS_INTERVAL, MAX_FIX_FINGERS_INTERVAL, new Runnable() {
+
+			@Override
+			public void run() {
+				fixFingers();
+			}
+		});
+
+		scheduler.schedule("refresh-fingers", MIN_REFRESH_FINGER_INTERVAL, MAX_REFRESH_FINGER_INTERVAL, new Runnable() {
+
+			@Override
+			public void run() {
+				refreshFinger();
+			}
+		});
+
+		scheduler.schedule("liveness", MIN_LIVENESS_INTERVAL, MAX_LIVENESS_INTERVAL, new Runnable() {
+
+			@Override
+			public void run() {
+				checkNeighbors();
+			}
+		});
+	}
+
+	private ListenableFuture<Connection> addLoopback() {
+		return connMgr.connectTo(overlay.getLocalAddress(), OverlayLinkType.TLS_TCP_FH_NO_ICE);
+	}
+
+	@Override
+	public ListenableFuture<NodeID> requestJoin() {
+		l.info(String.format("Joining to RELOAD overlay %s with %s in progress...", conf.get(Configuration.OVERLAY_NAME), overlay.getLocalNodeId()));
+
+		JoinRequest req = new JoinRequest(overlay.getLocalNodeId(), new byte[0]);
+
+		// The admitting peer is the one currently responsible for the local id
+		Message request = msgBuilder.newMessage(req, new DestinationList(ResourceID.valueOf(overlay.getLocalNodeId().getData())));
+
+		return Futures.transform(router.sendRequestMessage(request), new Function<Message, NodeID>() {
+
+			@Override
+			public NodeID apply(Message joinAns) {
+				NodeID ap = joinAns.getHeader().getSenderId();
+				isJoined = true;
+				addLoopback();
+				addPeers(Collections.singleton(ap));
+				sendNeighborsUpdates();
+				l.info(String.format("Joining to RELOAD overlay %s with %s completed.", conf.get(Configuration.OVERLAY_NAME), overlay.getLocalNodeId()));
+				return ap;
+			}
+		});
+	}
+
+	@MessageHandler(ContentType.JOIN_REQ)
+	public void handleJoinRequest(Message req) {
+		Header head = req.getHeader();
+		NodeID joiningNode = ((JoinRequest) req.getContent()).getJoiningNode();
+
+		if (!head.getSenderId().equals(joiningNode)) {
+			router.sendError(head, ErrorType.FORBITTEN, "Joining node doesn't match with sender ID");
+			return;
+		}
+
+		if (!connMgr.isNeighbor(joiningNode)) {
+			router.sendError(head, ErrorType.FORBITTEN, "Joining node is not attached");
+			return;
+		}
+
+		router.sendAnswer(head, new JoinAnswer(new byte[0]));
+
+		l.debug(String.format("Node %s has joined the overlay", joiningNode));
+
+		// The joining node gets the full tables even if not a new neighbor
+		if (!addPeers(Collections.singleton(joiningNode))) {
+			requestUpdate(joiningNode);
+		}
+	}
+
+	@Override
+	public ListenableFuture<NodeID> requestUpdate(final NodeID neighborNode) {
+		ChordUpdate update = new ChordUpdate(getUptime(), ChordUpdate.Type.FULL, table.getPredecessors(), table.getSuccessors(), table.getFingers());
+
+		Message message = msgBuilder.newMessage(new UpdateRequest(encodeUpdate(update)), new DestinationList(neighborNode));
+
+		ListenableFuture<NodeID> updateFut = Futures.transform(router.sendRequestMessage(message), new Function<Message, NodeID>() {
+
+			@Override
+			public NodeID apply(Message input) {
+				return neighborNode;
+			}
+		});
+
+		Futures.addCallback(updateFut, new FutureCallback<NodeID>() {
+
+			@Override
+			public void onSuccess(NodeID result) {
+			}
+
+			@Override
+			public void onFailure(Throwable t) {
+				l.debug(String.format("Update to %s failed", neighborNode), t);
+			}
+		});
+
+		return updateFut;
+	}
+
+	@MessageHandler(ContentType.UPDATE_REQ)
+	public void handleUpdateRequest(Message req) {
+		Header head = req.getHeader();
+		NodeID sender = head.getSenderId();
+
+		Optional<ChordUpdate> update = decodeUpdate(((UpdateRequest) req.getContent()).getOverlayData());
+
+		if (!update.isPresent()) {
+			router.sendError(head, ErrorType.INVALID_MESSAGE, "Invalid chord update");
+			return;
+		}
+
+		router.sendAnswer(head, new UpdateAnswer(new byte[0]));
+
+		if (connMgr.isNeighbor(sender)) {
+			addPeers(Collections.singleton(sender));
+		}
+
+		attachToNeighbors(update.get());
+	}
+
+	@Override
+	public ListenableFuture<Void> requestLeave() {
+		TopologyEvent leaving = new TopologyEvent(TopologyEvent.Type.LOCAL_LEAVING, overlay.getLocalNodeId());
+		eventBus.post(leaving);
+
+		// The local peer stays in the overlay while the services complete the
+		// tasks registered on the event (e.g. the data handoff), the neighbors
+		// are told it is leaving only afterwards, even if some task failed
+		ListenableFuture<List<Object>> tasks = Futures.successfulAsList(leaving.getLeaveTasks());
+
+		return Futures.transform(tasks, new AsyncFunction<List<Object>, Void>() {
+
+			@Override
+			public ListenableFuture<Void> apply(List<Object> input) {
+				return sendLeaveRequests();
+			}
+		});
+	}
+
+	private ListenableFuture<Void> sendLeaveRequests() {
+		ChordUpdate update = new ChordUpdate(getUptime(), ChordUpdate.Type.NEIGHBORS, table.getPredecessors(), table.getSuccessors(), Collections.<NodeID> emptyList());
+		byte[] leaveData = encodeUpdate(update);
+
+		List<ListenableFuture<NodeID>> leaveFuts = new ArrayList<ListenableFuture<NodeID>>();
+		for (NodeID n : table.getNeighborsSet()) {
+			DestinationList dest = new DestinationList();
+			dest.add(n);
+			dest.add(msgBuilder.getWildcard());
+
+			Message leaveMessage = msgBuilder.newMessage(new LeaveRequest(overlay.getLocalNodeId(), leaveData), dest);
+			leaveFuts.add(router.sendMessage(leaveMessage));
+		}
+
+		isJoined = false;
+
+		return Futures.transform(Futures.successfulAsList(leaveFuts), new Function<List<NodeID>, Void>() {
+
+			@Override
+			public Void apply(List<NodeID> input) {
+				return null;
+			}
+		});
+	}
+
+	@MessageHandler(ContentType.LEAVE_REQ)
+	public void handleLeaveRequest(Message req) {
+		Header head = req.getHeader();
+		LeaveRequest leave = (LeaveRequest) req.getContent();
+		NodeID leavingNode = leave.getLeavingNode();
+
+		// Check sender id matches with the leaving node
+		if (!head.getSenderId().equals(leavingNode)) {
+			router.sendError(head, ErrorType.FORBITTEN, "Leaving node doesn't match with sender ID");
+			return;
+		}
+
+		NodeID prevHop = head.getAttribute(Header.PREV_HOP);
+
+		// Check neighbor id matches with the leaving node
+		if (!prevHop.equals(leavingNode)) {
+			router.sendError(head, ErrorType.FORBITTEN, "Leaving node is not a neighbor node");
+			return;
+		}
+
+		l.debug(String.format("Node %s has left the overlay", leavingNode));
+
+		removePeer(leavingNode);
+
+		// The neighbors of the leaving node replace it in the neighbor table
+		Optional<ChordUpdate> update = decodeUpdate(leave.getOverlayData());
+		if (update.isPresent()) {
+			attachToNeighbors(update.get());
+		}
+	}
+
+	@Subscribe
+	public void handleConnectionEvent(ConnectionStatusEvent e) {
+		if (e.type == ConnectionStatusEvent.Type.CLOSED) {
+			pingFailures.setCount(e.connection.getNodeId(), 0);
+			removePeer(e.connection.getNodeId());
+		}
+	}
+
+	/**
+	 * Add the given connected peers to the routing table, the new neighbors are
+	 * notified to the other components and the neighbors get the new table
+	 * 
+	 * @return true if the neighbor table changed
+	 */
+	boolean addPeers(Collection<NodeID> peers) {
+		Set<NodeID> oldNeighbors = table.getNeighborsSet();
+
+		for (NodeID p : peers) {
+			if (!p.equals(overlay.getLocalNodeId()) && connMgr.isNeighbor(p)) {
+				table.addPeer(p);
+			}
+		}
+
+		Set<NodeID> newNeighbors = Sets.difference(table.getNeighborsSet(), oldNeighbors).immutableCopy();
+
+		if (newNeighbors.isEmpty())
+			return false;
+
+		for (NodeID n : newNeighbors) {
+			eventBus.post(new TopologyEvent(TopologyEvent.Type.NEIGHBOR_JOINED, n));
+		}
+
+		sendNeighborsUpdates();
+		return true;
+	}
+
+	private void removePeer(NodeID peer) {
+		boolean wasNeighbor = table.getNeighborsSet().contains(peer);
+
+		if (!table.removePeer(peer) || !wasNeighbor)
+			return;
+
+		eventBus.post(new TopologyEvent(TopologyEvent.Type.NEIGHBOR_LEFT, peer));
+
+		sendNeighborsUpdates();
+	}
+
+	private void sendNeighborsUpdates() {
+		// The neighbors don't have to know the local peer before it joins
+		if (!isJoined)
+			return;
+
+		lastNeighborsUpdate = System.currentTimeMillis();
+
+		for (NodeID n : table.getNeighborsSet()) {
+			requestUpdate(n);
+		}
+	}
+
+	/**
+	 * Periodic update of the neighbors, skipped if the neighbors already got
+	 * an update for a change of the table in the current interval
+	 */
+	private void stabilize() {
+		long interval = scheduler.getInterval(MIN_UPDATE_INTERVAL, MAX_UPDATE_INTERVAL);
+		if (System.currentTimeMillis() - lastNeighborsUpdate < interval)
+			return;
+
+		sendNeighborsUpdates();
+	}
+
+	/**
+	 * Ping the neighbors not heard for longer than the liveness interval, the
+	 * traffic received from a neighbor proves it is alive without pinging it.
+	 * The connection to a neighbor is closed only after it missed
+	 * {@link #MAX_PING_FAILURES} consecutive pings, so that a single lost
+	 * ping doesn't drop a live neighbor.
+	 */
+	private void checkNeighbors() {
+		if (!isJoined)
+			return;
+
+		long now = System.currentTimeMillis();
+		long interval = scheduler.getInterval(MIN_LIVENESS_INTERVAL, MAX_LIVENESS_INTERVAL);
+
+		PingService pingService = overlay.getService(PingService.class);
+
+		for (final NodeID n : table.getNeighborsSet()) {
+			if (now - traffic.getLastReceived(n) < interval) {
+				pingFailures.setCount(n, 0);
+				continue;
+			}
+
+			Futures.addCallback(pingService.ping(new DestinationList(n)), new FutureCallback<PingAnswer>() {
+
+				@Override
+				public void onSuccess(PingAnswer result) {
+					pingFailures.setCount(n, 0);
+				}
+
+				@Override
+				public void onFailure(Throwable t) {
+					int failures = pingFailures.add(n, 1) + 1;
+					if (failures < MAX_PING_FAILURES) {
+						l.debug(String.format("Neighbor %s not answering to ping (%d of %d)", n, failures, MAX_PING_FAILURES), t);
+						return;
+					}
+
+					l.debug(String.format("Neighbor %s not answering to ping", n), t);
+					pingFailures.setCount(n, 0);
+					Optional<Connection> c = connMgr.getConnection(n);
+					if (c.isPresent()) {
+						c.get().close();
+					}
+				}
+			});
+		}
+	}
+
+	/**
+	 * Attach to the nodes in the neighbor table of another peer that would be
+	 * neighbors of the local peer
+	 */
+	private void attachToNeighbors(ChordUpdate update) {
+		Set<NodeID> candidates = new LinkedHashSet<NodeID>();
+		candidates.addAll(update.getPredecessors());
+		candidates.addAll(update.getSuccessors());
+
+		for (final NodeID c : candidates) {
+			if (c.equals(overlay.getLocalNodeId()) || connMgr.isNeighbor(c) || !table.isNeighborCandidate(c)) {
+				continue;
+			}
+
+			if (!pendingAttaches.add(c)) {
+				continue;
+			}
+
+			AttachService attachService = overlay.getService(AttachService.class);
+			Futures.addCallback(attachService.attachTo(new DestinationList(c), true), new FutureCallback<Connection>() {
+
+				@Override
+				public void onSuccess(final Connection result) {
+					pendingAttaches.remove(c);
+					packetsLooper.execute(new Runnable() {
+
+						@Override
+						public void run() {
+							addPeers(Collections.singleton(result.getNodeId()));
+						}
+					});
+				}
+
+				@Override
+				public void onFailure(Throwable t) {
+					pendingAttaches.remove(c);
+					l.debug(String.format("Attach to neighbor %s failed", c), t);
+				}
+			});
+		}
+	}
+
+	/**
+	 * Attach to the peer responsible for the first finger not known yet, the
+	 * fingers are attached one at a time to avoid multiple attaches to the
+	 * same peer
+	 */
+	private void fixFingers() {
+		if (!isJoined || pendingFinger >= 0)
+			return;
+
+		final int index = table.getMissingFinger();
+		if (index < 0)
+			return;
+
+		attachToFinger(index, new DestinationList(table.getFingerTarget(index)));
+	}
+
+	/**
+	 * Look up the responsible of the next known finger by pinging the finger
+	 * target through the routing table, the answer comes from the responsible
+	 * peer and the finger is replaced if a peer joined between the finger
+	 * target and the current finger
+	 */
+	private void refreshFinger() {
+		if (!isJoined || pendingFinger >= 0)
+			return;
+
+		final int index = table.getNextDistinctFinger(refreshIndex);
+		if (index < 0)
+			return;
+
+		refreshIndex = (index + 1) % ID_BITS;
+
+		Message ping = msgBuilder.newMessage(new PingRequest(), new DestinationList(table.getFingerTarget(index)));
+
+		Futures.addCallback(router.sendRequestMessage(ping), new FutureCallback<Message>() {
+
+			@Override
+			public void onSuccess(Message answer) {
+				final NodeID responsible = answer.getHeader().getSenderId();
+
+				packetsLooper.execute(new Runnable() {
+
+					@Override
+					public void run() {
+						if (responsible.equals(overlay.getLocalNodeId()) || pendingFinger >= 0)
+							return;
+
+						if (connMgr.isNeighbor(responsible)) {
+							addPeers(Collections.singleton(responsible));
+							table.setFinger(index, responsible);
+						} else {
+							attachToFinger(index, new DestinationList(responsible));
+						}
+					}
+				});
+			}
+
+			@Override
+			public void onFailure(Throwable t) {
+				l.debug(String.format("Lookup of finger %d failed", index), t);
+			}
+		});
+	}
+
+	private void attachToFinger(final int index, DestinationList destination) {
+		pendingFinger = index;
+
+		AttachService attachService = overlay.getService(AttachService.class);
+		Futures.addCallback(attachService.attachTo(destination, false), new FutureCallback<Connection>() {
+
+			@Override
+			public void onSuccess(final Connection result) {
+				packetsLooper.execute(new Runnable() {
+
+					@Override
+					public void run() {
+						pendingFinger = -1;
+						addPeers(Collections.singleton(result.getNodeId()));
+						table.setFinger(index, result.getNodeId());
+						fixFingers();
+					}
+				});
+			}
+
+			@Override
+			public void onFailure(Throwable t) {
+				pendingFinger = -1;
+				l.debug(String.format("Attach to finger %d failed", index), t);
+			}
+		});
+	}
+
+	private long getUptime() {
+		return (System.currentTimeMillis() - startTime) / 1000;
+	}
+
+	private byte[] encodeUpdate(ChordUpdate update) {
+		ByteBuf buf = Unpooled.buffer();
+		try {
+			updateCodec.encode(update, buf);
+			byte[] data = new byte[buf.readableBytes()];
+			buf.readBytes(data);
+			return data;
+		} catch (CodecException e) {
+			throw new IllegalStateException(e);
+		} finally {
+			buf.release();
+		}
+	}
+
+	private Optional<ChordUpdate> decodeUpdate(byte[] data) {
+		if (data.length == 0)
+			return Optional.absent();
+
+		ByteBuf buf = Unpooled.wrappedBuffer(data);
+		try {
+			return Optional.of(updateCodec.decode(buf));
+		} catch (CodecException | RuntimeException e) {
+			l.debug("Invalid chord update", e);
+			return Optional.absent();
+		} finally {
+			buf.release();
+		}
+	}
+
+	@Override
+	public int getResourceIdLength() {
+		return ID_LENGTH;
+	}
+
+	/**
+	 * The resource id is the SHA-1 hash of the resource identifier truncated
+	 * to the id length
+	 */
+	@Override
+	public ResourceID getResourceId(byte[] resourceIdentifier) {
+		byte[] hash = Hashing.sha1().hashBytes(resourceIdentifier).asBytes();
+		return ResourceID.valueOf(Arrays.copyOf(hash, ID_LENGTH));
+	}
+
+	/**
+	 * The closer id is the one that follows the destination on the ring, that
+	 * is the id of the peer responsible for the destination
+	 */
+	@Override
+	public <T extends RoutableID> T getCloserId(RoutableID destination, Collection<T> ids) {
+		if (destination == null)
+			throw new NullPointerException();
+
+		T closer = null;
+		for (T id : ids) {
+			if (closer == null || RoutableID.compareClockwiseDistance(destination, id, closer) < 0) {
+				closer = id;
+			}
+		}
+		return closer;
+	}
+
+	/**
+	 * @return the number of bits of the clockwise distance between the ids,
+	 *         that is the number of fingers between them
+	 */
+	@Override
+	public int getDistance(RoutableID source, RoutableID dest) {
+		return RoutableID.getClockwiseDistanceBits(source, dest);
+	}
+
+	@Override
+	public boolean isLocalPeerResponsible(RoutableID dest) {
+		if (!isJoined)
+			return false;
+
+		List<NodeID> predecessors = table.getPredecessors();
+
+		// The local peer is alone in the overlay
+		if (predecessors.isEmpty())
+			return true;
+
+		return RoutableID.isBetween(dest, predecessors.get(0), overlay.getLocalNodeId());
+	}
+
+	/**
+	 * The replicas of a resource are stored by the successors of the
+	 * responsible peer, so the local peer is a valid replica storage for the
+	 * resources of its first predecessors
+	 */
+	@Override
+	public boolean isLocalPeerValidStorage(ResourceID resourceId, boolean isReplica) {
+		if (!isReplica)
+			return isLocalPeerResponsible(resourceId);
+
+		if (!isJoined)
+			return false;
+
+		List<NodeID> predecessors = table.getPredecessors();
+
+		if (predecessors.size() <= REPLICAS)
+			return true;
+
+		return RoutableID.isBetween(resourceId, predecessors.get(REPLICAS), predecessors.get(0));
+	}
+
+	@Override
+	public List<NodeID> getReplicaNodes(ResourceID resourceId) {
+		List<NodeID> successors = table.getSuccessors();
+		return new ArrayList<NodeID>(successors.subList(0, Math.min(REPLICAS, successors.size())));
+	}
+
+	@Override
+	public RoutingTable getRoutingTable() {
+		return table;
+	}
+
+	/**
+	 * @return the id at distance 2^index after the given node
+	 */
+	static ResourceID getFingerTarget(NodeID node, int index) {
+		long low = node.getLow();
+		long high = node.getHigh();
+
+		if (index < 64) {
+			long sum = low + (1L << index);
+			// Carry to the high bits on unsigned overflow
+			if (UnsignedLongs.compare(sum, low) < 0) {
+				high++;
+			}
+			low = sum;
+		} else {
+			high += 1L << (index - 64);
+		}
+
+		return ResourceID.valueOf(ByteBuffer.allocate(ID_LENGTH).putLong(high).putLong(low).array());
+	}
+
+	/**
+	 * Routing table with the connected peers of the overlay, the neighbors are
+	 * the peers closest to the local peer on the ring and the fingers are the
+	 * peers responsible for the finger targets. Updates are serialized and
+	 * publish an immutable snapshot of the table, lookups read the last
+	 * snapshot without locking.
+	 * 
+	 */
+	private class ChordRoutingTable implements RoutingTable {
+
+		private final NavigableSet<NodeID> peers = new TreeSet<NodeID>();
+		private final NodeID[] fingers = new NodeID[ID_BITS];
+		private ResourceID[] fingerTargets;
+
+		private volatile TableSnapshot snapshot = TableSnapshot.EMPTY;
+
+		synchronized ResourceID getFingerTarget(int index) {
+			if (fingerTargets == null) {
+				fingerTargets = new ResourceID[ID_BITS];
+				for (int i = 0; i < ID_BITS; i++) {
+					fingerTargets[i] = ChordPlugin.getFingerTarget(overlay.getLocalNodeId(), i);
+				}
+			}
+			return fingerTargets[index];
+		}
+
+		synchronized boolean addPeer(NodeID peer) {
+			if (!peers.add(peer))
+				return false;
+
+			// The new peer replaces the fingers it precedes
+			for (int i = 0; i < ID_BITS; i++) {
+				if (fingers[i] == null) {
+					continue;
+				}
+				if (RoutableID.compareClockwiseDistance(getFingerTarget(i), peer, fingers[i]) < 0) {
+					fingers[i] = peer;
+				}
+			}
+
+			publish();
+			return true;
+		}
+
+		synchronized boolean removePeer(NodeID peer) {
+			if (!peers.remove(peer))
+				return false;
+
+			for (int i = 0; i < ID_BITS; i++) {
+				if (peer.equals(fingers[i])) {
+					fingers[i] = null;
+				}
+			}
+
+			publish();
+			return true;
+		}
+
+		synchronized void setFinger(int index, NodeID node) {
+			fingers[index] = node;
+			publish();
+		}
+
+		/**
+		 * Build the snapshot of the current table and make it visible to the
+		 * lookups, must be called with the table lock held
+		 */
+		private void publish() {
+			NodeID local = overlay.getLocalNodeId();
+
+			ImmutableList.Builder<NodeID> successors = ImmutableList.builder();
+			int count = 0;
+			for (NodeID n : Iterables.concat(peers.tailSet(local, false), peers.headSet(local, false))) {
+				if (count++ == NEIGHBORS_SIZE) {
+					break;
+				}
+				successors.add(n);
+			}
+
+			ImmutableList.Builder<NodeID> predecessors = ImmutableList.builder();
+			count = 0;
+			for (NodeID n : Iterables.concat(peers.headSet(local, false).descendingSet(), peers.tailSet(local, false).descendingSet())) {
+				if (count++ == NEIGHBORS_SIZE) {
+					break;
+				}
+				predecessors.add(n);
+			}
+
+			Set<NodeID> distinctFingers = new LinkedHashSet<NodeID>();
+			for (NodeID f : fingers) {
+				if (f != null && !f.equals(local)) {
+					distinctFingers.add(f);
+				}
+			}
+
+			snapshot = new TableSnapshot(ImmutableSet.copyOf(peers), successors.build(), predecessors.build(), ImmutableList.copyOf(distinctFingers));
+		}
+
+		ImmutableList<NodeID> getSuccessors() {
+			return snapshot.successors;
+		}
+
+		ImmutableList<NodeID> getPredecessors() {
+			return snapshot.predecessors;
+		}
+
+		Set<NodeID> getNeighborsSet() {
+			TableSnapshot s = snapshot;
+			Set<NodeID> neighbors = new LinkedHashSet<NodeID>(s.successors);
+			neighbors.addAll(s.predecessors);
+			return neighbors;
+		}
+
+		ImmutableList<NodeID> getFingers() {
+			return snapshot.fingers;
+		}
+
+		/**
+		 * @return true if the node would enter the neighbor table
+		 */
+		boolean isNeighborCandidate(NodeID node) {
+			NodeID local = overlay.getLocalNodeId();
+			TableSnapshot s = snapshot;
+
+			if (s.successors.size() < NEIGHBORS_SIZE || s.predecessors.size() < NEIGHBORS_SIZE)
+				return true;
+
+			return RoutableID.isBetween(node, local, s.successors.get(NEIGHBORS_SIZE - 1)) || RoutableID.isBetween(node, s.predecessors.get(NEIGHBORS_SIZE - 1), local);
+		}
+
+		/**
+		 * @return the first index starting from the given one, wrapping
+		 *         around, of a finger different from the previous finger and
+		 *         from the local peer, -1 if none
+		 */
+		synchronized int getNextDistinctFinger(int from) {
+			NodeID local = overlay.getLocalNodeId();
+			for (int j = 0; j < ID_BITS; j++) {
+				int i = (from + j) % ID_BITS;
+				if (fingers[i] == null || fingers[i].equals(local)) {
+					continue;
+				}
+				if (i > 0 && fingers[i].equals(fingers[i - 1])) {
+					continue;
+				}
+				return i;
+			}
+			return -1;
+		}
+
+		/**
+		 * Fill the fingers whose responsible peer is already known and return
+		 * the first finger still missing. The neighbors are contiguous on the
+		 * ring, so the responsible of a target between them is known.
+		 * Consecutive targets with no peer in between share the same finger.
+		 * 
+		 * @return the index of the first missing finger, -1 if none
+		 */
+		synchronized int getMissingFinger() {
+			NodeID local = overlay.getLocalNodeId();
+
+			List<NodeID> neighborhood = new ArrayList<NodeID>();
+			neighborhood.addAll(getPredecessors().reverse());
+			neighborhood.add(local);
+			neighborhood.addAll(getSuccessors());
+
+			NodeID prev = null;
+			int missing = -1;
+
+			for (int i = 0; i < ID_BITS; i++) {
+				ResourceID target = getFingerTarget(i);
+
+				if (fingers[i] == null) {
+					fingers[i] = getNeighborhoodSuccessor(neighborhood, target);
+				}
+
+				if (fingers[i] == null && prev != null && RoutableID.compareClockwiseDistance(local, target, prev) <= 0) {
+					fingers[i] = prev;
+				}
+
+				if (fingers[i] != null) {
+					prev = fingers[i];
+				} else if (missing < 0) {
+					missing = i;
+				}
+			}
+
+			publish();
+			return missing;
+		}
+
+		private NodeID getNeighborhoodSuccessor(List<NodeID> neighborhood, RoutableID target) {
+			if (neighborhood.size() < 2)
+				return null;
+
+			for (int i = 1; i < neighborhood.size(); i++) {
+				if (RoutableID.isBetween(target, neighborhood.get(i - 1), neighborhood.get(i)))
+					return neighborhood.get(i);
+			}
+
+			return null;
+		}
+
+		@Override
+		public Set<NodeID> getNextHops(RoutableID destination) {
+			NodeID local = overlay.getLocalNodeId();
+
+			if (isLocalPeerResponsible(destination) && connMgr.isNeighbor(local))
+				return Collections.singleton(local);
+
+			TableSnapshot s = snapshot;
+
+			if (s.peers.isEmpty())
+				return Collections.emptySet();
+
+			if (destination instanceof NodeID && s.peers.contains(destination))
+				return Collections.singleton((NodeID) destination);
+
+			NodeID nextHop = getClosestPreceding(s.peers, destination);
+
+			// The destination is between the local peer and its successor
+			if (nextHop == null) {
+				nextHop = s.successors.get(0);
+			}
+
+			return Collections.singleton(nextHop);
+		}
+
+		/**
+		 * The remaining distance to the destination from the peers in the
+		 * clockwise interval (local, destination) is compared by its number
+		 * of bits, that is the number of finger hops still needed. Among the
+		 * peers making the most progress the one with the lowest link cost is
+		 * returned.
+		 * 
+		 * @return the next hop in the clockwise interval (local, destination),
+		 *         null if none
+		 */
+		private NodeID getClosestPreceding(Set<NodeID> peers, RoutableID destination) {
+			NodeID local = overlay.getLocalNodeId();
+			NodeID best = null;
+			int bestBits = Integer.MAX_VALUE;
+			double bestCost = Double.MAX_VALUE;
+
+			for (NodeID p : peers) {
+				if (RoutableID.compareClockwiseDistance(local, p, destination) >= 0) {
+					continue;
+				}
+
+				int bits = RoutableID.getClockwiseDistanceBits(p, destination);
+				if (bits > bestBits) {
+					continue;
+				}
+
+				double cost = linkQuality.getCost(p);
+				if (bits < bestBits || cost < bestCost) {
+					best = p;
+					bestBits = bits;
+					bestCost = cost;
+				}
+			}
+
+			return best;
+		}
+
+		@Override
+		public Set<NodeID> getNeighbors() {
+			return snapshot.peers;
+		}
+	}
+
+	/**
+	 * Immutable view of the chord routing table
+	 */
+	private static class TableSnapshot {
+
+		static final TableSnapshot EMPTY = new TableSnapshot(ImmutableSet.<NodeID> of(), ImmutableList.<NodeID> of(), ImmutableList.<NodeID> of(), ImmutableList.<NodeID> of());
+
+		final ImmutableSet<NodeID> peers;
+		final ImmutableList<NodeID> successors;
+		final ImmutableList<NodeID> predecessors;
+		final ImmutableList<NodeID> fingers;
+
+		TableSnapshot(ImmutableSet<NodeID> peers, ImmutableList<NodeID> successors, ImmutableList<NodeID> predecessors, ImmutableList<NodeID> fingers) {
+			this.peers = peers;
+			this.successors = successors;
+			this.predecessors = predecessors;
+			this.fingers = fingers;
+		}
+	}
+
+	/**
+	 * Provider module to be returned by the bootstrap to use the chord
+	 * topology plugin
+	 * 
+	 */
+	@Module(injects = {ChordPlugin.class}, library = true, complete = false)
+	public static class ChordModule {
+
+		@Provides
+		@Singleton
+		TopologyPlugin provideTopologyPlugin(ChordPlugin plugin) {
+			return plugin;
+		}
+	}
+}
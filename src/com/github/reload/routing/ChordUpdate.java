@@ -0,0 +1,162 @@
+package com.github.reload.routing;
+
+import io.netty.buffer.ByteBuf;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import com.github.reload.net.codecs.Codec;
+import com.github.reload.net.codecs.Codec.ReloadCodec;
+import com.github.reload.net.codecs.header.NodeID;
+import com.github.reload.routing.ChordUpdate.ChordUpdateCodec;
+import dagger.ObjectGraph;
+
+/**
+ * Overlay specific data carried by the CHORD-RELOAD update and leave messages,
+ * it contains the neighbor table and optionally the finger table of the sender
+ * 
+ */
+@ReloadCodec(ChordUpdateCodec.class)
+class ChordUpdate {
+
+	public enum Type {
+		PEER_READY((byte) 1), NEIGHBORS((byte) 2), FULL((byte) 3);
+
+		public final byte code;
+
+		Type(byte code) {
+			this.code = code;
+		}
+
+		public static Type valueOf(byte code) {
+			for (Type t : EnumSet.allOf(Type.class))
+				if (t.code == code)
+					return t;
+			return null;
+		}
+	}
+
+	private final long uptime;
+	private final Type type;
+	private final List<NodeID> predecessors;
+	private final List<NodeID> successors;
+	private final List<NodeID> fingers;
+
+	public ChordUpdate(long uptime, Type type, List<NodeID> predecessors, List<NodeID> successors, List<NodeID> fingers) {
+		this.uptime = uptime;
+		this.type = type;
+		this.predecessors = predecessors;
+		this.successors = successors;
+		this.fingers = fingers;
+	}
+
+	/**
+	 * @return the time in seconds the sender has been in the overlay
+	 */
+	public long getUptime() {
+		return uptime;
+	}
+
+	public Type getType() {
+		return type;
+	}
+
+	public List<NodeID> getPredecessors() {
+		return predecessors;
+	}
+
+	public List<NodeID> getSuccessors() {
+		return successors;
+	}
+
+	public List<NodeID> getFingers() {
+		return fingers;
+	}
+
+	@Override
+	public String toString() {
+		return "ChordUpdate [type=" + type + ", predecessors=" + predecessors + ", successors=" + successors + ", fingers=" + fingers + "]";
+	}
+
+	static class ChordUpdateCodec extends Codec<ChordUpdate> {
+
+		private static final int LIST_LENGTH_FIELD = U_INT16;
+
+		private final Codec<NodeID> nodeCodec;
+
+		public ChordUpdateCodec(ObjectGraph ctx) {
+			super(ctx);
+			nodeCodec = getCodec(NodeID.class);
+		}
+
+		@Override
+		public void encode(ChordUpdate obj, ByteBuf buf, Object... params) throws CodecException {
+			buf.writeInt((int) obj.uptime);
+			buf.writeByte(obj.type.code);
+
+			switch (obj.type) {
+				case PEER_READY :
+					break;
+				case NEIGHBORS :
+					encodeList(obj.predecessors, buf);
+					encodeList(obj.successors, buf);
+					break;
+				case FULL :
+					encodeList(obj.predecessors, buf);
+					encodeList(obj.successors, buf);
+					encodeList(obj.fingers, buf);
+					break;
+			}
+		}
+
+		private void encodeList(List<NodeID> nodes, ByteBuf buf) throws CodecException {
+			Field lenFld = allocateField(buf, LIST_LENGTH_FIELD);
+			for (NodeID n : nodes) {
+				nodeCodec.encode(n, buf);
+			}
+			lenFld.updateDataLength();
+		}
+
+		@Override
+		public ChordUpdate decode(ByteBuf buf, Object... params) throws CodecException {
+			long uptime = buf.readUnsignedInt();
+			Type type = Type.valueOf(buf.readByte());
+
+			if (type == null)
+				throw new CodecException("Unknown chord update type");
+
+			List<NodeID> predecessors = Collections.emptyList();
+			List<NodeID> successors = Collections.emptyList();
+			List<NodeID> fingers = Collections.emptyList();
+
+			switch (type) {
+				case PEER_READY :
+					break;
+				case NEIGHBORS :
+					predecessors = decodeList(buf);
+					successors = decodeList(buf);
+					break;
+				case FULL :
+					predecessors = decodeList(buf);
+					successors = decodeList(buf);
+					fingers = decodeList(buf);
+					break;
+			}
+
+			return new ChordUpdate(uptime, type, predecessors, successors, fingers);
+		}
+
+		private List<NodeID> decodeList(ByteBuf buf) throws CodecException {
+			ByteBuf listData = readField(buf, LIST_LENGTH_FIELD);
+			try {
+				List<NodeID> nodes = new ArrayList<NodeID>();
+				while (listData.readableBytes() > 0) {
+					nodes.add(nodeCodec.decode(listData));
+				}
+				return nodes;
+			} finally {
+				listData.release();
+			}
+		}
+	}
+}
@@ -1,25 +1,80 @@
 package com.github.reload.routing;
 
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
 import javax.inject.Inject;
 import javax.inject.Singleton;
 import com.github.reload.net.codecs.header.DestinationList;
 import com.github.reload.net.codecs.header.OpaqueID;
+import com.github.reload.net.codecs.header.RoutableID;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 
+/**
+ * Path compressor that keeps the compressed lists in a bounded table whose
+ * entries expire after the time an answer may take to come back. The
+ * opaque-id of a list is the truncated HMAC of the list with a key known only
+ * by the local peer, so the same list always gets the same id and the ids
+ * can't be forged by other peers.
+ * 
+ */
 @Singleton
 public class DefaultPathCompressor implements PathCompressor {
 
+	private static final String MAC_ALGORITHM = "HmacSHA256";
+
+	// Length in bytes of the generated opaque-ids
+	static final int OPAQUE_ID_LENGTH = 8;
+
+	// Maximum number of compressed lists
+	static final int MAX_ENTRIES = 8192;
+
+	// Time in seconds a compressed list is kept
+	static final int ENTRY_EXPIRATION = 60;
+
+	private final Mac mac;
+
+	private final Cache<OpaqueID, DestinationList> compressedLists = CacheBuilder.newBuilder().maximumSize(MAX_ENTRIES).expireAfterWrite(ENTRY_EXPIRATION, TimeUnit.SECONDS).build();
+
 	@Inject
 	public DefaultPathCompressor() {
+		byte[] key = new byte[32];
+		new SecureRandom().nextBytes(key);
+		try {
+			mac = Mac.getInstance(MAC_ALGORITHM);
+			mac.init(new SecretKeySpec(key, MAC_ALGORITHM));
+		} catch (GeneralSecurityException e) {
+			throw new IllegalStateException(e);
+		}
 	}
 
 	@Override
 	public OpaqueID compress(DestinationList list) {
-		throw new UnsupportedOperationException();
+		DestinationList copy = new DestinationList(list);
+		OpaqueID id = OpaqueID.valueOf(computeId(copy));
+		compressedLists.put(id, copy);
+		return id;
+	}
+
+	private synchronized byte[] computeId(DestinationList list) {
+		for (RoutableID id : list) {
+			mac.update(id.getType().code);
+			mac.update((byte) id.getData().length);
+			mac.update(id.getData());
+		}
+		return Arrays.copyOf(mac.doFinal(), OPAQUE_ID_LENGTH);
 	}
 
 	@Override
 	public DestinationList decompress(OpaqueID id) throws UnknownOpaqueIdException {
-		throw new UnknownOpaqueIdException(id);
+		DestinationList list = compressedLists.getIfPresent(id);
+		if (list == null)
+			throw new UnknownOpaqueIdException(id);
+		return new DestinationList(list);
 	}
 
 }
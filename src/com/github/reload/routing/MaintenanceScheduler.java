@@ -0,0 +1,192 @@
+package com.github.reload.routing;
+
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+import org.apache.log4j.Logger;
+import com.github.reload.Overlay.GlobalEvent;
+import com.github.reload.Overlay.GlobalEvent.TYPE;
+import com.github.reload.net.TrafficMonitor;
+import com.github.reload.net.codecs.content.ContentType;
+import com.github.reload.routing.TopologyPlugin.TopologyEvent;
+import com.google.common.eventbus.EventBus;
+import com.google.common.eventbus.Subscribe;
+
+/**
+ * Runs the periodic overlay maintenance tasks on the packets looper. The
+ * interval of each task adapts to the churn rate observed in the neighbor
+ * table: it is the maximum interval when the overlay is stable and gets
+ * shorter as more neighbors join and leave, down to the minimum interval.
+ * 
+ */
+@Singleton
+public class MaintenanceScheduler {
+
+	private static final Logger l = Logger.getRootLogger();
+
+	// Time in milliseconds over which the churn events are averaged
+	static final long CHURN_TIME_CONSTANT = 60000;
+
+	// Content types of the messages accounted as maintenance traffic
+	public static final Set<ContentType> MAINTENANCE_TYPES = EnumSet.of(ContentType.UPDATE_REQ, ContentType.UPDATE_ANS, ContentType.PING_REQ, ContentType.PING_ANS, ContentType.ATTACH_REQ, ContentType.ATTACH_ANS, ContentType.ROUTE_QUERY_REQ, ContentType.ROUTE_QUERY_ANS);
+
+	@Inject
+	@Named("packetsLooper")
+	Executor packetsLooper;
+
+	@Inject
+	TrafficMonitor traffic;
+
+	@Inject
+	@Named("scheduler")
+	ScheduledExecutorService timer;
+
+	private final List<MaintenanceTask> tasks = new CopyOnWriteArrayList<MaintenanceTask>();
+
+	// Churn events in the last time constant, exponentially decayed
+	private double churn = 0;
+	private long lastChurnUpdate = System.currentTimeMillis();
+
+	@Inject
+	public MaintenanceScheduler(EventBus eventBus) {
+		eventBus.register(this);
+	}
+
+	/**
+	 * Run the given task periodically with an interval between the given
+	 * bounds depending on the churn rate
+	 * 
+	 * @param minInterval
+	 *            the interval in milliseconds under heavy churn
+	 * @param maxInterval
+	 *            the interval in milliseconds in a stable overlay
+	 */
+	public void schedule(String name, long minInterval, long maxInterval, Runnable task) {
+		MaintenanceTask t = new MaintenanceTask(name, minInterval, maxInterval, task);
+		tasks.add(t);
+		t.reschedule();
+	}
+
+	/**
+	 * @return the churn events (neighbors joined or left) seen in about the
+	 *         last minute
+	 */
+	public synchronized double getChurnRate() {
+		decayChurn(System.currentTimeMillis());
+		return churn;
+	}
+
+	private void decayChurn(long now) {
+		churn *= Math.exp(-(double) (now - lastChurnUpdate) / CHURN_TIME_CONSTANT);
+		lastChurnUpdate = now;
+	}
+
+	/**
+	 * @return the interval between the given bounds for the current churn rate
+	 */
+	public long getInterval(long minInterval, long maxInterval) {
+		return Math.max(minInterval, (long) (maxInterval / (1 + getChurnRate())));
+	}
+
+	/**
+	 * @return the fraction of the bytes of the messages originated by the local
+	 *         peer used by the maintenance messages, both accounted by the
+	 *         message encoder so that forwarded messages and link framing are
+	 *         excluded from the total
+	 */
+	public double getMaintenanceFraction() {
+		long total = traffic.getSentMessageBytes();
+		if (total == 0)
+			return 0;
+		return (double) traffic.getSentBytes(MAINTENANCE_TYPES) / total;
+	}
+
+	@Subscribe
+	public void handleTopologyEvent(TopologyEvent e) {
+		if (e.type == TopologyEvent.Type.LOCAL_LEAVING)
+			return;
+
+		synchronized (this) {
+			decayChurn(System.currentTimeMillis());
+			churn++;
+		}
+
+		// Bring forward the tasks waiting longer than the new interval
+		for (MaintenanceTask t : tasks) {
+			t.shortenDelay();
+		}
+	}
+
+	@Subscribe
+	public void shutdown(GlobalEvent ev) {
+		if (ev.type == TYPE.SHUTDOWN) {
+			l.debug(String.format("Maintenance traffic %.1f%% of sent message bytes", getMaintenanceFraction() * 100));
+		}
+	}
+
+	private class MaintenanceTask implements Runnable {
+
+		private final String name;
+		private final long minInterval;
+		private final long maxInterval;
+		private final Runnable task;
+
+		private ScheduledFuture<?> next;
+
+		public MaintenanceTask(String name, long minInterval, long maxInterval, Runnable task) {
+			this.name = name;
+			this.minInterval = minInterval;
+			this.maxInterval = maxInterval;
+			this.task = task;
+		}
+
+		synchronized void reschedule() {
+			if (timer.isShutdown())
+				return;
+
+			long interval = getInterval(minInterval, maxInterval);
+			try {
+				next = timer.schedule(this, interval, TimeUnit.MILLISECONDS);
+			} catch (RejectedExecutionException e) {
+				// The scheduler is shut down by its owner with the overlay
+				return;
+			}
+			l.trace(String.format("Maintenance task %s scheduled in %d ms", name, interval));
+		}
+
+		synchronized void shortenDelay() {
+			if (next == null || next.getDelay(TimeUnit.MILLISECONDS) <= getInterval(minInterval, maxInterval))
+				return;
+
+			if (next.cancel(false)) {
+				reschedule();
+			}
+		}
+
+		@Override
+		public void run() {
+			packetsLooper.execute(new Runnable() {
+
+				@Override
+				public void run() {
+					try {
+						task.run();
+					} catch (RuntimeException e) {
+						l.warn(String.format("Maintenance task %s failed", name), e);
+					} finally {
+						reschedule();
+					}
+				}
+			});
+		}
+	}
+}
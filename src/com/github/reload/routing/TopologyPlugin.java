@@ -1,7 +1,9 @@
 package com.github.reload.routing;
 
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 import com.github.reload.net.codecs.header.NodeID;
 import com.github.reload.net.codecs.header.ResourceID;
 import com.github.reload.net.codecs.header.RoutableID;
@@ -65,4 +67,56 @@ public interface TopologyPlugin {
 	public List<NodeID> getReplicaNodes(ResourceID resourceId);
 
 	public RoutingTable getRoutingTable();
-}
\ No newline at end of file
+
+	/**
+	 * Event posted by the topology plugin on the event bus when the
+	 * responsibility of some part of the id space may have moved
+	 * 
+	 */
+	public static class TopologyEvent {
+
+		public enum Type {
+			/**
+			 * A new neighbor has joined the overlay through the local peer
+			 */
+			NEIGHBOR_JOINED,
+			/**
+			 * A neighbor has left the overlay
+			 */
+			NEIGHBOR_LEFT,
+			/**
+			 * The local peer is about to leave the overlay, the subscribers
+			 * can delay the leave with {@link TopologyEvent#delayLeave}
+			 */
+			LOCAL_LEAVING
+		}
+
+		public final Type type;
+		public final NodeID node;
+
+		private final List<ListenableFuture<?>> leaveTasks = new CopyOnWriteArrayList<ListenableFuture<?>>();
+
+		public TopologyEvent(Type type, NodeID node) {
+			this.type = type;
+			this.node = node;
+		}
+
+		/**
+		 * Make the local peer wait for the given task before leaving the
+		 * overlay, to be called by the subscribers while handling a
+		 * {@link Type#LOCAL_LEAVING} event
+		 */
+		public void delayLeave(ListenableFuture<?> task) {
+			if (type != Type.LOCAL_LEAVING)
+				throw new IllegalStateException("Not a leaving event");
+			leaveTasks.add(task);
+		}
+
+		/**
+		 * @return the tasks the local peer waits for before leaving
+		 */
+		public List<ListenableFuture<?>> getLeaveTasks() {
+			return Collections.unmodifiableList(leaveTasks);
+		}
+	}
+}
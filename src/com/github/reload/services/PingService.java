@@ -1,23 +1,29 @@
 package com.github.reload.services;
 
-import java.math.BigInteger;
 import java.util.Random;
 import javax.inject.Inject;
+import javax.inject.Singleton;
 import com.github.reload.Service;
 import com.github.reload.net.MessageRouter;
 import com.github.reload.net.codecs.Message;
 import com.github.reload.net.codecs.MessageBuilder;
 import com.github.reload.net.codecs.content.ContentType;
 import com.github.reload.net.codecs.content.PingAnswer;
+import com.github.reload.net.codecs.content.PingRequest;
+import com.github.reload.net.codecs.header.DestinationList;
 import com.github.reload.routing.MessageHandlers;
 import com.github.reload.routing.MessageHandlers.MessageHandler;
 import com.github.reload.services.PingService.PingModule;
+import com.google.common.base.Function;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
 import dagger.Module;
 
 /**
- * Answers remote peers ping requests
+ * Sends ping requests and answers remote peers ping requests
  */
 @Service({PingModule.class})
+@Singleton
 public class PingService {
 
 	@Inject
@@ -33,9 +39,26 @@ public class PingService {
 		msgHandlers.register(this);
 	}
 
+	/**
+	 * Send a ping request to the given destination
+	 * 
+	 * @return the answer of the destination peer
+	 */
+	public ListenableFuture<PingAnswer> ping(DestinationList destination) {
+		Message request = msgBuilder.newMessage(new PingRequest(), destination);
+
+		return Futures.transform(router.sendRequestMessage(request), new Function<Message, PingAnswer>() {
+
+			@Override
+			public PingAnswer apply(Message answer) {
+				return (PingAnswer) answer.getContent();
+			}
+		});
+	}
+
 	@MessageHandler(ContentType.PING_REQ)
 	private void handlePingRequest(Message requestMessage) {
-		BigInteger respTime = BigInteger.valueOf(System.currentTimeMillis());
+		long respTime = System.currentTimeMillis();
 
 		router.sendAnswer(requestMessage.getHeader(), new PingAnswer(rand.nextLong(), respTime));
 
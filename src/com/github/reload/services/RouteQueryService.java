@@ -0,0 +1,348 @@
+package com.github.reload.services;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import org.apache.log4j.Logger;
+import com.github.reload.Overlay;
+import com.github.reload.Service;
+import com.github.reload.net.ConnectionManager;
+import com.github.reload.net.ConnectionManager.Connection;
+import com.github.reload.net.ConnectionManager.ConnectionStatusEvent;
+import com.github.reload.net.MessageRouter;
+import com.github.reload.net.NetworkException;
+import com.github.reload.net.codecs.Codec;
+import com.github.reload.net.codecs.Codec.CodecException;
+import com.github.reload.net.codecs.Message;
+import com.github.reload.net.codecs.MessageBuilder;
+import com.github.reload.net.codecs.content.ContentType;
+import com.github.reload.net.codecs.content.Error.ErrorType;
+import com.github.reload.net.codecs.content.RouteQueryAnswer;
+import com.github.reload.net.codecs.content.RouteQueryRequest;
+import com.github.reload.net.codecs.header.DestinationList;
+import com.github.reload.net.codecs.header.NodeID;
+import com.github.reload.net.codecs.header.RoutableID;
+import com.github.reload.routing.MessageHandlers;
+import com.github.reload.routing.MessageHandlers.MessageHandler;
+import com.github.reload.routing.TopologyPlugin;
+import com.github.reload.routing.TopologyPlugin.TopologyEvent;
+import com.github.reload.services.RouteQueryService.RouteQueryModule;
+import com.google.common.base.Optional;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableList;
+import com.google.common.eventbus.EventBus;
+import com.google.common.eventbus.Subscribe;
+import com.google.common.util.concurrent.AsyncFunction;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import dagger.Module;
+import dagger.ObjectGraph;
+
+/**
+ * Answers the route queries of remote peers with the next hop chosen by the
+ * local routing table, and performs iterative lookups by querying the peers
+ * along the path one at a time. Each discovered peer is queried over a direct
+ * connection: if the local peer is not connected to it yet, it attaches to it
+ * through the previously queried peer, so every step of the lookup takes a
+ * constant number of hops. The routes to the responsible peers are cached and
+ * can be used as destination lists to reach the responsible peer directly, a
+ * multi-hop route is used only if the attach to the responsible peer fails.
+ * 
+ * The answer carries the node-id of the next peer, as defined for the
+ * CHORD-RELOAD overlay algorithm. A peer answers with its own node-id if it is
+ * responsible for the queried id.
+ * 
+ */
+@Service({RouteQueryModule.class})
+@Singleton
+public class RouteQueryService {
+
+	private static final Logger l = Logger.getRootLogger();
+
+	// Maximum number of peers queried by a lookup
+	static final int MAX_LOOKUP_HOPS = 16;
+
+	// Maximum number of cached routes
+	static final int PATH_CACHE_SIZE = 1024;
+
+	// Time in seconds a discovered route is kept
+	static final int PATH_EXPIRATION = 60;
+
+	private static final byte[] NO_OVERLAY_DATA = new byte[0];
+
+	@Inject
+	Overlay overlay;
+
+	@Inject
+	MessageBuilder msgBuilder;
+
+	@Inject
+	MessageRouter msgRouter;
+
+	@Inject
+	TopologyPlugin plugin;
+
+	@Inject
+	ConnectionManager connMgr;
+
+	private final Codec<NodeID> nodeCodec;
+
+	private final Cache<RoutableID, ImmutableList<NodeID>> paths = CacheBuilder.newBuilder().maximumSize(PATH_CACHE_SIZE).expireAfterWrite(PATH_EXPIRATION, TimeUnit.SECONDS).build();
+
+	@Inject
+	public RouteQueryService(MessageHandlers msgHandlers, EventBus eventBus, ObjectGraph graph) {
+		nodeCodec = Codec.getCodec(NodeID.class, graph);
+		msgHandlers.register(this);
+		eventBus.register(this);
+	}
+
+	/**
+	 * Ask the peer at the end of the given path for its next hop towards the
+	 * given destination
+	 * 
+	 * @param path
+	 *            the list of peers to traverse to reach the queried peer
+	 * @param destination
+	 *            the queried id
+	 * @param sendUpdate
+	 *            if the queried peer has to send an update to the local peer
+	 */
+	public ListenableFuture<NodeID> queryNextHop(DestinationList path, RoutableID destination, boolean sendUpdate) {
+		final SettableFuture<NodeID> fut = SettableFuture.create();
+
+		Message req = msgBuilder.newMessage(new RouteQueryRequest(destination, NO_OVERLAY_DATA, sendUpdate), path);
+
+		Futures.addCallback(msgRouter.sendRequestMessage(req), new FutureCallback<Message>() {
+
+			@Override
+			public void onSuccess(Message result) {
+				RouteQueryAnswer answer = (RouteQueryAnswer) result.getContent();
+				try {
+					fut.set(decodeNextPeer(answer.getOverlayData()));
+				} catch (CodecException e) {
+					fut.setException(e);
+				}
+			}
+
+			@Override
+			public void onFailure(Throwable t) {
+				fut.setException(t);
+			}
+		});
+
+		return fut;
+	}
+
+	/**
+	 * Find the peer responsible for the given destination by querying the
+	 * peers along the path one at a time. The returned destination list
+	 * contains the route to the responsible peer followed by the destination,
+	 * the route is the responsible peer alone unless the local peer failed to
+	 * attach to it. Cached routes are returned without querying.
+	 */
+	public ListenableFuture<DestinationList> lookup(final RoutableID destination) {
+		Optional<DestinationList> cached = getCachedPath(destination);
+		if (cached.isPresent())
+			return Futures.immediateFuture(cached.get());
+
+		if (plugin.isLocalPeerResponsible(destination))
+			return Futures.immediateFuture(new DestinationList(destination));
+
+		Set<NodeID> nextHops = plugin.getRoutingTable().getNextHops(destination);
+		if (nextHops.isEmpty())
+			return Futures.immediateFailedFuture(new NetworkException("No route to " + destination));
+
+		// The next hops come from the routing table, they are neighbors
+		List<NodeID> queried = new ArrayList<NodeID>();
+		NodeID first = nextHops.iterator().next();
+		queried.add(first);
+
+		SettableFuture<DestinationList> fut = SettableFuture.create();
+		lookupStep(destination, queried, ImmutableList.of(first), fut);
+		return fut;
+	}
+
+	/**
+	 * Query the last of the queried peers, reached through the given route
+	 */
+	private void lookupStep(final RoutableID destination, final List<NodeID> queried, final ImmutableList<NodeID> route, final SettableFuture<DestinationList> fut) {
+		ListenableFuture<ImmutableList<NodeID>> nextRoute = Futures.transform(queryNextHop(new DestinationList(route), destination, false), new AsyncFunction<NodeID, ImmutableList<NodeID>>() {
+
+			@Override
+			public ListenableFuture<ImmutableList<NodeID>> apply(NodeID nextPeer) throws Exception {
+				NodeID last = queried.get(queried.size() - 1);
+
+				// The queried peer is responsible for the destination
+				if (nextPeer.equals(last)) {
+					paths.put(destination, route);
+					l.debug(String.format("Route to %s discovered: %s", destination, route));
+					fut.set(toDestinationList(route, destination));
+					return Futures.immediateFuture(route);
+				}
+
+				if (queried.contains(nextPeer) || nextPeer.equals(overlay.getLocalNodeId()))
+					throw new NetworkException("Routing loop in lookup of " + destination);
+
+				if (queried.size() >= MAX_LOOKUP_HOPS)
+					throw new NetworkException("Lookup of " + destination + " exceeded " + MAX_LOOKUP_HOPS + " hops");
+
+				queried.add(nextPeer);
+				return routeTo(nextPeer, route);
+			}
+		});
+
+		Futures.addCallback(nextRoute, new FutureCallback<ImmutableList<NodeID>>() {
+
+			@Override
+			public void onSuccess(ImmutableList<NodeID> result) {
+				if (!fut.isDone()) {
+					lookupStep(destination, queried, result, fut);
+				}
+			}
+
+			@Override
+			public void onFailure(Throwable t) {
+				fut.setException(t);
+			}
+		});
+	}
+
+	/**
+	 * Get a route to the given peer, attaching to it through the route to the
+	 * peer that returned it as next hop if the local peer is not connected to
+	 * it. If the attach fails the route through the previous peer is used.
+	 */
+	private ListenableFuture<ImmutableList<NodeID>> routeTo(final NodeID peer, ImmutableList<NodeID> prevRoute) {
+		final ImmutableList<NodeID> direct = ImmutableList.of(peer);
+		if (connMgr.isNeighbor(peer))
+			return Futures.immediateFuture(direct);
+
+		final ImmutableList<NodeID> multiHop = ImmutableList.<NodeID>builder().addAll(prevRoute).add(peer).build();
+
+		final SettableFuture<ImmutableList<NodeID>> fut = SettableFuture.create();
+		AttachService attachService = overlay.getService(AttachService.class);
+		Futures.addCallback(attachService.attachTo(new DestinationList(multiHop), false), new FutureCallback<Connection>() {
+
+			@Override
+			public void onSuccess(Connection result) {
+				fut.set(direct);
+			}
+
+			@Override
+			public void onFailure(Throwable t) {
+				l.debug(String.format("Attach to %s failed, querying through %s", peer, multiHop), t);
+				fut.set(multiHop);
+			}
+		});
+		return fut;
+	}
+
+	/**
+	 * @return the destination list through the cached route to the peer
+	 *         responsible for the given destination, if any
+	 */
+	public Optional<DestinationList> getCachedPath(RoutableID destination) {
+		ImmutableList<NodeID> route = paths.getIfPresent(destination);
+		if (route == null)
+			return Optional.absent();
+		return Optional.of(toDestinationList(route, destination));
+	}
+
+	/**
+	 * Forget the cached route to the given destination, to be called when a
+	 * request sent through the route fails
+	 */
+	public void invalidatePath(RoutableID destination) {
+		paths.invalidate(destination);
+	}
+
+	private static DestinationList toDestinationList(List<NodeID> path, RoutableID destination) {
+		DestinationList destList = new DestinationList(path);
+		destList.add(destination);
+		return destList;
+	}
+
+	@MessageHandler(ContentType.ROUTE_QUERY_REQ)
+	void handleRouteQuery(Message req) {
+		RouteQueryRequest query = (RouteQueryRequest) req.getContent();
+		RoutableID destination = query.getDestination();
+
+		NodeID nextPeer;
+		if (plugin.isLocalPeerResponsible(destination)) {
+			nextPeer = overlay.getLocalNodeId();
+		} else {
+			Set<NodeID> nextHops = plugin.getRoutingTable().getNextHops(destination);
+			if (nextHops.isEmpty()) {
+				msgRouter.sendError(req.getHeader(), ErrorType.NOT_FOUND, "No route to destination");
+				return;
+			}
+			nextPeer = nextHops.iterator().next();
+		}
+
+		msgRouter.sendAnswer(req.getHeader(), new RouteQueryAnswer(encodeNextPeer(nextPeer)));
+
+		if (query.isSendUpdate()) {
+			plugin.requestUpdate(req.getHeader().getSenderId());
+		}
+	}
+
+	private byte[] encodeNextPeer(NodeID nextPeer) {
+		ByteBuf buf = Unpooled.buffer();
+		try {
+			nodeCodec.encode(nextPeer, buf);
+			byte[] data = new byte[buf.readableBytes()];
+			buf.readBytes(data);
+			return data;
+		} catch (CodecException e) {
+			throw new IllegalStateException(e);
+		} finally {
+			buf.release();
+		}
+	}
+
+	private NodeID decodeNextPeer(byte[] data) throws CodecException {
+		ByteBuf buf = Unpooled.wrappedBuffer(data);
+		try {
+			return nodeCodec.decode(buf);
+		} finally {
+			buf.release();
+		}
+	}
+
+	@Subscribe
+	public void handleConnectionEvent(ConnectionStatusEvent e) {
+		if (e.type == ConnectionStatusEvent.Type.CLOSED && e.connection != null) {
+			removePathsThrough(e.connection.getNodeId());
+		}
+	}
+
+	@Subscribe
+	public void handleTopologyEvent(TopologyEvent e) {
+		if (e.type == TopologyEvent.Type.NEIGHBOR_LEFT) {
+			removePathsThrough(e.node);
+		}
+	}
+
+	private void removePathsThrough(NodeID node) {
+		Iterator<ImmutableList<NodeID>> i = paths.asMap().values().iterator();
+		while (i.hasNext()) {
+			if (i.next().contains(node)) {
+				i.remove();
+			}
+		}
+	}
+
+	@Module(injects = {RouteQueryService.class}, complete = false)
+	public static class RouteQueryModule {
+
+	}
+}
@@ -25,6 +25,7 @@ public class DataKind {
 	public static final AttributeKey<Integer> MAX_SIZE = AttributeKey.valueOf("maxSize");
 	public static final AttributeKey<Integer> MAX_COUNT = AttributeKey.valueOf("maxCount");
 	public static final AttributeKey<Long> MAX_NODE_MULTIPLE = AttributeKey.valueOf("maxNodeMultiple");
+	public static final AttributeKey<Long> MAX_STORED_BYTES = AttributeKey.valueOf("maxStoredBytes");
 
 	private final long kindId;
 	private final DataModel dataModel;
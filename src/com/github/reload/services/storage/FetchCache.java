@@ -0,0 +1,121 @@
+package com.github.reload.services.storage;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import com.github.reload.net.codecs.Codec;
+import com.github.reload.net.codecs.Codec.CodecException;
+import com.github.reload.net.codecs.header.ResourceID;
+import com.github.reload.services.storage.DataModel.ValueSpecifier;
+import com.github.reload.services.storage.net.FetchKindResponse;
+import com.github.reload.services.storage.net.StoreKindSpecifier;
+import com.google.common.base.Optional;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.Maps;
+import dagger.ObjectGraph;
+
+/**
+ * Client side cache of fetched data. The cached responses have already been
+ * verified and are returned again when the storing peer reports that the
+ * generation of the kind is not changed. Since the storing peer omits also the
+ * kinds not stored anymore, cached entries are bounded by a time to live.
+ * 
+ */
+class FetchCache {
+
+	private final ObjectGraph graph;
+	private final Cache<CacheKey, FetchKindResponse> cache;
+
+	// Codecs of the value specifiers, one for each specifier class
+	private final ConcurrentMap<Class<?>, Codec<ValueSpecifier>> specCodecs = Maps.newConcurrentMap();
+
+	public FetchCache(ObjectGraph graph, long ttl, TimeUnit unit, long maxEntries) {
+		this.graph = graph;
+		cache = CacheBuilder.newBuilder().expireAfterWrite(ttl, unit).maximumSize(maxEntries).build();
+	}
+
+	public Optional<FetchKindResponse> get(ResourceID resourceId, StoreKindSpecifier spec) {
+		return Optional.fromNullable(cache.getIfPresent(getKey(resourceId, spec)));
+	}
+
+	public void put(ResourceID resourceId, StoreKindSpecifier spec, FetchKindResponse response) {
+		cache.put(getKey(resourceId, spec), response);
+	}
+
+	public void invalidate(ResourceID resourceId, StoreKindSpecifier spec) {
+		cache.invalidate(getKey(resourceId, spec));
+	}
+
+	public long size() {
+		return cache.size();
+	}
+
+	/**
+	 * Specifiers are compared by their encoded form since value specifiers
+	 * don't implement a value based equality
+	 */
+	private CacheKey getKey(ResourceID resourceId, StoreKindSpecifier spec) {
+		ValueSpecifier valueSpec = spec.getValueSpecifier();
+
+		Codec<ValueSpecifier> codec = getSpecifierCodec(valueSpec.getClass());
+
+		ByteBuf buf = Unpooled.buffer();
+		try {
+			codec.encode(valueSpec, buf);
+			byte[] encSpec = new byte[buf.readableBytes()];
+			buf.readBytes(encSpec);
+			return new CacheKey(resourceId, spec.getKind().getKindId(), encSpec);
+		} catch (CodecException e) {
+			throw new IllegalArgumentException(e);
+		} finally {
+			buf.release();
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private Codec<ValueSpecifier> getSpecifierCodec(Class<? extends ValueSpecifier> specClass) {
+		Codec<ValueSpecifier> codec = specCodecs.get(specClass);
+		if (codec == null) {
+			codec = (Codec<ValueSpecifier>) Codec.getCodec(specClass, graph);
+			Codec<ValueSpecifier> prev = specCodecs.putIfAbsent(specClass, codec);
+			if (prev != null) {
+				codec = prev;
+			}
+		}
+		return codec;
+	}
+
+	private static class CacheKey {
+
+		private final ResourceID resourceId;
+		private final long kindId;
+		private final byte[] valueSpec;
+
+		public CacheKey(ResourceID resourceId, long kindId, byte[] valueSpec) {
+			this.resourceId = resourceId;
+			this.kindId = kindId;
+			this.valueSpec = valueSpec;
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(resourceId, kindId, Arrays.hashCode(valueSpec));
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj)
+				return true;
+			if (obj == null)
+				return false;
+			if (getClass() != obj.getClass())
+				return false;
+			CacheKey other = (CacheKey) obj;
+			return kindId == other.kindId && resourceId.equals(other.resourceId) && Arrays.equals(valueSpec, other.valueSpec);
+		}
+	}
+}
@@ -1,6 +1,5 @@
 package com.github.reload.services.storage;
 
-import java.math.BigInteger;
 import java.util.Date;
 import com.github.reload.crypto.Signer;
 import com.github.reload.net.codecs.header.ResourceID;
@@ -16,21 +15,13 @@ public class PreparedData {
 	private final static int DEFAULT_LIFETIME = 60;
 
 	public static final long MAX_LIFETIME = 0xffffffffl;
-	public static final BigInteger MAX_GENERATION = new BigInteger(1, new byte[]{
-																					(byte) 0xff,
-																					(byte) 0xff,
-																					(byte) 0xff,
-																					(byte) 0xff,
-																					(byte) 0xff,
-																					(byte) 0xff,
-																					(byte) 0xff,
-																					(byte) 0xff});
+	public static final long MAX_GENERATION = 0xffffffffffffffffl;
 
 	private final DataKind kind;
 	private final DataValue value;
 
-	BigInteger generation = BigInteger.ONE;
-	BigInteger storageTime = BigInteger.valueOf(new Date().getTime());
+	long generation = 1;
+	long storageTime = System.currentTimeMillis();
 	long lifeTime = DEFAULT_LIFETIME;
 
 	public PreparedData(DataKind kind, DataValue value) {
@@ -48,7 +39,7 @@ public class PreparedData {
 	 * will be used.
 	 */
 	public PreparedData setStorageTime(Date storageTime) {
-		this.storageTime = BigInteger.valueOf(storageTime.getTime());
+		this.storageTime = storageTime.getTime();
 		return this;
 	}
 
@@ -67,7 +58,7 @@ public class PreparedData {
 	 *            the value is less than the currently stored value the store
 	 *            request will be rejected
 	 */
-	public PreparedData setGeneration(BigInteger generation) {
+	public PreparedData setGeneration(long generation) {
 		this.generation = generation;
 		return this;
 	}
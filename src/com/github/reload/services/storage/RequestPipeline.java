@@ -0,0 +1,96 @@
+package com.github.reload.services.storage;
+
+import java.util.LinkedList;
+import java.util.Queue;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+
+/**
+ * Keeps at most a fixed number of requests in flight, the queued requests are
+ * started in submission order as soon as the previous ones complete
+ * 
+ */
+class RequestPipeline {
+
+	private final int window;
+	private final Queue<Request> queue = new LinkedList<Request>();
+	private int inFlight = 0;
+	private boolean draining = false;
+
+	public RequestPipeline(int window) {
+		if (window <= 0)
+			throw new IllegalArgumentException("Invalid pipeline window");
+		this.window = window;
+	}
+
+	public void submit(Request req) {
+		synchronized (this) {
+			queue.add(req);
+		}
+		drain();
+	}
+
+	/**
+	 * Start the queued requests while the window allows it. Only one thread
+	 * drains the queue at a time, requests completing while they are started
+	 * just release their slot and are picked up by the draining loop instead
+	 * of recursing.
+	 */
+	private void drain() {
+		synchronized (this) {
+			if (draining)
+				return;
+			draining = true;
+		}
+
+		while (true) {
+			Request next;
+			synchronized (this) {
+				if (inFlight >= window || queue.isEmpty()) {
+					draining = false;
+					return;
+				}
+				next = queue.poll();
+				inFlight++;
+			}
+			start(next);
+		}
+	}
+
+	private void start(Request req) {
+		ListenableFuture<?> fut;
+		try {
+			fut = req.start();
+		} catch (RuntimeException e) {
+			fut = Futures.immediateFailedFuture(e);
+		}
+
+		fut.addListener(new Runnable() {
+
+			@Override
+			public void run() {
+				completed();
+			}
+		}, MoreExecutors.sameThreadExecutor());
+	}
+
+	private void completed() {
+		synchronized (this) {
+			inFlight--;
+		}
+		drain();
+	}
+
+	/**
+	 * A request started by the pipeline
+	 */
+	interface Request {
+
+		/**
+		 * Start the request, the returned future must complete when the request
+		 * is not in flight anymore
+		 */
+		ListenableFuture<?> start();
+	}
+}
@@ -0,0 +1,276 @@
+package com.github.reload.services.storage;
+
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+import org.apache.log4j.Logger;
+import com.github.reload.crypto.Keystore;
+import com.github.reload.net.MessageRouter;
+import com.github.reload.net.codecs.Message;
+import com.github.reload.net.codecs.MessageBuilder;
+import com.github.reload.net.codecs.content.ContentType;
+import com.github.reload.net.codecs.content.Error.ErrorType;
+import com.github.reload.net.codecs.header.DestinationList;
+import com.github.reload.net.codecs.header.NodeID;
+import com.github.reload.net.codecs.header.ResourceID;
+import com.github.reload.routing.MessageHandlers;
+import com.github.reload.routing.MessageHandlers.MessageHandler;
+import com.github.reload.services.storage.StorageService.ChangeListener;
+import com.github.reload.services.storage.net.FetchAnswer;
+import com.github.reload.services.storage.net.FetchKindResponse;
+import com.github.reload.services.storage.net.FetchRequest;
+import com.github.reload.services.storage.net.NotifyAnswer;
+import com.github.reload.services.storage.net.NotifyRequest;
+import com.github.reload.services.storage.net.StoreKindSpecifier;
+import com.github.reload.services.storage.net.SubscriptionExtension;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.AsyncFunction;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+
+/**
+ * Client side of the resource subscriptions. A subscription is a fetch request
+ * carrying a {@link SubscriptionExtension}, it is renewed periodically before
+ * the lease expires and immediately when the responsible peer asks to rebind.
+ * Since the renewal is routed to the resource, a subscription follows the
+ * responsibility of the resource when it moves to another peer.
+ * 
+ * Notifications and rebind requests are accepted only from the peer that
+ * answered the last subscription request. The subscriptions of the local
+ * listeners to the same resource share the remote subscription, a kind is
+ * unsubscribed only when no local listener needs it anymore.
+ * 
+ */
+@Singleton
+public class ResourceSubscriptions {
+
+	private static final Logger l = Logger.getRootLogger();
+
+	@Inject
+	MessageRouter msgRouter;
+
+	@Inject
+	MessageBuilder msgBuilder;
+
+	@Inject
+	Keystore keystore;
+
+	private final ConcurrentMap<ResourceID, List<ClientSubscription>> subscriptions = Maps.newConcurrentMap();
+
+	private final ScheduledExecutorService scheduler;
+
+	@Inject
+	public ResourceSubscriptions(MessageHandlers msgHandlers, @Named("scheduler") ScheduledExecutorService scheduler) {
+		this.scheduler = scheduler;
+		msgHandlers.register(this);
+	}
+
+	ListenableFuture<List<FetchKindResponse>> subscribe(ResourceID resourceId, ChangeListener listener, boolean pushValues, long lease, StoreKindSpecifier... specifiers) {
+		final ClientSubscription s = new ClientSubscription(resourceId, listener, pushValues, lease, specifiers);
+
+		// Empty lists are removed by unsubscribe under the same lock
+		synchronized (this) {
+			List<ClientSubscription> resSubscriptions = subscriptions.get(resourceId);
+			if (resSubscriptions == null) {
+				resSubscriptions = new CopyOnWriteArrayList<ClientSubscription>();
+				subscriptions.put(resourceId, resSubscriptions);
+			}
+			resSubscriptions.add(s);
+		}
+
+		long renewPeriod = Math.max(lease * 1000 / 2, 1);
+		s.renewTask = scheduler.scheduleAtFixedRate(new Runnable() {
+
+			@Override
+			public void run() {
+				renew(s);
+			}
+		}, renewPeriod, renewPeriod, TimeUnit.MILLISECONDS);
+
+		return sendSubscription(s, Arrays.asList(s.specifiers), lease);
+	}
+
+	void unsubscribe(ResourceID resourceId, ChangeListener listener) {
+		List<ClientSubscription> removed = new ArrayList<ClientSubscription>();
+		Set<Long> stillSubscribed = new HashSet<Long>();
+
+		synchronized (this) {
+			List<ClientSubscription> resSubscriptions = subscriptions.get(resourceId);
+			if (resSubscriptions == null)
+				return;
+
+			for (ClientSubscription s : resSubscriptions) {
+				if (s.listener == listener) {
+					removed.add(s);
+				} else {
+					stillSubscribed.addAll(s.kinds);
+				}
+			}
+
+			resSubscriptions.removeAll(removed);
+			if (resSubscriptions.isEmpty()) {
+				subscriptions.remove(resourceId);
+			}
+		}
+
+		for (ClientSubscription s : removed) {
+			s.renewTask.cancel(false);
+
+			// The subscription is shared by all the local listeners, only the
+			// kinds no other listener is subscribed to are removed
+			List<StoreKindSpecifier> unsubscribed = new ArrayList<StoreKindSpecifier>();
+			for (StoreKindSpecifier spec : s.specifiers) {
+				if (stillSubscribed.add(spec.getKind().getKindId())) {
+					unsubscribed.add(spec);
+				}
+			}
+
+			if (unsubscribed.isEmpty()) {
+				continue;
+			}
+
+			// A zero lease removes the subscription on the responsible peer
+			sendSubscription(s, unsubscribed, 0);
+		}
+	}
+
+	private void renew(final ClientSubscription s) {
+		Futures.addCallback(sendSubscription(s, Arrays.asList(s.specifiers), s.lease), new FutureCallback<List<FetchKindResponse>>() {
+
+			@Override
+			public void onSuccess(List<FetchKindResponse> result) {
+				// Subscription renewed
+			}
+
+			@Override
+			public void onFailure(Throwable t) {
+				l.debug(String.format("Renewal of subscription to %s failed", s.resourceId), t);
+			}
+		});
+	}
+
+	private ListenableFuture<List<FetchKindResponse>> sendSubscription(final ClientSubscription s, List<StoreKindSpecifier> specifiers, final long lease) {
+		FetchRequest req = new FetchRequest(s.resourceId, specifiers);
+		req.appendMessageExtension(new SubscriptionExtension(lease, s.pushValues));
+
+		Message message = msgBuilder.newMessage(req, new DestinationList(s.resourceId));
+
+		// The responsible peer answers also for resources not stored yet
+		return Futures.transform(msgRouter.sendRequestMessage(message), new AsyncFunction<Message, List<FetchKindResponse>>() {
+
+			@Override
+			public ListenableFuture<List<FetchKindResponse>> apply(Message input) throws Exception {
+				List<FetchKindResponse> responses = ((FetchAnswer) input.getContent()).getResponses();
+				for (FetchKindResponse r : responses) {
+					StorageService.verifyResponse(keystore, r, s.resourceId);
+				}
+
+				// Only the peer holding the subscription is trusted to send
+				// notifications for it
+				if (lease > 0) {
+					s.responsiblePeer = input.getHeader().getSenderId();
+				}
+
+				return Futures.immediateFuture(responses);
+			}
+		});
+	}
+
+	@MessageHandler(ContentType.NOTIFY_REQ)
+	private void handleNotification(Message requestMessage) {
+		NotifyRequest notification = (NotifyRequest) requestMessage.getContent();
+		NodeID sender = requestMessage.getHeader().getSenderId();
+
+		List<ClientSubscription> resSubscriptions = subscriptions.get(notification.getResourceId());
+		if (resSubscriptions == null) {
+			resSubscriptions = Collections.emptyList();
+		}
+
+		List<ClientSubscription> senderSubscriptions = new ArrayList<ClientSubscription>();
+		for (ClientSubscription s : resSubscriptions) {
+			if (sender.equals(s.responsiblePeer)) {
+				senderSubscriptions.add(s);
+			}
+		}
+
+		if (senderSubscriptions.isEmpty()) {
+			l.debug(String.format("Notification for %s from %s discarded, no subscription held by the sender", notification.getResourceId(), sender));
+			msgRouter.sendError(requestMessage.getHeader(), ErrorType.FORBITTEN, "No subscription held by the sender");
+			return;
+		}
+
+		msgRouter.sendAnswer(requestMessage.getHeader(), new NotifyAnswer());
+
+		// The sender is not responsible for the resource anymore
+		if (notification.isRebind()) {
+			for (ClientSubscription s : senderSubscriptions) {
+				renew(s);
+			}
+			return;
+		}
+
+		try {
+			for (FetchKindResponse r : notification.getChanges()) {
+				StorageService.verifyResponse(keystore, r, notification.getResourceId());
+			}
+		} catch (GeneralSecurityException e) {
+			l.debug(String.format("Invalid notification for %s discarded", notification.getResourceId()), e);
+			return;
+		}
+
+		for (ClientSubscription s : senderSubscriptions) {
+			List<FetchKindResponse> changes = new ArrayList<FetchKindResponse>();
+			for (FetchKindResponse r : notification.getChanges()) {
+				if (s.kinds.contains(r.getKind().getKindId())) {
+					changes.add(r);
+				}
+			}
+
+			if (changes.isEmpty()) {
+				continue;
+			}
+
+			try {
+				s.listener.onChange(notification.getResourceId(), changes);
+			} catch (RuntimeException e) {
+				l.warn("Subscription listener failed", e);
+			}
+		}
+	}
+
+	private static class ClientSubscription {
+
+		final ResourceID resourceId;
+		final ChangeListener listener;
+		final boolean pushValues;
+		final long lease;
+		final StoreKindSpecifier[] specifiers;
+		final Set<Long> kinds = new HashSet<Long>();
+		volatile ScheduledFuture<?> renewTask;
+		volatile NodeID responsiblePeer;
+
+		public ClientSubscription(ResourceID resourceId, ChangeListener listener, boolean pushValues, long lease, StoreKindSpecifier[] specifiers) {
+			this.resourceId = resourceId;
+			this.listener = listener;
+			this.pushValues = pushValues;
+			this.lease = lease;
+			this.specifiers = specifiers;
+			for (StoreKindSpecifier spec : specifiers) {
+				kinds.add(spec.getKind().getKindId());
+			}
+		}
+	}
+}
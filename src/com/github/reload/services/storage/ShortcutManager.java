@@ -0,0 +1,211 @@
+package com.github.reload.services.storage;
+
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import org.apache.log4j.Logger;
+import com.github.reload.Overlay;
+import com.github.reload.net.ConnectionManager;
+import com.github.reload.net.ConnectionManager.Connection;
+import com.github.reload.net.ConnectionManager.ConnectionStatusEvent;
+import com.github.reload.net.codecs.header.DestinationList;
+import com.github.reload.net.codecs.header.NodeID;
+import com.github.reload.net.codecs.header.ResourceID;
+import com.github.reload.routing.TopologyPlugin;
+import com.github.reload.services.AttachService;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalCause;
+import com.google.common.cache.RemovalListener;
+import com.google.common.cache.RemovalNotification;
+import com.google.common.collect.Sets;
+import com.google.common.eventbus.EventBus;
+import com.google.common.eventbus.Subscribe;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+
+/**
+ * Opens direct connections to the peers that frequently answer the storage
+ * requests of the local peer. The answering peers are tracked for ranges of
+ * resource ids, when the answers from a peer for a range exceed a rate
+ * threshold the local peer attaches to it and the following requests for the
+ * range are sent through the direct connection in a single hop. Shortcuts not
+ * used for some time are closed.
+ * 
+ */
+@Singleton
+public class ShortcutManager {
+
+	private static final Logger l = Logger.getRootLogger();
+
+	// Number of most significant bits of the resource ids identifying a range
+	static final int RANGE_BITS = 16;
+
+	// Maximum number of ranges tracked
+	static final int MAX_RANGES = 1024;
+
+	// Time in milliseconds the answers of a range are counted
+	static final int RATE_WINDOW = 10000;
+
+	// Answers from the same peer in a window that trigger a shortcut
+	static final int RATE_THRESHOLD = 20;
+
+	// Maximum number of shortcut connections
+	static final int MAX_SHORTCUTS = 32;
+
+	// Time in seconds an unused shortcut is kept open
+	static final int SHORTCUT_IDLE_TIMEOUT = 300;
+
+	@Inject
+	Overlay overlay;
+
+	@Inject
+	ConnectionManager connMgr;
+
+	@Inject
+	TopologyPlugin topology;
+
+	private final Cache<Integer, RangeStats> ranges = CacheBuilder.newBuilder().maximumSize(MAX_RANGES).build();
+
+	private final Cache<NodeID, Connection> shortcuts = CacheBuilder.newBuilder().maximumSize(MAX_SHORTCUTS).expireAfterAccess(SHORTCUT_IDLE_TIMEOUT, TimeUnit.SECONDS).removalListener(new RemovalListener<NodeID, Connection>() {
+
+		@Override
+		public void onRemoval(RemovalNotification<NodeID, Connection> notification) {
+			closeShortcut(notification);
+		}
+	}).build();
+
+	private final Set<NodeID> pendingAttaches = Sets.newConcurrentHashSet();
+
+	@Inject
+	public ShortcutManager(EventBus eventBus) {
+		eventBus.register(this);
+	}
+
+	/**
+	 * @return the destination list for a request to the given resource,
+	 *         passing through the shortcut to the peer that answered the last
+	 *         requests for the resource range if any
+	 */
+	public DestinationList getDestination(ResourceID resourceId) {
+		shortcuts.cleanUp();
+
+		RangeStats stats = ranges.getIfPresent(getRange(resourceId));
+		if (stats == null)
+			return new DestinationList(resourceId);
+
+		NodeID peer = stats.getPeer();
+		if (peer == null || shortcuts.getIfPresent(peer) == null || !connMgr.isNeighbor(peer))
+			return new DestinationList(resourceId);
+
+		return new DestinationList(peer, resourceId);
+	}
+
+	/**
+	 * Account an answer received from the given peer for the given resource,
+	 * the local peer attaches to the peer if it answers often for the range
+	 */
+	public void answerReceived(ResourceID resourceId, NodeID sender) {
+		if (sender.equals(overlay.getLocalNodeId()))
+			return;
+
+		int range = getRange(resourceId);
+		RangeStats stats = ranges.getIfPresent(range);
+		if (stats == null) {
+			stats = new RangeStats();
+			RangeStats prev = ranges.asMap().putIfAbsent(range, stats);
+			if (prev != null) {
+				stats = prev;
+			}
+		}
+
+		if (!stats.answer(sender, System.currentTimeMillis()))
+			return;
+
+		if (shortcuts.getIfPresent(sender) != null)
+			return;
+
+		// Already connected, the peer is reached in one hop anyway
+		if (connMgr.isNeighbor(sender))
+			return;
+
+		openShortcut(sender);
+	}
+
+	private void openShortcut(final NodeID peer) {
+		if (!pendingAttaches.add(peer))
+			return;
+
+		l.debug(String.format("Opening shortcut to %s...", peer));
+
+		AttachService attachService = overlay.getService(AttachService.class);
+		Futures.addCallback(attachService.attachTo(new DestinationList(peer), false), new FutureCallback<Connection>() {
+
+			@Override
+			public void onSuccess(Connection result) {
+				pendingAttaches.remove(peer);
+				shortcuts.put(peer, result);
+			}
+
+			@Override
+			public void onFailure(Throwable t) {
+				pendingAttaches.remove(peer);
+				l.debug(String.format("Shortcut to %s failed", peer), t);
+			}
+		});
+	}
+
+	private void closeShortcut(RemovalNotification<NodeID, Connection> notification) {
+		// Connection already closed or replaced by a new shortcut
+		if (notification.getCause() == RemovalCause.EXPLICIT || notification.getCause() == RemovalCause.REPLACED)
+			return;
+
+		// The connection is used by the topology plugin too
+		if (topology.getRoutingTable().getNeighbors().contains(notification.getKey()))
+			return;
+
+		l.debug(String.format("Closing idle shortcut to %s", notification.getKey()));
+		notification.getValue().close();
+	}
+
+	@Subscribe
+	public void handleConnectionEvent(ConnectionStatusEvent e) {
+		if (e.type == ConnectionStatusEvent.Type.CLOSED) {
+			shortcuts.invalidate(e.connection.getNodeId());
+		}
+	}
+
+	private static int getRange(ResourceID resourceId) {
+		return (int) (resourceId.getHigh() >>> (64 - RANGE_BITS));
+	}
+
+	/**
+	 * Answers received for a range of resource ids in the current window
+	 */
+	private static class RangeStats {
+
+		private NodeID peer;
+		private int answers;
+		private long windowStart;
+
+		/**
+		 * @return true if the answers from the peer exceed the threshold
+		 */
+		synchronized boolean answer(NodeID sender, long now) {
+			if (!sender.equals(peer) || now - windowStart > RATE_WINDOW) {
+				peer = sender;
+				answers = 0;
+				windowStart = now;
+			}
+
+			answers++;
+
+			return answers >= RATE_THRESHOLD;
+		}
+
+		synchronized NodeID getPeer() {
+			return peer;
+		}
+	}
+}
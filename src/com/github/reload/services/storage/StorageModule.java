@@ -1,13 +1,30 @@
 package com.github.reload.services.storage;
 
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import javax.inject.Named;
 import javax.inject.Singleton;
+import com.github.reload.CoreModule.ExecutorShutdown;
+import com.github.reload.services.storage.local.AntiEntropyService;
+import com.github.reload.services.storage.local.DataHandoff;
+import com.github.reload.services.storage.local.DataReplicator;
 import com.github.reload.services.storage.local.DataStorage;
 import com.github.reload.services.storage.local.MemoryStorage;
 import com.github.reload.services.storage.local.StorageController;
+import com.github.reload.services.storage.local.StorageSnapshots;
+import com.github.reload.services.storage.local.SubscriptionManager;
+import com.github.reload.services.storage.net.ArrayMetadata;
 import com.github.reload.services.storage.net.ArrayValue;
 import com.github.reload.services.storage.net.ArrayValueSpecifier;
+import com.github.reload.services.storage.net.DictionaryMetadata;
 import com.github.reload.services.storage.net.DictionaryValue;
 import com.github.reload.services.storage.net.DictionaryValueSpecifier;
+import com.github.reload.services.storage.net.SingleMetadata;
 import com.github.reload.services.storage.net.SingleValue;
 import com.github.reload.services.storage.net.SingleValueSpecifier;
 import com.github.reload.services.storage.net.StoreKindSpecifier;
@@ -15,6 +32,8 @@ import com.github.reload.services.storage.policies.NodeMatch;
 import com.github.reload.services.storage.policies.NodeMatch.NodeRIDGenerator;
 import com.github.reload.services.storage.policies.UserMatch;
 import com.github.reload.services.storage.policies.UserMatch.UserRIDGenerator;
+import com.google.common.eventbus.EventBus;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import dagger.Module;
 import dagger.Provides;
 
@@ -24,15 +43,48 @@ import dagger.Provides;
 					NodeMatch.NodeRIDGenerator.class,
 					UserMatch.UserRIDGenerator.class, MemoryStorage.class,
 					SingleValue.class, ArrayValue.class, DictionaryValue.class,
+					SingleMetadata.class, ArrayMetadata.class,
+					DictionaryMetadata.class,
 					NodeMatch.class, UserRIDGenerator.class,
 					NodeRIDGenerator.class, SingleValueSpecifier.class,
 					ArrayValueSpecifier.class, DictionaryValueSpecifier.class,
-					StoreKindSpecifier.class}, complete = false)
+					StoreKindSpecifier.class, DataReplicator.class,
+					AntiEntropyService.class, DataHandoff.class,
+					StorageSnapshots.class, SubscriptionManager.class,
+					ResourceSubscriptions.class, ShortcutManager.class}, complete = false)
 public class StorageModule {
 
+	// Maximum number of signature tasks waiting for a crypto thread
+	private static final int CRYPTO_QUEUE_SIZE = 1024;
+
 	@Provides
 	@Singleton
 	DataStorage provideDataStorage() {
 		return new MemoryStorage();
 	}
+
+	/**
+	 * Pool for the signatures computed and verified in parallel, one thread
+	 * per processor. When the queue is full the task is run by the submitting
+	 * thread, which slows down the producer instead of failing. Tasks
+	 * submitted after the shutdown are rejected, not silently discarded.
+	 */
+	@Provides
+	@Singleton
+	@Named("cryptoPool")
+	ExecutorService provideCryptoPool(EventBus eventBus) {
+		int threads = Runtime.getRuntime().availableProcessors();
+		ThreadFactory factory = new ThreadFactoryBuilder().setNameFormat("reload-crypto-%d").setDaemon(true).build();
+		ExecutorService pool = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<Runnable>(CRYPTO_QUEUE_SIZE), factory, new RejectedExecutionHandler() {
+
+			@Override
+			public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
+				if (executor.isShutdown())
+					throw new RejectedExecutionException("Crypto pool shut down");
+				r.run();
+			}
+		});
+		eventBus.register(new ExecutorShutdown(pool));
+		return pool;
+	}
 }
@@ -1,16 +1,24 @@
 package com.github.reload.services.storage;
 
 import java.security.GeneralSecurityException;
+import java.security.SignatureException;
 import java.security.cert.Certificate;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
 import javax.inject.Inject;
+import javax.inject.Named;
 import javax.inject.Singleton;
+import com.github.reload.Overlay;
 import com.github.reload.Service;
 import com.github.reload.conf.Configuration;
 import com.github.reload.crypto.CryptoHelper;
@@ -18,15 +26,22 @@ import com.github.reload.crypto.Keystore;
 import com.github.reload.crypto.ReloadCertificate;
 import com.github.reload.net.MessageRouter;
 import com.github.reload.net.NetworkException;
+import com.github.reload.net.codecs.Codec;
 import com.github.reload.net.codecs.Message;
 import com.github.reload.net.codecs.MessageBuilder;
+import com.github.reload.net.codecs.content.Error.ErrorMessageException;
+import com.github.reload.net.codecs.content.Error.ErrorType;
 import com.github.reload.net.codecs.header.DestinationList;
+import com.github.reload.net.codecs.header.NodeID;
 import com.github.reload.net.codecs.header.ResourceID;
 import com.github.reload.net.codecs.secBlock.SignerIdentity.IdentityType;
 import com.github.reload.routing.TopologyPlugin;
+import com.github.reload.services.RouteQueryService;
 import com.github.reload.services.storage.DataModel.DataValue;
 import com.github.reload.services.storage.DataModel.ValueSpecifier;
+import com.github.reload.services.storage.local.DataHandoff;
 import com.github.reload.services.storage.local.StorageController;
+import com.github.reload.services.storage.local.StorageUsage;
 import com.github.reload.services.storage.local.StoredData;
 import com.github.reload.services.storage.local.StoredKindData;
 import com.github.reload.services.storage.net.ArrayValue;
@@ -35,6 +50,7 @@ import com.github.reload.services.storage.net.ArrayValueSpecifier.ArrayRange;
 import com.github.reload.services.storage.net.DictionaryValue;
 import com.github.reload.services.storage.net.DictionaryValueSpecifier;
 import com.github.reload.services.storage.net.FetchAnswer;
+import com.github.reload.services.storage.net.FetchKey;
 import com.github.reload.services.storage.net.FetchKindResponse;
 import com.github.reload.services.storage.net.FetchRequest;
 import com.github.reload.services.storage.net.SingleValue;
@@ -44,12 +60,17 @@ import com.github.reload.services.storage.net.StoreKindSpecifier;
 import com.github.reload.services.storage.net.StoreRequest;
 import com.github.reload.services.storage.policies.AccessPolicy;
 import com.github.reload.services.storage.policies.AccessPolicy.ResourceIDGenerator;
+import com.google.common.base.Function;
 import com.google.common.base.Optional;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.Maps;
+import com.google.common.eventbus.Subscribe;
+import com.google.common.util.concurrent.AsyncFunction;
 import com.google.common.util.concurrent.FutureCallback;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
 import com.google.common.util.concurrent.SettableFuture;
 import dagger.ObjectGraph;
 
@@ -63,6 +84,12 @@ public class StorageService {
 
 	private static final short REPLICA_NUMBER = 0;
 
+	// Default number of requests in flight for batch operations
+	public static final int BATCH_WINDOW = 32;
+
+	// Default lease in seconds of the resource subscriptions
+	public static final long SUBSCRIPTION_LEASE = 300;
+
 	@Inject
 	ObjectGraph graph;
 
@@ -87,6 +114,33 @@ public class StorageService {
 	@Inject
 	StorageController controller;
 
+	@Inject
+	ResourceSubscriptions subscriptions;
+
+	@Inject
+	ShortcutManager shortcuts;
+
+	@Inject
+	DataHandoff handoff;
+
+	@Inject
+	Overlay overlay;
+
+	private volatile FetchCache fetchCache;
+
+	private final Codec<FetchRequest> fetchReqCodec;
+
+	private final ConcurrentMap<FetchKey, SettableFuture<List<FetchKindResponse>>> inFlightFetches = Maps.newConcurrentMap();
+
+	// Signatures of stored values are computed in parallel on all the cores
+	private final ListeningExecutorService signingPool;
+
+	@Inject
+	public StorageService(ObjectGraph graph, @Named("cryptoPool") ExecutorService cryptoPool) {
+		fetchReqCodec = Codec.getCodec(FetchRequest.class, graph);
+		signingPool = MoreExecutors.listeningDecorator(cryptoPool);
+	}
+
 	/**
 	 * @return the available data kinds
 	 */
@@ -156,30 +210,94 @@ public class StorageService {
 		if (resourceId.getData().length > plugin.getResourceIdLength())
 			throw new IllegalArgumentException("Invalid resource-id length");
 
-		final SettableFuture<List<StoreKindResponse>> storeFut = SettableFuture.create();
+		if (preparedData.length == 0)
+			return Futures.immediateFuture(Collections.<StoreKindResponse>emptyList());
+
+		return Futures.transform(signData(resourceId, preparedData), new AsyncFunction<List<StoredKindData>, List<StoreKindResponse>>() {
 
-		if (preparedData.length == 0) {
-			storeFut.set(Collections.<StoreKindResponse>emptyList());
-			return storeFut;
+			@Override
+			public ListenableFuture<List<StoreKindResponse>> apply(List<StoredKindData> input) {
+				return sendStore(resourceId, input);
+			}
+		});
+	}
+
+	/**
+	 * Sign the values in parallel on the signing pool, the caller thread is
+	 * not blocked by the signature computations
+	 */
+	private ListenableFuture<List<StoredKindData>> signData(final ResourceID resourceId, final PreparedData... preparedData) {
+		List<ListenableFuture<StoredData>> signed = new ArrayList<ListenableFuture<StoredData>>(preparedData.length);
+
+		for (final PreparedData prepared : preparedData) {
+			signed.add(signingPool.submit(new Callable<StoredData>() {
+
+				@Override
+				public StoredData call() throws Exception {
+					return prepared.buildSigned(resourceId, cryptoHelper.newSigner());
+				}
+			}));
 		}
 
-		Map<Long, StoredKindData> kindData = Maps.newHashMap();
+		return Futures.transform(Futures.allAsList(signed), new Function<List<StoredData>, List<StoredKindData>>() {
 
-		for (PreparedData prepared : preparedData) {
-			StoredData data = prepared.buildSigned(resourceId, cryptoHelper.newSigner());
+			@Override
+			public List<StoredKindData> apply(List<StoredData> signedData) {
+				Map<Long, StoredKindData> kindData = Maps.newLinkedHashMap();
+
+				for (int i = 0; i < preparedData.length; i++) {
+					PreparedData prepared = preparedData[i];
+
+					// Aggregate prepared data of the same kind in the same
+					// KindData object
+					StoredKindData kd = kindData.get(prepared.getKind().getKindId());
+					if (kd == null) {
+						kd = new StoredKindData(prepared.getKind(), prepared.generation, new ArrayList<StoredData>());
+						kindData.put(prepared.getKind().getKindId(), kd);
+					}
+
+					kd.getValues().add(signedData.get(i));
+				}
 
-			// Aggregate prepared data of the same kind in the same KindData
-			// object
-			StoredKindData kd = kindData.get(prepared.getKind().getKindId());
-			if (kd == null) {
-				kd = new StoredKindData(prepared.getKind(), prepared.generation, new ArrayList<StoredData>());
-				kindData.put(prepared.getKind().getKindId(), kd);
+				return new ArrayList<StoredKindData>(kindData.values());
 			}
+		});
+	}
 
-			kd.getValues().add(data);
-		}
+	/**
+	 * Find the peer responsible for the given resource with an iterative
+	 * lookup. The route to it is cached and the following requests for the
+	 * resource are sent directly to the responsible peer until the route
+	 * expires or one of its peers leaves.
+	 * 
+	 * @return the destination list through the route to the responsible peer
+	 */
+	public ListenableFuture<DestinationList> resolve(ResourceID resourceId) {
+		Preconditions.checkNotNull(resourceId);
+		return getRouteQuery().lookup(resourceId);
+	}
+
+	/**
+	 * @return the destination list for a request to the given resource, the
+	 *         shortcut connection is preferred over a resolved path and
+	 *         the resource is routed by the overlay if neither is known
+	 */
+	private DestinationList getDestination(ResourceID resourceId) {
+		DestinationList dest = shortcuts.getDestination(resourceId);
+		if (dest.size() > 1)
+			return dest;
+
+		return getRouteQuery().getCachedPath(resourceId).or(dest);
+	}
+
+	private RouteQueryService getRouteQuery() {
+		return overlay.getService(RouteQueryService.class);
+	}
+
+	private ListenableFuture<List<StoreKindResponse>> sendStore(final ResourceID resourceId, List<StoredKindData> kindData) {
+		final SettableFuture<List<StoreKindResponse>> storeFut = SettableFuture.create();
 
-		Message request = msgBuilder.newMessage(new StoreRequest(resourceId, REPLICA_NUMBER, new ArrayList<StoredKindData>(kindData.values())), new DestinationList(resourceId));
+		Message request = msgBuilder.newMessage(new StoreRequest(resourceId, REPLICA_NUMBER, kindData), getDestination(resourceId));
 
 		ListenableFuture<Message> ansFut = msgRouter.sendRequestMessage(request);
 
@@ -187,6 +305,7 @@ public class StorageService {
 
 			@Override
 			public void onSuccess(Message result) {
+				shortcuts.answerReceived(resourceId, result.getHeader().getSenderId());
 				StoreAnswer answer = (StoreAnswer) result.getContent();
 				storeFut.set(answer.getResponses());
 			}
@@ -196,6 +315,7 @@ public class StorageService {
 				if (t instanceof UnknownKindException) {
 					sendKindConfigUpdate(resourceId, ((UnknownKindException) t).getUnknownKinds());
 				}
+				getRouteQuery().invalidatePath(resourceId);
 				storeFut.setException(t);
 			}
 		});
@@ -203,6 +323,161 @@ public class StorageService {
 		return storeFut;
 	}
 
+	/**
+	 * Store many resources at once. The values are signed in parallel and one
+	 * store request per resource is sent, ordered by next hop, keeping at most
+	 * the given number of requests in flight.
+	 * 
+	 * @param items
+	 *            the data to store for each resource
+	 * @param window
+	 *            the maximum number of requests in flight
+	 * @return the result of each resource, in the same order of the items
+	 * @see #store(ResourceID, PreparedData...)
+	 */
+	public Map<ResourceID, ListenableFuture<List<StoreKindResponse>>> storeBatch(final Map<ResourceID, PreparedData[]> items, int window) {
+		Preconditions.checkNotNull(items);
+
+		Map<ResourceID, ListenableFuture<List<StoreKindResponse>>> results = new LinkedHashMap<ResourceID, ListenableFuture<List<StoreKindResponse>>>();
+
+		RequestPipeline pipeline = new RequestPipeline(window);
+
+		for (ResourceID resId : items.keySet()) {
+			Preconditions.checkNotNull(items.get(resId));
+			if (resId.getData().length > plugin.getResourceIdLength())
+				throw new IllegalArgumentException("Invalid resource-id length");
+			results.put(resId, SettableFuture.<List<StoreKindResponse>>create());
+		}
+
+		for (final ResourceID resId : groupByNextHop(items.keySet())) {
+			final SettableFuture<List<StoreKindResponse>> itemFut = (SettableFuture<List<StoreKindResponse>>) results.get(resId);
+			pipeline.submit(new RequestPipeline.Request() {
+
+				@Override
+				public ListenableFuture<?> start() {
+					ListenableFuture<List<StoredKindData>> signed = signData(resId, items.get(resId));
+
+					ListenableFuture<List<StoreKindResponse>> stored = Futures.transform(signed, new AsyncFunction<List<StoredKindData>, List<StoreKindResponse>>() {
+
+						@Override
+						public ListenableFuture<List<StoreKindResponse>> apply(List<StoredKindData> input) {
+							if (input.isEmpty())
+								return Futures.immediateFuture(Collections.<StoreKindResponse>emptyList());
+							return sendStore(resId, input);
+						}
+					});
+
+					complete(itemFut, stored);
+					return stored;
+				}
+			});
+		}
+
+		return results;
+	}
+
+	public Map<ResourceID, ListenableFuture<List<StoreKindResponse>>> storeBatch(Map<ResourceID, PreparedData[]> items) {
+		return storeBatch(items, BATCH_WINDOW);
+	}
+
+	/**
+	 * Fetch many resources at once. One fetch request per resource is sent,
+	 * ordered by next hop, keeping at most the given number of requests in
+	 * flight.
+	 * 
+	 * @param items
+	 *            the specifiers to fetch for each resource
+	 * @param window
+	 *            the maximum number of requests in flight
+	 * @return the result of each resource, in the same order of the items
+	 * @see #fetch(ResourceID, StoreKindSpecifier...)
+	 */
+	public Map<ResourceID, ListenableFuture<List<FetchKindResponse>>> fetchBatch(final Map<ResourceID, StoreKindSpecifier[]> items, int window) {
+		Preconditions.checkNotNull(items);
+
+		Map<ResourceID, ListenableFuture<List<FetchKindResponse>>> results = new LinkedHashMap<ResourceID, ListenableFuture<List<FetchKindResponse>>>();
+
+		RequestPipeline pipeline = new RequestPipeline(window);
+
+		for (ResourceID resId : items.keySet()) {
+			Preconditions.checkNotNull(items.get(resId));
+			if (resId.getData().length > plugin.getResourceIdLength())
+				throw new IllegalArgumentException("Invalid resource-id length");
+			results.put(resId, SettableFuture.<List<FetchKindResponse>>create());
+		}
+
+		for (final ResourceID resId : groupByNextHop(items.keySet())) {
+			final SettableFuture<List<FetchKindResponse>> itemFut = (SettableFuture<List<FetchKindResponse>>) results.get(resId);
+			pipeline.submit(new RequestPipeline.Request() {
+
+				@Override
+				public ListenableFuture<?> start() {
+					ListenableFuture<List<FetchKindResponse>> fetched = fetch(resId, items.get(resId));
+					complete(itemFut, fetched);
+					return fetched;
+				}
+			});
+		}
+
+		return results;
+	}
+
+	public Map<ResourceID, ListenableFuture<List<FetchKindResponse>>> fetchBatch(Map<ResourceID, StoreKindSpecifier[]> items) {
+		return fetchBatch(items, BATCH_WINDOW);
+	}
+
+	/**
+	 * Order the resources so that the ones routed through the same neighbor
+	 * are sent back to back
+	 */
+	private List<ResourceID> groupByNextHop(Set<ResourceID> resources) {
+		Map<NodeID, List<ResourceID>> groups = new LinkedHashMap<NodeID, List<ResourceID>>();
+
+		for (ResourceID resId : resources) {
+			Set<NodeID> hops = plugin.getRoutingTable().getNextHops(resId);
+			NodeID hop = hops.isEmpty() ? null : hops.iterator().next();
+			List<ResourceID> group = groups.get(hop);
+			if (group == null) {
+				group = new ArrayList<ResourceID>();
+				groups.put(hop, group);
+			}
+			group.add(resId);
+		}
+
+		List<ResourceID> out = new ArrayList<ResourceID>(resources.size());
+		for (List<ResourceID> group : groups.values()) {
+			out.addAll(group);
+		}
+		return out;
+	}
+
+	private static <T> void complete(final SettableFuture<T> target, ListenableFuture<T> source) {
+		Futures.addCallback(source, new FutureCallback<T>() {
+
+			@Override
+			public void onSuccess(T result) {
+				target.set(result);
+			}
+
+			@Override
+			public void onFailure(Throwable t) {
+				target.setException(t);
+			}
+		});
+	}
+
+	/**
+	 * Transfer the data the local peer is responsible for to the peers that
+	 * take over its resources. The transfer is also started when the local
+	 * peer leaves the overlay, which waits for it to complete.
+	 * 
+	 * @return a future completed when all the data is transferred, failed if
+	 *         some resources could not be transferred
+	 */
+	public ListenableFuture<List<Void>> handoffAll() {
+		return handoff.handoffAll();
+	}
+
 	protected void sendKindConfigUpdate(ResourceID resourceId, List<Long> unknownKinds) {
 		// TODO send kind config update
 	}
@@ -232,16 +507,103 @@ public class StorageService {
 	 *             if the caller thread is interrupted while waiting for the
 	 *             response
 	 */
-	public ListenableFuture<List<FetchKindResponse>> fetch(final ResourceID resourceId, StoreKindSpecifier... specifiers) {
+	public ListenableFuture<List<FetchKindResponse>> fetch(final ResourceID resourceId, final StoreKindSpecifier... specifiers) {
 		Preconditions.checkNotNull(resourceId);
 		Preconditions.checkNotNull(specifiers);
 
 		if (resourceId.getData().length > plugin.getResourceIdLength())
 			throw new IllegalArgumentException("Invalid resource-id length");
 
+		// Identical concurrent fetches share the same request
+		final FetchKey key = FetchKey.of(new FetchRequest(resourceId, Arrays.asList(specifiers)), fetchReqCodec);
+
+		final SettableFuture<List<FetchKindResponse>> leaderFut = SettableFuture.create();
+		ListenableFuture<List<FetchKindResponse>> inFlight = inFlightFetches.putIfAbsent(key, leaderFut);
+
+		if (inFlight != null)
+			return follow(inFlight);
+
+		ListenableFuture<List<FetchKindResponse>> fetched;
+		try {
+			fetched = doFetch(resourceId, specifiers);
+		} catch (RuntimeException e) {
+			// The followers waiting on the key are released too
+			inFlightFetches.remove(key);
+			leaderFut.setException(e);
+			throw e;
+		}
+
+		Futures.addCallback(fetched, new FutureCallback<List<FetchKindResponse>>() {
+
+			@Override
+			public void onSuccess(List<FetchKindResponse> result) {
+				inFlightFetches.remove(key);
+				leaderFut.set(result);
+			}
+
+			@Override
+			public void onFailure(Throwable t) {
+				inFlightFetches.remove(key);
+				leaderFut.setException(t);
+			}
+		});
+
+		return follow(leaderFut);
+	}
+
+	/**
+	 * Each caller gets its own future so that cancelling it doesn't affect
+	 * the other callers sharing the same request
+	 */
+	private static <T> ListenableFuture<T> follow(ListenableFuture<T> shared) {
+		final SettableFuture<T> fut = SettableFuture.create();
+		Futures.addCallback(shared, new FutureCallback<T>() {
+
+			@Override
+			public void onSuccess(T result) {
+				fut.set(result);
+			}
+
+			@Override
+			public void onFailure(Throwable t) {
+				fut.setException(t);
+			}
+		});
+		return fut;
+	}
+
+	private ListenableFuture<List<FetchKindResponse>> doFetch(final ResourceID resourceId, final StoreKindSpecifier... specifiers) {
 		final SettableFuture<List<FetchKindResponse>> fetchFut = SettableFuture.create();
 
-		Message message = msgBuilder.newMessage(new FetchRequest(resourceId, Arrays.asList(specifiers)), new DestinationList(resourceId));
+		final FetchCache cache = fetchCache;
+
+		// Cached kinds are fetched only if their generation is changed, both
+		// lists are in the order of the given specifiers
+		final List<FetchKindResponse> cachedResponses = new ArrayList<FetchKindResponse>(specifiers.length);
+		final List<StoreKindSpecifier> reqSpecifiers = new ArrayList<StoreKindSpecifier>(specifiers.length);
+
+		for (StoreKindSpecifier spec : specifiers) {
+			Optional<FetchKindResponse> cached = Optional.absent();
+
+			// Explicit generations set by the caller are not overridden
+			if (cache != null && spec.getGeneration() == 0) {
+				cached = cache.get(resourceId, spec);
+			}
+
+			cachedResponses.add(cached.orNull());
+
+			if (cached.isPresent()) {
+				StoreKindSpecifier condSpec = graph.get(StoreKindSpecifier.class);
+				condSpec.setKind(spec.getKind());
+				condSpec.setValueSpecifier(spec.getValueSpecifier());
+				condSpec.setGeneration(cached.get().getGeneration());
+				reqSpecifiers.add(condSpec);
+			} else {
+				reqSpecifiers.add(spec);
+			}
+		}
+
+		Message message = msgBuilder.newMessage(new FetchRequest(resourceId, reqSpecifiers), getDestination(resourceId));
 		ListenableFuture<Message> ansFut = msgRouter.sendRequestMessage(message);
 
 		Futures.addCallback(ansFut, new FutureCallback<Message>() {
@@ -253,14 +615,56 @@ public class StorageService {
 					for (FetchKindResponse r : answer.getResponses()) {
 						verifyResponse(r, resourceId);
 					}
-					fetchFut.set(answer.getResponses());
 				} catch (GeneralSecurityException e) {
+					// Nothing from an unauthenticated answer is kept
+					if (cache != null) {
+						for (StoreKindSpecifier spec : specifiers) {
+							cache.invalidate(resourceId, spec);
+						}
+					}
 					fetchFut.setException(e);
+					return;
 				}
+
+				shortcuts.answerReceived(resourceId, result.getHeader().getSenderId());
+
+				if (cache == null) {
+					fetchFut.set(answer.getResponses());
+					return;
+				}
+
+				// The responses follow the order of the requested specifiers,
+				// a specifier is skipped by the peer if its kind is not stored
+				// or its generation is unchanged
+				List<FetchKindResponse> responses = answer.getResponses();
+				List<FetchKindResponse> out = new ArrayList<FetchKindResponse>(specifiers.length);
+
+				int next = 0;
+				for (int i = 0; i < specifiers.length; i++) {
+					FetchKindResponse r = null;
+					if (next < responses.size() && isAnswerTo(responses.get(next), reqSpecifiers.get(i))) {
+						r = responses.get(next++);
+						cache.put(resourceId, specifiers[i], r);
+					} else {
+						// Kind omitted by the peer, the cached value is unchanged
+						r = cachedResponses.get(i);
+					}
+					if (r != null) {
+						out.add(r);
+					}
+				}
+
+				fetchFut.set(out);
 			}
 
 			@Override
 			public void onFailure(Throwable t) {
+				if (cache != null && t instanceof ErrorMessageException && ((ErrorMessageException) t).getType() == ErrorType.NOT_FOUND) {
+					for (StoreKindSpecifier spec : specifiers) {
+						cache.invalidate(resourceId, spec);
+					}
+				}
+				getRouteQuery().invalidatePath(resourceId);
 				fetchFut.setException(t);
 			}
 		});
@@ -268,7 +672,94 @@ public class StorageService {
 		return fetchFut;
 	}
 
+	private static boolean isAnswerTo(FetchKindResponse response, StoreKindSpecifier spec) {
+		return response.getKind().getKindId() == spec.getKind().getKindId() && response.getGeneration() != spec.getGeneration();
+	}
+
+	/**
+	 * Subscribe to the changes of the specified kinds of a resource. The
+	 * peer responsible for the resource notifies the listener when the
+	 * generation of a subscribed kind changes, with the new values if
+	 * requested. The subscription is renewed until
+	 * {@link #unsubscribe(ResourceID, ChangeListener)} is called and follows
+	 * the resource when its responsibility moves to another peer.
+	 * 
+	 * @param resourceId
+	 *            the resource to subscribe to
+	 * @param listener
+	 *            the listener of the changes, called by the message
+	 *            processing thread
+	 * @param pushValues
+	 *            if true the notifications carry the new values, otherwise
+	 *            only the new generations
+	 * @param specifiers
+	 *            the kinds to subscribe to
+	 * @return the current data of the subscribed kinds
+	 */
+	public ListenableFuture<List<FetchKindResponse>> subscribe(ResourceID resourceId, ChangeListener listener, boolean pushValues, StoreKindSpecifier... specifiers) {
+		Preconditions.checkNotNull(resourceId);
+		Preconditions.checkNotNull(listener);
+		Preconditions.checkNotNull(specifiers);
+
+		if (resourceId.getData().length > plugin.getResourceIdLength())
+			throw new IllegalArgumentException("Invalid resource-id length");
+
+		return subscriptions.subscribe(resourceId, listener, pushValues, SUBSCRIPTION_LEASE, specifiers);
+	}
+
+	/**
+	 * Cancel the subscriptions of the given listener to the resource
+	 */
+	public void unsubscribe(ResourceID resourceId, ChangeListener listener) {
+		subscriptions.unsubscribe(resourceId, listener);
+	}
+
+	/**
+	 * Listener of the changes of subscribed resources
+	 */
+	public interface ChangeListener {
+
+		/**
+		 * Called when some of the subscribed kinds change, a kind removed
+		 * from the resource is reported with a zero generation
+		 */
+		void onChange(ResourceID resourceId, List<FetchKindResponse> changes);
+	}
+
+	/**
+	 * @return the bytes stored by the local peer for the overlay, as a whole,
+	 *         for each kind and for each storer identity
+	 */
+	public StorageUsage getLocalUsage() {
+		return controller.getUsage();
+	}
+
+	/**
+	 * Enable the caching of fetched data. When enabled, fetch requests carry
+	 * the generation of the cached data and the peer answers only for the
+	 * kinds that changed, the other kinds are returned from the cache without
+	 * verifying their signatures again.
+	 * 
+	 * @param ttl
+	 *            the maximum time a fetched response is kept
+	 * @param unit
+	 *            the time unit of the ttl
+	 * @param maxEntries
+	 *            the maximum number of responses kept
+	 */
+	public void enableFetchCache(long ttl, TimeUnit unit, long maxEntries) {
+		fetchCache = new FetchCache(graph, ttl, unit, maxEntries);
+	}
+
+	public void disableFetchCache() {
+		fetchCache = null;
+	}
+
 	private void verifyResponse(FetchKindResponse r, ResourceID resourceId) throws GeneralSecurityException {
+		verifyResponse(keystore, r, resourceId);
+	}
+
+	static void verifyResponse(Keystore keystore, FetchKindResponse r, ResourceID resourceId) throws GeneralSecurityException {
 		for (StoredData data : r.getValues()) {
 			// Synthetic values are not authenticated
 			if (data.getSignature().getIdentity().getIdentityType() != IdentityType.NONE) {
@@ -277,7 +768,8 @@ public class StorageService {
 					throw new GeneralSecurityException("Data signer certificate not found");
 
 				Certificate signerCert = reloCert.get().getOriginalCertificate();
-				data.verify(signerCert.getPublicKey(), resourceId, r.getKind());
+				if (!data.verify(signerCert.getPublicKey(), resourceId, r.getKind()))
+					throw new SignatureException("Invalid data signature");
 			}
 		}
 	}
@@ -0,0 +1,318 @@
+package com.github.reload.services.storage.local;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+import org.apache.log4j.Logger;
+import com.github.reload.net.MessageRouter;
+import com.github.reload.net.codecs.Message;
+import com.github.reload.net.codecs.MessageBuilder;
+import com.github.reload.net.codecs.content.ContentType;
+import com.github.reload.net.codecs.content.Error.ErrorType;
+import com.github.reload.net.codecs.header.DestinationList;
+import com.github.reload.net.codecs.header.NodeID;
+import com.github.reload.net.codecs.header.ResourceID;
+import com.github.reload.routing.MessageHandlers;
+import com.github.reload.routing.MessageHandlers.MessageHandler;
+import com.github.reload.routing.TopologyPlugin;
+import com.github.reload.services.storage.net.StoreRequest;
+import com.github.reload.services.storage.net.SyncAnswer;
+import com.github.reload.services.storage.net.SyncEntry;
+import com.github.reload.services.storage.net.SyncRequest;
+import com.github.reload.services.storage.net.SyncTreeNode;
+import com.google.common.base.Optional;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+
+/**
+ * Periodically reconciles the data the local peer is responsible for with its
+ * replicas. The peer and each replica build a {@link RangeMerkleTree} over the
+ * range of resources owned by the peer and exchange the hashes of the
+ * mismatching nodes level by level, starting from the root. Only the kinds
+ * whose generation differs in the mismatching leaves are sent again to the
+ * replica, so that in-sync replicas cost a single round trip.
+ * 
+ * The protocol only pushes data from the responsible peer to the replicas:
+ * entries stored only on a replica are not repaired, the responsible peer
+ * being authoritative for its range, and are dropped by the replica when
+ * their lifetime expires.
+ * 
+ */
+@Singleton
+public class AntiEntropyService {
+
+	private static final Logger l = Logger.getRootLogger();
+
+	// Time in milliseconds between two synchronization rounds
+	static final int SYNC_INTERVAL = 60000;
+
+	// Time in milliseconds a replica reuses the tree built for a range
+	static final int TREE_CACHE_TIME = 5000;
+
+	@Inject
+	TopologyPlugin topology;
+
+	@Inject
+	MessageRouter router;
+
+	@Inject
+	MessageBuilder msgBuilder;
+
+	@Inject
+	DataStorage storage;
+
+	@Inject
+	@Named("packetsLooper")
+	Executor packetsLooper;
+
+	private RangeMerkleTree cachedTree;
+	private long cachedTreeTime;
+
+	@Inject
+	public AntiEntropyService(MessageHandlers msgHandlers, @Named("scheduler") ScheduledExecutorService scheduler) {
+		msgHandlers.register(this);
+		scheduler.scheduleWithFixedDelay(new Runnable() {
+
+			@Override
+			public void run() {
+				// Storage is accessed only by the packets looper
+				packetsLooper.execute(new Runnable() {
+
+					@Override
+					public void run() {
+						synchronize();
+					}
+				});
+			}
+		}, SYNC_INTERVAL, SYNC_INTERVAL, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Start a synchronization round with all the replicas of the resources
+	 * the local peer is responsible for
+	 */
+	void synchronize() {
+		Set<NodeID> replicas = new HashSet<NodeID>();
+		List<ResourceID> owned = new ArrayList<ResourceID>();
+
+		for (ResourceID resId : storage.keySet()) {
+			if (topology.isLocalPeerResponsible(resId)) {
+				owned.add(resId);
+				replicas.addAll(topology.getReplicaNodes(resId));
+			}
+		}
+
+		if (owned.isEmpty())
+			return;
+
+		ResourceID[] range = getRange(owned);
+
+		RangeMerkleTree tree = new RangeMerkleTree(range[0], range[1], storage);
+
+		for (NodeID replica : replicas) {
+			sendSyncRequest(replica, tree, (short) 0, Collections.singletonList(tree.getRoot()));
+		}
+	}
+
+	/**
+	 * Computes the smallest range of the ring containing all the given
+	 * resources, that is the ring minus the largest gap between two
+	 * consecutive resources
+	 */
+	static ResourceID[] getRange(List<ResourceID> resources) {
+		Collections.sort(resources);
+
+		int size = resources.size();
+		BigInteger ringSize = BigInteger.ONE.shiftLeft(resources.get(0).getData().length * 8);
+
+		int gapEnd = 0;
+		BigInteger maxGap = BigInteger.valueOf(-1);
+
+		for (int i = 0; i < size; i++) {
+			BigInteger prev = new BigInteger(1, resources.get((i + size - 1) % size).getData());
+			BigInteger cur = new BigInteger(1, resources.get(i).getData());
+			BigInteger gap = cur.subtract(prev).mod(ringSize);
+			if (gap.compareTo(maxGap) > 0) {
+				maxGap = gap;
+				gapEnd = i;
+			}
+		}
+
+		return new ResourceID[]{resources.get(gapEnd),
+								resources.get((gapEnd + size - 1) % size)};
+	}
+
+	private void sendSyncRequest(final NodeID replica, final RangeMerkleTree tree, final short level, List<SyncTreeNode> nodes) {
+		SyncRequest req = new SyncRequest(tree.getRangeStart(), tree.getRangeEnd(), level, nodes);
+		Message msg = msgBuilder.newMessage(req, new DestinationList(replica));
+
+		ListenableFuture<Message> ansFut = router.sendRequestMessage(msg);
+
+		Futures.addCallback(ansFut, new FutureCallback<Message>() {
+
+			@Override
+			public void onSuccess(final Message result) {
+				packetsLooper.execute(new Runnable() {
+
+					@Override
+					public void run() {
+						handleSyncAnswer(replica, tree, level, (SyncAnswer) result.getContent());
+					}
+				});
+			}
+
+			@Override
+			public void onFailure(Throwable t) {
+				l.debug(String.format("Synchronization with replica %s failed", replica), t);
+			}
+		});
+	}
+
+	private void handleSyncAnswer(NodeID replica, RangeMerkleTree tree, short reqLevel, SyncAnswer answer) {
+		// Answer to a leaf level request, the answer nodes are the leaves
+		// still mismatching on the replica
+		if (reqLevel == RangeMerkleTree.LEAF_LEVEL) {
+			pushMissingData(replica, tree, answer);
+			return;
+		}
+
+		List<SyncTreeNode> mismatching = new ArrayList<SyncTreeNode>();
+		for (SyncTreeNode n : answer.getNodes()) {
+			if (!RangeMerkleTree.isValidNode(answer.getLevel(), n.getIndex())) {
+				l.debug(String.format("Invalid sync tree node from replica %s ignored", replica));
+				continue;
+			}
+			if (!tree.isMatching(answer.getLevel(), n)) {
+				mismatching.add(n);
+			}
+		}
+
+		if (mismatching.isEmpty())
+			return;
+
+		sendSyncRequest(replica, tree, answer.getLevel(), mismatching);
+	}
+
+	private void pushMissingData(NodeID replica, RangeMerkleTree tree, SyncAnswer answer) {
+		Set<SyncEntry> replicaEntries = new HashSet<SyncEntry>(answer.getEntries());
+
+		Map<ResourceID, List<Long>> outdated = new HashMap<ResourceID, List<Long>>();
+
+		for (SyncTreeNode leaf : answer.getNodes()) {
+			for (SyncEntry e : tree.getEntries(leaf.getIndex())) {
+				if (replicaEntries.contains(e)) {
+					continue;
+				}
+				List<Long> kinds = outdated.get(e.getResourceId());
+				if (kinds == null) {
+					kinds = new ArrayList<Long>();
+					outdated.put(e.getResourceId(), kinds);
+				}
+				kinds.add(e.getKindId());
+			}
+		}
+
+		for (Entry<ResourceID, List<Long>> e : outdated.entrySet()) {
+			pushData(replica, e.getKey(), e.getValue());
+		}
+	}
+
+	private void pushData(NodeID replica, ResourceID resId, List<Long> kinds) {
+		int replNum = topology.getReplicaNodes(resId).indexOf(replica) + 1;
+
+		// The node is not a replica for this resource anymore
+		if (replNum == 0)
+			return;
+
+		Optional<Map<Long, StoredKindData>> res = storage.get(resId);
+		if (!res.isPresent())
+			return;
+
+		List<StoredKindData> data = new ArrayList<StoredKindData>();
+		for (Long k : kinds) {
+			StoredKindData kd = res.get().get(k);
+			if (kd != null) {
+				data.add(kd);
+			}
+		}
+
+		if (data.isEmpty())
+			return;
+
+		StoreRequest req = new StoreRequest(resId, (short) replNum, data);
+		Message msg = msgBuilder.newMessage(req, new DestinationList(replica));
+		router.sendRequestMessage(msg);
+	}
+
+	@MessageHandler(ContentType.SYNC_REQ)
+	private void handleSyncRequest(Message requestMessage) {
+		SyncRequest req = (SyncRequest) requestMessage.getContent();
+		if (!isValid(req)) {
+			router.sendError(requestMessage.getHeader(), ErrorType.INVALID_MESSAGE, "Invalid sync tree node");
+			return;
+		}
+		router.sendAnswer(requestMessage.getHeader(), answer(req));
+	}
+
+	/**
+	 * @return true if the requested level and all the requested nodes exist in
+	 *         the tree
+	 */
+	static boolean isValid(SyncRequest req) {
+		if (req.getLevel() < 0 || req.getLevel() > RangeMerkleTree.LEAF_LEVEL)
+			return false;
+		for (SyncTreeNode n : req.getNodes()) {
+			if (!RangeMerkleTree.isValidNode(req.getLevel(), n.getIndex()))
+				return false;
+		}
+		return true;
+	}
+
+	SyncAnswer answer(SyncRequest req) {
+		RangeMerkleTree tree = getTree(req.getRangeStart(), req.getRangeEnd());
+
+		int level = req.getLevel();
+
+		List<SyncTreeNode> nodes = new ArrayList<SyncTreeNode>();
+		List<SyncEntry> entries = new ArrayList<SyncEntry>();
+
+		for (SyncTreeNode n : req.getNodes()) {
+			if (tree.isMatching(level, n)) {
+				continue;
+			}
+
+			if (level < RangeMerkleTree.LEAF_LEVEL) {
+				nodes.addAll(tree.getChildren(level, n.getIndex()));
+			} else {
+				nodes.add(tree.getNode(level, n.getIndex()));
+				entries.addAll(tree.getEntries(n.getIndex()));
+			}
+		}
+
+		short ansLevel = (short) Math.min(level + 1, RangeMerkleTree.LEAF_LEVEL);
+
+		return new SyncAnswer(ansLevel, nodes, entries);
+	}
+
+	private RangeMerkleTree getTree(ResourceID rangeStart, ResourceID rangeEnd) {
+		long now = System.currentTimeMillis();
+		if (cachedTree == null || now - cachedTreeTime > TREE_CACHE_TIME || !cachedTree.getRangeStart().equals(rangeStart) || !cachedTree.getRangeEnd().equals(rangeEnd)) {
+			cachedTree = new RangeMerkleTree(rangeStart, rangeEnd, storage);
+			cachedTreeTime = now;
+		}
+		return cachedTree;
+	}
+}
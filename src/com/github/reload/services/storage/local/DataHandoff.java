@@ -0,0 +1,362 @@
+package com.github.reload.services.storage.local;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+import org.apache.log4j.Logger;
+import com.github.reload.Overlay;
+import com.github.reload.net.ConnectionManager.ConnectionStatusEvent;
+import com.github.reload.net.MessageRouter;
+import com.github.reload.net.codecs.Message;
+import com.github.reload.net.codecs.MessageBuilder;
+import com.github.reload.net.codecs.header.DestinationList;
+import com.github.reload.net.codecs.header.NodeID;
+import com.github.reload.net.codecs.header.ResourceID;
+import com.github.reload.routing.TopologyPlugin;
+import com.github.reload.routing.TopologyPlugin.TopologyEvent;
+import com.github.reload.services.storage.net.StoreRequest;
+import com.google.common.base.Optional;
+import com.google.common.collect.Maps;
+import com.google.common.eventbus.EventBus;
+import com.google.common.eventbus.Subscribe;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListenableFutureTask;
+import com.google.common.util.concurrent.SettableFuture;
+
+/**
+ * Transfers the stored data to the peers that become responsible for it. When
+ * a neighbor joins, the resources now owned by the new neighbor are streamed
+ * to it; when the local peer leaves, all the resources it is responsible for
+ * are streamed to their first replica. Each transfer is a session that keeps a
+ * bounded number of replica stores in flight and, when interrupted, is
+ * resumed later with the resources not acknowledged yet.
+ * 
+ */
+@Singleton
+public class DataHandoff {
+
+	private static final Logger l = Logger.getRootLogger();
+
+	// Maximum number of store requests waiting for an answer in each session
+	static final int MAX_IN_FLIGHT = 16;
+
+	// Time in milliseconds before an interrupted session is resumed
+	static final int RESUME_DELAY = 2000;
+
+	// Maximum number of consecutive interruptions before a session is dropped
+	static final int MAX_INTERRUPTIONS = 5;
+
+	@Inject
+	Overlay overlay;
+
+	@Inject
+	TopologyPlugin topology;
+
+	@Inject
+	MessageRouter router;
+
+	@Inject
+	MessageBuilder msgBuilder;
+
+	@Inject
+	DataStorage storage;
+
+	@Inject
+	DataReplicator replicator;
+
+	@Inject
+	@Named("packetsLooper")
+	Executor packetsLooper;
+
+	// Sessions are accessed only by the packets looper
+	private final Map<NodeID, HandoffSession> sessions = Maps.newHashMap();
+
+	private final ScheduledExecutorService scheduler;
+
+	@Inject
+	public DataHandoff(EventBus eventBus, @Named("scheduler") ScheduledExecutorService scheduler) {
+		this.scheduler = scheduler;
+		eventBus.register(this);
+	}
+
+	@Subscribe
+	public void handleTopologyEvent(final TopologyEvent event) {
+		// The local peer leaves the overlay only after its data is transferred
+		if (event.type == TopologyEvent.Type.LOCAL_LEAVING) {
+			event.delayLeave(handoffAll());
+			return;
+		}
+
+		packetsLooper.execute(new Runnable() {
+
+			@Override
+			public void run() {
+				switch (event.type) {
+					case NEIGHBOR_JOINED :
+						handoffTo(event.node, getMovedResources(event.node));
+						break;
+					case NEIGHBOR_LEFT :
+						takeOver();
+						break;
+					default :
+						break;
+				}
+			}
+		});
+	}
+
+	@Subscribe
+	public void handleConnectionEvent(final ConnectionStatusEvent event) {
+		if (event.type != ConnectionStatusEvent.Type.ESTABLISHED)
+			return;
+
+		// An interrupted session is resumed as soon as the peer is reachable
+		packetsLooper.execute(new Runnable() {
+
+			@Override
+			public void run() {
+				HandoffSession s = sessions.get(event.connection.getNodeId());
+				if (s != null && s.resumeScheduled) {
+					s.resumeScheduled = false;
+					s.sendNext();
+				}
+			}
+		});
+	}
+
+	/**
+	 * @return the resources whose responsibility moved from the local peer to
+	 *         the given new neighbor
+	 */
+	private Set<ResourceID> getMovedResources(NodeID newNode) {
+		Set<ResourceID> moved = new LinkedHashSet<ResourceID>();
+		List<NodeID> candidates = Arrays.asList(overlay.getLocalNodeId(), newNode);
+		for (ResourceID resId : storage.keySet()) {
+			if (!topology.isLocalPeerResponsible(resId) && topology.getCloserId(resId, candidates).equals(newNode)) {
+				moved.add(resId);
+			}
+		}
+		return moved;
+	}
+
+	/**
+	 * Replicate the resources the local peer became responsible for after a
+	 * neighbor left, the new replica set misses them
+	 */
+	private void takeOver() {
+		for (ResourceID resId : storage.keySet()) {
+			if (!topology.isLocalPeerResponsible(resId)) {
+				continue;
+			}
+			Optional<Map<Long, StoredKindData>> res = storage.get(resId);
+			if (res.isPresent()) {
+				replicator.markDirty(resId, res.get().keySet());
+			}
+		}
+	}
+
+	/**
+	 * Transfer all the resources the local peer is responsible for to their
+	 * first replica node, to be called before the local peer leaves the
+	 * overlay
+	 * 
+	 * @return a future completed when all the transfers are completed, failed
+	 *         if some resources could not be transferred
+	 */
+	public ListenableFuture<List<Void>> handoffAll() {
+		// Storage and sessions are accessed only by the packets looper
+		ListenableFutureTask<ListenableFuture<List<Void>>> task = ListenableFutureTask.create(new Callable<ListenableFuture<List<Void>>>() {
+
+			@Override
+			public ListenableFuture<List<Void>> call() {
+				return startHandoffAll();
+			}
+		});
+		packetsLooper.execute(task);
+		return Futures.dereference(task);
+	}
+
+	private ListenableFuture<List<Void>> startHandoffAll() {
+		Map<NodeID, Set<ResourceID>> targets = Maps.newHashMap();
+
+		for (ResourceID resId : storage.keySet()) {
+			if (!topology.isLocalPeerResponsible(resId)) {
+				continue;
+			}
+			List<NodeID> replicas = topology.getReplicaNodes(resId);
+			if (replicas.isEmpty()) {
+				continue;
+			}
+			Set<ResourceID> res = targets.get(replicas.get(0));
+			if (res == null) {
+				res = new LinkedHashSet<ResourceID>();
+				targets.put(replicas.get(0), res);
+			}
+			res.add(resId);
+		}
+
+		List<ListenableFuture<Void>> transfers = new ArrayList<ListenableFuture<Void>>();
+		for (Map.Entry<NodeID, Set<ResourceID>> e : targets.entrySet()) {
+			transfers.add(handoffTo(e.getKey(), e.getValue()));
+		}
+
+		return Futures.allAsList(transfers);
+	}
+
+	/**
+	 * Stream the given resources to the given node, if a transfer to the same
+	 * node is already running the resources are appended to it
+	 */
+	ListenableFuture<Void> handoffTo(NodeID target, Collection<ResourceID> resources) {
+		HandoffSession s = sessions.get(target);
+		if (s == null) {
+			s = new HandoffSession(target);
+			sessions.put(target, s);
+		}
+
+		s.pending.addAll(resources);
+
+		if (!resources.isEmpty()) {
+			l.debug(String.format("Handoff of %d resources to %s started", resources.size(), target));
+		}
+
+		s.sendNext();
+		return s.completion;
+	}
+
+	/**
+	 * @return the number of resources still to be transferred
+	 */
+	public int getPendingResources() {
+		int count = 0;
+		for (HandoffSession s : sessions.values()) {
+			count += s.pending.size() + s.inFlight;
+		}
+		return count;
+	}
+
+	private class HandoffSession {
+
+		final NodeID target;
+		final Set<ResourceID> pending = new LinkedHashSet<ResourceID>();
+		final SettableFuture<Void> completion = SettableFuture.create();
+		int inFlight = 0;
+		int interruptions = 0;
+		boolean resumeScheduled = false;
+
+		public HandoffSession(NodeID target) {
+			this.target = target;
+		}
+
+		void sendNext() {
+			Iterator<ResourceID> i = pending.iterator();
+			while (!resumeScheduled && inFlight < MAX_IN_FLIGHT && i.hasNext()) {
+				ResourceID resId = i.next();
+				i.remove();
+				send(resId);
+			}
+
+			if (inFlight == 0 && pending.isEmpty()) {
+				sessions.remove(target);
+				completion.set(null);
+				l.debug(String.format("Handoff to %s completed", target));
+			}
+		}
+
+		private void send(final ResourceID resId) {
+			Optional<Map<Long, StoredKindData>> res = storage.get(resId);
+
+			// Removed or expired in the meantime
+			if (!res.isPresent() || res.get().isEmpty())
+				return;
+
+			// The target is not a replica in the local view for joining nodes,
+			// the data is sent as the first replica to keep its generation and
+			// the target takes it over as the new owner
+			int replNum = Math.max(topology.getReplicaNodes(resId).indexOf(target) + 1, 1);
+
+			StoreRequest req = new StoreRequest(resId, (short) replNum, res.get().values());
+			Message msg = msgBuilder.newMessage(req, new DestinationList(target));
+
+			inFlight++;
+
+			Futures.addCallback(router.sendRequestMessage(msg), new FutureCallback<Message>() {
+
+				@Override
+				public void onSuccess(Message result) {
+					packetsLooper.execute(new Runnable() {
+
+						@Override
+						public void run() {
+							inFlight--;
+							interruptions = 0;
+							sendNext();
+						}
+					});
+				}
+
+				@Override
+				public void onFailure(final Throwable t) {
+					packetsLooper.execute(new Runnable() {
+
+						@Override
+						public void run() {
+							inFlight--;
+							// Keep the resource to resume from it
+							pending.add(resId);
+							interrupted(t);
+						}
+					});
+				}
+			});
+		}
+
+		private void interrupted(Throwable t) {
+			if (resumeScheduled)
+				return;
+
+			interruptions++;
+
+			if (interruptions > MAX_INTERRUPTIONS || scheduler.isShutdown()) {
+				l.debug(String.format("Handoff to %s failed, %d resources not transferred", target, pending.size()), t);
+				sessions.remove(target);
+				completion.setException(t);
+				return;
+			}
+
+			l.debug(String.format("Handoff to %s interrupted, resuming in %d ms", target, RESUME_DELAY), t);
+
+			resumeScheduled = true;
+			scheduler.schedule(new Runnable() {
+
+				@Override
+				public void run() {
+					packetsLooper.execute(new Runnable() {
+
+						@Override
+						public void run() {
+							if (resumeScheduled) {
+								resumeScheduled = false;
+								sendNext();
+							}
+						}
+					});
+				}
+			}, RESUME_DELAY, TimeUnit.MILLISECONDS);
+		}
+	}
+}
@@ -0,0 +1,325 @@
+package com.github.reload.services.storage.local;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+import org.apache.log4j.Logger;
+import com.github.reload.net.MessageRouter;
+import com.github.reload.net.codecs.Message;
+import com.github.reload.net.codecs.MessageBuilder;
+import com.github.reload.net.codecs.header.DestinationList;
+import com.github.reload.net.codecs.header.NodeID;
+import com.github.reload.net.codecs.header.ResourceID;
+import com.github.reload.routing.TopologyPlugin;
+import com.github.reload.services.storage.net.StoreRequest;
+import com.google.common.base.Optional;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+
+/**
+ * Replicates locally stored data to the replica nodes. Stores are not
+ * replicated immediately: the modified kinds of each resource are collected
+ * and sent to the replicas once per replication window, so that multiple
+ * updates of the same resource in the same window produce a single replica
+ * store containing only the kinds that changed.
+ * 
+ */
+@Singleton
+public class DataReplicator {
+
+	private static final Logger l = Logger.getRootLogger();
+
+	// Time in milliseconds the updates are collected before being replicated
+	static final int REPLICATION_WINDOW = 100;
+
+	// Maximum number of replication attempts of a resource update to a replica
+	static final int MAX_ATTEMPTS = 3;
+
+	@Inject
+	TopologyPlugin topology;
+
+	@Inject
+	MessageRouter router;
+
+	@Inject
+	MessageBuilder msgBuilder;
+
+	@Inject
+	DataStorage storage;
+
+	@Inject
+	@Named("packetsLooper")
+	Executor packetsLooper;
+
+	private final ConcurrentMap<ResourceID, DirtyResource> dirtyResources = Maps.newConcurrentMap();
+
+	// Updates failed on single replicas, accessed only by the packets looper
+	private final Map<ResourceID, Map<NodeID, DirtyResource>> failedUpdates = new HashMap<ResourceID, Map<NodeID, DirtyResource>>();
+
+	private final AtomicLong sentRequests = new AtomicLong();
+	private final AtomicLong ackedRequests = new AtomicLong();
+	private final AtomicLong failedRequests = new AtomicLong();
+	private final AtomicLong pendingRequests = new AtomicLong();
+	private final AtomicLong lastAckLag = new AtomicLong();
+
+	@Inject
+	public DataReplicator(@Named("scheduler") ScheduledExecutorService scheduler) {
+		scheduler.scheduleWithFixedDelay(new Runnable() {
+
+			@Override
+			public void run() {
+				// Storage is accessed only by the packets looper
+				packetsLooper.execute(new Runnable() {
+
+					@Override
+					public void run() {
+						flush();
+					}
+				});
+			}
+		}, REPLICATION_WINDOW, REPLICATION_WINDOW, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Mark the given kinds of the resource as modified, they will be sent to
+	 * the replica nodes at the end of the current replication window
+	 */
+	public void markDirty(ResourceID resourceId, Collection<Long> kinds) {
+		DirtyResource d = dirtyResources.get(resourceId);
+		if (d == null) {
+			DirtyResource newDirty = new DirtyResource();
+			d = dirtyResources.putIfAbsent(resourceId, newDirty);
+			if (d == null) {
+				d = newDirty;
+			}
+		}
+		d.kinds.addAll(kinds);
+	}
+
+	void flush() {
+		Map<ResourceID, DirtyResource> updated = new HashMap<ResourceID, DirtyResource>();
+
+		Iterator<Entry<ResourceID, DirtyResource>> i = dirtyResources.entrySet().iterator();
+		while (i.hasNext()) {
+			Entry<ResourceID, DirtyResource> e = i.next();
+			i.remove();
+			updated.put(e.getKey(), e.getValue());
+		}
+
+		Set<ResourceID> resources = new HashSet<ResourceID>(updated.keySet());
+		resources.addAll(failedUpdates.keySet());
+
+		Map<NodeID, List<StoreRequest>> replicaRequests = new HashMap<NodeID, List<StoreRequest>>();
+		Map<StoreRequest, DirtyResource> requestSources = new HashMap<StoreRequest, DirtyResource>();
+
+		for (ResourceID resourceId : resources) {
+			DirtyResource dirty = updated.get(resourceId);
+			Map<NodeID, DirtyResource> failed = failedUpdates.remove(resourceId);
+
+			Optional<Map<Long, StoredKindData>> res = storage.get(resourceId);
+
+			if (!res.isPresent()) {
+				continue;
+			}
+
+			short replNum = 0;
+			for (NodeID repl : topology.getReplicaNodes(resourceId)) {
+				replNum++;
+
+				// Failed updates of nodes not replicas anymore are dropped
+				DirtyResource replicaUpdate = getReplicaUpdate(dirty, failed != null ? failed.get(repl) : null);
+				if (replicaUpdate == null) {
+					continue;
+				}
+
+				List<StoredKindData> changedData = new ArrayList<StoredKindData>();
+				for (Long kindId : replicaUpdate.kinds) {
+					StoredKindData kd = res.get().get(kindId);
+					if (kd != null) {
+						changedData.add(kd);
+					}
+				}
+
+				if (changedData.isEmpty()) {
+					continue;
+				}
+
+				StoreRequest req = new StoreRequest(resourceId, replNum, changedData);
+				List<StoreRequest> reqs = replicaRequests.get(repl);
+				if (reqs == null) {
+					reqs = new ArrayList<StoreRequest>();
+					replicaRequests.put(repl, reqs);
+				}
+				reqs.add(req);
+				requestSources.put(req, replicaUpdate);
+			}
+		}
+
+		// Requests for the same replica are sent back to back without waiting
+		// for the answers of the previous ones
+		for (Entry<NodeID, List<StoreRequest>> e : replicaRequests.entrySet()) {
+			for (StoreRequest req : e.getValue()) {
+				send(e.getKey(), req, requestSources.get(req));
+			}
+		}
+	}
+
+	/**
+	 * Merge the kinds modified in the last window with the kinds whose
+	 * replication to the same replica failed, each replica update counts its
+	 * own attempts
+	 * 
+	 * @return the update to send to the replica, or null if there is nothing
+	 *         to send
+	 */
+	private static DirtyResource getReplicaUpdate(DirtyResource dirty, DirtyResource failed) {
+		if (dirty == null && failed == null)
+			return null;
+
+		DirtyResource update;
+		if (failed != null) {
+			update = new DirtyResource(failed.dirtySince, failed.attempts);
+			update.kinds.addAll(failed.kinds);
+		} else {
+			update = new DirtyResource(dirty.dirtySince, 0);
+		}
+
+		if (dirty != null) {
+			update.kinds.addAll(dirty.kinds);
+		}
+
+		return update;
+	}
+
+	private void send(final NodeID replica, final StoreRequest req, final DirtyResource source) {
+		Message msg = msgBuilder.newMessage(req, new DestinationList(replica));
+
+		sentRequests.incrementAndGet();
+		pendingRequests.incrementAndGet();
+
+		ListenableFuture<Message> ansFut = router.sendRequestMessage(msg);
+
+		Futures.addCallback(ansFut, new FutureCallback<Message>() {
+
+			@Override
+			public void onSuccess(Message result) {
+				pendingRequests.decrementAndGet();
+				ackedRequests.incrementAndGet();
+				lastAckLag.set(System.currentTimeMillis() - source.dirtySince);
+			}
+
+			@Override
+			public void onFailure(final Throwable t) {
+				pendingRequests.decrementAndGet();
+				failedRequests.incrementAndGet();
+
+				packetsLooper.execute(new Runnable() {
+
+					@Override
+					public void run() {
+						retry(req.getResourceId(), replica, source, t);
+					}
+				});
+			}
+		});
+	}
+
+	/**
+	 * Queue the failed update to be sent again to the same replica in the next
+	 * window, the other replicas of the resource are not affected
+	 */
+	private void retry(ResourceID resourceId, NodeID replica, DirtyResource failed, Throwable cause) {
+		if (failed.attempts + 1 >= MAX_ATTEMPTS) {
+			l.debug(String.format("Replication of %s to %s failed, giving up", resourceId, replica), cause);
+			return;
+		}
+
+		l.debug(String.format("Replication of %s to %s failed, retrying in next window", resourceId, replica), cause);
+		failed.attempts++;
+
+		Map<NodeID, DirtyResource> replicas = failedUpdates.get(resourceId);
+		if (replicas == null) {
+			replicas = new HashMap<NodeID, DirtyResource>();
+			failedUpdates.put(resourceId, replicas);
+		}
+
+		DirtyResource d = replicas.get(replica);
+		// Another update for the same replica failed too, it will carry the
+		// failed kinds
+		if (d != null) {
+			d.kinds.addAll(failed.kinds);
+			d.attempts = Math.max(d.attempts, failed.attempts);
+		} else {
+			replicas.put(replica, failed);
+		}
+	}
+
+	/**
+	 * @return the number of resources waiting for the end of the replication
+	 *         window
+	 */
+	public int getDirtyResources() {
+		return dirtyResources.size();
+	}
+
+	/**
+	 * @return the number of replica stores sent and not yet answered
+	 */
+	public long getPendingRequests() {
+		return pendingRequests.get();
+	}
+
+	public long getSentRequests() {
+		return sentRequests.get();
+	}
+
+	public long getAckedRequests() {
+		return ackedRequests.get();
+	}
+
+	public long getFailedRequests() {
+		return failedRequests.get();
+	}
+
+	/**
+	 * @return the time in milliseconds between the first local modification of
+	 *         a resource and the replica acknowledgement for the last acked
+	 *         replica store
+	 */
+	public long getReplicationLag() {
+		return lastAckLag.get();
+	}
+
+	private static class DirtyResource {
+
+		final long dirtySince;
+		final Set<Long> kinds = Sets.newConcurrentHashSet();
+		int attempts;
+
+		public DirtyResource() {
+			this(System.currentTimeMillis(), 0);
+		}
+
+		public DirtyResource(long dirtySince, int attempts) {
+			this.dirtySince = dirtySince;
+			this.attempts = attempts;
+		}
+	}
+}
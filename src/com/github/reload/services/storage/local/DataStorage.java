@@ -1,5 +1,6 @@
 package com.github.reload.services.storage.local;
 
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import com.github.reload.net.codecs.header.ResourceID;
@@ -17,6 +18,19 @@ public interface DataStorage {
 
 	public Set<ResourceID> keySet();
 
+	/**
+	 * @return the bytes currently stored, updated as values are stored,
+	 *         replaced, removed or expired
+	 */
+	public StorageUsage getUsage();
+
 	public Set<ResourceID> getResourcesByKind(long kindId);
 
+	/**
+	 * @return the stored resources of the given kind that immediately follow
+	 *         and precede the given resource in the ring (at most two ids,
+	 *         the same id if it is stored), empty if the kind is not stored
+	 */
+	public List<ResourceID> getAdjacentResources(long kindId, ResourceID resId);
+
 }
\ No newline at end of file
@@ -1,15 +1,19 @@
 package com.github.reload.services.storage.local;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
+import java.util.NavigableSet;
 import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListSet;
 import javax.inject.Singleton;
 import com.github.reload.net.codecs.header.ResourceID;
 import com.google.common.base.Optional;
-import com.google.common.collect.LinkedHashMultimap;
 import com.google.common.collect.Maps;
-import com.google.common.collect.SetMultimap;
 
 /**
  * The data stored locally. It stores the data the peer is
@@ -21,17 +25,60 @@ public class MemoryStorage implements DataStorage {
 
 	private final Map<ResourceID, Map<Long, StoredKindData>> storedResources = Maps.newConcurrentMap();
 
-	private final SetMultimap<Long, ResourceID> storedKinds = LinkedHashMultimap.create();
+	// For each kind the resources that store values of that kind, kept sorted
+	// in ring order to answer closest resource lookups in logarithmic time
+	private final ConcurrentMap<Long, NavigableSet<ResourceID>> storedKinds = Maps.newConcurrentMap();
+
+	private final StorageUsage usage = new StorageUsage();
 
 	@Override
 	public Optional<Map<Long, StoredKindData>> put(ResourceID resourceId, Map<Long, StoredKindData> values) {
-		updateKindToResource(values.keySet(), resourceId);
-		return Optional.fromNullable(storedResources.put(resourceId, values));
+		Optional<Map<Long, StoredKindData>> old = Optional.fromNullable(storedResources.put(resourceId, values));
+
+		addToKindIndex(values.keySet(), resourceId);
+
+		// Kinds of the replaced resource not present anymore must be pruned
+		if (old.isPresent()) {
+			for (Entry<Long, StoredKindData> e : old.get().entrySet()) {
+				usage.remove(e.getValue());
+				if (!values.containsKey(e.getKey())) {
+					removeFromKindIndex(e.getKey(), resourceId);
+				}
+			}
+		}
+
+		for (StoredKindData kindData : values.values()) {
+			usage.add(kindData);
+		}
+
+		return old;
 	}
 
-	private void updateKindToResource(Set<Long> kinds, ResourceID resId) {
+	private void addToKindIndex(Set<Long> kinds, ResourceID resId) {
 		for (Long k : kinds) {
-			storedKinds.put(k, resId);
+			NavigableSet<ResourceID> resources = storedKinds.get(k);
+			if (resources == null) {
+				NavigableSet<ResourceID> newSet = new ConcurrentSkipListSet<ResourceID>();
+				resources = storedKinds.putIfAbsent(k, newSet);
+				if (resources == null) {
+					resources = newSet;
+				}
+			}
+			resources.add(resId);
+		}
+	}
+
+	private void removeFromKindIndex(Long kind, ResourceID resId) {
+		NavigableSet<ResourceID> resources = storedKinds.get(kind);
+		if (resources == null)
+			return;
+
+		resources.remove(resId);
+
+		// A concurrent store may have added the kind back in the meantime
+		Map<Long, StoredKindData> current = storedResources.get(resId);
+		if (current != null && current.containsKey(kind)) {
+			resources.add(resId);
 		}
 	}
 
@@ -40,27 +87,45 @@ public class MemoryStorage implements DataStorage {
 		Optional<Map<Long, StoredKindData>> res = Optional.fromNullable(storedResources.get(resId));
 
 		if (res.isPresent()) {
-			deleteExpired(res.get());
+			deleteExpired(resId, res.get());
 		}
 
 		return res;
 	}
 
-	private void deleteExpired(Map<Long, StoredKindData> res) {
-		for (StoredKindData kd : res.values()) {
-			Iterator<StoredData> i = kd.getValues().iterator();
+	private void deleteExpired(ResourceID resId, Map<Long, StoredKindData> res) {
+		Iterator<Entry<Long, StoredKindData>> kinds = res.entrySet().iterator();
+		while (kinds.hasNext()) {
+			Entry<Long, StoredKindData> e = kinds.next();
+			Iterator<StoredData> i = e.getValue().getValues().iterator();
 			while (i.hasNext()) {
 				StoredData d = i.next();
 				if (d.isExpired()) {
 					i.remove();
+					usage.remove(e.getKey(), d);
 				}
 			}
+
+			// Kinds without values are not stored anymore by this resource
+			if (e.getValue().getValues().isEmpty()) {
+				kinds.remove();
+				removeFromKindIndex(e.getKey(), resId);
+			}
 		}
 	}
 
 	@Override
 	public Optional<Map<Long, StoredKindData>> remove(ResourceID resourceId) {
-		return Optional.fromNullable(storedResources.remove(resourceId));
+		Optional<Map<Long, StoredKindData>> removed = Optional.fromNullable(storedResources.remove(resourceId));
+
+		if (removed.isPresent()) {
+			for (Entry<Long, StoredKindData> e : removed.get().entrySet()) {
+				usage.remove(e.getValue());
+				removeFromKindIndex(e.getKey(), resourceId);
+			}
+		}
+
+		return removed;
 	}
 
 	@Override
@@ -68,6 +133,11 @@ public class MemoryStorage implements DataStorage {
 		return storedResources.size();
 	}
 
+	@Override
+	public StorageUsage getUsage() {
+		return usage;
+	}
+
 	@Override
 	public Set<ResourceID> keySet() {
 		return Collections.unmodifiableSet(storedResources.keySet());
@@ -75,6 +145,51 @@ public class MemoryStorage implements DataStorage {
 
 	@Override
 	public Set<ResourceID> getResourcesByKind(long kindId) {
-		return storedKinds.get(kindId);
+		NavigableSet<ResourceID> resources = storedKinds.get(kindId);
+		if (resources == null)
+			return Collections.emptySet();
+		return Collections.unmodifiableSet(resources);
+	}
+
+	@Override
+	public List<ResourceID> getAdjacentResources(long kindId, ResourceID resId) {
+		NavigableSet<ResourceID> resources = storedKinds.get(kindId);
+
+		List<ResourceID> out = new ArrayList<ResourceID>(2);
+
+		if (resources == null || resources.isEmpty())
+			return out;
+
+		// The ring wraps around: if no id follows (or precedes) the requested
+		// one the adjacent is the first (or last) id in the ring
+		ResourceID ceiling = resources.ceiling(resId);
+		if (ceiling == null) {
+			ceiling = firstOrNull(resources);
+		}
+
+		ResourceID floor = resources.floor(resId);
+		if (floor == null) {
+			floor = lastOrNull(resources);
+		}
+
+		if (ceiling != null) {
+			out.add(ceiling);
+		}
+
+		if (floor != null && !floor.equals(ceiling)) {
+			out.add(floor);
+		}
+
+		return out;
+	}
+
+	private static ResourceID firstOrNull(NavigableSet<ResourceID> set) {
+		Iterator<ResourceID> i = set.iterator();
+		return i.hasNext() ? i.next() : null;
+	}
+
+	private static ResourceID lastOrNull(NavigableSet<ResourceID> set) {
+		Iterator<ResourceID> i = set.descendingIterator();
+		return i.hasNext() ? i.next() : null;
 	}
-}
\ No newline at end of file
+}
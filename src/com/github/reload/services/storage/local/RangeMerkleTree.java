@@ -0,0 +1,187 @@
+package com.github.reload.services.storage.local;
+
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import com.github.reload.crypto.CryptoHelper;
+import com.github.reload.net.codecs.header.ResourceID;
+import com.github.reload.services.storage.net.SyncEntry;
+import com.github.reload.services.storage.net.SyncTreeNode;
+import com.google.common.base.Optional;
+
+/**
+ * Hash tree over the (resource-id, kind, generation) tuples stored locally in
+ * a range of the ring. The range is divided into {@link #LEAVES} buckets of
+ * equal width, each leaf hash combines the hashes of the tuples in the
+ * bucket and each inner node hashes the concatenation of its children. Two
+ * peers storing the same data in the range obtain the same tree, differences
+ * can be located by descending only the mismatching nodes.
+ * 
+ */
+class RangeMerkleTree {
+
+	static final int FANOUT = 16;
+	static final int LEAF_LEVEL = 3;
+	static final int LEAVES = 4096;
+
+	private final ResourceID rangeStart;
+	private final ResourceID rangeEnd;
+	private final BigInteger start;
+	private final BigInteger ringSize;
+	private final BigInteger rangeLength;
+
+	private final byte[][][] levels = new byte[LEAF_LEVEL + 1][][];
+	private final Map<Integer, List<SyncEntry>> leafEntries = new HashMap<Integer, List<SyncEntry>>();
+
+	private final MessageDigest digest;
+
+	public RangeMerkleTree(ResourceID rangeStart, ResourceID rangeEnd, DataStorage storage) {
+		this.rangeStart = rangeStart;
+		this.rangeEnd = rangeEnd;
+		start = new BigInteger(1, rangeStart.getData());
+		ringSize = BigInteger.ONE.shiftLeft(rangeStart.getData().length * 8);
+		rangeLength = new BigInteger(1, rangeEnd.getData()).subtract(start).mod(ringSize).add(BigInteger.ONE);
+
+		try {
+			digest = MessageDigest.getInstance(CryptoHelper.OVERLAY_HASHALG.toString());
+		} catch (NoSuchAlgorithmException e) {
+			throw new RuntimeException(e);
+		}
+
+		byte[][] leaves = new byte[LEAVES][digest.getDigestLength()];
+
+		for (ResourceID resId : storage.keySet()) {
+			int leaf = getLeafIndex(resId);
+			if (leaf < 0) {
+				continue;
+			}
+
+			Optional<Map<Long, StoredKindData>> res = storage.get(resId);
+			if (!res.isPresent()) {
+				continue;
+			}
+
+			for (StoredKindData kd : res.get().values()) {
+				SyncEntry e = new SyncEntry(resId, kd.getKind().getKindId(), kd.getGeneration());
+				xor(leaves[leaf], hashEntry(e));
+				List<SyncEntry> entries = leafEntries.get(leaf);
+				if (entries == null) {
+					entries = new ArrayList<SyncEntry>();
+					leafEntries.put(leaf, entries);
+				}
+				entries.add(e);
+			}
+		}
+
+		levels[LEAF_LEVEL] = leaves;
+
+		for (int l = LEAF_LEVEL - 1; l >= 0; l--) {
+			byte[][] children = levels[l + 1];
+			byte[][] nodes = new byte[children.length / FANOUT][];
+			for (int i = 0; i < nodes.length; i++) {
+				for (int c = 0; c < FANOUT; c++) {
+					digest.update(children[i * FANOUT + c]);
+				}
+				nodes[i] = digest.digest();
+			}
+			levels[l] = nodes;
+		}
+	}
+
+	/**
+	 * @return the leaf the given resource belongs to, or -1 if the resource is
+	 *         not in the range of this tree
+	 */
+	int getLeafIndex(ResourceID resId) {
+		if (resId.getData().length != rangeStart.getData().length)
+			return -1;
+
+		BigInteger offset = new BigInteger(1, resId.getData()).subtract(start).mod(ringSize);
+
+		if (offset.compareTo(rangeLength) >= 0)
+			return -1;
+
+		return offset.multiply(BigInteger.valueOf(LEAVES)).divide(rangeLength).intValue();
+	}
+
+	private byte[] hashEntry(SyncEntry e) {
+		digest.update(e.getResourceId().getData());
+		digest.update(ByteBuffer.allocate(8).putLong(e.getKindId()).array());
+		digest.update(ByteBuffer.allocate(8).putLong(e.getGeneration()).array());
+		return digest.digest();
+	}
+
+	private static void xor(byte[] target, byte[] value) {
+		for (int i = 0; i < target.length; i++) {
+			target[i] ^= value[i];
+		}
+	}
+
+	public ResourceID getRangeStart() {
+		return rangeStart;
+	}
+
+	public ResourceID getRangeEnd() {
+		return rangeEnd;
+	}
+
+	/**
+	 * @return the number of nodes at the given level
+	 */
+	static int getWidth(int level) {
+		int width = 1;
+		for (int l = 0; l < level; l++) {
+			width *= FANOUT;
+		}
+		return width;
+	}
+
+	/**
+	 * @return true if a node exists at the given position of the tree
+	 */
+	static boolean isValidNode(int level, int index) {
+		return level >= 0 && level <= LEAF_LEVEL && index >= 0 && index < getWidth(level);
+	}
+
+	public SyncTreeNode getRoot() {
+		return getNode(0, 0);
+	}
+
+	public SyncTreeNode getNode(int level, int index) {
+		return new SyncTreeNode(index, levels[level][index]);
+	}
+
+	/**
+	 * @return the children of the given node, the node must not be a leaf
+	 */
+	public List<SyncTreeNode> getChildren(int level, int index) {
+		List<SyncTreeNode> out = new ArrayList<SyncTreeNode>(FANOUT);
+		for (int c = 0; c < FANOUT; c++) {
+			out.add(getNode(level + 1, index * FANOUT + c));
+		}
+		return out;
+	}
+
+	/**
+	 * @return true if the given node hash matches the hash of the local node at
+	 *         the same position
+	 */
+	public boolean isMatching(int level, SyncTreeNode node) {
+		if (!isValidNode(level, node.getIndex()))
+			return false;
+		return MessageDigest.isEqual(levels[level][node.getIndex()], node.getHash());
+	}
+
+	public List<SyncEntry> getEntries(int leaf) {
+		List<SyncEntry> entries = leafEntries.get(leaf);
+		if (entries == null)
+			return Collections.emptyList();
+		return entries;
+	}
+}
@@ -1,25 +1,42 @@
 package com.github.reload.services.storage.local;
 
-import java.math.BigInteger;
+import java.nio.ByteBuffer;
 import java.security.GeneralSecurityException;
+import java.security.PublicKey;
+import java.security.SignatureException;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 import javax.inject.Inject;
+import javax.inject.Named;
 import javax.inject.Singleton;
+import org.apache.log4j.Logger;
+import com.github.reload.Overlay;
+import com.github.reload.conf.Configuration;
 import com.github.reload.crypto.CryptoHelper;
 import com.github.reload.crypto.Keystore;
 import com.github.reload.crypto.ReloadCertificate;
 import com.github.reload.net.MessageRouter;
+import com.github.reload.net.codecs.Codec;
 import com.github.reload.net.codecs.Message;
 import com.github.reload.net.codecs.MessageBuilder;
 import com.github.reload.net.codecs.content.ContentType;
 import com.github.reload.net.codecs.content.Error.ErrorMessageException;
 import com.github.reload.net.codecs.content.Error.ErrorType;
+import com.github.reload.net.codecs.content.MessageExtension;
 import com.github.reload.net.codecs.header.DestinationList;
 import com.github.reload.net.codecs.header.NodeID;
 import com.github.reload.net.codecs.header.ResourceID;
@@ -34,6 +51,7 @@ import com.github.reload.services.storage.DataModel.Metadata;
 import com.github.reload.services.storage.DataModel.ValueSpecifier;
 import com.github.reload.services.storage.GenerationTooLowException;
 import com.github.reload.services.storage.net.FetchAnswer;
+import com.github.reload.services.storage.net.FetchKey;
 import com.github.reload.services.storage.net.FetchKindResponse;
 import com.github.reload.services.storage.net.FetchRequest;
 import com.github.reload.services.storage.net.FindAnswer;
@@ -46,8 +64,12 @@ import com.github.reload.services.storage.net.StoreAnswer;
 import com.github.reload.services.storage.net.StoreKindResponse;
 import com.github.reload.services.storage.net.StoreKindSpecifier;
 import com.github.reload.services.storage.net.StoreRequest;
+import com.github.reload.services.storage.net.SubscriptionExtension;
 import com.github.reload.services.storage.policies.AccessPolicy;
 import com.google.common.base.Optional;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.primitives.UnsignedLongs;
 import dagger.ObjectGraph;
 
 /**
@@ -57,6 +79,24 @@ import dagger.ObjectGraph;
 @Singleton
 public class StorageController {
 
+	// Time in milliseconds identical fetch requests share the same response
+	static final int COALESCING_WINDOW = 50;
+
+	// Maximum number of verified signature digests kept
+	static final int VERIFIED_CACHE_SIZE = 10000;
+
+	// Fraction of the maximum heap used for storage if no capacity is
+	// configured
+	static final int DEFAULT_CAPACITY_DIVISOR = 4;
+
+	private static final Logger l = Logger.getRootLogger();
+
+	@Inject
+	Overlay overlay;
+
+	@Inject
+	Configuration conf;
+
 	@Inject
 	TopologyPlugin topology;
 
@@ -76,7 +116,34 @@ public class StorageController {
 	Keystore keystore;
 
 	@Inject
-	public StorageController(MessageHandlers msgHandlers) {
+	DataReplicator replicator;
+
+	@Inject
+	AntiEntropyService antiEntropy;
+
+	@Inject
+	DataHandoff handoff;
+
+	@Inject
+	StorageSnapshots snapshots;
+
+	@Inject
+	SubscriptionManager subscriptions;
+
+	// Fetches are accessed only by the packets looper
+	private final Map<FetchKey, RecentFetch> recentFetches = new LinkedHashMap<FetchKey, RecentFetch>();
+
+	private final Codec<FetchRequest> fetchReqCodec;
+
+	private final ExecutorService verificationPool;
+
+	// Digests of the values whose signature has been successfully verified
+	private final Cache<ByteBuffer, Boolean> verifiedSignatures = CacheBuilder.newBuilder().maximumSize(VERIFIED_CACHE_SIZE).build();
+
+	@Inject
+	public StorageController(MessageHandlers msgHandlers, ObjectGraph graph, @Named("cryptoPool") ExecutorService cryptoPool) {
+		fetchReqCodec = Codec.getCodec(FetchRequest.class, graph);
+		verificationPool = cryptoPool;
 		msgHandlers.register(this);
 	}
 
@@ -86,7 +153,11 @@ public class StorageController {
 
 		boolean isReplica = req.getReplicaNumber() != 0;
 
-		if (topology.isLocalPeerValidStorage(req.getResourceId(), isReplica) == false) {
+		// Data handed off by the previous owner comes as a replica store for a
+		// resource the local peer is already responsible for
+		boolean isHandoff = isReplica && topology.isLocalPeerResponsible(req.getResourceId());
+
+		if (!isHandoff && topology.isLocalPeerValidStorage(req.getResourceId(), isReplica) == false) {
 			router.sendError(requestMessage.getHeader(), ErrorType.FORBITTEN, "Node not responsible to store requested resource");
 			return;
 		}
@@ -95,9 +166,12 @@ public class StorageController {
 
 		List<NodeID> replicaNodes = topology.getReplicaNodes(req.getResourceId());
 
+		// Replica stores from the responsible peer were already checked by it
+		boolean trusted = isReplica && isTrustedPrimary(requestMessage.getHeader().getSenderId(), req.getResourceId());
+
 		List<StoreKindResponse> response;
 		try {
-			response = store(req.getResourceId(), req.getKindData(), senderIdentity, isReplica, replicaNodes);
+			response = store(req.getResourceId(), req.getKindData(), senderIdentity, isReplica, trusted, replicaNodes);
 		} catch (GeneralSecurityException e) {
 			router.sendError(requestMessage.getHeader(), ErrorType.FORBITTEN, "Invalid data signature");
 			return;
@@ -110,16 +184,52 @@ public class StorageController {
 
 		router.sendAnswer(requestMessage.getHeader(), answer);
 
-		replicateData(req.getResourceId());
+		// Replica stores are not replicated again, handed off data is owned by
+		// the local peer from now on
+		if (!isReplica || isHandoff) {
+			List<Long> storedKinds = new ArrayList<Long>(response.size());
+			for (StoreKindResponse r : response) {
+				storedKinds.add(r.getKind().getKindId());
+			}
+			replicator.markDirty(req.getResourceId(), storedKinds);
+			subscriptions.resourceChanged(req.getResourceId(), storedKinds);
+		}
 	}
 
-	private List<StoreKindResponse> store(ResourceID resourceId, Collection<StoredKindData> data, SignerIdentity senderIdentity, boolean isReplica, List<NodeID> replicaNodes) throws GeneralSecurityException, ErrorMessageException {
+	/**
+	 * A replica store is trusted if the trusted replicas mode is enabled and the
+	 * authenticated sender is the responsible peer of the resource in the local
+	 * view, that is the peer closest to the resource among the neighbors and
+	 * the local peer
+	 */
+	private boolean isTrustedPrimary(NodeID sender, ResourceID resourceId) {
+		if (!Boolean.TRUE.equals(conf.get(Configuration.TRUSTED_REPLICAS)))
+			return false;
+
+		Set<NodeID> neighbors = topology.getRoutingTable().getNeighbors();
+		if (!neighbors.contains(sender))
+			return false;
+
+		List<NodeID> candidates = new ArrayList<NodeID>(neighbors.size() + 1);
+		candidates.addAll(neighbors);
+		candidates.add(overlay.getLocalNodeId());
+
+		return topology.getCloserId(resourceId, candidates).equals(sender);
+	}
+
+	private List<StoreKindResponse> store(ResourceID resourceId, Collection<StoredKindData> data, SignerIdentity senderIdentity, boolean isReplica, boolean trusted, List<NodeID> replicaNodes) throws GeneralSecurityException, ErrorMessageException {
 		List<StoreKindResponse> response = new ArrayList<StoreKindResponse>();
+		List<SignatureCheck> signatureChecks = new ArrayList<SignatureCheck>();
 		List<StoreKindResponse> generTooLowResponses = new ArrayList<StoreKindResponse>();
 
 		Optional<Map<Long, StoredKindData>> oldStoredResource = storage.get(resourceId);
 
-		Map<Long, StoredKindData> tempStore = new HashMap<Long, StoredKindData>(data.size());
+		Map<Long, StoredKindData> tempStore = new HashMap<Long, StoredKindData>();
+
+		// Kinds not included in the request are left untouched
+		if (oldStoredResource.isPresent()) {
+			tempStore.putAll(oldStoredResource.get());
+		}
 
 		Set<Long> requestKinds = new HashSet<Long>();
 
@@ -153,6 +263,10 @@ public class StorageController {
 				if (storerIdentity.getIdentityType() == IdentityType.NONE)
 					throw new ErrorMessageException(ErrorType.FORBITTEN, "NONE identity type not allowed");
 
+				if (trusted) {
+					continue;
+				}
+
 				// Perform policy checks for storer node
 
 				AccessPolicy p = g.get(receivedData.getKind().getPolicyClass());
@@ -170,7 +284,7 @@ public class StorageController {
 				if (!storerCert.isPresent())
 					throw new GeneralSecurityException("Storer certificate not available");
 
-				d.verify(storerCert.get().getOriginalCertificate().getPublicKey(), resourceId, receivedData.getKind());
+				signatureChecks.add(new SignatureCheck(d, storerCert.get().getOriginalCertificate().getPublicKey(), resourceId, kind));
 			}
 
 			if (oldStoredKind.isPresent() && !checkGeneration(receivedData, oldStoredKind.get(), isReplica)) {
@@ -178,11 +292,19 @@ public class StorageController {
 				continue;
 			}
 
-			// Increase stored data generation by one
-			if (oldStoredKind.isPresent()) {
-				receivedData.generation = oldStoredKind.get().getGeneration().add(BigInteger.ONE);
-			} else {
-				receivedData.generation = receivedData.generation.add(BigInteger.ONE);
+			// Increase stored data generation by one, replicas keep the
+			// generation assigned by the responsible peer instead
+			if (!isReplica) {
+				if (oldStoredKind.isPresent()) {
+					receivedData.generation = oldStoredKind.get().getGeneration() + 1;
+				} else {
+					receivedData.generation++;
+				}
+			}
+
+			// Metadata returned by stat requests are computed once here
+			for (StoredData d : receivedData.getValues()) {
+				d.setMetadata(computeMetadata(d, kind));
 			}
 
 			tempStore.put(kind.getKindId(), receivedData);
@@ -190,60 +312,297 @@ public class StorageController {
 			response.add(new StoreKindResponse(kind, receivedData.getGeneration(), replicaNodes));
 		}
 
+		verifySignatures(signatureChecks);
+
 		if (generTooLowResponses.size() > 0)
 			throw new GenerationTooLowException(new StoreAnswer(generTooLowResponses));
 
+		checkCapacity(resourceId, oldStoredResource, tempStore, requestKinds);
+
 		// Store incoming data in the effettive storage
 		storage.put(resourceId, tempStore);
+		snapshots.resourceChanged(resourceId);
 
 		return response;
 	}
 
+	/**
+	 * Check that the store doesn't exceed the kind quotas, the storer identity
+	 * quota and the storage capacity. Only the growth caused by the store is
+	 * checked, so that data over quota can always be replaced by smaller
+	 * data. When the capacity is exceeded by a store for a resource the local
+	 * peer is responsible for, replica copies are evicted to make room;
+	 * stores of replica copies are never allowed to evict other data.
+	 */
+	private void checkCapacity(ResourceID resourceId, Optional<Map<Long, StoredKindData>> oldResource, Map<Long, StoredKindData> newResource, Set<Long> storedKinds) throws ErrorMessageException {
+		StorageUsage usage = storage.getUsage();
+
+		long totalDelta = 0;
+		Map<SignerIdentity, Long> identityDeltas = new HashMap<SignerIdentity, Long>();
+
+		for (Long k : storedKinds) {
+			StoredKindData newKind = newResource.get(k);
+			long kindDelta = 0;
+
+			for (StoredData d : newKind.getValues()) {
+				kindDelta += d.getStoredSize();
+				addDelta(identityDeltas, d.getSignature().getIdentity(), d.getStoredSize());
+			}
+
+			if (oldResource.isPresent() && oldResource.get().containsKey(k)) {
+				for (StoredData d : oldResource.get().get(k).getValues()) {
+					kindDelta -= d.getStoredSize();
+					addDelta(identityDeltas, d.getSignature().getIdentity(), -d.getStoredSize());
+				}
+			}
+
+			long kindQuota = newKind.getKind().getAttribute(DataKind.MAX_STORED_BYTES, Long.MAX_VALUE);
+			if (kindDelta > 0 && usage.getKindBytes(k) + kindDelta > kindQuota)
+				throw new ErrorMessageException(ErrorType.DATA_TOO_LARGE, "Storage quota exceeded for this kind");
+
+			totalDelta += kindDelta;
+		}
+
+		Long identityQuota = conf.get(Configuration.IDENTITY_QUOTA);
+		if (identityQuota != null) {
+			for (Map.Entry<SignerIdentity, Long> e : identityDeltas.entrySet()) {
+				if (e.getValue() > 0 && usage.getIdentityBytes(e.getKey()) + e.getValue() > identityQuota)
+					throw new ErrorMessageException(ErrorType.DATA_TOO_LARGE, "Storage quota exceeded for the storer");
+			}
+		}
+
+		long exceeding = usage.getTotalBytes() + totalDelta - getCapacity();
+
+		if (totalDelta <= 0 || exceeding <= 0)
+			return;
+
+		if (!topology.isLocalPeerResponsible(resourceId) || evictReplicas(resourceId, exceeding) < exceeding)
+			throw new ErrorMessageException(ErrorType.DATA_TOO_LARGE, "Storage capacity exceeded");
+	}
+
+	private static void addDelta(Map<SignerIdentity, Long> deltas, SignerIdentity identity, long delta) {
+		Long d = deltas.get(identity);
+		deltas.put(identity, d != null ? d + delta : delta);
+	}
+
+	private long getCapacity() {
+		Long capacity = conf.get(Configuration.STORAGE_CAPACITY);
+		if (capacity != null)
+			return capacity;
+		return Runtime.getRuntime().maxMemory() / DEFAULT_CAPACITY_DIVISOR;
+	}
+
+	/**
+	 * Remove the replica copies stored locally until at least the given
+	 * amount of bytes is released
+	 * 
+	 * @return the released bytes
+	 */
+	private long evictReplicas(ResourceID excluded, long needed) {
+		StorageUsage usage = storage.getUsage();
+		long initialBytes = usage.getTotalBytes();
+
+		for (ResourceID resId : storage.keySet()) {
+			if (initialBytes - usage.getTotalBytes() >= needed) {
+				break;
+			}
+
+			if (resId.equals(excluded) || topology.isLocalPeerResponsible(resId)) {
+				continue;
+			}
+
+			storage.remove(resId);
+			snapshots.resourceChanged(resId);
+		}
+
+		long released = initialBytes - usage.getTotalBytes();
+		l.debug(String.format("Evicted %d bytes of replicas, storage capacity exceeded", released));
+		return released;
+	}
+
+	/**
+	 * @return the bytes currently stored locally
+	 */
+	public StorageUsage getUsage() {
+		return storage.getUsage();
+	}
+
+	/**
+	 * Verify the signatures of the values in parallel, the verification is
+	 * aborted at the first invalid signature. Values already verified are
+	 * recognized by their verification digest and not verified again.
+	 */
+	private void verifySignatures(List<SignatureCheck> checks) throws GeneralSecurityException {
+		List<SignatureCheck> pending = new ArrayList<SignatureCheck>(checks.size());
+		for (SignatureCheck c : checks) {
+			if (verifiedSignatures.getIfPresent(c.digest) == null) {
+				pending.add(c);
+			}
+		}
+
+		if (pending.isEmpty())
+			return;
+
+		// Not worth to dispatch a single verification
+		if (pending.size() == 1) {
+			pending.get(0).call();
+			verifiedSignatures.put(pending.get(0).digest, Boolean.TRUE);
+			return;
+		}
+
+		CompletionService<ByteBuffer> completion = new ExecutorCompletionService<ByteBuffer>(verificationPool);
+		List<Future<ByteBuffer>> futures = new ArrayList<Future<ByteBuffer>>(pending.size());
+		for (SignatureCheck c : pending) {
+			futures.add(completion.submit(c));
+		}
+
+		try {
+			for (int i = 0; i < futures.size(); i++) {
+				verifiedSignatures.put(completion.take().get(), Boolean.TRUE);
+			}
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof GeneralSecurityException)
+				throw (GeneralSecurityException) e.getCause();
+			throw new GeneralSecurityException(e.getCause());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new GeneralSecurityException(e);
+		} finally {
+			for (Future<ByteBuffer> f : futures) {
+				f.cancel(false);
+			}
+		}
+	}
+
 	private void checkValidReplace(StoredKindData oldKindData, StoredData newData) throws ErrorMessageException {
 		if (oldKindData == null)
 			return;
 
 		ValueSpecifier spec = newData.getValue().getMatchingSpecifier();
-		StoredData oldValue = getMatchingData(oldKindData, spec).get(0);
+		List<StoredData> oldValues = getMatchingData(oldKindData, spec);
 
-		if (oldValue == null)
+		if (oldValues.isEmpty())
 			return;
 
+		StoredData oldValue = oldValues.get(0);
+
 		// Check storage time for values that will be replaced
-		if (newData.getStorageTime().compareTo(oldValue.getStorageTime()) < 0)
+		if (UnsignedLongs.compare(newData.getStorageTime(), oldValue.getStorageTime()) < 0)
 			throw new ErrorMessageException(ErrorType.DATA_TOO_OLD);
 	}
 
 	private boolean checkGeneration(StoredKindData receivedData, StoredKindData oldStoredKind, boolean isReplica) {
-		BigInteger rcvGen = receivedData.getGeneration();
+		long rcvGen = receivedData.getGeneration();
 
 		// Generation for replica stores needs only to be not zero
 		if (isReplica)
-			return !rcvGen.equals(BigInteger.ZERO);
+			return rcvGen != 0;
 
-		if (rcvGen.equals(BigInteger.ZERO))
+		if (rcvGen == 0)
 			return true;
 
-		BigInteger oldGeneration = oldStoredKind.getGeneration();
-
 		// True (valid request) only if the new data generation is greater than
-		// old generation
-		return receivedData.getGeneration().compareTo(oldGeneration) > 0;
+		// old generation, generations are unsigned 64 bit counters
+		return UnsignedLongs.compare(rcvGen, oldStoredKind.getGeneration()) > 0;
 	}
 
 	@MessageHandler(ContentType.FETCH_REQ)
 	private void handleFetchRequest(Message requestMessage) {
 		FetchRequest req = (FetchRequest) requestMessage.getContent();
+
+		boolean subscribed = false;
+
+		// Subscriptions are kept even if the resource is not stored yet
+		for (MessageExtension ex : req.getMessageExtensions()) {
+			if (ex instanceof SubscriptionExtension && topology.isLocalPeerResponsible(req.getResourceId())) {
+				subscribed = true;
+				SubscriptionExtension sub = (SubscriptionExtension) ex;
+				List<Long> kinds = new ArrayList<Long>(req.getSpecifiers().size());
+				for (StoreKindSpecifier spec : req.getSpecifiers()) {
+					kinds.add(spec.getKind().getKindId());
+				}
+				subscriptions.subscribe(req.getResourceId(), requestMessage.getHeader().getSenderId(), kinds, sub.getLease(), sub.isPushValues());
+			}
+		}
+
 		FetchAnswer answer;
 		try {
-			answer = new FetchAnswer(fetch(req.getResourceId(), req.getSpecifiers()));
+			answer = new FetchAnswer(coalescedFetch(req));
 		} catch (ErrorMessageException e) {
+			// The subscriber needs an answer from the peer holding the
+			// subscription to accept its notifications
+			if (subscribed && e.getType() == ErrorType.NOT_FOUND) {
+				router.sendAnswer(requestMessage.getHeader(), new FetchAnswer(Collections.<FetchKindResponse> emptyList()));
+				return;
+			}
 			router.sendError(requestMessage.getHeader(), e.getType(), e.getInfo());
 			return;
 		}
 		router.sendAnswer(requestMessage.getHeader(), answer);
 	}
 
+	/**
+	 * Identical fetches received in a burst are answered with the same
+	 * response as long as the requested resource is not replaced and none of
+	 * the values of the requested kinds expires in the meantime. Each answer
+	 * gets its own copy of the response.
+	 */
+	private List<FetchKindResponse> coalescedFetch(FetchRequest req) throws ErrorMessageException {
+		long now = System.currentTimeMillis();
+
+		// Recent fetches are kept in arrival order, expired ones are at the head
+		Iterator<RecentFetch> i = recentFetches.values().iterator();
+		while (i.hasNext()) {
+			if (now - i.next().time <= COALESCING_WINDOW) {
+				break;
+			}
+			i.remove();
+		}
+
+		FetchKey key = FetchKey.of(req, fetchReqCodec);
+
+		Optional<Map<Long, StoredKindData>> resource = storage.get(req.getResourceId());
+
+		RecentFetch recent = recentFetches.get(key);
+		if (recent != null && resource.isPresent() && recent.resource == resource.get() && now <= recent.expiration)
+			return copyOf(recent.responses);
+
+		List<FetchKindResponse> responses = fetch(req.getResourceId(), req.getSpecifiers());
+
+		if (resource.isPresent()) {
+			recentFetches.remove(key);
+			recentFetches.put(key, new RecentFetch(now, getExpiration(resource.get(), req.getSpecifiers()), resource.get(), responses));
+		}
+
+		return copyOf(responses);
+	}
+
+	/**
+	 * @return the time in milliseconds the first of the values of the
+	 *         requested kinds expires
+	 */
+	private static long getExpiration(Map<Long, StoredKindData> resource, List<StoreKindSpecifier> specifiers) {
+		long expiration = Long.MAX_VALUE;
+		for (StoreKindSpecifier spec : specifiers) {
+			StoredKindData kindData = resource.get(spec.getKind().getKindId());
+			if (kindData == null) {
+				continue;
+			}
+			for (StoredData d : kindData.getValues()) {
+				expiration = Math.min(expiration, d.getStorageTime() + d.getLifeTime() * 1000);
+			}
+		}
+		return expiration;
+	}
+
+	private static List<FetchKindResponse> copyOf(List<FetchKindResponse> responses) {
+		List<FetchKindResponse> out = new ArrayList<FetchKindResponse>(responses.size());
+		for (FetchKindResponse r : responses) {
+			out.add(new FetchKindResponse(r.getKind(), r.getGeneration(), new ArrayList<StoredData>(r.getValues())));
+		}
+		return out;
+	}
+
 	private List<FetchKindResponse> fetch(ResourceID resourceId, List<StoreKindSpecifier> specifiers) throws ErrorMessageException {
 		List<FetchKindResponse> out = new ArrayList<FetchKindResponse>();
 
@@ -262,7 +621,7 @@ public class StorageController {
 
 			// If the generation in the request corresponds to the last
 			// value we don't need to resend the same content
-			if (kindData.getGeneration().equals(spec.getGeneration())) {
+			if (kindData.getGeneration() == spec.getGeneration()) {
 				continue;
 			}
 
@@ -299,7 +658,7 @@ public class StorageController {
 	}
 
 	private StoredData getNonExistentData(DataKind kind) {
-		return new StoredData(BigInteger.ZERO, 0, kind.getDataModel().getNonExistentValue(), Signature.EMPTY_SIGNATURE);
+		return new StoredData(0, 0, kind.getDataModel().getNonExistentValue(), Signature.EMPTY_SIGNATURE);
 	}
 
 	@MessageHandler(ContentType.STAT_REQ)
@@ -333,7 +692,7 @@ public class StorageController {
 
 			// If the generation in the request corresponds to the last
 			// value we don't need to resend the same content
-			if (kindData.getGeneration().equals(spec.getGeneration())) {
+			if (kindData.getGeneration() == spec.getGeneration()) {
 				continue;
 			}
 
@@ -351,12 +710,23 @@ public class StorageController {
 	}
 
 	private StoredMetadata buildMetadata(StoredData d, DataKind kind) {
+		Metadata m = d.getMetadata();
 
+		// Values stored before the metadata were kept along with them
+		if (m == null) {
+			m = computeMetadata(d, kind);
+			d.setMetadata(m);
+		}
+
+		return new StoredMetadata(d.getStorageTime(), d.getLifeTime(), m);
+	}
+
+	private Metadata computeMetadata(StoredData d, DataKind kind) {
 		Metadata m = g.get(kind.getDataModel().getMetadataClass());
 
 		m.setMetadata(d.getValue(), CryptoHelper.OVERLAY_HASHALG);
 
-		return new StoredMetadata(d.getStorageTime(), d.getLifeTime(), m);
+		return m;
 	}
 
 	@MessageHandler(ContentType.FIND_REQ)
@@ -371,7 +741,9 @@ public class StorageController {
 
 		for (DataKind k : reqKinds) {
 
-			Collection<ResourceID> resources = storage.getResourcesByKind(k.getKindId());
+			// The closest resource is always one of the ids adjacent to the
+			// requested one in the ring
+			Collection<ResourceID> resources = storage.getAdjacentResources(k.getKindId(), reqResId);
 
 			ResourceID resId;
 
@@ -387,20 +759,42 @@ public class StorageController {
 		return out;
 	}
 
-	private void replicateData(ResourceID resourceId) {
-		List<NodeID> replicaNodes = topology.getReplicaNodes(resourceId);
+	private static class RecentFetch {
 
-		Optional<Map<Long, StoredKindData>> res = storage.get(resourceId);
+		final long time;
+		final long expiration;
+		final Map<Long, StoredKindData> resource;
+		final List<FetchKindResponse> responses;
 
-		if (!res.isPresent())
-			return;
+		public RecentFetch(long time, long expiration, Map<Long, StoredKindData> resource, List<FetchKindResponse> responses) {
+			this.time = time;
+			this.expiration = expiration;
+			this.resource = resource;
+			this.responses = responses;
+		}
+	}
+
+	private static class SignatureCheck implements Callable<ByteBuffer> {
 
-		Collection<StoredKindData> data = res.get().values();
+		final StoredData data;
+		final PublicKey publicKey;
+		final ResourceID resourceId;
+		final DataKind kind;
+		final ByteBuffer digest;
+
+		public SignatureCheck(StoredData data, PublicKey publicKey, ResourceID resourceId, DataKind kind) {
+			this.data = data;
+			this.publicKey = publicKey;
+			this.resourceId = resourceId;
+			this.kind = kind;
+			digest = ByteBuffer.wrap(data.getVerificationDigest(publicKey, resourceId, kind));
+		}
 
-		short replNum = 1;
-		for (NodeID repl : replicaNodes) {
-			router.sendRequestMessage(msgBuilder.newMessage(new StoreRequest(resourceId, replNum, data), new DestinationList(repl)));
-			replNum++;
+		@Override
+		public ByteBuffer call() throws GeneralSecurityException {
+			if (!data.verify(publicKey, resourceId, kind))
+				throw new SignatureException("Invalid data signature");
+			return digest;
 		}
 	}
 }
@@ -0,0 +1,353 @@
+package com.github.reload.services.storage.local;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+import org.apache.log4j.Logger;
+import com.github.reload.Overlay.GlobalEvent;
+import com.github.reload.Overlay.GlobalEvent.TYPE;
+import com.github.reload.conf.Configuration;
+import com.github.reload.net.codecs.Codec;
+import com.github.reload.net.codecs.Codec.CodecException;
+import com.github.reload.net.codecs.header.ResourceID;
+import com.google.common.base.Optional;
+import com.google.common.collect.Maps;
+import com.google.common.eventbus.EventBus;
+import com.google.common.eventbus.Subscribe;
+import dagger.ObjectGraph;
+
+/**
+ * Periodically saves the local storage to a file and loads it back when the
+ * peer restarts, so that a restarted peer doesn't start with an empty storage.
+ * Snapshots are incremental: the packets looper copies only the resources
+ * changed since the previous snapshot into a shadow copy of the storage owned
+ * by the writer, the values are immutable so only the containers are copied.
+ * The encoding and writing of the shadow copy is done in background while the
+ * stores keep running. The file is
+ * a sequence of length prefixed records, each with a resource id followed by
+ * its kinds encoded with the {@link StoredKindData} codec. Snapshots are
+ * enabled by setting the file path in {@link Configuration#STORAGE_SNAPSHOT}.
+ * 
+ */
+@Singleton
+public class StorageSnapshots {
+
+	private static final Logger l = Logger.getRootLogger();
+
+	// Time in milliseconds between two snapshots
+	static final int SNAPSHOT_INTERVAL = 30000;
+
+	private static final int MAGIC = 0x524c5353;
+	private static final int VERSION = 1;
+
+	@Inject
+	@Named("packetsLooper")
+	Executor packetsLooper;
+
+	private final DataStorage storage;
+	private final Codec<ResourceID> resIdCodec;
+	private final Codec<StoredKindData> kindDataCodec;
+	private final Optional<Path> snapshotFile;
+
+	// Resources changed since the last snapshot, accessed only by the packets
+	// looper
+	private final Set<ResourceID> changed = new HashSet<ResourceID>();
+
+	// Copy of the storage at the last snapshot, accessed only by the writer
+	private final Map<ResourceID, Map<Long, StoredKindData>> shadow = new LinkedHashMap<ResourceID, Map<Long, StoredKindData>>();
+
+	// Changes collected but not written yet, guarded by this object
+	private final Map<ResourceID, Optional<Map<Long, StoredKindData>>> unwritten = Maps.newHashMap();
+
+	private final ScheduledExecutorService scheduler;
+
+	@Inject
+	public StorageSnapshots(Configuration conf, DataStorage storage, ObjectGraph graph, EventBus eventBus, @Named("scheduler") ScheduledExecutorService scheduler) {
+		this.scheduler = scheduler;
+		this.storage = storage;
+		resIdCodec = Codec.getCodec(ResourceID.class, graph);
+		kindDataCodec = Codec.getCodec(StoredKindData.class, graph);
+
+		String file = conf.get(Configuration.STORAGE_SNAPSHOT);
+		snapshotFile = file != null ? Optional.of(Paths.get(file)) : Optional.<Path> absent();
+
+		eventBus.register(this);
+
+		if (!snapshotFile.isPresent())
+			return;
+
+		load(snapshotFile.get());
+
+		scheduler.scheduleWithFixedDelay(new Runnable() {
+
+			@Override
+			public void run() {
+				// Storage is accessed only by the packets looper
+				packetsLooper.execute(new Runnable() {
+
+					@Override
+					public void run() {
+						if (scheduler.isShutdown())
+							return;
+
+						addUnwritten(collectChanges());
+
+						// Changes of a write that never runs are kept for the
+						// final snapshot
+						try {
+							scheduler.execute(new Runnable() {
+
+								@Override
+								public void run() {
+									write();
+								}
+							});
+						} catch (RejectedExecutionException e) {
+							l.debug("Storage snapshot postponed to shutdown");
+						}
+					}
+				});
+			}
+		}, SNAPSHOT_INTERVAL, SNAPSHOT_INTERVAL, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Mark the given resource as changed, to be called by the packets looper
+	 * after the resource is stored or removed
+	 */
+	void resourceChanged(ResourceID resId) {
+		if (snapshotFile.isPresent()) {
+			changed.add(resId);
+		}
+	}
+
+	/**
+	 * Copy the resources changed since the last snapshot, absent for removed
+	 * resources. Stores are replacing the whole resource map, only the value
+	 * lists that are pruned when values expire need to be copied.
+	 */
+	private Map<ResourceID, Optional<Map<Long, StoredKindData>>> collectChanges() {
+		Map<ResourceID, Optional<Map<Long, StoredKindData>>> changes = Maps.newHashMap();
+		for (ResourceID resId : changed) {
+			Optional<Map<Long, StoredKindData>> res = storage.get(resId);
+			if (!res.isPresent() || res.get().isEmpty()) {
+				changes.put(resId, Optional.<Map<Long, StoredKindData>> absent());
+			} else {
+				changes.put(resId, Optional.of(copyResource(res.get())));
+			}
+		}
+		changed.clear();
+		return changes;
+	}
+
+	private static Map<Long, StoredKindData> copyResource(Map<Long, StoredKindData> resource) {
+		Map<Long, StoredKindData> kinds = Maps.newHashMap();
+		for (Entry<Long, StoredKindData> e : resource.entrySet()) {
+			StoredKindData kd = e.getValue();
+			kinds.put(e.getKey(), new StoredKindData(kd.getKind(), kd.getGeneration(), new ArrayList<StoredData>(kd.getValues())));
+		}
+		return kinds;
+	}
+
+	/**
+	 * Queue the collected changes for the next write, newer changes of a
+	 * resource replace the older ones
+	 */
+	private synchronized void addUnwritten(Map<ResourceID, Optional<Map<Long, StoredKindData>>> changes) {
+		unwritten.putAll(changes);
+	}
+
+	/**
+	 * Apply the queued changes to the shadow copy and write it to a temporary
+	 * file that replaces the previous snapshot only when completely written
+	 */
+	private synchronized void write() {
+		int changes = unwritten.size();
+
+		for (Entry<ResourceID, Optional<Map<Long, StoredKindData>>> e : unwritten.entrySet()) {
+			if (e.getValue().isPresent()) {
+				shadow.put(e.getKey(), e.getValue().get());
+			} else {
+				shadow.remove(e.getKey());
+			}
+		}
+		unwritten.clear();
+
+		// Nothing changed since the last snapshot
+		if (changes == 0)
+			return;
+
+		Path file = snapshotFile.get();
+		Path tmpFile = file.resolveSibling(file.getFileName() + ".tmp");
+
+		ByteBuf buf = PooledByteBufAllocator.DEFAULT.directBuffer();
+		try (FileChannel ch = FileChannel.open(tmpFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			buf.writeInt(MAGIC);
+			buf.writeInt(VERSION);
+			writeBuffer(ch, buf);
+
+			for (Entry<ResourceID, Map<Long, StoredKindData>> e : shadow.entrySet()) {
+				encodeRecord(e.getKey(), e.getValue(), buf);
+				writeBuffer(ch, buf);
+			}
+
+			ch.force(false);
+		} catch (IOException | CodecException e) {
+			l.warn("Storage snapshot failed", e);
+			return;
+		} finally {
+			buf.release();
+		}
+
+		try {
+			Files.move(tmpFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			l.debug(String.format("Storage snapshot of %d resources saved to %s, %d changed", shadow.size(), file, changes));
+		} catch (IOException e) {
+			l.warn("Storage snapshot failed", e);
+		}
+	}
+
+	private void encodeRecord(ResourceID resId, Map<Long, StoredKindData> kinds, ByteBuf buf) throws CodecException {
+		int lenIndex = buf.writerIndex();
+		buf.writeInt(0);
+
+		resIdCodec.encode(resId, buf);
+		buf.writeShort(kinds.size());
+		for (StoredKindData kd : kinds.values()) {
+			kindDataCodec.encode(kd, buf);
+		}
+
+		buf.setInt(lenIndex, buf.writerIndex() - lenIndex - 4);
+	}
+
+	private static void writeBuffer(FileChannel ch, ByteBuf buf) throws IOException {
+		while (buf.isReadable()) {
+			buf.readBytes(ch, buf.readableBytes());
+		}
+		buf.clear();
+	}
+
+	/**
+	 * Load the snapshot mapping the file in memory, expired values are
+	 * discarded and the records that cannot be decoded (e.g. of kinds not
+	 * configured anymore) are skipped
+	 */
+	private void load(Path file) {
+		if (!Files.exists(file))
+			return;
+
+		long start = System.currentTimeMillis();
+		int loaded = 0;
+		int skipped = 0;
+
+		try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+			MappedByteBuffer mapped = ch.map(MapMode.READ_ONLY, 0, ch.size());
+			ByteBuf buf = Unpooled.wrappedBuffer(mapped);
+
+			if (buf.readableBytes() < 8 || buf.readInt() != MAGIC || buf.readInt() != VERSION) {
+				l.warn(String.format("Invalid storage snapshot %s ignored", file));
+				return;
+			}
+
+			while (buf.readableBytes() >= 4) {
+				int length = buf.readInt();
+				if (length > buf.readableBytes()) {
+					// Truncated last record
+					break;
+				}
+
+				ByteBuf record = buf.readSlice(length);
+				try {
+					if (decodeRecord(record)) {
+						loaded++;
+					}
+				} catch (CodecException | RuntimeException e) {
+					skipped++;
+				}
+			}
+		} catch (IOException e) {
+			l.warn(String.format("Storage snapshot %s not loaded", file), e);
+			return;
+		}
+
+		l.info(String.format("Loaded %d resources from storage snapshot in %d ms, %d skipped", loaded, System.currentTimeMillis() - start, skipped));
+	}
+
+	private boolean decodeRecord(ByteBuf record) throws CodecException {
+		ResourceID resId = resIdCodec.decode(record);
+		int kindsCount = record.readUnsignedShort();
+
+		Map<Long, StoredKindData> kinds = Maps.newHashMap();
+		for (int i = 0; i < kindsCount; i++) {
+			StoredKindData kd = kindDataCodec.decode(record);
+
+			Iterator<StoredData> values = kd.getValues().iterator();
+			while (values.hasNext()) {
+				if (values.next().isExpired()) {
+					values.remove();
+				}
+			}
+
+			if (!kd.getValues().isEmpty()) {
+				kinds.put(kd.getKind().getKindId(), kd);
+			}
+		}
+
+		if (kinds.isEmpty())
+			return false;
+
+		storage.put(resId, kinds);
+
+		// Loaded before any snapshot is written, no need to synchronize
+		shadow.put(resId, copyResource(kinds));
+		return true;
+	}
+
+	@Subscribe
+	public void shutdown(GlobalEvent ev) {
+		if (ev.type != TYPE.SHUTDOWN)
+			return;
+
+		if (!snapshotFile.isPresent())
+			return;
+
+		// Final snapshot, taken by the packets looper after the messages
+		// already queued so that it doesn't race with the last stores, it
+		// includes the changes of the periodic writes not run yet
+		packetsLooper.execute(new Runnable() {
+
+			@Override
+			public void run() {
+				try {
+					addUnwritten(collectChanges());
+					write();
+				} catch (RuntimeException e) {
+					l.warn("Final storage snapshot failed", e);
+				}
+			}
+		});
+	}
+}
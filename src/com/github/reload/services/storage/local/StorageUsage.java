@@ -0,0 +1,127 @@
+package com.github.reload.services.storage.local;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import com.github.reload.net.codecs.secBlock.SignerIdentity;
+import com.google.common.collect.Maps;
+
+/**
+ * Bytes of data stored locally, accounted as a whole, for each kind and for
+ * each storer identity. The counters are updated by the storage and can be
+ * read by any thread.
+ * 
+ */
+public class StorageUsage {
+
+	private final AtomicLong totalBytes = new AtomicLong();
+	private final AtomicLong valuesCount = new AtomicLong();
+
+	private final ConcurrentMap<Long, AtomicLong> kindBytes = Maps.newConcurrentMap();
+	private final ConcurrentMap<SignerIdentity, AtomicLong> identityBytes = Maps.newConcurrentMap();
+
+	void add(long kindId, StoredData d) {
+		update(kindId, d, d.getStoredSize());
+		valuesCount.incrementAndGet();
+	}
+
+	void remove(long kindId, StoredData d) {
+		update(kindId, d, -d.getStoredSize());
+		valuesCount.decrementAndGet();
+	}
+
+	void add(StoredKindData kindData) {
+		for (StoredData d : kindData.getValues()) {
+			add(kindData.getKind().getKindId(), d);
+		}
+	}
+
+	void remove(StoredKindData kindData) {
+		for (StoredData d : kindData.getValues()) {
+			remove(kindData.getKind().getKindId(), d);
+		}
+	}
+
+	private void update(long kindId, StoredData d, long delta) {
+		totalBytes.addAndGet(delta);
+		updateCounter(kindBytes, kindId, delta);
+		updateCounter(identityBytes, d.getSignature().getIdentity(), delta);
+	}
+
+	private static <K> void updateCounter(ConcurrentMap<K, AtomicLong> counters, K key, long delta) {
+		AtomicLong c = counters.get(key);
+		if (c == null) {
+			AtomicLong newCounter = new AtomicLong();
+			c = counters.putIfAbsent(key, newCounter);
+			if (c == null) {
+				c = newCounter;
+			}
+		}
+
+		// Counters of kinds and identities not storing anymore are dropped,
+		// the storage is updated by a single thread
+		if (c.addAndGet(delta) == 0) {
+			counters.remove(key, c);
+		}
+	}
+
+	/**
+	 * @return the bytes of all the values stored locally
+	 */
+	public long getTotalBytes() {
+		return totalBytes.get();
+	}
+
+	/**
+	 * @return the number of values stored locally
+	 */
+	public long getValuesCount() {
+		return valuesCount.get();
+	}
+
+	/**
+	 * @return the bytes of the values of the given kind stored locally
+	 */
+	public long getKindBytes(long kindId) {
+		AtomicLong c = kindBytes.get(kindId);
+		return c != null ? c.get() : 0;
+	}
+
+	/**
+	 * @return the bytes of the values signed by the given identity stored
+	 *         locally
+	 */
+	public long getIdentityBytes(SignerIdentity identity) {
+		AtomicLong c = identityBytes.get(identity);
+		return c != null ? c.get() : 0;
+	}
+
+	/**
+	 * @return a snapshot of the bytes stored locally for each kind
+	 */
+	public Map<Long, Long> getKindsUsage() {
+		return snapshot(kindBytes);
+	}
+
+	/**
+	 * @return a snapshot of the bytes stored locally for each storer identity
+	 */
+	public Map<SignerIdentity, Long> getIdentitiesUsage() {
+		return snapshot(identityBytes);
+	}
+
+	private static <K> Map<K, Long> snapshot(ConcurrentMap<K, AtomicLong> counters) {
+		Map<K, Long> out = Maps.newHashMap();
+		for (Entry<K, AtomicLong> e : counters.entrySet()) {
+			out.put(e.getKey(), e.getValue().get());
+		}
+		return Collections.unmodifiableMap(out);
+	}
+
+	@Override
+	public String toString() {
+		return "StorageUsage [totalBytes=" + totalBytes + ", valuesCount=" + valuesCount + ", kindBytes=" + kindBytes + "]";
+	}
+}
@@ -1,13 +1,16 @@
 package com.github.reload.services.storage.local;
 
 import io.netty.buffer.ByteBuf;
-import io.netty.buffer.UnpooledByteBufAllocator;
-import java.math.BigInteger;
+import io.netty.buffer.PooledByteBufAllocator;
 import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.security.PublicKey;
 import java.security.SignatureException;
 import java.util.Objects;
+import java.util.concurrent.ConcurrentMap;
 import dagger.ObjectGraph;
+import com.github.reload.crypto.CryptoHelper;
 import com.github.reload.crypto.Signer;
 import com.github.reload.net.codecs.Codec;
 import com.github.reload.net.codecs.Codec.CodecException;
@@ -17,28 +20,37 @@ import com.github.reload.net.codecs.secBlock.Signature;
 import com.github.reload.services.storage.DataKind;
 import com.github.reload.services.storage.DataModel;
 import com.github.reload.services.storage.DataModel.DataValue;
+import com.github.reload.services.storage.DataModel.Metadata;
 import com.github.reload.services.storage.local.StoredData.StoredDataCodec;
+import com.google.common.collect.Maps;
+import com.google.common.primitives.UnsignedLongs;
 
 @ReloadCodec(StoredDataCodec.class)
 public class StoredData {
 
-	private final BigInteger storageTime;
+	private static final ConcurrentMap<Class<?>, Codec<DataValue>> VALUE_CODECS = Maps.newConcurrentMap();
+
+	private final long storageTime;
 	private final long lifeTime;
 	private final DataValue value;
 	private final Signature signature;
 
-	public StoredData(BigInteger storageTime, long lifeTime, DataValue value, Signature signature) {
+	// Computed when the value is stored locally, not part of the encoding
+	private volatile Metadata metadata;
+	private volatile int storedSize = -1;
+
+	public StoredData(long storageTime, long lifeTime, DataValue value, Signature signature) {
 		this.storageTime = storageTime;
 		this.lifeTime = lifeTime;
 		this.value = value;
 		this.signature = signature;
 	}
 
-	public StoredData(BigInteger storageTime, long lifeTime, DataValue value, Signer s, ResourceID resId, DataKind kind) {
+	public StoredData(long storageTime, long lifeTime, DataValue value, Signer s, ResourceID resId, DataKind kind) {
 		this(storageTime, lifeTime, value, generateSignature(storageTime, lifeTime, value, s, resId, kind));
 	}
 
-	public BigInteger getStorageTime() {
+	public long getStorageTime() {
 		return storageTime;
 	}
 
@@ -54,22 +66,41 @@ public class StoredData {
 		return signature;
 	}
 
-	private static Signature generateSignature(BigInteger storageTime, long lifeTime, DataValue value, Signer s, ResourceID resId, DataKind kind) {
-		ByteBuf b = UnpooledByteBufAllocator.DEFAULT.buffer();
-		b.writeBytes(resId.getData());
-		b.writeLong(kind.getKindId());
-
-		byte[] storageTimeBytes = Codec.toUnsigned(storageTime);
+	/**
+	 * @return the metadata of the value computed when it was stored locally,
+	 *         null if not yet computed
+	 */
+	Metadata getMetadata() {
+		return metadata;
+	}
 
-		// Make sure field is always of the fixed size by padding with zeros
-		b.writeZero(StoredDataCodec.STORAGE_TIME_FIELD - storageTimeBytes.length);
+	void setMetadata(Metadata metadata) {
+		this.metadata = metadata;
+	}
 
-		b.writeBytes(storageTimeBytes);
+	/**
+	 * @return the number of bytes of the encoded value, including signature
+	 *         and storage metadata, used to account the local storage usage
+	 */
+	public int getStoredSize() {
+		if (storedSize < 0) {
+			ByteBuf b = PooledByteBufAllocator.DEFAULT.buffer();
+			try {
+				Codec.getCodec(StoredData.class, null).encode(this, b);
+				storedSize = b.readableBytes();
+			} catch (CodecException e) {
+				throw new RuntimeException(e);
+			} finally {
+				b.release();
+			}
+		}
+		return storedSize;
+	}
 
-		@SuppressWarnings("unchecked")
-		Codec<DataValue> valueCodec = (Codec<DataValue>) Codec.getCodec(value.getClass(), null);
+	private static Signature generateSignature(long storageTime, long lifeTime, DataValue value, Signer s, ResourceID resId, DataKind kind) {
+		ByteBuf b = PooledByteBufAllocator.DEFAULT.buffer();
 		try {
-			valueCodec.encode(value, b);
+			encodeSignedData(b, storageTime, value, resId, kind);
 			s.update(b);
 			return s.sign();
 		} catch (CodecException | SignatureException e) {
@@ -80,30 +111,66 @@ public class StoredData {
 	}
 
 	public boolean verify(PublicKey publicKey, ResourceID resId, DataKind kind) throws GeneralSecurityException {
-		ByteBuf b = UnpooledByteBufAllocator.DEFAULT.buffer();
-		b.writeBytes(resId.getData());
-		b.writeLong(kind.getKindId());
-
-		byte[] storageTimeBytes = Codec.toUnsigned(storageTime);
-
-		// Make sure field is always of the fixed size by padding with zeros
-		b.writeZero(StoredDataCodec.STORAGE_TIME_FIELD - storageTimeBytes.length);
-
-		b.writeBytes(storageTimeBytes);
-
-		@SuppressWarnings("unchecked")
-		Codec<DataValue> valueCodec = (Codec<DataValue>) Codec.getCodec(value.getClass(), null);
+		ByteBuf b = PooledByteBufAllocator.DEFAULT.buffer();
 		try {
-			valueCodec.encode(value, b);
+			encodeSignedData(b, storageTime, value, resId, kind);
+			return signature.verify(b, publicKey);
 		} catch (CodecException e) {
 			throw new RuntimeException(e);
+		} finally {
+			b.release();
+		}
+	}
+
+	/**
+	 * @return a digest of the signed content, the signature and the public key
+	 *         used to verify it, two values with the same digest have the same
+	 *         verification result
+	 */
+	public byte[] getVerificationDigest(PublicKey publicKey, ResourceID resId, DataKind kind) {
+		ByteBuf b = PooledByteBufAllocator.DEFAULT.buffer();
+		try {
+			encodeSignedData(b, storageTime, value, resId, kind);
+			MessageDigest md = MessageDigest.getInstance(CryptoHelper.OVERLAY_HASHALG.toString());
+			md.update(b.nioBuffer());
+			md.update(signature.getDigest());
+			md.update(publicKey.getEncoded());
+			return md.digest();
+		} catch (CodecException | NoSuchAlgorithmException e) {
+			throw new RuntimeException(e);
+		} finally {
+			b.release();
 		}
+	}
 
-		return signature.verify(b, publicKey);
+	private static void encodeSignedData(ByteBuf b, long storageTime, DataValue value, ResourceID resId, DataKind kind) throws CodecException {
+		b.writeBytes(resId.getData());
+		b.writeLong(kind.getKindId());
+		b.writeLong(storageTime);
+
+		getValueCodec(value.getClass()).encode(value, b);
+	}
+
+	/**
+	 * Value codecs get their inner codecs at construction time, so the same
+	 * instance can be shared by concurrent signers
+	 */
+	@SuppressWarnings("unchecked")
+	private static Codec<DataValue> getValueCodec(Class<? extends DataValue> valueClass) {
+		Codec<DataValue> codec = VALUE_CODECS.get(valueClass);
+		if (codec == null) {
+			codec = (Codec<DataValue>) Codec.getCodec(valueClass, null);
+			VALUE_CODECS.putIfAbsent(valueClass, codec);
+		}
+		return codec;
 	}
 
+	/**
+	 * @return true if the lifetime (in seconds) of this value is elapsed since
+	 *         its storage time (in milliseconds)
+	 */
 	public boolean isExpired() {
-		return storageTime.add(BigInteger.valueOf(lifeTime)).longValue() > System.currentTimeMillis();
+		return UnsignedLongs.compare(storageTime + lifeTime * 1000, System.currentTimeMillis()) < 0;
 	}
 
 	@Override
@@ -127,10 +194,7 @@ public class StoredData {
 				return false;
 		} else if (!signature.equals(other.signature))
 			return false;
-		if (storageTime == null) {
-			if (other.storageTime != null)
-				return false;
-		} else if (!storageTime.equals(other.storageTime))
+		if (storageTime != other.storageTime)
 			return false;
 		if (value == null) {
 			if (other.value != null)
@@ -147,7 +211,6 @@ public class StoredData {
 
 	static class StoredDataCodec extends Codec<StoredData> {
 
-		private static final int STORAGE_TIME_FIELD = U_INT64;
 		private static final int DATA_LENGTH_FIELD = U_INT32;
 
 		private final Codec<Signature> signatureCodec;
@@ -161,12 +224,7 @@ public class StoredData {
 		public void encode(StoredData obj, ByteBuf buf, Object... params) throws com.github.reload.net.codecs.Codec.CodecException {
 			Field lenFld = allocateField(buf, DATA_LENGTH_FIELD);
 
-			byte[] storageTimeBytes = Codec.toUnsigned(obj.storageTime);
-
-			// Make sure field is always of the fixed size by padding with zeros
-			buf.writeZero(STORAGE_TIME_FIELD - storageTimeBytes.length);
-
-			buf.writeBytes(storageTimeBytes);
+			buf.writeLong(obj.storageTime);
 
 			buf.writeInt((int) obj.lifeTime);
 
@@ -187,9 +245,7 @@ public class StoredData {
 
 			ByteBuf dataFld = readField(buf, DATA_LENGTH_FIELD);
 
-			byte[] storageTimeBytes = new byte[STORAGE_TIME_FIELD];
-			dataFld.readBytes(storageTimeBytes);
-			BigInteger storageTime = new BigInteger(1, storageTimeBytes);
+			long storageTime = dataFld.readLong();
 
 			long lifeTime = dataFld.readUnsignedInt();
 
@@ -1,7 +1,6 @@
 package com.github.reload.services.storage.local;
 
 import io.netty.buffer.ByteBuf;
-import java.math.BigInteger;
 import java.util.ArrayList;
 import java.util.List;
 import dagger.ObjectGraph;
@@ -15,11 +14,11 @@ public class StoredKindData {
 
 	protected final DataKind kind;
 
-	BigInteger generation;
+	long generation;
 
 	private final List<StoredData> data;
 
-	public StoredKindData(DataKind kind, BigInteger generation, List<StoredData> data) {
+	public StoredKindData(DataKind kind, long generation, List<StoredData> data) {
 		this.kind = kind;
 		this.generation = generation;
 		this.data = data;
@@ -29,7 +28,7 @@ public class StoredKindData {
 		return kind;
 	}
 
-	public BigInteger getGeneration() {
+	public long getGeneration() {
 		return generation;
 	}
 
@@ -39,7 +38,6 @@ public class StoredKindData {
 
 	static class StoreKindDataCodec extends Codec<StoredKindData> {
 
-		protected static final int GENERATION_FIELD = U_INT64;
 		protected static final int VALUES_LENGTH_FIELD = U_INT32;
 
 		private final Codec<DataKind> kindCodec;
@@ -55,12 +53,7 @@ public class StoredKindData {
 		public void encode(StoredKindData obj, ByteBuf buf, Object... params) throws com.github.reload.net.codecs.Codec.CodecException {
 			kindCodec.encode(obj.kind, buf);
 
-			byte[] generationBytes = toUnsigned(obj.generation);
-			// Make sure generation field is always of the fixed size by
-			// padding with zeros
-			buf.writeZero(GENERATION_FIELD - generationBytes.length);
-
-			buf.writeBytes(generationBytes);
+			buf.writeLong(obj.generation);
 
 			Field lenFld = allocateField(buf, VALUES_LENGTH_FIELD);
 
@@ -75,9 +68,7 @@ public class StoredKindData {
 		public StoredKindData decode(ByteBuf buf, Object... params) throws com.github.reload.net.codecs.Codec.CodecException {
 			DataKind kind = kindCodec.decode(buf);
 
-			byte[] generationData = new byte[GENERATION_FIELD];
-			buf.readBytes(generationData);
-			BigInteger generation = new BigInteger(1, generationData);
+			long generation = buf.readLong();
 
 			List<StoredData> data = decodeStoredDataList(kind, buf);
 			return new StoredKindData(kind, generation, data);
@@ -1,7 +1,6 @@
 package com.github.reload.services.storage.local;
 
 import io.netty.buffer.ByteBuf;
-import java.math.BigInteger;
 import dagger.ObjectGraph;
 import com.github.reload.net.codecs.Codec;
 import com.github.reload.net.codecs.Codec.ReloadCodec;
@@ -13,13 +12,12 @@ import com.github.reload.services.storage.local.StoredMetadata.StoredMetadataCod
 @ReloadCodec(StoredMetadataCodec.class)
 public class StoredMetadata extends StoredData {
 
-	public StoredMetadata(BigInteger storageTime, long lifetime, Metadata value) {
+	public StoredMetadata(long storageTime, long lifetime, Metadata value) {
 		super(storageTime, lifetime, value, Signature.EMPTY_SIGNATURE);
 	}
 
 	static class StoredMetadataCodec extends Codec<StoredMetadata> {
 
-		private static final int STORAGE_TIME_FIELD = U_INT64;
 		private static final int DATA_LENGTH_FIELD = U_INT32;
 
 		public StoredMetadataCodec(ObjectGraph ctx) {
@@ -31,10 +29,7 @@ public class StoredMetadata extends StoredData {
 		public void encode(StoredMetadata obj, ByteBuf buf, Object... params) throws com.github.reload.net.codecs.Codec.CodecException {
 			Field lenFld = allocateField(buf, DATA_LENGTH_FIELD);
 
-			byte[] storTimeBytes = toUnsigned(obj.getStorageTime());
-			// Make sure the field has always a fixed size by padding with zeros
-			buf.writeZero(STORAGE_TIME_FIELD - storTimeBytes.length);
-			buf.writeBytes(storTimeBytes);
+			buf.writeLong(obj.getStorageTime());
 
 			buf.writeInt((int) obj.getLifeTime());
 
@@ -52,9 +47,7 @@ public class StoredMetadata extends StoredData {
 
 			ByteBuf dataFld = readField(buf, DATA_LENGTH_FIELD);
 
-			byte[] storageTimeRaw = new byte[STORAGE_TIME_FIELD];
-			dataFld.readBytes(storageTimeRaw);
-			BigInteger storageTime = new BigInteger(1, storageTimeRaw);
+			long storageTime = dataFld.readLong();
 
 			long lifeTime = dataFld.readUnsignedInt();
 
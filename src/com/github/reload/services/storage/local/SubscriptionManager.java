@@ -0,0 +1,358 @@
+package com.github.reload.services.storage.local;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+import org.apache.log4j.Logger;
+import com.github.reload.net.MessageRouter;
+import com.github.reload.net.codecs.Message;
+import com.github.reload.net.codecs.MessageBuilder;
+import com.github.reload.net.codecs.header.DestinationList;
+import com.github.reload.net.codecs.header.NodeID;
+import com.github.reload.net.codecs.header.ResourceID;
+import com.github.reload.routing.TopologyPlugin;
+import com.github.reload.routing.TopologyPlugin.TopologyEvent;
+import com.github.reload.services.storage.DataKind;
+import com.github.reload.services.storage.net.FetchKindResponse;
+import com.github.reload.services.storage.net.NotifyRequest;
+import com.google.common.base.Optional;
+import com.google.common.eventbus.EventBus;
+import com.google.common.eventbus.Subscribe;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+
+/**
+ * Keeps the subscriptions to the resources the local peer is responsible for
+ * and notifies the subscribers when the subscribed kinds change. The changes
+ * of a resource received in a short time are coalesced in a single
+ * notification. Subscriptions are kept for each subscriber and kind and
+ * expire when their lease is not renewed, when the responsibility of a
+ * resource moves to another peer the subscribers are asked to subscribe again.
+ * 
+ */
+@Singleton
+public class SubscriptionManager {
+
+	private static final Logger l = Logger.getRootLogger();
+
+	// Time in milliseconds the changes of a resource are collected before
+	// notifying the subscribers
+	static final int COALESCING_DELAY = 200;
+
+	// Maximum lease in seconds granted to a subscription
+	static final long MAX_LEASE = 3600;
+
+	// Maximum number of subscribers of a single resource
+	static final int MAX_SUBSCRIBERS = 1000;
+
+	// Time in milliseconds between two removals of expired subscriptions
+	static final int PURGE_INTERVAL = 60000;
+
+	@Inject
+	TopologyPlugin topology;
+
+	@Inject
+	MessageRouter router;
+
+	@Inject
+	MessageBuilder msgBuilder;
+
+	@Inject
+	DataStorage storage;
+
+	@Inject
+	@Named("packetsLooper")
+	Executor packetsLooper;
+
+	// Subscriptions and changes are accessed only by the packets looper
+	private final Map<ResourceID, Map<NodeID, Map<Long, Subscription>>> subscriptions = new HashMap<ResourceID, Map<NodeID, Map<Long, Subscription>>>();
+	private final Map<ResourceID, Set<Long>> pendingChanges = new HashMap<ResourceID, Set<Long>>();
+
+	private final ScheduledExecutorService scheduler;
+
+	@Inject
+	public SubscriptionManager(EventBus eventBus, @Named("scheduler") ScheduledExecutorService scheduler) {
+		this.scheduler = scheduler;
+		eventBus.register(this);
+		scheduler.scheduleWithFixedDelay(new Runnable() {
+
+			@Override
+			public void run() {
+				packetsLooper.execute(new Runnable() {
+
+					@Override
+					public void run() {
+						purgeExpired();
+					}
+				});
+			}
+		}, PURGE_INTERVAL, PURGE_INTERVAL, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Subscribe the given node to the changes of the given kinds, a previous
+	 * subscription of the same node to the same kinds is renewed. A zero lease
+	 * removes the subscription to the given kinds only.
+	 */
+	void subscribe(ResourceID resId, NodeID subscriber, Collection<Long> kinds, long lease, boolean pushValues) {
+		if (lease == 0) {
+			unsubscribe(resId, subscriber, kinds);
+			return;
+		}
+
+		Map<NodeID, Map<Long, Subscription>> resSubscriptions = subscriptions.get(resId);
+		if (resSubscriptions == null) {
+			resSubscriptions = new HashMap<NodeID, Map<Long, Subscription>>();
+			subscriptions.put(resId, resSubscriptions);
+		}
+
+		Map<Long, Subscription> nodeSubscriptions = resSubscriptions.get(subscriber);
+		if (nodeSubscriptions == null) {
+			if (resSubscriptions.size() >= MAX_SUBSCRIBERS) {
+				l.debug(String.format("Subscription of %s to %s rejected, too many subscribers", subscriber, resId));
+				return;
+			}
+			nodeSubscriptions = new HashMap<Long, Subscription>();
+			resSubscriptions.put(subscriber, nodeSubscriptions);
+		}
+
+		long expiration = System.currentTimeMillis() + Math.min(lease, MAX_LEASE) * 1000;
+
+		for (Long k : kinds) {
+			Subscription s = nodeSubscriptions.get(k);
+			if (s == null) {
+				s = new Subscription();
+				nodeSubscriptions.put(k, s);
+			}
+			// Values are pushed as long as one of the subscriptions of the
+			// node to the kind asks for them
+			s.pushValues |= pushValues;
+			s.expiration = Math.max(s.expiration, expiration);
+		}
+	}
+
+	private void unsubscribe(ResourceID resId, NodeID subscriber, Collection<Long> kinds) {
+		Map<NodeID, Map<Long, Subscription>> resSubscriptions = subscriptions.get(resId);
+		if (resSubscriptions == null)
+			return;
+
+		Map<Long, Subscription> nodeSubscriptions = resSubscriptions.get(subscriber);
+		if (nodeSubscriptions != null) {
+			nodeSubscriptions.keySet().removeAll(kinds);
+			if (nodeSubscriptions.isEmpty()) {
+				resSubscriptions.remove(subscriber);
+			}
+		}
+
+		if (resSubscriptions.isEmpty()) {
+			subscriptions.remove(resId);
+			pendingChanges.remove(resId);
+		}
+	}
+
+	/**
+	 * Notify the subscribers that the given kinds of the resource are
+	 * changed, the notification is delayed to coalesce subsequent changes
+	 */
+	void resourceChanged(ResourceID resId, Collection<Long> kinds) {
+		if (!subscriptions.containsKey(resId) || kinds.isEmpty())
+			return;
+
+		Set<Long> changed = pendingChanges.get(resId);
+		if (changed == null) {
+			changed = new HashSet<Long>();
+			pendingChanges.put(resId, changed);
+		}
+
+		boolean scheduled = !changed.isEmpty();
+
+		changed.addAll(kinds);
+
+		// Changes after the shutdown are not notified
+		if (scheduled || scheduler.isShutdown())
+			return;
+
+		final ResourceID changedRes = resId;
+		scheduler.schedule(new Runnable() {
+
+			@Override
+			public void run() {
+				packetsLooper.execute(new Runnable() {
+
+					@Override
+					public void run() {
+						Set<Long> changed = pendingChanges.remove(changedRes);
+						if (changed != null) {
+							notifySubscribers(changedRes, changed);
+						}
+					}
+				});
+			}
+		}, COALESCING_DELAY, TimeUnit.MILLISECONDS);
+	}
+
+	private void notifySubscribers(ResourceID resId, Set<Long> changed) {
+		Map<NodeID, Map<Long, Subscription>> resSubscriptions = subscriptions.get(resId);
+		if (resSubscriptions == null)
+			return;
+
+		Optional<Map<Long, StoredKindData>> resource = storage.get(resId);
+
+		long now = System.currentTimeMillis();
+
+		Iterator<Entry<NodeID, Map<Long, Subscription>>> i = resSubscriptions.entrySet().iterator();
+		while (i.hasNext()) {
+			Entry<NodeID, Map<Long, Subscription>> e = i.next();
+			Map<Long, Subscription> nodeSubscriptions = e.getValue();
+
+			List<FetchKindResponse> changes = new ArrayList<FetchKindResponse>();
+			for (Long k : changed) {
+				Subscription s = nodeSubscriptions.get(k);
+				if (s == null) {
+					continue;
+				}
+				if (s.expiration < now) {
+					nodeSubscriptions.remove(k);
+					continue;
+				}
+				changes.add(getChange(resource, k, s.pushValues));
+			}
+
+			if (nodeSubscriptions.isEmpty()) {
+				i.remove();
+				continue;
+			}
+
+			if (!changes.isEmpty()) {
+				sendNotification(e.getKey(), new NotifyRequest(resId, false, changes));
+			}
+		}
+
+		if (resSubscriptions.isEmpty()) {
+			subscriptions.remove(resId);
+		}
+	}
+
+	/**
+	 * Removed kinds are notified with a zero generation
+	 */
+	private static FetchKindResponse getChange(Optional<Map<Long, StoredKindData>> resource, long kindId, boolean pushValues) {
+		StoredKindData kd = resource.isPresent() ? resource.get().get(kindId) : null;
+
+		if (kd == null)
+			return new FetchKindResponse(DataKind.getInstance(kindId), 0, Collections.<StoredData> emptyList());
+
+		List<StoredData> values = pushValues ? new ArrayList<StoredData>(kd.getValues()) : Collections.<StoredData> emptyList();
+		return new FetchKindResponse(kd.getKind(), kd.getGeneration(), values);
+	}
+
+	private void sendNotification(final NodeID subscriber, final NotifyRequest notification) {
+		Message msg = msgBuilder.newMessage(notification, new DestinationList(subscriber));
+
+		Futures.addCallback(router.sendRequestMessage(msg), new FutureCallback<Message>() {
+
+			@Override
+			public void onSuccess(Message result) {
+				// Notification delivered
+			}
+
+			@Override
+			public void onFailure(Throwable t) {
+				l.debug(String.format("Notification of %s to %s failed, subscription removed", notification.getResourceId(), subscriber), t);
+				packetsLooper.execute(new Runnable() {
+
+					@Override
+					public void run() {
+						Map<NodeID, Map<Long, Subscription>> resSubscriptions = subscriptions.get(notification.getResourceId());
+						if (resSubscriptions == null)
+							return;
+						resSubscriptions.remove(subscriber);
+						if (resSubscriptions.isEmpty()) {
+							subscriptions.remove(notification.getResourceId());
+						}
+					}
+				});
+			}
+		});
+	}
+
+	@Subscribe
+	public void handleTopologyEvent(final TopologyEvent event) {
+		if (event.type == TopologyEvent.Type.NEIGHBOR_LEFT)
+			return;
+
+		packetsLooper.execute(new Runnable() {
+
+			@Override
+			public void run() {
+				rebindMoved(event.type == TopologyEvent.Type.LOCAL_LEAVING);
+			}
+		});
+	}
+
+	/**
+	 * Ask the subscribers of the resources the local peer is not responsible
+	 * for anymore to subscribe again to the new responsible peer
+	 */
+	private void rebindMoved(boolean all) {
+		Iterator<Entry<ResourceID, Map<NodeID, Map<Long, Subscription>>>> i = subscriptions.entrySet().iterator();
+		while (i.hasNext()) {
+			Entry<ResourceID, Map<NodeID, Map<Long, Subscription>>> e = i.next();
+			if (!all && topology.isLocalPeerResponsible(e.getKey())) {
+				continue;
+			}
+
+			for (NodeID subscriber : e.getValue().keySet()) {
+				sendNotification(subscriber, new NotifyRequest(e.getKey(), true, Collections.<FetchKindResponse> emptyList()));
+			}
+
+			pendingChanges.remove(e.getKey());
+			i.remove();
+		}
+	}
+
+	private void purgeExpired() {
+		long now = System.currentTimeMillis();
+
+		Iterator<Entry<ResourceID, Map<NodeID, Map<Long, Subscription>>>> i = subscriptions.entrySet().iterator();
+		while (i.hasNext()) {
+			Entry<ResourceID, Map<NodeID, Map<Long, Subscription>>> e = i.next();
+			Iterator<Map<Long, Subscription>> j = e.getValue().values().iterator();
+			while (j.hasNext()) {
+				Map<Long, Subscription> nodeSubscriptions = j.next();
+				Iterator<Subscription> k = nodeSubscriptions.values().iterator();
+				while (k.hasNext()) {
+					if (k.next().expiration < now) {
+						k.remove();
+					}
+				}
+				if (nodeSubscriptions.isEmpty()) {
+					j.remove();
+				}
+			}
+			if (e.getValue().isEmpty()) {
+				pendingChanges.remove(e.getKey());
+				i.remove();
+			}
+		}
+	}
+
+	private static class Subscription {
+
+		boolean pushValues;
+		long expiration;
+	}
+}
@@ -2,6 +2,7 @@ package com.github.reload.services.storage.net;
 
 import io.netty.buffer.ByteBuf;
 import java.util.Objects;
+import javax.inject.Inject;
 import dagger.ObjectGraph;
 import com.github.reload.net.codecs.Codec;
 import com.github.reload.net.codecs.Codec.ReloadCodec;
@@ -21,13 +22,17 @@ public class ArrayMetadata implements Metadata {
 	private long index;
 	private SingleMetadata singleMeta;
 
+	@Inject
+	public ArrayMetadata() {
+	}
+
 	@Override
 	public void setMetadata(DataValue v, HashAlgorithm hashAlg) {
 		ArrayValue value = (ArrayValue) v;
 		index = value.getIndex();
 
 		singleMeta = new SingleMetadata();
-		singleMeta.setMetadata(v, hashAlg);
+		singleMeta.setMetadata(value.getValue(), hashAlg);
 	}
 
 	public long getIndex() {
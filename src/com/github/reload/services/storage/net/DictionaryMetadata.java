@@ -2,6 +2,7 @@ package com.github.reload.services.storage.net;
 
 import io.netty.buffer.ByteBuf;
 import java.util.Arrays;
+import javax.inject.Inject;
 import dagger.ObjectGraph;
 import com.github.reload.net.codecs.Codec;
 import com.github.reload.net.codecs.Codec.ReloadCodec;
@@ -21,6 +22,10 @@ public class DictionaryMetadata implements Metadata {
 	private byte[] key;
 	private SingleMetadata singleMeta;
 
+	@Inject
+	public DictionaryMetadata() {
+	}
+
 	@Override
 	public void setMetadata(DataValue v, HashAlgorithm hashAlg) {
 		DictionaryValue value = (DictionaryValue) v;
@@ -0,0 +1,58 @@
+package com.github.reload.services.storage.net;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import java.util.Arrays;
+import com.github.reload.net.codecs.Codec;
+import com.github.reload.net.codecs.Codec.CodecException;
+
+/**
+ * Identifies the fetch requests for the same resource with the same
+ * specifiers. Specifiers have no value based equality, so requests are
+ * compared by their encoded form.
+ * 
+ */
+public class FetchKey {
+
+	private final byte[] encodedRequest;
+
+	private FetchKey(byte[] encodedRequest) {
+		this.encodedRequest = encodedRequest;
+	}
+
+	/**
+	 * @param codec
+	 *            the fetch request codec, kept by the caller to avoid its
+	 *            instantiation for each request
+	 */
+	public static FetchKey of(FetchRequest req, Codec<FetchRequest> codec) {
+		ByteBuf buf = Unpooled.buffer();
+		try {
+			codec.encode(req, buf);
+			byte[] enc = new byte[buf.readableBytes()];
+			buf.readBytes(enc);
+			return new FetchKey(enc);
+		} catch (CodecException e) {
+			throw new IllegalArgumentException(e);
+		} finally {
+			buf.release();
+		}
+	}
+
+	@Override
+	public int hashCode() {
+		return Arrays.hashCode(encodedRequest);
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (obj == null)
+			return false;
+		if (getClass() != obj.getClass())
+			return false;
+		FetchKey other = (FetchKey) obj;
+		return Arrays.equals(encodedRequest, other.encodedRequest);
+	}
+}
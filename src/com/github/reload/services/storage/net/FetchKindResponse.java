@@ -1,7 +1,6 @@
 package com.github.reload.services.storage.net;
 
 import io.netty.buffer.ByteBuf;
-import java.math.BigInteger;
 import java.util.ArrayList;
 import java.util.List;
 import dagger.ObjectGraph;
@@ -21,10 +20,10 @@ import com.github.reload.services.storage.net.FetchKindResponse.FetchKindRespons
 public class FetchKindResponse {
 
 	private final DataKind kind;
-	private final BigInteger generation;
+	private final long generation;
 	private final List<StoredData> values;
 
-	public FetchKindResponse(DataKind kind, BigInteger generation, List<StoredData> values) {
+	public FetchKindResponse(DataKind kind, long generation, List<StoredData> values) {
 		this.kind = kind;
 		this.generation = generation;
 		this.values = values;
@@ -34,7 +33,7 @@ public class FetchKindResponse {
 		return kind;
 	}
 
-	public BigInteger getGeneration() {
+	public long getGeneration() {
 		return generation;
 	}
 
@@ -44,7 +43,6 @@ public class FetchKindResponse {
 
 	static class FetchKindResponseCodec extends Codec<FetchKindResponse> {
 
-		private final static int GENERATION_FIELD = U_INT64;
 		private final static int VALUES_LENGTH_FIELD = U_INT32;
 
 		private final Codec<DataKind> dataKindCodec;
@@ -60,12 +58,7 @@ public class FetchKindResponse {
 		public void encode(FetchKindResponse obj, ByteBuf buf, Object... params) throws com.github.reload.net.codecs.Codec.CodecException {
 			dataKindCodec.encode(obj.kind, buf);
 
-			byte[] genBytes = toUnsigned(obj.generation);
-
-			// Make sure the field is of a fixed size by padding with zeros
-			buf.writeZero(GENERATION_FIELD - genBytes.length);
-
-			buf.writeBytes(genBytes);
+			buf.writeLong(obj.generation);
 
 			encodeData(obj, buf);
 		}
@@ -82,9 +75,7 @@ public class FetchKindResponse {
 		public FetchKindResponse decode(ByteBuf buf, Object... params) throws com.github.reload.net.codecs.Codec.CodecException {
 			DataKind kind = dataKindCodec.decode(buf);
 
-			byte[] genData = new byte[GENERATION_FIELD];
-			buf.readBytes(genData);
-			BigInteger generation = new BigInteger(1, genData);
+			long generation = buf.readLong();
 
 			List<StoredData> values = decodeData(kind, buf);
 			return new FetchKindResponse(kind, generation, values);
@@ -0,0 +1,35 @@
+package com.github.reload.services.storage.net;
+
+import io.netty.buffer.ByteBuf;
+import dagger.ObjectGraph;
+import com.github.reload.net.codecs.Codec;
+import com.github.reload.net.codecs.Codec.ReloadCodec;
+import com.github.reload.net.codecs.content.Content;
+import com.github.reload.net.codecs.content.ContentType;
+import com.github.reload.services.storage.net.NotifyAnswer.NotifyAnswerCodec;
+
+@ReloadCodec(NotifyAnswerCodec.class)
+public class NotifyAnswer extends Content {
+
+	@Override
+	public ContentType getType() {
+		return ContentType.NOTIFY_ANS;
+	}
+
+	static class NotifyAnswerCodec extends Codec<NotifyAnswer> {
+
+		public NotifyAnswerCodec(ObjectGraph ctx) {
+			super(ctx);
+		}
+
+		@Override
+		public void encode(NotifyAnswer obj, ByteBuf buf, Object... params) throws CodecException {
+			// No data carried
+		}
+
+		@Override
+		public NotifyAnswer decode(ByteBuf buf, Object... params) throws CodecException {
+			return new NotifyAnswer();
+		}
+	}
+}
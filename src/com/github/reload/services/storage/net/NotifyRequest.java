@@ -0,0 +1,96 @@
+package com.github.reload.services.storage.net;
+
+import io.netty.buffer.ByteBuf;
+import java.util.ArrayList;
+import java.util.List;
+import dagger.ObjectGraph;
+import com.github.reload.net.codecs.Codec;
+import com.github.reload.net.codecs.Codec.ReloadCodec;
+import com.github.reload.net.codecs.content.Content;
+import com.github.reload.net.codecs.content.ContentType;
+import com.github.reload.net.codecs.header.ResourceID;
+import com.github.reload.services.storage.net.NotifyRequest.NotifyRequestCodec;
+
+/**
+ * Notification sent by the responsible peer to the subscribers of a resource.
+ * It carries the new generation of the changed kinds, and their values if
+ * requested by the subscriber. A rebind notification tells the subscriber
+ * that the peer is not responsible for the resource anymore and the
+ * subscription has to be renewed.
+ * 
+ */
+@ReloadCodec(NotifyRequestCodec.class)
+public class NotifyRequest extends Content {
+
+	private final ResourceID resourceId;
+	private final boolean rebind;
+	private final List<FetchKindResponse> changes;
+
+	public NotifyRequest(ResourceID resourceId, boolean rebind, List<FetchKindResponse> changes) {
+		this.resourceId = resourceId;
+		this.rebind = rebind;
+		this.changes = changes;
+	}
+
+	@Override
+	public ContentType getType() {
+		return ContentType.NOTIFY_REQ;
+	}
+
+	public ResourceID getResourceId() {
+		return resourceId;
+	}
+
+	public boolean isRebind() {
+		return rebind;
+	}
+
+	/**
+	 * @return the changed kinds, the values are empty if the subscriber
+	 *         requested only the generations
+	 */
+	public List<FetchKindResponse> getChanges() {
+		return changes;
+	}
+
+	static class NotifyRequestCodec extends Codec<NotifyRequest> {
+
+		private static final int CHANGES_LENGTH_FIELD = U_INT32;
+
+		private final Codec<ResourceID> resIdCodec;
+		private final Codec<FetchKindResponse> responseCodec;
+
+		public NotifyRequestCodec(ObjectGraph ctx) {
+			super(ctx);
+			resIdCodec = getCodec(ResourceID.class);
+			responseCodec = getCodec(FetchKindResponse.class);
+		}
+
+		@Override
+		public void encode(NotifyRequest obj, ByteBuf buf, Object... params) throws CodecException {
+			resIdCodec.encode(obj.resourceId, buf);
+			buf.writeByte(obj.rebind ? 1 : 0);
+
+			Field changesFld = allocateField(buf, CHANGES_LENGTH_FIELD);
+			for (FetchKindResponse r : obj.changes) {
+				responseCodec.encode(r, buf);
+			}
+			changesFld.updateDataLength();
+		}
+
+		@Override
+		public NotifyRequest decode(ByteBuf buf, Object... params) throws CodecException {
+			ResourceID resId = resIdCodec.decode(buf);
+			boolean rebind = buf.readUnsignedByte() > 0;
+
+			ByteBuf changesFld = readField(buf, CHANGES_LENGTH_FIELD);
+			List<FetchKindResponse> changes = new ArrayList<FetchKindResponse>();
+			while (changesFld.readableBytes() > 0) {
+				changes.add(responseCodec.decode(changesFld));
+			}
+			changesFld.release();
+
+			return new NotifyRequest(resId, rebind, changes);
+		}
+	}
+}
@@ -5,6 +5,7 @@ import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.Arrays;
 import java.util.Objects;
+import javax.inject.Inject;
 import dagger.ObjectGraph;
 import com.github.reload.net.codecs.Codec;
 import com.github.reload.net.codecs.Codec.ReloadCodec;
@@ -26,6 +27,10 @@ public class SingleMetadata implements Metadata {
 	private HashAlgorithm hashAlgorithm;
 	private byte[] hashValue;
 
+	@Inject
+	public SingleMetadata() {
+	}
+
 	@Override
 	public void setMetadata(DataValue v, HashAlgorithm hashAlg) {
 		SingleValue value = (SingleValue) v;
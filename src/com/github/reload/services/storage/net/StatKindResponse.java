@@ -1,7 +1,6 @@
 package com.github.reload.services.storage.net;
 
 import io.netty.buffer.ByteBuf;
-import java.math.BigInteger;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
@@ -22,10 +21,10 @@ import com.github.reload.services.storage.net.StatKindResponse.StatKindResponseC
 public class StatKindResponse {
 
 	private final DataKind kind;
-	private final BigInteger generation;
+	private final long generation;
 	private final List<StoredMetadata> values;
 
-	public StatKindResponse(DataKind kind, BigInteger generation, List<StoredMetadata> values) {
+	public StatKindResponse(DataKind kind, long generation, List<StoredMetadata> values) {
 		this.kind = kind;
 		this.generation = generation;
 		this.values = values;
@@ -35,7 +34,7 @@ public class StatKindResponse {
 		return kind;
 	}
 
-	public BigInteger getGeneration() {
+	public long getGeneration() {
 		return generation;
 	}
 
@@ -57,10 +56,7 @@ public class StatKindResponse {
 		if (getClass() != obj.getClass())
 			return false;
 		StatKindResponse other = (StatKindResponse) obj;
-		if (generation == null) {
-			if (other.generation != null)
-				return false;
-		} else if (!generation.equals(other.generation))
+		if (generation != other.generation)
 			return false;
 		if (kind == null) {
 			if (other.kind != null)
@@ -82,7 +78,6 @@ public class StatKindResponse {
 
 	static class StatKindResponseCodec extends Codec<StatKindResponse> {
 
-		private final static int GENERATION_FIELD = U_INT64;
 		private final static int VALUES_LENGTH_FIELD = U_INT32;
 
 		private final Codec<DataKind> dataKindCodec;
@@ -98,11 +93,7 @@ public class StatKindResponse {
 		public void encode(StatKindResponse obj, ByteBuf buf, Object... params) throws com.github.reload.net.codecs.Codec.CodecException {
 			dataKindCodec.encode(obj.kind, buf);
 
-			byte[] genBytes = toUnsigned(obj.generation);
-
-			// Make sure the field has a fixed size by padding with zeros
-			buf.writeZero(GENERATION_FIELD - genBytes.length);
-			buf.writeBytes(genBytes);
+			buf.writeLong(obj.generation);
 
 			encodeData(obj, buf);
 		}
@@ -119,9 +110,7 @@ public class StatKindResponse {
 		public StatKindResponse decode(ByteBuf buf, Object... params) throws com.github.reload.net.codecs.Codec.CodecException {
 			DataKind kind = dataKindCodec.decode(buf);
 
-			byte[] genData = new byte[GENERATION_FIELD];
-			buf.readBytes(genData);
-			BigInteger generation = new BigInteger(1, genData);
+			long generation = buf.readLong();
 
 			List<StoredMetadata> values = decodeData(kind, buf);
 			return new StatKindResponse(kind, generation, values);
@@ -1,7 +1,6 @@
 package com.github.reload.services.storage.net;
 
 import io.netty.buffer.ByteBuf;
-import java.math.BigInteger;
 import java.util.ArrayList;
 import java.util.List;
 import dagger.ObjectGraph;
@@ -15,16 +14,16 @@ import com.github.reload.services.storage.net.StoreKindResponse.StoreKindRespons
 public class StoreKindResponse {
 
 	private final DataKind kind;
-	private final BigInteger generation;
+	private final long generation;
 	private final List<NodeID> replicas;
 
-	public StoreKindResponse(DataKind kind, BigInteger generation, List<NodeID> replicas) {
+	public StoreKindResponse(DataKind kind, long generation, List<NodeID> replicas) {
 		this.kind = kind;
 		this.generation = generation;
 		this.replicas = replicas;
 	}
 
-	public BigInteger getGeneration() {
+	public long getGeneration() {
 		return generation;
 	}
 
@@ -43,7 +42,6 @@ public class StoreKindResponse {
 
 	static class StoreKindResponseCodec extends Codec<StoreKindResponse> {
 
-		private static final int GENERATION_FIELD = U_INT64;
 		private static final int REPLICAS_LENGTH_FIELD = U_INT16;
 
 		private final Codec<DataKind> kindCodec;
@@ -59,13 +57,7 @@ public class StoreKindResponse {
 		public void encode(StoreKindResponse obj, ByteBuf buf, Object... params) throws CodecException {
 			kindCodec.encode(obj.kind, buf);
 
-			byte[] genBytes = toUnsigned(obj.generation);
-
-			// Make sure the field is always the fixed size by padding with
-			// zeros
-			buf.writeZero(GENERATION_FIELD - genBytes.length);
-
-			buf.writeBytes(genBytes);
+			buf.writeLong(obj.generation);
 
 			Field lenFld = allocateField(buf, REPLICAS_LENGTH_FIELD);
 
@@ -80,9 +72,7 @@ public class StoreKindResponse {
 		public StoreKindResponse decode(ByteBuf buf, Object... params) throws CodecException {
 			DataKind kind = kindCodec.decode(buf);
 
-			byte[] genCounterData = new byte[GENERATION_FIELD];
-			buf.readBytes(genCounterData);
-			BigInteger genCounter = new BigInteger(1, genCounterData);
+			long genCounter = buf.readLong();
 
 			List<NodeID> replicas = decodeReplicas(buf);
 			return new StoreKindResponse(kind, genCounter, replicas);
@@ -1,7 +1,6 @@
 package com.github.reload.services.storage.net;
 
 import io.netty.buffer.ByteBuf;
-import java.math.BigInteger;
 import java.util.Objects;
 import javax.inject.Inject;
 import com.github.reload.net.codecs.Codec;
@@ -17,7 +16,7 @@ public class StoreKindSpecifier {
 	private DataKind kind;
 	private ValueSpecifier valueSpecifier;
 
-	private BigInteger generation = BigInteger.ZERO;
+	private long generation = 0;
 
 	@Inject
 	public StoreKindSpecifier() {
@@ -39,11 +38,11 @@ public class StoreKindSpecifier {
 		return valueSpecifier;
 	}
 
-	public BigInteger getGeneration() {
+	public long getGeneration() {
 		return generation;
 	}
 
-	public void setGeneration(BigInteger generation) {
+	public void setGeneration(long generation) {
 		this.generation = generation;
 	}
 
@@ -61,10 +60,7 @@ public class StoreKindSpecifier {
 		if (getClass() != obj.getClass())
 			return false;
 		StoreKindSpecifier other = (StoreKindSpecifier) obj;
-		if (generation == null) {
-			if (other.generation != null)
-				return false;
-		} else if (!generation.equals(other.generation))
+		if (generation != other.generation)
 			return false;
 		if (kind == null) {
 			if (other.kind != null)
@@ -86,7 +82,6 @@ public class StoreKindSpecifier {
 
 	static class StoreKindSpecifierCodec extends Codec<StoreKindSpecifier> {
 
-		private static final int GENERATION_FIELD = U_INT64;
 		private static final int VALUE_SPEC_LENGTH_FIELD = U_INT16;
 
 		private final Codec<DataKind> kindCodec;
@@ -100,12 +95,7 @@ public class StoreKindSpecifier {
 		public void encode(StoreKindSpecifier obj, ByteBuf buf, Object... params) throws CodecException {
 			kindCodec.encode(obj.kind, buf);
 
-			byte[] genBytes = toUnsigned(obj.generation);
-
-			// Make sure the field is of a fixed size by padding with zeros
-			buf.writeZero(GENERATION_FIELD - genBytes.length);
-
-			buf.writeBytes(genBytes);
+			buf.writeLong(obj.generation);
 
 			Field lenFld = allocateField(buf, VALUE_SPEC_LENGTH_FIELD);
 
@@ -120,9 +110,7 @@ public class StoreKindSpecifier {
 		public StoreKindSpecifier decode(ByteBuf buf, Object... params) throws CodecException {
 			DataKind kind = kindCodec.decode(buf);
 
-			byte[] genData = new byte[GENERATION_FIELD];
-			buf.readBytes(genData);
-			BigInteger generation = new BigInteger(1, genData);
+			long generation = buf.readLong();
 
 			ByteBuf valueSpecFld = readField(buf, VALUE_SPEC_LENGTH_FIELD);
 
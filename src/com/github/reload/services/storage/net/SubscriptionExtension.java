@@ -0,0 +1,73 @@
+package com.github.reload.services.storage.net;
+
+import io.netty.buffer.ByteBuf;
+import dagger.ObjectGraph;
+import com.github.reload.net.codecs.Codec;
+import com.github.reload.net.codecs.Codec.ReloadCodec;
+import com.github.reload.net.codecs.content.MessageExtension;
+import com.github.reload.services.storage.net.SubscriptionExtension.SubscriptionExtensionCodec;
+
+/**
+ * Extension of a fetch request that subscribes the sender to the changes of
+ * the fetched kinds. The responsible peer notifies the subscriber with a
+ * {@link NotifyRequest} until the lease expires, a zero lease cancels the
+ * subscription. The extension is not critical, peers not supporting it only
+ * answer to the fetch.
+ * 
+ */
+@ReloadCodec(SubscriptionExtensionCodec.class)
+public class SubscriptionExtension extends MessageExtension {
+
+	private final long lease;
+	private final boolean pushValues;
+
+	public SubscriptionExtension(long lease, boolean pushValues) {
+		this.lease = lease;
+		this.pushValues = pushValues;
+	}
+
+	/**
+	 * @return the subscription lease in seconds
+	 */
+	public long getLease() {
+		return lease;
+	}
+
+	/**
+	 * @return true if the notifications should carry the new values, otherwise
+	 *         only the new generations are notified
+	 */
+	public boolean isPushValues() {
+		return pushValues;
+	}
+
+	@Override
+	protected MessageExtensionType getExtensionType() {
+		return MessageExtensionType.SUBSCRIPTION;
+	}
+
+	@Override
+	public String toString() {
+		return "SubscriptionExtension [lease=" + lease + ", pushValues=" + pushValues + "]";
+	}
+
+	static class SubscriptionExtensionCodec extends Codec<SubscriptionExtension> {
+
+		public SubscriptionExtensionCodec(ObjectGraph ctx) {
+			super(ctx);
+		}
+
+		@Override
+		public void encode(SubscriptionExtension obj, ByteBuf buf, Object... params) throws CodecException {
+			buf.writeInt((int) obj.lease);
+			buf.writeByte(obj.pushValues ? 1 : 0);
+		}
+
+		@Override
+		public SubscriptionExtension decode(ByteBuf buf, Object... params) throws CodecException {
+			long lease = buf.readUnsignedInt();
+			boolean pushValues = buf.readUnsignedByte() > 0;
+			return new SubscriptionExtension(lease, pushValues);
+		}
+	}
+}
@@ -0,0 +1,108 @@
+package com.github.reload.services.storage.net;
+
+import io.netty.buffer.ByteBuf;
+import java.util.ArrayList;
+import java.util.List;
+import dagger.ObjectGraph;
+import com.github.reload.net.codecs.Codec;
+import com.github.reload.net.codecs.Codec.ReloadCodec;
+import com.github.reload.net.codecs.content.Content;
+import com.github.reload.net.codecs.content.ContentType;
+import com.github.reload.services.storage.net.SyncAnswer.SyncAnswerCodec;
+
+/**
+ * Anti-entropy answer of a replica. For the request nodes not matching the
+ * local tree it contains the hashes of their children or, at the leaf level,
+ * the generations of the kinds stored in the mismatching leaves.
+ * 
+ */
+@ReloadCodec(SyncAnswerCodec.class)
+public class SyncAnswer extends Content {
+
+	private final short level;
+	private final List<SyncTreeNode> nodes;
+	private final List<SyncEntry> entries;
+
+	public SyncAnswer(short level, List<SyncTreeNode> nodes, List<SyncEntry> entries) {
+		this.level = level;
+		this.nodes = nodes;
+		this.entries = entries;
+	}
+
+	@Override
+	public ContentType getType() {
+		return ContentType.SYNC_ANS;
+	}
+
+	/**
+	 * @return the tree level of the nodes in this answer
+	 */
+	public short getLevel() {
+		return level;
+	}
+
+	public List<SyncTreeNode> getNodes() {
+		return nodes;
+	}
+
+	/**
+	 * @return the entries of the mismatching leaves, empty if the answer
+	 *         nodes are not leaves
+	 */
+	public List<SyncEntry> getEntries() {
+		return entries;
+	}
+
+	static class SyncAnswerCodec extends Codec<SyncAnswer> {
+
+		private static final int NODES_LENGTH_FIELD = U_INT16;
+		private static final int ENTRIES_LENGTH_FIELD = U_INT32;
+
+		private final Codec<SyncTreeNode> nodeCodec;
+		private final Codec<SyncEntry> entryCodec;
+
+		public SyncAnswerCodec(ObjectGraph ctx) {
+			super(ctx);
+			nodeCodec = getCodec(SyncTreeNode.class);
+			entryCodec = getCodec(SyncEntry.class);
+		}
+
+		@Override
+		public void encode(SyncAnswer obj, ByteBuf buf, Object... params) throws CodecException {
+			buf.writeByte(obj.level);
+
+			Field nodesFld = allocateField(buf, NODES_LENGTH_FIELD);
+			for (SyncTreeNode n : obj.nodes) {
+				nodeCodec.encode(n, buf);
+			}
+			nodesFld.updateDataLength();
+
+			Field entriesFld = allocateField(buf, ENTRIES_LENGTH_FIELD);
+			for (SyncEntry e : obj.entries) {
+				entryCodec.encode(e, buf);
+			}
+			entriesFld.updateDataLength();
+		}
+
+		@Override
+		public SyncAnswer decode(ByteBuf buf, Object... params) throws CodecException {
+			short level = buf.readUnsignedByte();
+
+			ByteBuf nodesFld = readField(buf, NODES_LENGTH_FIELD);
+			List<SyncTreeNode> nodes = new ArrayList<SyncTreeNode>();
+			while (nodesFld.readableBytes() > 0) {
+				nodes.add(nodeCodec.decode(nodesFld));
+			}
+			nodesFld.release();
+
+			ByteBuf entriesFld = readField(buf, ENTRIES_LENGTH_FIELD);
+			List<SyncEntry> entries = new ArrayList<SyncEntry>();
+			while (entriesFld.readableBytes() > 0) {
+				entries.add(entryCodec.decode(entriesFld));
+			}
+			entriesFld.release();
+
+			return new SyncAnswer(level, nodes, entries);
+		}
+	}
+}
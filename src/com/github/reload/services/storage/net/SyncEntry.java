@@ -0,0 +1,91 @@
+package com.github.reload.services.storage.net;
+
+import io.netty.buffer.ByteBuf;
+import java.util.Objects;
+import dagger.ObjectGraph;
+import com.github.reload.net.codecs.Codec;
+import com.github.reload.net.codecs.Codec.ReloadCodec;
+import com.github.reload.net.codecs.header.ResourceID;
+import com.github.reload.services.storage.net.SyncEntry.SyncEntryCodec;
+
+/**
+ * The generation of a kind stored at a resource, used to compare the content
+ * of the synchronization tree leaves between replicas
+ * 
+ */
+@ReloadCodec(SyncEntryCodec.class)
+public class SyncEntry {
+
+	private final ResourceID resourceId;
+	private final long kindId;
+	private final long generation;
+
+	public SyncEntry(ResourceID resourceId, long kindId, long generation) {
+		this.resourceId = resourceId;
+		this.kindId = kindId;
+		this.generation = generation;
+	}
+
+	public ResourceID getResourceId() {
+		return resourceId;
+	}
+
+	public long getKindId() {
+		return kindId;
+	}
+
+	public long getGeneration() {
+		return generation;
+	}
+
+	@Override
+	public int hashCode() {
+		return Objects.hash(resourceId, kindId, generation);
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (obj == null)
+			return false;
+		if (getClass() != obj.getClass())
+			return false;
+		SyncEntry other = (SyncEntry) obj;
+		return kindId == other.kindId && resourceId.equals(other.resourceId) && generation == other.generation;
+	}
+
+	@Override
+	public String toString() {
+		return "SyncEntry [resourceId=" + resourceId + ", kindId=" + kindId + ", generation=" + generation + "]";
+	}
+
+	static class SyncEntryCodec extends Codec<SyncEntry> {
+
+
+		private final Codec<ResourceID> resIdCodec;
+
+		public SyncEntryCodec(ObjectGraph ctx) {
+			super(ctx);
+			resIdCodec = getCodec(ResourceID.class);
+		}
+
+		@Override
+		public void encode(SyncEntry obj, ByteBuf buf, Object... params) throws CodecException {
+			resIdCodec.encode(obj.resourceId, buf);
+			buf.writeInt((int) obj.kindId);
+
+			buf.writeLong(obj.generation);
+		}
+
+		@Override
+		public SyncEntry decode(ByteBuf buf, Object... params) throws CodecException {
+			ResourceID resId = resIdCodec.decode(buf);
+			long kindId = buf.readUnsignedInt();
+
+			long generation = buf.readLong();
+
+			return new SyncEntry(resId, kindId, generation);
+		}
+	}
+}
@@ -0,0 +1,107 @@
+package com.github.reload.services.storage.net;
+
+import io.netty.buffer.ByteBuf;
+import java.util.ArrayList;
+import java.util.List;
+import dagger.ObjectGraph;
+import com.github.reload.net.codecs.Codec;
+import com.github.reload.net.codecs.Codec.ReloadCodec;
+import com.github.reload.net.codecs.content.Content;
+import com.github.reload.net.codecs.content.ContentType;
+import com.github.reload.net.codecs.header.ResourceID;
+import com.github.reload.services.storage.net.SyncRequest.SyncRequestCodec;
+
+/**
+ * Anti-entropy request sent by a responsible peer to its replicas. It carries
+ * the hashes of some nodes of the synchronization tree built over the given
+ * range of resources.
+ * 
+ */
+@ReloadCodec(SyncRequestCodec.class)
+public class SyncRequest extends Content {
+
+	private final ResourceID rangeStart;
+	private final ResourceID rangeEnd;
+	private final short level;
+	private final List<SyncTreeNode> nodes;
+
+	public SyncRequest(ResourceID rangeStart, ResourceID rangeEnd, short level, List<SyncTreeNode> nodes) {
+		this.rangeStart = rangeStart;
+		this.rangeEnd = rangeEnd;
+		this.level = level;
+		this.nodes = nodes;
+	}
+
+	@Override
+	public ContentType getType() {
+		return ContentType.SYNC_REQ;
+	}
+
+	/**
+	 * @return the first resource of the synchronized range (included)
+	 */
+	public ResourceID getRangeStart() {
+		return rangeStart;
+	}
+
+	/**
+	 * @return the last resource of the synchronized range (included)
+	 */
+	public ResourceID getRangeEnd() {
+		return rangeEnd;
+	}
+
+	/**
+	 * @return the tree level of the nodes in this request, 0 is the root
+	 */
+	public short getLevel() {
+		return level;
+	}
+
+	public List<SyncTreeNode> getNodes() {
+		return nodes;
+	}
+
+	static class SyncRequestCodec extends Codec<SyncRequest> {
+
+		private static final int NODES_LENGTH_FIELD = U_INT16;
+
+		private final Codec<ResourceID> resIdCodec;
+		private final Codec<SyncTreeNode> nodeCodec;
+
+		public SyncRequestCodec(ObjectGraph ctx) {
+			super(ctx);
+			resIdCodec = getCodec(ResourceID.class);
+			nodeCodec = getCodec(SyncTreeNode.class);
+		}
+
+		@Override
+		public void encode(SyncRequest obj, ByteBuf buf, Object... params) throws CodecException {
+			resIdCodec.encode(obj.rangeStart, buf);
+			resIdCodec.encode(obj.rangeEnd, buf);
+			buf.writeByte(obj.level);
+
+			Field lenFld = allocateField(buf, NODES_LENGTH_FIELD);
+			for (SyncTreeNode n : obj.nodes) {
+				nodeCodec.encode(n, buf);
+			}
+			lenFld.updateDataLength();
+		}
+
+		@Override
+		public SyncRequest decode(ByteBuf buf, Object... params) throws CodecException {
+			ResourceID rangeStart = resIdCodec.decode(buf);
+			ResourceID rangeEnd = resIdCodec.decode(buf);
+			short level = buf.readUnsignedByte();
+
+			ByteBuf nodesFld = readField(buf, NODES_LENGTH_FIELD);
+			List<SyncTreeNode> nodes = new ArrayList<SyncTreeNode>();
+			while (nodesFld.readableBytes() > 0) {
+				nodes.add(nodeCodec.decode(nodesFld));
+			}
+			nodesFld.release();
+
+			return new SyncRequest(rangeStart, rangeEnd, level, nodes);
+		}
+	}
+}
@@ -0,0 +1,88 @@
+package com.github.reload.services.storage.net;
+
+import io.netty.buffer.ByteBuf;
+import java.util.Arrays;
+import dagger.ObjectGraph;
+import com.github.reload.net.codecs.Codec;
+import com.github.reload.net.codecs.Codec.ReloadCodec;
+import com.github.reload.services.storage.net.SyncTreeNode.SyncTreeNodeCodec;
+
+/**
+ * The hash of a node of the synchronization tree exchanged between replicas
+ * 
+ */
+@ReloadCodec(SyncTreeNodeCodec.class)
+public class SyncTreeNode {
+
+	private final int index;
+	private final byte[] hash;
+
+	public SyncTreeNode(int index, byte[] hash) {
+		this.index = index;
+		this.hash = hash;
+	}
+
+	/**
+	 * @return the position of the node in its tree level
+	 */
+	public int getIndex() {
+		return index;
+	}
+
+	public byte[] getHash() {
+		return hash;
+	}
+
+	@Override
+	public String toString() {
+		return "SyncTreeNode [index=" + index + ", hash=" + Codec.hexDump(hash) + "]";
+	}
+
+	@Override
+	public int hashCode() {
+		return 31 * index + Arrays.hashCode(hash);
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (obj == null)
+			return false;
+		if (getClass() != obj.getClass())
+			return false;
+		SyncTreeNode other = (SyncTreeNode) obj;
+		if (index != other.index)
+			return false;
+		if (!Arrays.equals(hash, other.hash))
+			return false;
+		return true;
+	}
+
+	static class SyncTreeNodeCodec extends Codec<SyncTreeNode> {
+
+		private static final int HASH_LENGTH_FIELD = U_INT8;
+
+		public SyncTreeNodeCodec(ObjectGraph ctx) {
+			super(ctx);
+		}
+
+		@Override
+		public void encode(SyncTreeNode obj, ByteBuf buf, Object... params) throws CodecException {
+			buf.writeShort(obj.index);
+			Field lenFld = allocateField(buf, HASH_LENGTH_FIELD);
+			buf.writeBytes(obj.hash);
+			lenFld.updateDataLength();
+		}
+
+		@Override
+		public SyncTreeNode decode(ByteBuf buf, Object... params) throws CodecException {
+			int index = buf.readUnsignedShort();
+			ByteBuf hashFld = readField(buf, HASH_LENGTH_FIELD);
+			byte[] hash = new byte[hashFld.readableBytes()];
+			hashFld.readBytes(hash);
+			hashFld.release();
+			return new SyncTreeNode(index, hash);
+		}
+	}
+}
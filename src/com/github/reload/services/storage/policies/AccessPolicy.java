@@ -5,14 +5,15 @@ import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
 import java.lang.annotation.Target;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
 import com.github.reload.net.codecs.content.Error.ErrorMessageException;
 import com.github.reload.net.codecs.content.Error.ErrorType;
 import com.github.reload.net.codecs.header.ResourceID;
 import com.github.reload.net.codecs.secBlock.SignerIdentity;
 import com.github.reload.services.storage.DataKind;
 import com.github.reload.services.storage.local.StoredData;
+import com.google.common.collect.Maps;
 
 /**
  * An access control policy used by data kinds that determines if a store
@@ -21,7 +22,7 @@ import com.github.reload.services.storage.local.StoredData;
  */
 public abstract class AccessPolicy {
 
-	private static final Map<String, AccessPolicy> policies = new HashMap<String, AccessPolicy>();
+	private static final ConcurrentMap<String, AccessPolicy> policies = Maps.newConcurrentMap();
 
 	public static final Class<NodeMatch> NODE = NodeMatch.class;
 	public static final Class<UserMatch> USER = UserMatch.class;
@@ -37,12 +38,17 @@ public abstract class AccessPolicy {
 		T policy = (T) policies.get(name);
 
 		if (policy == null) {
+			T newPolicy;
 			try {
-				policy = clazz.newInstance();
+				newPolicy = clazz.newInstance();
 			} catch (InstantiationException | IllegalAccessException e) {
 				throw new RuntimeException(e);
 			}
-			policies.put(name, policy);
+
+			// Another thread may have registered the policy in the meantime
+			@SuppressWarnings("unchecked")
+			T registered = (T) policies.putIfAbsent(name, newPolicy);
+			policy = (registered != null) ? registered : newPolicy;
 		}
 
 		return policy;
@@ -2,10 +2,9 @@ package com.github.reload.services.storage.policies;
 
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
-import java.security.cert.Certificate;
-import java.security.cert.X509Certificate;
 import java.util.Arrays;
 import javax.inject.Inject;
+import javax.inject.Singleton;
 import com.github.reload.crypto.CryptoHelper;
 import com.github.reload.crypto.Keystore;
 import com.github.reload.crypto.ReloadCertificate;
@@ -22,20 +21,30 @@ import com.github.reload.services.storage.local.StoredData;
 import com.github.reload.services.storage.policies.AccessPolicy.PolicyName;
 import com.github.reload.services.storage.policies.NodeMatch.NodeRIDGenerator;
 import com.google.common.base.Optional;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 
 /**
  * Check if the nodeid hash in the sender certificate matches the resource id
  * 
  */
 @PolicyName(value = "node-match", paramGen = NodeRIDGenerator.class)
+@Singleton
 public class NodeMatch extends AccessPolicy {
 
+	// Maximum number of certificates whose hashes are kept
+	static final int CACHE_SIZE = 1000;
+
 	@Inject
 	TopologyPlugin topology;
 
 	@Inject
 	Keystore keystore;
 
+	// Certificates are compared by identity, the keystore reuses the instances
+	private final Cache<ReloadCertificate, byte[]> resourceHashes = CacheBuilder.newBuilder().weakKeys().maximumSize(CACHE_SIZE).build();
+	private final Cache<ReloadCertificate, IdentityHash> identityHashes = CacheBuilder.newBuilder().weakKeys().maximumSize(CACHE_SIZE).build();
+
 	@Override
 	public void accept(ResourceID resourceId, DataKind kind, StoredData data, SignerIdentity signerIdentity) throws AccessPolicyException {
 		if (signerIdentity.getIdentityType() != IdentityType.CERT_HASH_NODE_ID)
@@ -49,18 +58,41 @@ public class NodeMatch extends AccessPolicy {
 		if (!storerReloadCert.isPresent())
 			throw new AccessPolicyException("Unknown signer identity");
 
-		NodeID storerNodeId = storerReloadCert.get().getNodeId();
+		ReloadCertificate storerCert = storerReloadCert.get();
+
+		if (!Arrays.equals(getResourceHash(storerCert), resourceId.getData()))
+			throw new AccessPolicyException("Signer node-id not matching with resource-id");
 
-		byte[] resourceIdHash = resourceId.getData();
+		SignerIdentityValue storerIdentityValue = storerIdentity.getSignerIdentityValue();
+
+		if (!Arrays.equals(storerIdentityValue.getHashValue(), getIdentityHash(storerCert, storerIdentityValue.getHashAlgorithm())))
+			throw new AccessPolicyException("Identity hash value mismatch");
+	}
 
-		X509Certificate storerCert = (X509Certificate) storerReloadCert.get().getOriginalCertificate();
-		byte[] nodeIdHash = hashNodeId(CryptoHelper.OVERLAY_HASHALG, storerNodeId, topology);
-		if (Arrays.equals(nodeIdHash, resourceIdHash)) {
-			checkIdentityHash(storerCert, storerNodeId, storerIdentity);
-			return;
+	/**
+	 * @return the resource-id hash derived from the certificate node-id,
+	 *         computed only once for each certificate
+	 */
+	private byte[] getResourceHash(ReloadCertificate cert) {
+		byte[] hash = resourceHashes.getIfPresent(cert);
+		if (hash == null) {
+			hash = hashNodeId(CryptoHelper.OVERLAY_HASHALG, cert.getNodeId(), topology);
+			resourceHashes.put(cert, hash);
 		}
+		return hash;
+	}
 
-		throw new AccessPolicyException("Signer node-id not matching with resource-id");
+	/**
+	 * @return the signer identity hash of the certificate, computed only once
+	 *         for each certificate and hash algorithm
+	 */
+	private byte[] getIdentityHash(ReloadCertificate cert, HashAlgorithm hashAlg) {
+		IdentityHash hash = identityHashes.getIfPresent(cert);
+		if (hash == null || hash.hashAlg != hashAlg) {
+			hash = new IdentityHash(hashAlg, CertHashNodeIdSignerIdentityValue.computeHash(hashAlg, cert.getOriginalCertificate(), cert.getNodeId()));
+			identityHashes.put(cert, hash);
+		}
+		return hash.value;
 	}
 
 	private static byte[] hashNodeId(HashAlgorithm hashAlg, NodeID storerId, TopologyPlugin plugin) {
@@ -73,15 +105,6 @@ public class NodeMatch extends AccessPolicy {
 		}
 	}
 
-	private static void checkIdentityHash(Certificate storerCert, NodeID storerId, SignerIdentity storerIdentity) throws AccessPolicyException {
-		SignerIdentityValue storerIdentityValue = storerIdentity.getSignerIdentityValue();
-
-		byte[] computedIdentityValue = CertHashNodeIdSignerIdentityValue.computeHash(storerIdentityValue.getHashAlgorithm(), storerCert, storerId);
-
-		if (!Arrays.equals(storerIdentityValue.getHashValue(), computedIdentityValue))
-			throw new AccessPolicyException("Identity hash value mismatch");
-	}
-
 	/**
 	 * Parameters generator for NODE-MATCH policy
 	 * 
@@ -95,4 +118,15 @@ public class NodeMatch extends AccessPolicy {
 			return topology.getResourceId(hashNodeId(CryptoHelper.OVERLAY_HASHALG, storerId, topology));
 		}
 	}
+
+	private static class IdentityHash {
+
+		final HashAlgorithm hashAlg;
+		final byte[] value;
+
+		public IdentityHash(HashAlgorithm hashAlg, byte[] value) {
+			this.hashAlg = hashAlg;
+			this.value = value;
+		}
+	}
 }
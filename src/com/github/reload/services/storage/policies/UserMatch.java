@@ -4,6 +4,7 @@ import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.Arrays;
 import javax.inject.Inject;
+import javax.inject.Singleton;
 import com.github.reload.crypto.CryptoHelper;
 import com.github.reload.crypto.Keystore;
 import com.github.reload.crypto.ReloadCertificate;
@@ -16,20 +17,29 @@ import com.github.reload.services.storage.local.StoredData;
 import com.github.reload.services.storage.policies.AccessPolicy.PolicyName;
 import com.github.reload.services.storage.policies.UserMatch.UserRIDGenerator;
 import com.google.common.base.Optional;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 
 /**
  * Check if the username hash in the sender certificate matches the resource id
  * 
  */
 @PolicyName(value = "user-match", paramGen = UserRIDGenerator.class)
+@Singleton
 public class UserMatch extends AccessPolicy {
 
+	// Maximum number of certificates whose hashes are kept
+	static final int CACHE_SIZE = 1000;
+
 	@Inject
 	TopologyPlugin topology;
 
 	@Inject
 	Keystore keystore;
 
+	// Certificates are compared by identity, the keystore reuses the instances
+	private final Cache<ReloadCertificate, byte[]> resourceHashes = CacheBuilder.newBuilder().weakKeys().maximumSize(CACHE_SIZE).build();
+
 	@Override
 	public void accept(ResourceID resourceId, DataKind kind, StoredData data, SignerIdentity signerIdentity) throws AccessPolicyException {
 
@@ -38,17 +48,24 @@ public class UserMatch extends AccessPolicy {
 		if (!storerReloadCert.isPresent())
 			throw new AccessPolicyException("Unknown signer identity");
 
-		String storerUsername = storerReloadCert.get().getUsername();
-
-		byte[] resourceIdHash = resourceId.getData();
-
-		byte[] nodeIdHash = hashUsername(CryptoHelper.OVERLAY_HASHALG, storerUsername, topology.getResourceIdLength());
-
-		if (!Arrays.equals(nodeIdHash, resourceIdHash))
+		if (!Arrays.equals(getResourceHash(storerReloadCert.get()), resourceId.getData()))
 			throw new AccessPolicyException("Identity hash value mismatch");
 
 	}
 
+	/**
+	 * @return the resource-id hash derived from the certificate username,
+	 *         computed only once for each certificate
+	 */
+	private byte[] getResourceHash(ReloadCertificate cert) {
+		byte[] hash = resourceHashes.getIfPresent(cert);
+		if (hash == null) {
+			hash = hashUsername(CryptoHelper.OVERLAY_HASHALG, cert.getUsername(), topology.getResourceIdLength());
+			resourceHashes.put(cert, hash);
+		}
+		return hash;
+	}
+
 	private static byte[] hashUsername(HashAlgorithm hashAlg, String username, int resIdLength) {
 		try {
 			MessageDigest d = MessageDigest.getInstance(hashAlg.toString());
@@ -0,0 +1,138 @@
+package com.github.reload.net;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import org.junit.Before;
+import org.junit.Test;
+import com.github.reload.net.ConnectionManager.ConnectionStatusEvent;
+import com.github.reload.net.codecs.Header;
+import com.github.reload.net.codecs.Message;
+import com.github.reload.net.codecs.header.DestinationList;
+import com.github.reload.net.codecs.header.NodeID;
+import com.github.reload.net.codecs.header.ResourceID;
+import com.github.reload.net.codecs.header.RoutableID;
+import com.github.reload.routing.ChordPlugin;
+import com.github.reload.routing.MessageHandlers;
+import com.github.reload.routing.RoutingTable;
+import com.github.reload.routing.TopologyPlugin.TopologyEvent;
+import com.google.common.base.Optional;
+import com.google.common.eventbus.EventBus;
+
+public class MessageRouterTest {
+
+	private static final NodeID NEIGHBOR = NodeID.valueOf("10000000000000000000000000000000");
+	private static final NodeID OTHER_NEIGHBOR = NodeID.valueOf("20000000000000000000000000000000");
+	private static final ResourceID RES_ID = ResourceID.valueOf("30000000000000000000000000000000");
+
+	// Next hops computed by the routing table and used for transmission
+	private final List<RoutableID> lookups = new ArrayList<RoutableID>();
+	private final List<NodeID> transmissions = new ArrayList<NodeID>();
+
+	private Set<NodeID> nextHops;
+	private EventBus eventBus;
+	private MessageRouter router;
+
+	@Before
+	public void init() {
+		eventBus = new EventBus();
+		nextHops = Collections.singleton(NEIGHBOR);
+
+		final RoutingTable table = new RoutingTable() {
+
+			@Override
+			public Set<NodeID> getNextHops(RoutableID destination) {
+				lookups.add(destination);
+				return nextHops;
+			}
+
+			@Override
+			public Set<NodeID> getNeighbors() {
+				return nextHops;
+			}
+		};
+
+		router = new MessageRouter(new MessageHandlers(eventBus), eventBus);
+		router.topology = new ChordPlugin() {
+
+			@Override
+			public RoutingTable getRoutingTable() {
+				return table;
+			}
+		};
+		router.connManager = new ConnectionManager() {
+
+			@Override
+			public boolean isNeighbor(NodeID nodeId) {
+				return nodeId.equals(NEIGHBOR);
+			}
+
+			@Override
+			public Optional<Connection> getConnection(NodeID neighbor) {
+				transmissions.add(neighbor);
+				return Optional.absent();
+			}
+		};
+	}
+
+	private void send(RoutableID dest) {
+		router.sendMessage(new Message(new Header.Builder().setDestinationList(new DestinationList(dest)).build(), null, null));
+	}
+
+	@Test
+	public void testRouteCached() {
+		send(RES_ID);
+		send(RES_ID);
+
+		assertEquals(1, lookups.size());
+		assertEquals(1, router.getRouteCacheStats().hitCount());
+		assertEquals(Collections.nCopies(2, NEIGHBOR), transmissions);
+	}
+
+	@Test
+	public void testTopologyEventInvalidates() {
+		send(RES_ID);
+
+		nextHops = Collections.singleton(OTHER_NEIGHBOR);
+		eventBus.post(new TopologyEvent(TopologyEvent.Type.NEIGHBOR_JOINED, OTHER_NEIGHBOR));
+		send(RES_ID);
+
+		assertEquals(2, lookups.size());
+		assertEquals(OTHER_NEIGHBOR, transmissions.get(1));
+	}
+
+	@Test
+	public void testConnectionEventInvalidates() {
+		send(RES_ID);
+
+		nextHops = Collections.singleton(OTHER_NEIGHBOR);
+		eventBus.post(new ConnectionStatusEvent(ConnectionStatusEvent.Type.CLOSED, null));
+		send(RES_ID);
+
+		assertEquals(2, lookups.size());
+		assertEquals(OTHER_NEIGHBOR, transmissions.get(1));
+	}
+
+	@Test
+	public void testNoRouteNotCached() {
+		nextHops = Collections.emptySet();
+		send(RES_ID);
+
+		nextHops = Collections.singleton(NEIGHBOR);
+		send(RES_ID);
+
+		assertEquals(2, lookups.size());
+		assertEquals(Collections.singletonList(NEIGHBOR), transmissions);
+	}
+
+	@Test
+	public void testNeighborNotLookedUp() {
+		send(NEIGHBOR);
+
+		assertTrue(lookups.isEmpty());
+		assertEquals(Collections.singletonList(NEIGHBOR), transmissions);
+	}
+}
@@ -0,0 +1,128 @@
+package com.github.reload.net.codecs.header;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+public class RoutableIDTest {
+
+	private static final ResourceID ZERO = id("00000000000000000000000000000000");
+	private static final ResourceID ONE = id("00000000000000000000000000000001");
+	private static final ResourceID LOW_MAX = id("0000000000000000ffffffffffffffff");
+	private static final ResourceID HIGH_ONE = id("00000000000000010000000000000000");
+	private static final ResourceID MAX = id("ffffffffffffffffffffffffffffffff");
+
+	private static ResourceID id(String hex) {
+		return ResourceID.valueOf(hex);
+	}
+
+	@Test
+	public void testHalves() {
+		assertEquals(0, LOW_MAX.getHigh());
+		assertEquals(-1, LOW_MAX.getLow());
+		assertEquals(1, HIGH_ONE.getHigh());
+		assertEquals(0, HIGH_ONE.getLow());
+	}
+
+	@Test
+	public void testCompareUnsigned() {
+		assertTrue(id("80000000000000000000000000000000").compareTo(id("7fffffffffffffffffffffffffffffff")) > 0);
+		assertTrue(id("00000000000000008000000000000000").compareTo(id("00000000000000007fffffffffffffff")) > 0);
+		assertTrue(HIGH_ONE.compareTo(LOW_MAX) > 0);
+		assertEquals(0, MAX.compareTo(id("ffffffffffffffffffffffffffffffff")));
+	}
+
+	@Test
+	public void testCompareWide() {
+		ResourceID a = id("0100000000000000000000000000000000000000");
+		ResourceID b = id("0000000000000000000000000000000000000001");
+		assertTrue(a.compareTo(b) > 0);
+		assertTrue(b.compareTo(a) < 0);
+		assertFalse(a.equals(b));
+	}
+
+	@Test
+	public void testClockwiseDistanceBorrow() {
+		// The low half of the distance borrows from the high half
+		assertTrue(RoutableID.compareClockwiseDistance(LOW_MAX, HIGH_ONE, MAX) < 0);
+		assertTrue(RoutableID.compareClockwiseDistance(LOW_MAX, ZERO, HIGH_ONE) > 0);
+		assertEquals(0, RoutableID.compareClockwiseDistance(LOW_MAX, ONE, ONE));
+	}
+
+	@Test
+	public void testClockwiseDistanceWraparound() {
+		// The distance from the maximum id to zero is one
+		assertEquals(1, RoutableID.getClockwiseDistanceBits(MAX, ZERO));
+		assertEquals(2, RoutableID.getClockwiseDistanceBits(MAX, ONE));
+		assertTrue(RoutableID.compareClockwiseDistance(MAX, ZERO, id("7fffffffffffffffffffffffffffffff")) < 0);
+		assertTrue(RoutableID.compareClockwiseDistance(MAX, ONE, MAX) > 0);
+	}
+
+	@Test
+	public void testClockwiseDistanceCarry() {
+		assertEquals(1, RoutableID.getClockwiseDistanceBits(LOW_MAX, HIGH_ONE));
+		assertEquals(65, RoutableID.getClockwiseDistanceBits(ZERO, HIGH_ONE));
+		assertEquals(128, RoutableID.getClockwiseDistanceBits(ONE, ZERO));
+		assertEquals(0, RoutableID.getClockwiseDistanceBits(HIGH_ONE, HIGH_ONE));
+	}
+
+	@Test
+	public void testIsBetween() {
+		ResourceID from = id("00000000000000000000000000000010");
+		ResourceID to = id("00000000000000000000000000000020");
+
+		assertTrue(RoutableID.isBetween(id("00000000000000000000000000000015"), from, to));
+		assertTrue(RoutableID.isBetween(to, from, to));
+		assertFalse(RoutableID.isBetween(from, from, to));
+		assertFalse(RoutableID.isBetween(id("00000000000000000000000000000021"), from, to));
+		assertFalse(RoutableID.isBetween(ZERO, from, to));
+	}
+
+	@Test
+	public void testIsBetweenWraparound() {
+		ResourceID from = id("fffffffffffffffffffffffffffffff0");
+		ResourceID to = id("00000000000000000000000000000010");
+
+		assertTrue(RoutableID.isBetween(MAX, from, to));
+		assertTrue(RoutableID.isBetween(ZERO, from, to));
+		assertTrue(RoutableID.isBetween(to, from, to));
+		assertFalse(RoutableID.isBetween(from, from, to));
+		assertFalse(RoutableID.isBetween(id("80000000000000000000000000000000"), from, to));
+	}
+
+	@Test
+	public void testIsBetweenAcrossHalves() {
+		ResourceID to = id("00000000000000010000000000000001");
+
+		assertTrue(RoutableID.isBetween(HIGH_ONE, LOW_MAX, to));
+		assertTrue(RoutableID.isBetween(to, LOW_MAX, to));
+		assertFalse(RoutableID.isBetween(ONE, LOW_MAX, to));
+		assertFalse(RoutableID.isBetween(id("00000000000000010000000000000002"), LOW_MAX, to));
+	}
+
+	@Test
+	public void testIsBetweenWholeRing() {
+		assertTrue(RoutableID.isBetween(ZERO, HIGH_ONE, HIGH_ONE));
+		assertTrue(RoutableID.isBetween(HIGH_ONE, HIGH_ONE, HIGH_ONE));
+		assertTrue(RoutableID.isBetween(MAX, HIGH_ONE, HIGH_ONE));
+	}
+
+	@Test
+	public void testXorDistance() {
+		assertEquals(128, RoutableID.getXorDistanceBits(id("80000000000000000000000000000000"), ZERO));
+		assertEquals(65, RoutableID.getXorDistanceBits(HIGH_ONE, ZERO));
+		assertEquals(0, RoutableID.getXorDistanceBits(LOW_MAX, LOW_MAX));
+		assertTrue(RoutableID.compareXorDistance(ZERO, LOW_MAX, HIGH_ONE) < 0);
+		assertTrue(RoutableID.compareXorDistance(MAX, HIGH_ONE, LOW_MAX) < 0);
+	}
+
+	@Test
+	public void testEqualsAndHashCode() {
+		ResourceID a = id("0102030405060708090a0b0c0d0e0f10");
+		ResourceID b = id("0102030405060708090a0b0c0d0e0f10");
+		assertEquals(a, b);
+		assertEquals(a.hashCode(), b.hashCode());
+		assertFalse(a.equals(NodeID.valueOf(a.getData())));
+	}
+}
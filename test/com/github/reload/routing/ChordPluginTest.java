@@ -0,0 +1,203 @@
+package com.github.reload.routing;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import org.junit.Before;
+import org.junit.Test;
+import com.github.reload.Overlay;
+import com.github.reload.net.ConnectionManager;
+import com.github.reload.net.LinkQualityRegistry;
+import com.github.reload.net.codecs.header.NodeID;
+import com.github.reload.net.codecs.header.ResourceID;
+import com.github.reload.net.codecs.header.RoutableID;
+import com.github.reload.routing.TopologyPlugin.TopologyEvent;
+import com.google.common.eventbus.EventBus;
+import com.google.common.eventbus.Subscribe;
+
+public class ChordPluginTest {
+
+	private static final NodeID LOCAL = node("40");
+
+	private static final List<NodeID> PEERS = Arrays.asList(node("10"), node("20"), node("30"), node("50"), node("60"), node("70"), node("a0"));
+
+	private final Set<NodeID> connected = new HashSet<NodeID>();
+	private final List<NodeID> joined = new ArrayList<NodeID>();
+
+	private ChordPlugin plugin;
+
+	/**
+	 * @return the node-id with the given most significant byte
+	 */
+	private static NodeID node(String msb) {
+		return NodeID.valueOf(msb + "000000000000000000000000000000");
+	}
+
+	private static ResourceID res(String msb) {
+		return ResourceID.valueOf(msb + "000000000000000000000000000000");
+	}
+
+	@Before
+	public void init() {
+		EventBus eventBus = new EventBus();
+		eventBus.register(this);
+
+		plugin = new ChordPlugin();
+		plugin.eventBus = eventBus;
+		plugin.linkQuality = new LinkQualityRegistry(eventBus);
+		plugin.connMgr = new ConnectionManager() {
+
+			@Override
+			public boolean isNeighbor(NodeID nodeId) {
+				return connected.contains(nodeId);
+			}
+		};
+		plugin.overlay = new Overlay(plugin.connMgr, plugin) {
+
+			@Override
+			public NodeID getLocalNodeId() {
+				return LOCAL;
+			}
+		};
+
+		connected.add(LOCAL);
+	}
+
+	@Subscribe
+	public void handleTopologyEvent(TopologyEvent e) {
+		if (e.type == TopologyEvent.Type.NEIGHBOR_JOINED) {
+			joined.add(e.node);
+		}
+	}
+
+	/**
+	 * Fill the routing table with the given peers and join, the updates to
+	 * the neighbors are not sent before joining
+	 */
+	private void join(List<NodeID> peers) {
+		connected.addAll(peers);
+		plugin.addPeers(peers);
+		plugin.isJoined = true;
+	}
+
+	@Test
+	public void testNeighbors() {
+		join(PEERS);
+
+		assertEquals(new HashSet<NodeID>(PEERS), plugin.getRoutingTable().getNeighbors());
+		assertEquals(new HashSet<NodeID>(Arrays.asList(node("10"), node("20"), node("30"), node("50"), node("60"), node("70"))), new HashSet<NodeID>(joined));
+		assertEquals(Arrays.asList(node("50"), node("60")), plugin.getReplicaNodes(res("45")));
+	}
+
+	@Test
+	public void testNotConnectedIgnored() {
+		plugin.addPeers(Collections.singleton(node("50")));
+		plugin.addPeers(Collections.singleton(LOCAL));
+
+		assertTrue(plugin.getRoutingTable().getNeighbors().isEmpty());
+		assertTrue(joined.isEmpty());
+	}
+
+	@Test
+	public void testResponsibility() {
+		assertFalse(plugin.isLocalPeerResponsible(res("35")));
+
+		join(PEERS);
+
+		assertTrue(plugin.isLocalPeerResponsible(res("35")));
+		assertTrue(plugin.isLocalPeerResponsible(LOCAL));
+		assertFalse(plugin.isLocalPeerResponsible(node("30")));
+		assertFalse(plugin.isLocalPeerResponsible(res("45")));
+		assertFalse(plugin.isLocalPeerResponsible(res("05")));
+	}
+
+	@Test
+	public void testResponsibilityWraparound() {
+		join(Arrays.asList(node("a0"), node("c0")));
+
+		// The predecessor of the local peer is across the zero id
+		assertTrue(plugin.isLocalPeerResponsible(res("f0")));
+		assertTrue(plugin.isLocalPeerResponsible(res("00")));
+		assertFalse(plugin.isLocalPeerResponsible(res("b0")));
+	}
+
+	@Test
+	public void testAlone() {
+		join(Collections.<NodeID> emptyList());
+
+		assertTrue(plugin.isLocalPeerResponsible(res("a5")));
+		assertEquals(Collections.singleton(LOCAL), plugin.getRoutingTable().getNextHops(res("a5")));
+	}
+
+	@Test
+	public void testReplicaStorage() {
+		join(PEERS);
+
+		// Replicas of the resources of the first REPLICAS predecessors
+		assertTrue(plugin.isLocalPeerValidStorage(res("25"), true));
+		assertTrue(plugin.isLocalPeerValidStorage(res("15"), true));
+		assertFalse(plugin.isLocalPeerValidStorage(res("05"), true));
+		assertFalse(plugin.isLocalPeerValidStorage(res("35"), true));
+		assertFalse(plugin.isLocalPeerValidStorage(res("25"), false));
+		assertTrue(plugin.isLocalPeerValidStorage(res("35"), false));
+	}
+
+	@Test
+	public void testNextHops() {
+		join(PEERS);
+		RoutingTable table = plugin.getRoutingTable();
+
+		assertEquals(Collections.singleton(LOCAL), table.getNextHops(res("35")));
+		assertEquals(Collections.singleton(node("a0")), table.getNextHops(node("a0")));
+
+		// Between the local peer and its successor
+		assertEquals(Collections.singleton(node("50")), table.getNextHops(res("45")));
+
+		// Closest preceding peer
+		assertEquals(Collections.singleton(node("60")), table.getNextHops(res("65")));
+		assertEquals(Collections.singleton(node("a0")), table.getNextHops(res("b0")));
+
+		// Across the zero id
+		assertEquals(Collections.singleton(node("a0")), table.getNextHops(res("05")));
+	}
+
+	@Test
+	public void testNoNextHops() {
+		plugin.isJoined = true;
+		connected.remove(LOCAL);
+
+		// Not responsible without the loopback connection and no peers
+		assertTrue(plugin.getRoutingTable().getNextHops(res("a5")).isEmpty());
+	}
+
+	@Test
+	public void testCloserId() {
+		assertEquals(node("50"), plugin.getCloserId(res("45"), Arrays.asList(node("30"), node("60"), node("50"))));
+		assertEquals(node("10"), plugin.getCloserId(res("b0"), Arrays.asList(node("a0"), node("10"))));
+		assertEquals(node("a0"), plugin.getCloserId(node("a0"), Arrays.asList(node("10"), node("a0"))));
+	}
+
+	@Test
+	public void testFingerTargets() {
+		assertEquals(ResourceID.valueOf("40000000000000000000000000000001"), ChordPlugin.getFingerTarget(LOCAL, 0));
+		assertEquals(ResourceID.valueOf("40000000000000010000000000000000"), ChordPlugin.getFingerTarget(LOCAL, 64));
+		assertEquals(ResourceID.valueOf("c0000000000000000000000000000000"), ChordPlugin.getFingerTarget(LOCAL, 127));
+
+		// Carry from the low to the high half and wraparound
+		assertEquals(ResourceID.valueOf("00000000000000010000000000000000"), ChordPlugin.getFingerTarget(NodeID.valueOf("0000000000000000ffffffffffffffff"), 0));
+		assertEquals(ResourceID.valueOf("40000000000000000000000000000000"), ChordPlugin.getFingerTarget(node("c0"), 127));
+	}
+
+	@Test
+	public void testDistance() {
+		assertEquals(127, plugin.getDistance(LOCAL, node("a0")));
+		assertEquals(0, plugin.getDistance(LOCAL, LOCAL));
+		assertEquals(1, RoutableID.getClockwiseDistanceBits(res("ff"), ResourceID.valueOf("ff000000000000000000000000000001")));
+	}
+}
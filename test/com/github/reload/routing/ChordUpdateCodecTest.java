@@ -0,0 +1,94 @@
+package com.github.reload.routing;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.junit.Test;
+import com.github.reload.net.codecs.Codec;
+import com.github.reload.net.codecs.Codec.CodecException;
+import com.github.reload.net.codecs.header.NodeID;
+
+public class ChordUpdateCodecTest {
+
+	private static final List<NodeID> PREDECESSORS = Arrays.asList(NodeID.valueOf("30000000000000000000000000000000"), NodeID.valueOf("20000000000000000000000000000000"));
+	private static final List<NodeID> SUCCESSORS = Arrays.asList(NodeID.valueOf("50000000000000000000000000000000"));
+	private static final List<NodeID> FINGERS = Arrays.asList(NodeID.valueOf("50000000000000000000000000000000"), NodeID.valueOf("a0000000000000000000000000000000"));
+
+	private final Codec<ChordUpdate> codec = Codec.getCodec(ChordUpdate.class, null);
+
+	private ChordUpdate roundTrip(ChordUpdate update) throws CodecException {
+		ByteBuf buf = Unpooled.buffer();
+		try {
+			codec.encode(update, buf);
+			ChordUpdate decoded = codec.decode(buf);
+			assertEquals(0, buf.readableBytes());
+			return decoded;
+		} finally {
+			buf.release();
+		}
+	}
+
+	@Test
+	public void testFull() throws Exception {
+		ChordUpdate update = roundTrip(new ChordUpdate(3600, ChordUpdate.Type.FULL, PREDECESSORS, SUCCESSORS, FINGERS));
+
+		assertEquals(3600, update.getUptime());
+		assertEquals(ChordUpdate.Type.FULL, update.getType());
+		assertEquals(PREDECESSORS, update.getPredecessors());
+		assertEquals(SUCCESSORS, update.getSuccessors());
+		assertEquals(FINGERS, update.getFingers());
+	}
+
+	@Test
+	public void testNeighbors() throws Exception {
+		ChordUpdate update = roundTrip(new ChordUpdate(10, ChordUpdate.Type.NEIGHBORS, PREDECESSORS, SUCCESSORS, FINGERS));
+
+		assertEquals(ChordUpdate.Type.NEIGHBORS, update.getType());
+		assertEquals(PREDECESSORS, update.getPredecessors());
+		assertEquals(SUCCESSORS, update.getSuccessors());
+
+		// Fingers are carried only by full updates
+		assertTrue(update.getFingers().isEmpty());
+	}
+
+	@Test
+	public void testPeerReady() throws Exception {
+		ChordUpdate update = roundTrip(new ChordUpdate(0, ChordUpdate.Type.PEER_READY, PREDECESSORS, SUCCESSORS, FINGERS));
+
+		assertEquals(ChordUpdate.Type.PEER_READY, update.getType());
+		assertTrue(update.getPredecessors().isEmpty());
+		assertTrue(update.getSuccessors().isEmpty());
+		assertTrue(update.getFingers().isEmpty());
+	}
+
+	@Test
+	public void testEmptyLists() throws Exception {
+		List<NodeID> empty = Collections.emptyList();
+		ChordUpdate update = roundTrip(new ChordUpdate(1, ChordUpdate.Type.FULL, empty, empty, empty));
+
+		assertTrue(update.getPredecessors().isEmpty());
+		assertTrue(update.getSuccessors().isEmpty());
+		assertTrue(update.getFingers().isEmpty());
+	}
+
+	@Test
+	public void testUnsignedUptime() throws Exception {
+		assertEquals(0xffffffffL, roundTrip(new ChordUpdate(0xffffffffL, ChordUpdate.Type.PEER_READY, null, null, null)).getUptime());
+	}
+
+	@Test(expected = CodecException.class)
+	public void testUnknownType() throws Exception {
+		ByteBuf buf = Unpooled.buffer();
+		try {
+			buf.writeInt(0);
+			buf.writeByte(0x7f);
+			codec.decode(buf);
+		} finally {
+			buf.release();
+		}
+	}
+}
@@ -0,0 +1,80 @@
+package com.github.reload.routing;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import org.junit.Before;
+import org.junit.Test;
+import com.github.reload.net.codecs.header.DestinationList;
+import com.github.reload.net.codecs.header.NodeID;
+import com.github.reload.net.codecs.header.OpaqueID;
+import com.github.reload.net.codecs.header.ResourceID;
+import com.github.reload.routing.PathCompressor.UnknownOpaqueIdException;
+
+public class DefaultPathCompressorTest {
+
+	private static final NodeID NODE_A = NodeID.valueOf("10000000000000000000000000000000");
+	private static final NodeID NODE_B = NodeID.valueOf("20000000000000000000000000000000");
+	private static final ResourceID RES_ID = ResourceID.valueOf("30000000000000000000000000000000");
+
+	private DefaultPathCompressor compressor;
+
+	@Before
+	public void init() {
+		compressor = new DefaultPathCompressor();
+	}
+
+	@Test
+	public void testRoundTrip() throws Exception {
+		DestinationList list = new DestinationList(NODE_A, NODE_B, RES_ID);
+		OpaqueID id = compressor.compress(list);
+
+		assertEquals(DefaultPathCompressor.OPAQUE_ID_LENGTH, id.getData().length);
+		assertEquals(list, compressor.decompress(id));
+	}
+
+	@Test
+	public void testSameListSameId() {
+		OpaqueID id = compressor.compress(new DestinationList(NODE_A, NODE_B));
+		assertEquals(id, compressor.compress(new DestinationList(NODE_A, NODE_B)));
+	}
+
+	@Test
+	public void testDistinctIds() {
+		OpaqueID id = compressor.compress(new DestinationList(NODE_A, NODE_B));
+
+		assertFalse(id.equals(compressor.compress(new DestinationList(NODE_B, NODE_A))));
+		assertFalse(id.equals(compressor.compress(new DestinationList(NODE_A))));
+
+		// Ids of different types with the same value
+		assertFalse(compressor.compress(new DestinationList(NODE_A)).equals(compressor.compress(new DestinationList(ResourceID.valueOf(NODE_A.getData())))));
+	}
+
+	@Test
+	public void testKeyPerInstance() {
+		DestinationList list = new DestinationList(NODE_A, NODE_B);
+		assertFalse(compressor.compress(list).equals(new DefaultPathCompressor().compress(list)));
+	}
+
+	@Test
+	public void testListsCopied() throws Exception {
+		DestinationList list = new DestinationList(NODE_A, NODE_B);
+		OpaqueID id = compressor.compress(list);
+		list.add(RES_ID);
+
+		DestinationList decompressed = compressor.decompress(id);
+		assertEquals(new DestinationList(NODE_A, NODE_B), decompressed);
+
+		decompressed.remove(0);
+		assertEquals(new DestinationList(NODE_A, NODE_B), compressor.decompress(id));
+	}
+
+	@Test(expected = UnknownOpaqueIdException.class)
+	public void testUnknownId() throws Exception {
+		compressor.decompress(OpaqueID.valueOf(new byte[DefaultPathCompressor.OPAQUE_ID_LENGTH]));
+	}
+
+	@Test(expected = UnknownOpaqueIdException.class)
+	public void testIdOfOtherInstance() throws Exception {
+		compressor.decompress(new DefaultPathCompressor().compress(new DestinationList(NODE_A)));
+	}
+}
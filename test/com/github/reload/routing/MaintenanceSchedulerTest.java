@@ -0,0 +1,115 @@
+package com.github.reload.routing;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import com.github.reload.net.TrafficMonitor;
+import com.github.reload.net.codecs.content.ContentType;
+import com.github.reload.net.codecs.header.NodeID;
+import com.github.reload.routing.TopologyPlugin.TopologyEvent;
+import com.google.common.eventbus.EventBus;
+import com.google.common.util.concurrent.MoreExecutors;
+
+public class MaintenanceSchedulerTest {
+
+	private static final NodeID NODE = NodeID.valueOf("10000000000000000000000000000000");
+
+	private MaintenanceScheduler scheduler;
+
+	@Before
+	public void init() {
+		EventBus eventBus = new EventBus();
+		scheduler = new MaintenanceScheduler(eventBus);
+		scheduler.packetsLooper = MoreExecutors.sameThreadExecutor();
+		scheduler.traffic = new TrafficMonitor(eventBus);
+		scheduler.timer = Executors.newSingleThreadScheduledExecutor();
+	}
+
+	@After
+	public void cleanup() {
+		scheduler.timer.shutdownNow();
+	}
+
+	private void churn(int events) {
+		for (int i = 0; i < events; i++) {
+			scheduler.handleTopologyEvent(new TopologyEvent(i % 2 == 0 ? TopologyEvent.Type.NEIGHBOR_JOINED : TopologyEvent.Type.NEIGHBOR_LEFT, NODE));
+		}
+	}
+
+	@Test
+	public void testStableInterval() {
+		assertEquals(0, scheduler.getChurnRate(), 0);
+		assertEquals(60000, scheduler.getInterval(1000, 60000));
+	}
+
+	@Test
+	public void testChurnShortensInterval() {
+		churn(3);
+
+		assertEquals(3, scheduler.getChurnRate(), 0.01);
+		long interval = scheduler.getInterval(1000, 60000);
+		assertTrue(interval < 60000);
+		assertTrue(interval >= 15000);
+
+		churn(1000);
+		assertEquals(1000, scheduler.getInterval(1000, 60000));
+	}
+
+	@Test
+	public void testLocalLeavingIgnored() {
+		scheduler.handleTopologyEvent(new TopologyEvent(TopologyEvent.Type.LOCAL_LEAVING, NODE));
+		assertEquals(0, scheduler.getChurnRate(), 0);
+	}
+
+	@Test
+	public void testPeriodicTask() throws Exception {
+		final CountDownLatch runs = new CountDownLatch(3);
+		scheduler.schedule("test", 10, 20, new Runnable() {
+
+			@Override
+			public void run() {
+				runs.countDown();
+				throw new IllegalStateException("Failures don't stop the task");
+			}
+		});
+
+		assertTrue(runs.await(5, TimeUnit.SECONDS));
+	}
+
+	@Test
+	public void testChurnBringsTaskForward() throws Exception {
+		final CountDownLatch runs = new CountDownLatch(1);
+		scheduler.schedule("test", 10, 600000, new Runnable() {
+
+			@Override
+			public void run() {
+				runs.countDown();
+			}
+		});
+
+		assertEquals(1, runs.getCount());
+
+		churn(100000);
+		assertTrue(runs.await(5, TimeUnit.SECONDS));
+	}
+
+	@Test
+	public void testMaintenanceFraction() {
+		assertEquals(0, scheduler.getMaintenanceFraction(), 0);
+
+		TrafficMonitor traffic = scheduler.traffic;
+		traffic.messageSent(ContentType.UPDATE_REQ, 100);
+		traffic.messageSent(ContentType.PING_REQ, 100);
+		traffic.messageSent(ContentType.STORE_REQ, 200);
+
+		// Link frames and forwarded messages are not in the total
+		traffic.frameSent(10000);
+
+		assertEquals(0.5, scheduler.getMaintenanceFraction(), 0.0001);
+	}
+}
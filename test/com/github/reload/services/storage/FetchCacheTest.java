@@ -0,0 +1,116 @@
+package com.github.reload.services.storage;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import org.junit.Before;
+import org.junit.Test;
+import com.github.reload.TestConfiguration;
+import com.github.reload.net.codecs.header.ResourceID;
+import com.github.reload.services.storage.DataModel.ValueSpecifier;
+import com.github.reload.services.storage.local.StoredData;
+import com.github.reload.services.storage.net.ArrayValueSpecifier;
+import com.github.reload.services.storage.net.DictionaryValueSpecifier;
+import com.github.reload.services.storage.net.FetchKindResponse;
+import com.github.reload.services.storage.net.SingleValueSpecifier;
+import com.github.reload.services.storage.net.StoreKindSpecifier;
+
+public class FetchCacheTest {
+
+	private static final ResourceID RES_A = ResourceID.valueOf("0102030405060708090a0b0c0d0e0f10");
+	private static final ResourceID RES_B = ResourceID.valueOf("1102030405060708090a0b0c0d0e0f10");
+
+	private FetchCache cache;
+
+	@Before
+	public void init() {
+		cache = new FetchCache(null, 1, TimeUnit.HOURS, 100);
+	}
+
+	private static StoreKindSpecifier spec(DataKind kind, ValueSpecifier valueSpec) {
+		StoreKindSpecifier spec = new StoreKindSpecifier();
+		spec.setKind(kind);
+		spec.setValueSpecifier(valueSpec);
+		return spec;
+	}
+
+	private static StoreKindSpecifier singleSpec() {
+		return spec(TestConfiguration.TEST_KIND_SINGLE, new SingleValueSpecifier());
+	}
+
+	private static FetchKindResponse response(DataKind kind, long generation) {
+		return new FetchKindResponse(kind, generation, Collections.<StoredData> emptyList());
+	}
+
+	@Test
+	public void testHit() {
+		FetchKindResponse res = response(TestConfiguration.TEST_KIND_SINGLE, 1);
+		cache.put(RES_A, singleSpec(), res);
+
+		assertSame(res, cache.get(RES_A, singleSpec()).get());
+		assertFalse(cache.get(RES_B, singleSpec()).isPresent());
+	}
+
+	@Test
+	public void testKindInKey() {
+		cache.put(RES_A, singleSpec(), response(TestConfiguration.TEST_KIND_SINGLE, 1));
+
+		DataKind other = new DataKind.Builder(TestConfiguration.TEST_KIND_SINGLE.getKindId() + 1).dataModel(DataModel.SINGLE).accessPolicy(TestConfiguration.TEST_KIND_SINGLE.getPolicyClass()).build();
+		assertFalse(cache.get(RES_A, spec(other, new SingleValueSpecifier())).isPresent());
+	}
+
+	@Test
+	public void testSpecifierByEncoding() {
+		FetchKindResponse res = response(TestConfiguration.TEST_KIND_DICT, 1);
+		cache.put(RES_A, spec(TestConfiguration.TEST_KIND_DICT, new DictionaryValueSpecifier().addKey("KEY".getBytes())), res);
+
+		// Distinct key arrays with the same content select the same values
+		assertSame(res, cache.get(RES_A, spec(TestConfiguration.TEST_KIND_DICT, new DictionaryValueSpecifier().addKey("KEY".getBytes()))).get());
+		assertFalse(cache.get(RES_A, spec(TestConfiguration.TEST_KIND_DICT, new DictionaryValueSpecifier().addKey("OTHER".getBytes()))).isPresent());
+	}
+
+	@Test
+	public void testArrayRanges() {
+		FetchKindResponse res = response(TestConfiguration.TEST_KIND_ARRAY, 1);
+		cache.put(RES_A, spec(TestConfiguration.TEST_KIND_ARRAY, new ArrayValueSpecifier().addRange(0, 3)), res);
+
+		assertSame(res, cache.get(RES_A, spec(TestConfiguration.TEST_KIND_ARRAY, new ArrayValueSpecifier().addRange(0, 3))).get());
+		assertFalse(cache.get(RES_A, spec(TestConfiguration.TEST_KIND_ARRAY, new ArrayValueSpecifier().addRange(0, 4))).isPresent());
+	}
+
+	@Test
+	public void testReplaceAndInvalidate() {
+		cache.put(RES_A, singleSpec(), response(TestConfiguration.TEST_KIND_SINGLE, 1));
+		FetchKindResponse newer = response(TestConfiguration.TEST_KIND_SINGLE, 2);
+		cache.put(RES_A, singleSpec(), newer);
+
+		assertEquals(1, cache.size());
+		assertSame(newer, cache.get(RES_A, singleSpec()).get());
+
+		cache.invalidate(RES_A, singleSpec());
+		assertFalse(cache.get(RES_A, singleSpec()).isPresent());
+	}
+
+	@Test
+	public void testExpiration() throws Exception {
+		FetchCache shortCache = new FetchCache(null, 50, TimeUnit.MILLISECONDS, 100);
+		shortCache.put(RES_A, singleSpec(), response(TestConfiguration.TEST_KIND_SINGLE, 1));
+		assertTrue(shortCache.get(RES_A, singleSpec()).isPresent());
+
+		Thread.sleep(100);
+		assertFalse(shortCache.get(RES_A, singleSpec()).isPresent());
+	}
+
+	@Test
+	public void testMaxEntries() {
+		FetchCache smallCache = new FetchCache(null, 1, TimeUnit.HOURS, 1);
+		smallCache.put(RES_A, singleSpec(), response(TestConfiguration.TEST_KIND_SINGLE, 1));
+		smallCache.put(RES_B, singleSpec(), response(TestConfiguration.TEST_KIND_SINGLE, 1));
+
+		assertEquals(1, smallCache.size());
+		assertTrue(smallCache.get(RES_B, singleSpec()).isPresent());
+	}
+}
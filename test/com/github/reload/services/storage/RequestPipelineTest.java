@@ -0,0 +1,112 @@
+package com.github.reload.services.storage;
+
+import static org.junit.Assert.assertEquals;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+import com.github.reload.services.storage.RequestPipeline.Request;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+
+public class RequestPipelineTest {
+
+	private final List<Integer> started = new ArrayList<Integer>();
+	private final List<SettableFuture<Void>> pending = new ArrayList<SettableFuture<Void>>();
+
+	private Request pendingRequest(final int id) {
+		return new Request() {
+
+			@Override
+			public ListenableFuture<?> start() {
+				started.add(id);
+				SettableFuture<Void> fut = SettableFuture.create();
+				pending.add(fut);
+				return fut;
+			}
+		};
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidWindow() {
+		new RequestPipeline(0);
+	}
+
+	@Test
+	public void testWindow() {
+		RequestPipeline pipeline = new RequestPipeline(2);
+		for (int i = 0; i < 5; i++) {
+			pipeline.submit(pendingRequest(i));
+		}
+
+		assertEquals(2, started.size());
+
+		pending.get(1).set(null);
+		assertEquals(3, started.size());
+
+		// Completing a request twice must not free another slot
+		pending.get(1).set(null);
+		assertEquals(3, started.size());
+
+		pending.get(0).setException(new Exception());
+		pending.get(2).set(null);
+		assertEquals(5, started.size());
+	}
+
+	@Test
+	public void testSubmissionOrder() {
+		RequestPipeline pipeline = new RequestPipeline(1);
+		for (int i = 0; i < 4; i++) {
+			pipeline.submit(pendingRequest(i));
+		}
+
+		for (int i = 0; i < 4; i++) {
+			pending.get(i).set(null);
+		}
+
+		List<Integer> expected = new ArrayList<Integer>();
+		for (int i = 0; i < 4; i++) {
+			expected.add(i);
+		}
+		assertEquals(expected, started);
+	}
+
+	@Test
+	public void testFailedStart() {
+		RequestPipeline pipeline = new RequestPipeline(1);
+		pipeline.submit(new Request() {
+
+			@Override
+			public ListenableFuture<?> start() {
+				throw new IllegalStateException();
+			}
+		});
+		pipeline.submit(pendingRequest(1));
+
+		assertEquals(1, started.size());
+	}
+
+	@Test
+	public void testImmediateCompletionsDontRecurse() {
+		final int[] count = new int[1];
+		Request immediate = new Request() {
+
+			@Override
+			public ListenableFuture<?> start() {
+				count[0]++;
+				return Futures.immediateFuture(null);
+			}
+		};
+
+		RequestPipeline pipeline = new RequestPipeline(1);
+
+		// Keep the window busy so that the following requests are queued
+		pipeline.submit(pendingRequest(0));
+		for (int i = 0; i < 100000; i++) {
+			pipeline.submit(immediate);
+		}
+
+		pending.get(0).set(null);
+		assertEquals(100000, count[0]);
+	}
+}
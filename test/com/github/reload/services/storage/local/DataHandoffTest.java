@@ -0,0 +1,259 @@
+package com.github.reload.services.storage.local;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import com.github.reload.Overlay;
+import com.github.reload.TestConfiguration;
+import com.github.reload.net.MessageRouter;
+import com.github.reload.net.codecs.Header;
+import com.github.reload.net.codecs.Message;
+import com.github.reload.net.codecs.MessageBuilder;
+import com.github.reload.net.codecs.content.Content;
+import com.github.reload.net.codecs.header.DestinationList;
+import com.github.reload.net.codecs.header.NodeID;
+import com.github.reload.net.codecs.header.ResourceID;
+import com.github.reload.net.codecs.secBlock.Signature;
+import com.github.reload.routing.MessageHandlers;
+import com.github.reload.routing.TopologyPlugin.TopologyEvent;
+import com.github.reload.services.storage.DataKind;
+import com.github.reload.services.storage.net.SingleValue;
+import com.github.reload.services.storage.net.StoreRequest;
+import com.google.common.eventbus.EventBus;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+
+public class DataHandoffTest {
+
+	private static final NodeID LOCAL = node("40");
+	private static final NodeID JOINED = node("35");
+
+	private static final DataKind KIND = TestConfiguration.TEST_KIND_SINGLE;
+	private static final long GENERATION = 7;
+
+	private final List<Message> sent = new ArrayList<Message>();
+	private final List<SettableFuture<Message>> answers = new ArrayList<SettableFuture<Message>>();
+	private final Set<ResourceID> dirty = new HashSet<ResourceID>();
+
+	private RingTopology topology;
+	private MemoryStorage storage;
+	private ScheduledExecutorService scheduler;
+	private DataHandoff handoff;
+
+	private static NodeID node(String msb) {
+		return NodeID.valueOf(msb + "000000000000000000000000000000");
+	}
+
+	private static ResourceID res(String msb) {
+		return ResourceID.valueOf(msb + "000000000000000000000000000000");
+	}
+
+	@Before
+	public void init() {
+		DataKind.registerDataKind(KIND);
+
+		EventBus eventBus = new EventBus();
+		scheduler = Executors.newSingleThreadScheduledExecutor();
+		topology = new RingTopology(LOCAL, node("10"), node("20"), node("30"), node("50"), node("60"));
+		storage = new MemoryStorage();
+
+		handoff = new DataHandoff(eventBus, scheduler);
+		handoff.topology = topology;
+		handoff.storage = storage;
+		handoff.packetsLooper = MoreExecutors.sameThreadExecutor();
+		handoff.replicator = new DataReplicator(scheduler) {
+
+			@Override
+			public void markDirty(ResourceID resourceId, Collection<Long> kinds) {
+				dirty.add(resourceId);
+			}
+		};
+		handoff.overlay = new Overlay(null, topology) {
+
+			@Override
+			public NodeID getLocalNodeId() {
+				return LOCAL;
+			}
+		};
+		handoff.msgBuilder = new MessageBuilder() {
+
+			@Override
+			public Message newMessage(Content content, DestinationList destList) {
+				return new Message(new Header.Builder().setDestinationList(destList).build(), content, null);
+			}
+		};
+		handoff.router = new MessageRouter(new MessageHandlers(eventBus), eventBus) {
+
+			@Override
+			public ListenableFuture<Message> sendRequestMessage(Message request) {
+				SettableFuture<Message> answer = SettableFuture.create();
+				sent.add(request);
+				answers.add(answer);
+				return answer;
+			}
+		};
+	}
+
+	@After
+	public void cleanup() {
+		scheduler.shutdownNow();
+	}
+
+	private void put(ResourceID resId) {
+		List<StoredData> values = new ArrayList<StoredData>();
+		values.add(new StoredData(System.currentTimeMillis(), 3600, new SingleValue(resId.getData(), true), Signature.EMPTY_SIGNATURE));
+
+		Map<Long, StoredKindData> kinds = new HashMap<Long, StoredKindData>();
+		kinds.put(KIND.getKindId(), new StoredKindData(KIND, GENERATION, values));
+		storage.put(resId, kinds);
+	}
+
+	private Set<ResourceID> sentResources(NodeID target) {
+		Set<ResourceID> out = new HashSet<ResourceID>();
+		for (Message m : sent) {
+			assertEquals(target, m.getHeader().getDestinationId());
+			StoreRequest req = (StoreRequest) m.getContent();
+			out.add(req.getResourceId());
+
+			// Sent as a replica store to keep the generation of the sender
+			assertEquals(1, req.getReplicaNumber());
+			assertEquals(GENERATION, req.getKindData().iterator().next().getGeneration());
+		}
+		return out;
+	}
+
+	private void answerAll() {
+		List<SettableFuture<Message>> pending = new ArrayList<SettableFuture<Message>>(answers);
+		answers.clear();
+		for (SettableFuture<Message> a : pending) {
+			a.set(null);
+		}
+	}
+
+	@Test
+	public void testJoinHandoff() {
+		put(res("32"));
+		put(res("38"));
+		put(res("25"));
+
+		topology.peers.add(JOINED);
+		handoff.handleTopologyEvent(new TopologyEvent(TopologyEvent.Type.NEIGHBOR_JOINED, JOINED));
+
+		// The joined peer is the new owner of (30, 35] and the first replica
+		// of the resources of its predecessor
+		assertEquals(new HashSet<ResourceID>(Arrays.asList(res("32"), res("25"))), sentResources(JOINED));
+		assertEquals(2, handoff.getPendingResources());
+
+		answerAll();
+		assertEquals(0, handoff.getPendingResources());
+	}
+
+	@Test
+	public void testJoinHandoffValidAtReceiver() {
+		put(res("32"));
+		put(res("25"));
+		put(res("15"));
+
+		topology.peers.add(JOINED);
+		handoff.handleTopologyEvent(new TopologyEvent(TopologyEvent.Type.NEIGHBOR_JOINED, JOINED));
+
+		// The receiver has three predecessors, the resources it owns come as
+		// replica stores but are outside of its replica range
+		RingTopology receiver = new RingTopology(JOINED, node("10"), node("20"), node("30"), LOCAL, node("50"), node("60"));
+		for (ResourceID resId : sentResources(JOINED)) {
+			assertTrue(receiver.isLocalPeerResponsible(resId) || receiver.isLocalPeerValidStorage(resId, true));
+		}
+		assertTrue(receiver.isLocalPeerResponsible(res("32")));
+		assertFalse(receiver.isLocalPeerValidStorage(res("32"), true));
+
+		// The joined peer replaces the local peer as second replica
+		assertTrue(sentResources(JOINED).contains(res("15")));
+		assertTrue(receiver.isLocalPeerValidStorage(res("15"), true));
+	}
+
+	@Test
+	public void testLeftNeighborTakenOver() {
+		put(res("38"));
+		put(res("25"));
+		put(res("15"));
+
+		topology.peers.remove(node("30"));
+		handoff.handleTopologyEvent(new TopologyEvent(TopologyEvent.Type.NEIGHBOR_LEFT, node("30")));
+
+		// The replicas of the left peer resources are owned from now on
+		assertEquals(new HashSet<ResourceID>(Arrays.asList(res("38"), res("25"))), dirty);
+		assertTrue(sent.isEmpty());
+	}
+
+	@Test
+	public void testLeaveHandoff() {
+		put(res("32"));
+		put(res("38"));
+		put(res("25"));
+
+		TopologyEvent leaving = new TopologyEvent(TopologyEvent.Type.LOCAL_LEAVING, LOCAL);
+		handoff.handleTopologyEvent(leaving);
+
+		// Only the owned resources are transferred, to the first replica
+		assertEquals(new HashSet<ResourceID>(Arrays.asList(res("32"), res("38"))), sentResources(node("50")));
+
+		assertEquals(1, leaving.getLeaveTasks().size());
+		ListenableFuture<?> task = leaving.getLeaveTasks().get(0);
+		assertFalse(task.isDone());
+
+		answerAll();
+		assertTrue(task.isDone());
+		assertEquals(0, handoff.getPendingResources());
+	}
+
+	@Test
+	public void testBoundedInFlight() {
+		List<ResourceID> resources = new ArrayList<ResourceID>();
+		for (int i = 0; i < DataHandoff.MAX_IN_FLIGHT + 4; i++) {
+			ResourceID resId = ResourceID.valueOf(String.format("38%030x", i));
+			put(resId);
+			resources.add(resId);
+		}
+
+		ListenableFuture<Void> transfer = handoff.handoffTo(JOINED, resources);
+
+		assertEquals(DataHandoff.MAX_IN_FLIGHT, sent.size());
+		assertEquals(resources.size(), handoff.getPendingResources());
+
+		// Each answer lets the next resource in
+		answers.remove(0).set(null);
+		assertEquals(DataHandoff.MAX_IN_FLIGHT + 1, sent.size());
+
+		answerAll();
+		answerAll();
+		assertEquals(resources.size(), sentResources(JOINED).size());
+		assertTrue(transfer.isDone());
+	}
+
+	@Test
+	public void testRemovedResourceSkipped() {
+		put(res("32"));
+
+		ListenableFuture<Void> transfer = handoff.handoffTo(JOINED, Arrays.asList(res("32"), res("33")));
+
+		assertEquals(Collections.singleton(res("32")), sentResources(JOINED));
+
+		answerAll();
+		assertTrue(transfer.isDone());
+	}
+}
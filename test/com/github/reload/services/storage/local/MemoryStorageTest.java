@@ -0,0 +1,111 @@
+package com.github.reload.services.storage.local;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.Before;
+import org.junit.Test;
+import com.github.reload.TestConfiguration;
+import com.github.reload.net.codecs.header.ResourceID;
+import com.github.reload.net.codecs.secBlock.Signature;
+import com.github.reload.services.storage.DataKind;
+import com.github.reload.services.storage.net.SingleValue;
+
+public class MemoryStorageTest {
+
+	private static final DataKind KIND_A = TestConfiguration.TEST_KIND_SINGLE;
+	private static final DataKind KIND_B = TestConfiguration.TEST_KIND_ARRAY;
+
+	private MemoryStorage storage;
+
+	private static ResourceID res(String msb) {
+		return ResourceID.valueOf(msb + "000000000000000000000000000000");
+	}
+
+	@Before
+	public void init() {
+		storage = new MemoryStorage();
+	}
+
+	private static StoredKindData kindData(DataKind kind, long lifetime) {
+		List<StoredData> values = new ArrayList<StoredData>();
+		values.add(new StoredData(System.currentTimeMillis() - 10000, lifetime, new SingleValue(new byte[10], true), Signature.EMPTY_SIGNATURE));
+		return new StoredKindData(kind, 1, values);
+	}
+
+	private void put(ResourceID resId, DataKind... kinds) {
+		Map<Long, StoredKindData> values = new HashMap<Long, StoredKindData>();
+		for (DataKind k : kinds) {
+			values.put(k.getKindId(), kindData(k, 3600));
+		}
+		storage.put(resId, values);
+	}
+
+	@Test
+	public void testKindIndex() {
+		put(res("10"), KIND_A);
+		put(res("20"), KIND_A, KIND_B);
+
+		assertEquals(2, storage.getResourcesByKind(KIND_A.getKindId()).size());
+		assertEquals(Collections.singleton(res("20")), storage.getResourcesByKind(KIND_B.getKindId()));
+		assertTrue(storage.getResourcesByKind(2999).isEmpty());
+	}
+
+	@Test
+	public void testReplacedKindPruned() {
+		put(res("20"), KIND_A, KIND_B);
+		put(res("20"), KIND_B);
+
+		assertTrue(storage.getResourcesByKind(KIND_A.getKindId()).isEmpty());
+		assertEquals(Collections.singleton(res("20")), storage.getResourcesByKind(KIND_B.getKindId()));
+	}
+
+	@Test
+	public void testRemovedResourcePruned() {
+		put(res("10"), KIND_A);
+		put(res("20"), KIND_A, KIND_B);
+
+		storage.remove(res("20"));
+
+		assertEquals(Collections.singleton(res("10")), storage.getResourcesByKind(KIND_A.getKindId()));
+		assertTrue(storage.getResourcesByKind(KIND_B.getKindId()).isEmpty());
+		assertEquals(0, storage.getAdjacentResources(KIND_B.getKindId(), res("20")).size());
+	}
+
+	@Test
+	public void testExpiredKindPruned() {
+		Map<Long, StoredKindData> values = new HashMap<Long, StoredKindData>();
+		values.put(KIND_A.getKindId(), kindData(KIND_A, 1));
+		values.put(KIND_B.getKindId(), kindData(KIND_B, 3600));
+		storage.put(res("20"), values);
+
+		// Expired values are removed when the resource is read
+		assertFalse(storage.get(res("20")).get().containsKey(KIND_A.getKindId()));
+		assertTrue(storage.getResourcesByKind(KIND_A.getKindId()).isEmpty());
+		assertEquals(Collections.singleton(res("20")), storage.getResourcesByKind(KIND_B.getKindId()));
+		assertEquals(1, storage.getUsage().getValuesCount());
+	}
+
+	@Test
+	public void testAdjacentResources() {
+		put(res("10"), KIND_A);
+		put(res("30"), KIND_A);
+		put(res("50"), KIND_A);
+		put(res("20"), KIND_B);
+
+		assertEquals(Arrays.asList(res("30"), res("10")), storage.getAdjacentResources(KIND_A.getKindId(), res("20")));
+		assertEquals(Collections.singletonList(res("30")), storage.getAdjacentResources(KIND_A.getKindId(), res("30")));
+
+		// Across the zero id
+		assertEquals(Arrays.asList(res("10"), res("50")), storage.getAdjacentResources(KIND_A.getKindId(), res("60")));
+		assertEquals(Arrays.asList(res("10"), res("50")), storage.getAdjacentResources(KIND_A.getKindId(), res("05")));
+
+		assertTrue(storage.getAdjacentResources(2999, res("20")).isEmpty());
+	}
+}
@@ -0,0 +1,161 @@
+package com.github.reload.services.storage.local;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.Before;
+import org.junit.Test;
+import com.github.reload.TestConfiguration;
+import com.github.reload.net.codecs.header.ResourceID;
+import com.github.reload.net.codecs.secBlock.Signature;
+import com.github.reload.services.storage.DataKind;
+import com.github.reload.services.storage.net.SingleValue;
+import com.github.reload.services.storage.net.SyncEntry;
+import com.github.reload.services.storage.net.SyncTreeNode;
+
+public class RangeMerkleTreeTest {
+
+	private static final ResourceID RANGE_START = ResourceID.valueOf("40000000000000000000000000000000");
+	private static final ResourceID RANGE_END = ResourceID.valueOf("7fffffffffffffffffffffffffffffff");
+
+	private static final ResourceID RES_A = ResourceID.valueOf("40000000000000000000000000000001");
+	private static final ResourceID RES_B = ResourceID.valueOf("6000000000000000000000000000abcd");
+	private static final ResourceID RES_OUT = ResourceID.valueOf("90000000000000000000000000000000");
+
+	private static final DataKind KIND = TestConfiguration.TEST_KIND_SINGLE;
+	private static final byte[] VALUE = "VALUE".getBytes();
+	private static final long LIFETIME = 3600;
+
+	private MemoryStorage local;
+	private MemoryStorage remote;
+
+	@Before
+	public void init() {
+		local = new MemoryStorage();
+		remote = new MemoryStorage();
+	}
+
+	private static void put(DataStorage storage, ResourceID resId, long generation) {
+		List<StoredData> values = new ArrayList<StoredData>();
+		values.add(new StoredData(System.currentTimeMillis(), LIFETIME, new SingleValue(VALUE, true), Signature.EMPTY_SIGNATURE));
+
+		Map<Long, StoredKindData> kinds = new HashMap<Long, StoredKindData>();
+		kinds.put(KIND.getKindId(), new StoredKindData(KIND, generation, values));
+		storage.put(resId, kinds);
+	}
+
+	private RangeMerkleTree tree(DataStorage storage) {
+		return new RangeMerkleTree(RANGE_START, RANGE_END, storage);
+	}
+
+	@Test
+	public void testEmptyTreesMatch() {
+		assertTrue(tree(local).isMatching(0, tree(remote).getRoot()));
+	}
+
+	@Test
+	public void testSameDataMatch() {
+		put(local, RES_A, 1);
+		put(local, RES_B, 2);
+		put(remote, RES_B, 2);
+		put(remote, RES_A, 1);
+
+		RangeMerkleTree localTree = tree(local);
+		RangeMerkleTree remoteTree = tree(remote);
+
+		assertArrayEquals(localTree.getRoot().getHash(), remoteTree.getRoot().getHash());
+		assertTrue(localTree.isMatching(0, remoteTree.getRoot()));
+	}
+
+	@Test
+	public void testOutOfRangeIgnored() {
+		put(local, RES_A, 1);
+		put(remote, RES_A, 1);
+		put(remote, RES_OUT, 1);
+
+		assertTrue(tree(local).isMatching(0, tree(remote).getRoot()));
+	}
+
+	@Test
+	public void testLocateDifference() {
+		put(local, RES_A, 1);
+		put(local, RES_B, 2);
+		put(remote, RES_A, 1);
+		put(remote, RES_B, 3);
+
+		RangeMerkleTree localTree = tree(local);
+		RangeMerkleTree remoteTree = tree(remote);
+
+		assertFalse(localTree.isMatching(0, remoteTree.getRoot()));
+
+		// Descend the only mismatching child at each level
+		int index = 0;
+		for (int level = 0; level < RangeMerkleTree.LEAF_LEVEL; level++) {
+			int mismatching = -1;
+			for (SyncTreeNode child : remoteTree.getChildren(level, index)) {
+				if (!localTree.isMatching(level + 1, child)) {
+					assertEquals(-1, mismatching);
+					mismatching = child.getIndex();
+				}
+			}
+			assertTrue(mismatching >= 0);
+			index = mismatching;
+		}
+
+		assertEquals(localTree.getLeafIndex(RES_B), index);
+
+		List<SyncEntry> entries = remoteTree.getEntries(index);
+		assertEquals(1, entries.size());
+		assertEquals(new SyncEntry(RES_B, KIND.getKindId(), 3), entries.get(0));
+	}
+
+	@Test
+	public void testLeafIndex() {
+		RangeMerkleTree t = tree(local);
+
+		assertEquals(0, t.getLeafIndex(RANGE_START));
+		assertEquals(RangeMerkleTree.LEAVES - 1, t.getLeafIndex(RANGE_END));
+		assertEquals(RangeMerkleTree.LEAVES / 2, t.getLeafIndex(ResourceID.valueOf("60000000000000000000000000000000")));
+		assertEquals(-1, t.getLeafIndex(RES_OUT));
+		assertEquals(-1, t.getLeafIndex(ResourceID.valueOf("0102")));
+	}
+
+	@Test
+	public void testLeafIndexWraparound() {
+		ResourceID start = ResourceID.valueOf("c0000000000000000000000000000000");
+		ResourceID end = ResourceID.valueOf("3fffffffffffffffffffffffffffffff");
+		RangeMerkleTree t = new RangeMerkleTree(start, end, local);
+
+		assertEquals(0, t.getLeafIndex(start));
+		assertEquals(RangeMerkleTree.LEAVES / 2, t.getLeafIndex(ResourceID.valueOf("00000000000000000000000000000000")));
+		assertEquals(RangeMerkleTree.LEAVES - 1, t.getLeafIndex(end));
+		assertEquals(-1, t.getLeafIndex(RANGE_START));
+	}
+
+	@Test
+	public void testValidNodes() {
+		assertEquals(1, RangeMerkleTree.getWidth(0));
+		assertEquals(RangeMerkleTree.LEAVES, RangeMerkleTree.getWidth(RangeMerkleTree.LEAF_LEVEL));
+
+		assertTrue(RangeMerkleTree.isValidNode(0, 0));
+		assertTrue(RangeMerkleTree.isValidNode(RangeMerkleTree.LEAF_LEVEL, RangeMerkleTree.LEAVES - 1));
+		assertFalse(RangeMerkleTree.isValidNode(0, 1));
+		assertFalse(RangeMerkleTree.isValidNode(1, -1));
+		assertFalse(RangeMerkleTree.isValidNode(RangeMerkleTree.LEAF_LEVEL + 1, 0));
+		assertFalse(RangeMerkleTree.isValidNode(RangeMerkleTree.LEAF_LEVEL, RangeMerkleTree.LEAVES));
+	}
+
+	@Test
+	public void testInvalidNodeNotMatching() {
+		RangeMerkleTree t = tree(local);
+		SyncTreeNode root = t.getRoot();
+
+		assertFalse(t.isMatching(0, new SyncTreeNode(1, root.getHash())));
+		assertFalse(t.isMatching(RangeMerkleTree.LEAF_LEVEL + 1, root));
+	}
+}
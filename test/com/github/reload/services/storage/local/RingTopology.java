@@ -0,0 +1,146 @@
+package com.github.reload.services.storage.local;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import com.github.reload.net.codecs.header.NodeID;
+import com.github.reload.net.codecs.header.ResourceID;
+import com.github.reload.net.codecs.header.RoutableID;
+import com.github.reload.routing.RoutingTable;
+import com.github.reload.routing.TopologyPlugin;
+import com.google.common.util.concurrent.ListenableFuture;
+
+/**
+ * Ring of known peers where each resource belongs to the first peer that
+ * follows it clockwise, the local peer keeps the replicas of the resources of
+ * its first two predecessors
+ */
+class RingTopology implements TopologyPlugin {
+
+	static final int REPLICAS = 2;
+
+	final NodeID local;
+	final List<NodeID> peers;
+
+	public RingTopology(NodeID local, NodeID... peers) {
+		this.local = local;
+		this.peers = new ArrayList<NodeID>(Arrays.asList(peers));
+	}
+
+	private List<NodeID> getAllNodes() {
+		List<NodeID> all = new ArrayList<NodeID>(peers);
+		all.add(local);
+		return all;
+	}
+
+	/**
+	 * @return the peers ordered by their counterclockwise distance from the
+	 *         local peer
+	 */
+	List<NodeID> getPredecessors() {
+		List<NodeID> predecessors = new ArrayList<NodeID>(peers);
+		Collections.sort(predecessors, new Comparator<NodeID>() {
+
+			@Override
+			public int compare(NodeID a, NodeID b) {
+				return RoutableID.compareClockwiseDistance(local, b, a);
+			}
+		});
+		return predecessors;
+	}
+
+	@Override
+	public <T extends RoutableID> T getCloserId(RoutableID destination, Collection<T> ids) {
+		T closer = null;
+		for (T id : ids) {
+			if (closer == null || RoutableID.compareClockwiseDistance(destination, id, closer) < 0) {
+				closer = id;
+			}
+		}
+		return closer;
+	}
+
+	@Override
+	public boolean isLocalPeerResponsible(RoutableID dest) {
+		return getCloserId(dest, getAllNodes()).equals(local);
+	}
+
+	@Override
+	public boolean isLocalPeerValidStorage(ResourceID resourceId, boolean isReplica) {
+		if (!isReplica)
+			return isLocalPeerResponsible(resourceId);
+
+		NodeID owner = getCloserId(resourceId, getAllNodes());
+		List<NodeID> predecessors = getPredecessors();
+		return predecessors.subList(0, Math.min(REPLICAS, predecessors.size())).contains(owner);
+	}
+
+	@Override
+	public List<NodeID> getReplicaNodes(ResourceID resourceId) {
+		List<NodeID> successors = new ArrayList<NodeID>(peers);
+		Collections.sort(successors, new Comparator<NodeID>() {
+
+			@Override
+			public int compare(NodeID a, NodeID b) {
+				return RoutableID.compareClockwiseDistance(local, a, b);
+			}
+		});
+		return successors.subList(0, Math.min(REPLICAS, successors.size()));
+	}
+
+	@Override
+	public RoutingTable getRoutingTable() {
+		return new RoutingTable() {
+
+			@Override
+			public Set<NodeID> getNextHops(RoutableID destination) {
+				throw new UnsupportedOperationException();
+			}
+
+			@Override
+			public Set<NodeID> getNeighbors() {
+				return new HashSet<NodeID>(peers);
+			}
+		};
+	}
+
+	@Override
+	public void startAgent() {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public ListenableFuture<NodeID> requestJoin() {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public ListenableFuture<NodeID> requestUpdate(NodeID neighborNode) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public ListenableFuture<Void> requestLeave() {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public int getResourceIdLength() {
+		return 16;
+	}
+
+	@Override
+	public ResourceID getResourceId(byte[] resourceIdentifier) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public int getDistance(RoutableID source, RoutableID dest) {
+		return RoutableID.getClockwiseDistanceBits(source, dest);
+	}
+}
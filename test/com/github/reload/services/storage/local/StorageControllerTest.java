@@ -0,0 +1,379 @@
+package com.github.reload.services.storage.local;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import javax.inject.Inject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import com.github.reload.Overlay;
+import com.github.reload.TestConfiguration;
+import com.github.reload.TestFactory.TestBootstrap;
+import com.github.reload.conf.Configuration;
+import com.github.reload.crypto.MemoryKeystore;
+import com.github.reload.crypto.X509CryptoHelper;
+import com.github.reload.net.MessageRouter;
+import com.github.reload.net.codecs.Header;
+import com.github.reload.net.codecs.Message;
+import com.github.reload.net.codecs.content.Content;
+import com.github.reload.net.codecs.content.Error;
+import com.github.reload.net.codecs.content.Error.ErrorType;
+import com.github.reload.net.codecs.header.DestinationList;
+import com.github.reload.net.codecs.header.NodeID;
+import com.github.reload.net.codecs.header.ResourceID;
+import com.github.reload.net.codecs.secBlock.GenericCertificate;
+import com.github.reload.net.codecs.secBlock.HashAlgorithm;
+import com.github.reload.net.codecs.secBlock.SecurityBlock;
+import com.github.reload.net.codecs.secBlock.Signature;
+import com.github.reload.net.codecs.secBlock.SignatureAlgorithm;
+import com.github.reload.net.codecs.secBlock.SignerIdentity;
+import com.github.reload.routing.MessageHandlers;
+import com.github.reload.services.storage.DataKind;
+import com.github.reload.services.storage.DataModel;
+import com.github.reload.services.storage.net.SingleMetadata;
+import com.github.reload.services.storage.net.SingleValue;
+import com.github.reload.services.storage.net.StoreAnswer;
+import com.github.reload.services.storage.net.StoreRequest;
+import com.github.reload.services.storage.policies.AccessPolicy;
+import com.google.common.eventbus.EventBus;
+import com.google.common.util.concurrent.ListenableFuture;
+import dagger.Module;
+import dagger.ObjectGraph;
+
+public class StorageControllerTest {
+
+	private static final NodeID LOCAL = node("40");
+
+	private static final DataKind KIND = new DataKind.Builder(2500).dataModel(DataModel.SINGLE).accessPolicy(AnyStorer.class).build();
+	private static final DataKind QUOTA_KIND = new DataKind.Builder(2501).dataModel(DataModel.SINGLE).accessPolicy(AnyStorer.class).attribute(DataKind.MAX_STORED_BYTES, 500L).build();
+	private static final long GENERATION = 7;
+
+	private final Set<ResourceID> dirty = new HashSet<ResourceID>();
+	private final Set<ResourceID> changed = new HashSet<ResourceID>();
+
+	private Content answer;
+	private ErrorType error;
+
+	private TestConfiguration conf;
+	private MemoryStorage storage;
+	private SignerIdentity identity;
+	private X509CryptoHelper crypto;
+	private ScheduledExecutorService scheduler;
+	private ExecutorService cryptoPool;
+	private MessageHandlers msgHandlers;
+
+	private static NodeID node(String msb) {
+		return NodeID.valueOf(msb + "000000000000000000000000000000");
+	}
+
+	private static ResourceID res(String msb) {
+		return ResourceID.valueOf(msb + "000000000000000000000000000000");
+	}
+
+	/**
+	 * Policy that accepts any storer, the policies are tested on their own
+	 */
+	public static class AnyStorer extends AccessPolicy {
+
+		@Inject
+		public AnyStorer() {
+		}
+
+		@Override
+		public void accept(ResourceID resourceId, DataKind kind, StoredData data, SignerIdentity signerIdentity) {
+		}
+	}
+
+	@Module(injects = {AnyStorer.class, SingleMetadata.class}, library = true)
+	static class TestModule {
+	}
+
+	@Before
+	public void init() throws Exception {
+		DataKind.registerDataKind(KIND);
+		DataKind.registerDataKind(QUOTA_KIND);
+
+		EventBus eventBus = new EventBus();
+		scheduler = Executors.newSingleThreadScheduledExecutor();
+		cryptoPool = Executors.newFixedThreadPool(2);
+		conf = new TestConfiguration();
+		storage = new MemoryStorage();
+
+		MemoryKeystore keystore = new MemoryKeystore(TestBootstrap.loadCert("certs/peer0_cert.der"), TestBootstrap.loadPrivateKey("privKeys/peer0_key.der", SignatureAlgorithm.RSA));
+		crypto = new X509CryptoHelper(keystore, conf, HashAlgorithm.SHA1, SignatureAlgorithm.RSA, HashAlgorithm.SHA1);
+		identity = crypto.newSigner().getIdentity();
+
+		// The local peer has three predecessors
+		RingTopology topology = new RingTopology(LOCAL, node("10"), node("20"), node("30"), node("50"), node("60"));
+
+		msgHandlers = new MessageHandlers(eventBus);
+		ObjectGraph graph = ObjectGraph.create(new TestModule());
+		StorageController controller = new StorageController(msgHandlers, graph, cryptoPool);
+		controller.conf = conf;
+		controller.topology = topology;
+		controller.storage = storage;
+		controller.keystore = keystore;
+		controller.g = graph;
+		controller.overlay = new Overlay(null, topology) {
+
+			@Override
+			public NodeID getLocalNodeId() {
+				return LOCAL;
+			}
+		};
+		controller.router = new MessageRouter(msgHandlers, eventBus) {
+
+			@Override
+			public ListenableFuture<NodeID> sendAnswer(Header requestHdr, Content content) {
+				if (content instanceof Error) {
+					error = ((Error) content).getErrorType();
+				} else {
+					answer = content;
+				}
+				return null;
+			}
+		};
+		controller.replicator = new DataReplicator(scheduler) {
+
+			@Override
+			public void markDirty(ResourceID resourceId, Collection<Long> kinds) {
+				dirty.add(resourceId);
+			}
+		};
+		controller.subscriptions = new SubscriptionManager(eventBus, scheduler) {
+
+			@Override
+			void resourceChanged(ResourceID resId, Collection<Long> kinds) {
+				changed.add(resId);
+			}
+		};
+		controller.snapshots = new StorageSnapshots(conf, storage, null, eventBus, scheduler);
+	}
+
+	@After
+	public void cleanup() {
+		scheduler.shutdownNow();
+		cryptoPool.shutdownNow();
+	}
+
+	/**
+	 * @return a value signed by the local certificate for the given resource
+	 */
+	private StoredData value(ResourceID signedResId, int size) {
+		return value(KIND, signedResId, size);
+	}
+
+	private StoredData value(DataKind kind, ResourceID signedResId, int size) {
+		return new StoredData(System.currentTimeMillis(), 3600, new SingleValue(new byte[size], true), crypto.newSigner(), signedResId, kind);
+	}
+
+	private void store(NodeID sender, ResourceID resId, int replicaNumber, StoredData... values) {
+		store(sender, resId, replicaNumber, KIND, values);
+	}
+
+	private void store(NodeID sender, ResourceID resId, int replicaNumber, DataKind kind, StoredData... values) {
+		List<StoredData> data = new ArrayList<StoredData>();
+		Collections.addAll(data, values);
+		StoreRequest req = new StoreRequest(resId, (short) replicaNumber, Collections.singletonList(new StoredKindData(kind, replicaNumber != 0 ? GENERATION : 0, data)));
+
+		Header header = new Header.Builder().setDestinationList(new DestinationList(LOCAL)).setViaList(new DestinationList(sender)).build();
+		SecurityBlock secBlock = new SecurityBlock(Collections.<GenericCertificate> emptyList(), new Signature(identity, HashAlgorithm.SHA1, SignatureAlgorithm.RSA, new byte[0]));
+
+		answer = null;
+		error = null;
+		msgHandlers.handle(new Message(header, req, secBlock));
+	}
+
+	private void assertStored(ResourceID resId) {
+		assertNull(error);
+		assertTrue(answer instanceof StoreAnswer);
+		assertTrue(storage.get(resId).isPresent());
+	}
+
+	private void assertRejected(ErrorType type, ResourceID resId) {
+		assertEquals(type, error);
+		assertNull(answer);
+		assertFalse(storage.get(resId).isPresent());
+	}
+
+	@Test
+	public void testOwnerStore() {
+		store(node("50"), res("35"), 0, value(res("35"), 10));
+
+		assertStored(res("35"));
+		assertEquals(1, ((StoreAnswer) answer).getResponses().get(0).getGeneration());
+		assertEquals(Collections.singleton(res("35")), dirty);
+		assertEquals(Collections.singleton(res("35")), changed);
+	}
+
+	@Test
+	public void testHandoffAcceptedByOwner() {
+		// The resource is out of the replica range (10, 30] of the local peer
+		store(node("50"), res("35"), 1, value(res("35"), 10));
+
+		assertStored(res("35"));
+
+		// The generation assigned by the previous owner is kept
+		assertEquals(GENERATION, ((StoreAnswer) answer).getResponses().get(0).getGeneration());
+
+		// The handed off data is owned by the local peer from now on
+		assertEquals(Collections.singleton(res("35")), dirty);
+		assertEquals(Collections.singleton(res("35")), changed);
+	}
+
+	@Test
+	public void testReplicaStore() {
+		store(node("30"), res("25"), 1, value(res("25"), 10));
+
+		assertStored(res("25"));
+		assertTrue(dirty.isEmpty());
+		assertTrue(changed.isEmpty());
+	}
+
+	@Test
+	public void testReplicaOutOfRange() {
+		// Owned by the third predecessor
+		store(node("10"), res("05"), 1, value(res("05"), 10));
+		assertRejected(ErrorType.FORBITTEN, res("05"));
+
+		// Owned by the successor
+		store(node("50"), res("45"), 1, value(res("45"), 10));
+		assertRejected(ErrorType.FORBITTEN, res("45"));
+
+		store(node("50"), res("45"), 0, value(res("45"), 10));
+		assertRejected(ErrorType.FORBITTEN, res("45"));
+	}
+
+	@Test
+	public void testVerifiedReplica() {
+		store(node("20"), res("25"), 1, value(res("25"), 10));
+		assertStored(res("25"));
+	}
+
+	@Test
+	public void testTrustedReplica() {
+		conf.set(Configuration.TRUSTED_REPLICAS, true);
+
+		// The signature is not verified for replicas sent by the owner
+		store(node("30"), res("25"), 1, value(res("15"), 10));
+		assertStored(res("25"));
+	}
+
+	@Test
+	public void testTrustedReplicaDisabled() {
+		store(node("30"), res("25"), 1, value(res("15"), 10));
+		assertRejected(ErrorType.FORBITTEN, res("25"));
+	}
+
+	@Test
+	public void testReplicaNotFromOwnerVerified() {
+		conf.set(Configuration.TRUSTED_REPLICAS, true);
+
+		// Neighbor that is not the owner in the local view
+		store(node("20"), res("25"), 1, value(res("15"), 10));
+		assertRejected(ErrorType.FORBITTEN, res("25"));
+
+		// Unknown peer that would own the resource
+		store(node("28"), res("25"), 1, value(res("15"), 10));
+		assertRejected(ErrorType.FORBITTEN, res("25"));
+	}
+
+	@Test
+	public void testOwnerStoreAlwaysVerified() {
+		conf.set(Configuration.TRUSTED_REPLICAS, true);
+
+		store(node("30"), res("35"), 0, value(res("15"), 10));
+		assertRejected(ErrorType.FORBITTEN, res("35"));
+	}
+
+	@Test
+	public void testKindQuota() {
+		int size = value(QUOTA_KIND, res("35"), 100).getStoredSize();
+		assertTrue(size <= 500 && 2 * size > 500);
+
+		store(node("50"), res("35"), 0, QUOTA_KIND, value(QUOTA_KIND, res("35"), 100));
+		assertStored(res("35"));
+
+		store(node("50"), res("38"), 0, QUOTA_KIND, value(QUOTA_KIND, res("38"), 100));
+		assertRejected(ErrorType.DATA_TOO_LARGE, res("38"));
+
+		// Replacing a value doesn't grow the kind usage
+		store(node("50"), res("35"), 0, QUOTA_KIND, value(QUOTA_KIND, res("35"), 100));
+		assertStored(res("35"));
+
+		// Other kinds are not limited
+		store(node("50"), res("38"), 0, value(res("38"), 100));
+		assertStored(res("38"));
+	}
+
+	@Test
+	public void testIdentityQuota() {
+		long size = value(res("35"), 100).getStoredSize();
+		conf.set(Configuration.IDENTITY_QUOTA, 2 * size - 1);
+
+		store(node("50"), res("35"), 0, value(res("35"), 100));
+		assertStored(res("35"));
+
+		// Replicas count in the storer usage too
+		store(node("30"), res("25"), 1, value(res("25"), 100));
+		assertRejected(ErrorType.DATA_TOO_LARGE, res("25"));
+
+		store(node("50"), res("38"), 0, value(res("38"), 100));
+		assertRejected(ErrorType.DATA_TOO_LARGE, res("38"));
+
+		store(node("50"), res("35"), 0, value(res("35"), 100));
+		assertStored(res("35"));
+	}
+
+	@Test
+	public void testReplicasEvicted() {
+		long size = value(res("35"), 100).getStoredSize();
+		conf.set(Configuration.STORAGE_CAPACITY, 2 * size);
+
+		store(node("30"), res("25"), 1, value(res("25"), 100));
+		assertStored(res("25"));
+		store(node("20"), res("15"), 1, value(res("15"), 100));
+		assertStored(res("15"));
+
+		// A replica makes room for the owned resource
+		store(node("50"), res("35"), 0, value(res("35"), 100));
+		assertStored(res("35"));
+		assertEquals(2 * size, storage.getUsage().getTotalBytes());
+		assertTrue(storage.get(res("25")).isPresent() ^ storage.get(res("15")).isPresent());
+
+		store(node("50"), res("38"), 0, value(res("38"), 100));
+		assertStored(res("38"));
+		assertFalse(storage.get(res("25")).isPresent());
+		assertFalse(storage.get(res("15")).isPresent());
+	}
+
+	@Test
+	public void testOwnedDataNotEvicted() {
+		long size = value(res("35"), 100).getStoredSize();
+		conf.set(Configuration.STORAGE_CAPACITY, 2 * size);
+
+		store(node("50"), res("35"), 0, value(res("35"), 100));
+		store(node("50"), res("38"), 0, value(res("38"), 100));
+
+		// Replicas never evict other data
+		store(node("30"), res("25"), 1, value(res("25"), 100));
+		assertRejected(ErrorType.DATA_TOO_LARGE, res("25"));
+
+		store(node("50"), res("36"), 0, value(res("36"), 100));
+		assertRejected(ErrorType.DATA_TOO_LARGE, res("36"));
+
+		assertTrue(storage.get(res("35")).isPresent());
+		assertTrue(storage.get(res("38")).isPresent());
+	}
+}
@@ -0,0 +1,206 @@
+package com.github.reload.services.storage.local;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import com.github.reload.Overlay.GlobalEvent;
+import com.github.reload.TestConfiguration;
+import com.github.reload.conf.Configuration;
+import com.github.reload.net.codecs.header.ResourceID;
+import com.github.reload.net.codecs.secBlock.Signature;
+import com.github.reload.services.storage.DataKind;
+import com.github.reload.services.storage.net.SingleValue;
+import com.google.common.base.Optional;
+import com.google.common.eventbus.EventBus;
+import com.google.common.util.concurrent.MoreExecutors;
+
+public class StorageSnapshotsTest {
+
+	private static final ResourceID RES_A = ResourceID.valueOf("0102030405060708090a0b0c0d0e0f10");
+	private static final ResourceID RES_B = ResourceID.valueOf("1102030405060708090a0b0c0d0e0f10");
+
+	private static final DataKind KIND = TestConfiguration.TEST_KIND_SINGLE;
+	private static final byte[] VALUE = "VALUE".getBytes();
+
+	private Path dir;
+	private Path file;
+	private Configuration conf;
+	private ScheduledExecutorService scheduler;
+
+	@Before
+	public void init() throws IOException {
+		dir = Files.createTempDirectory("snapshots");
+		file = dir.resolve("storage.snapshot");
+		conf = new TestConfiguration();
+		conf.set(Configuration.STORAGE_SNAPSHOT, file.toString());
+		scheduler = Executors.newSingleThreadScheduledExecutor();
+	}
+
+	@After
+	public void cleanup() throws IOException {
+		scheduler.shutdownNow();
+		Files.deleteIfExists(file.resolveSibling(file.getFileName() + ".tmp"));
+		Files.deleteIfExists(file);
+		Files.delete(dir);
+	}
+
+	private StorageSnapshots open(DataStorage storage) {
+		StorageSnapshots snapshots = new StorageSnapshots(conf, storage, null, new EventBus(), scheduler);
+		snapshots.packetsLooper = MoreExecutors.sameThreadExecutor();
+		return snapshots;
+	}
+
+	private static void put(DataStorage storage, ResourceID resId, long generation, long lifetime) {
+		List<StoredData> values = new ArrayList<StoredData>();
+		values.add(new StoredData(System.currentTimeMillis(), lifetime, new SingleValue(VALUE, true), Signature.EMPTY_SIGNATURE));
+
+		Map<Long, StoredKindData> kinds = new HashMap<Long, StoredKindData>();
+		kinds.put(KIND.getKindId(), new StoredKindData(KIND, generation, values));
+		storage.put(resId, kinds);
+	}
+
+	private static void assertStored(DataStorage storage, ResourceID resId, long generation) {
+		Optional<Map<Long, StoredKindData>> res = storage.get(resId);
+		assertTrue(res.isPresent());
+
+		StoredKindData kd = res.get().get(KIND.getKindId());
+		assertEquals(generation, kd.getGeneration());
+		assertEquals(1, kd.getValues().size());
+		assertArrayEquals(VALUE, ((SingleValue) kd.getValues().get(0).getValue()).getValue());
+	}
+
+	@Test
+	public void testRoundTrip() {
+		MemoryStorage storage = new MemoryStorage();
+		StorageSnapshots snapshots = open(storage);
+		put(storage, RES_A, 1, 3600);
+		snapshots.resourceChanged(RES_A);
+		put(storage, RES_B, 5, 3600);
+		snapshots.resourceChanged(RES_B);
+		snapshots.shutdown(GlobalEvent.SHUTDOWN);
+
+		MemoryStorage restored = new MemoryStorage();
+		open(restored);
+		assertEquals(2, restored.size());
+		assertStored(restored, RES_A, 1);
+		assertStored(restored, RES_B, 5);
+	}
+
+	@Test
+	public void testIncrementalChanges() {
+		MemoryStorage storage = new MemoryStorage();
+		StorageSnapshots snapshots = open(storage);
+		put(storage, RES_A, 1, 3600);
+		snapshots.resourceChanged(RES_A);
+		put(storage, RES_B, 1, 3600);
+		snapshots.resourceChanged(RES_B);
+		snapshots.shutdown(GlobalEvent.SHUTDOWN);
+
+		// The restarted peer updates a resource and removes the other one
+		MemoryStorage restarted = new MemoryStorage();
+		snapshots = open(restarted);
+		put(restarted, RES_A, 2, 3600);
+		snapshots.resourceChanged(RES_A);
+		restarted.remove(RES_B);
+		snapshots.resourceChanged(RES_B);
+		snapshots.shutdown(GlobalEvent.SHUTDOWN);
+
+		MemoryStorage restored = new MemoryStorage();
+		open(restored);
+		assertEquals(1, restored.size());
+		assertStored(restored, RES_A, 2);
+		assertFalse(restored.get(RES_B).isPresent());
+	}
+
+	@Test
+	public void testUnchangedResourcesKept() {
+		MemoryStorage storage = new MemoryStorage();
+		StorageSnapshots snapshots = open(storage);
+		put(storage, RES_A, 1, 3600);
+		snapshots.resourceChanged(RES_A);
+		snapshots.shutdown(GlobalEvent.SHUTDOWN);
+
+		// Resources loaded from the snapshot are kept by the next snapshots
+		MemoryStorage restarted = new MemoryStorage();
+		snapshots = open(restarted);
+		put(restarted, RES_B, 1, 3600);
+		snapshots.resourceChanged(RES_B);
+		snapshots.shutdown(GlobalEvent.SHUTDOWN);
+
+		MemoryStorage restored = new MemoryStorage();
+		open(restored);
+		assertStored(restored, RES_A, 1);
+		assertStored(restored, RES_B, 1);
+	}
+
+	@Test
+	public void testExpiredValuesDiscarded() throws Exception {
+		MemoryStorage storage = new MemoryStorage();
+		StorageSnapshots snapshots = open(storage);
+		put(storage, RES_A, 1, 1);
+		snapshots.resourceChanged(RES_A);
+		put(storage, RES_B, 1, 3600);
+		snapshots.resourceChanged(RES_B);
+		snapshots.shutdown(GlobalEvent.SHUTDOWN);
+
+		TimeUnit.MILLISECONDS.sleep(1100);
+
+		MemoryStorage restored = new MemoryStorage();
+		open(restored);
+		assertFalse(restored.get(RES_A).isPresent());
+		assertStored(restored, RES_B, 1);
+	}
+
+	@Test
+	public void testTruncatedRecordSkipped() throws IOException {
+		MemoryStorage storage = new MemoryStorage();
+		StorageSnapshots snapshots = open(storage);
+		put(storage, RES_A, 1, 3600);
+		snapshots.resourceChanged(RES_A);
+		snapshots.shutdown(GlobalEvent.SHUTDOWN);
+
+		// A record length beyond the end of the file
+		Files.write(file, new byte[]{0, 0, 1, 0, 1, 2, 3}, StandardOpenOption.APPEND);
+
+		MemoryStorage restored = new MemoryStorage();
+		open(restored);
+		assertEquals(1, restored.size());
+		assertStored(restored, RES_A, 1);
+	}
+
+	@Test
+	public void testInvalidFileIgnored() throws IOException {
+		Files.write(file, new byte[]{1, 2, 3, 4, 5, 6, 7, 8, 9});
+
+		MemoryStorage restored = new MemoryStorage();
+		open(restored);
+		assertEquals(0, restored.size());
+	}
+
+	@Test
+	public void testDisabled() {
+		conf.set(Configuration.STORAGE_SNAPSHOT, null);
+		MemoryStorage storage = new MemoryStorage();
+		StorageSnapshots snapshots = open(storage);
+		put(storage, RES_A, 1, 3600);
+		snapshots.resourceChanged(RES_A);
+		snapshots.shutdown(GlobalEvent.SHUTDOWN);
+
+		assertFalse(Files.exists(file));
+	}
+}
@@ -0,0 +1,80 @@
+package com.github.reload.services.storage.net;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Test;
+import com.github.reload.TestConfiguration;
+import com.github.reload.net.codecs.Codec;
+import com.github.reload.net.codecs.content.ContentType;
+import com.github.reload.net.codecs.header.ResourceID;
+import com.github.reload.net.codecs.secBlock.Signature;
+import com.github.reload.services.storage.DataKind;
+import com.github.reload.services.storage.local.StoredData;
+
+public class NotifyCodecTest {
+
+	private static final ResourceID RES_ID = ResourceID.valueOf("0102030405060708090a0b0c0d0e0f10");
+	private static final DataKind KIND = TestConfiguration.TEST_KIND_SINGLE;
+	private static final byte[] VALUE = "VALUE".getBytes();
+
+	@Before
+	public void init() {
+		DataKind.registerDataKind(KIND);
+	}
+
+	private static <T> T roundTrip(Class<T> clazz, T obj) throws Exception {
+		Codec<T> codec = Codec.getCodec(clazz, null);
+		ByteBuf buf = Unpooled.buffer();
+		try {
+			codec.encode(obj, buf);
+			T decoded = codec.decode(buf);
+			assertEquals(0, buf.readableBytes());
+			return decoded;
+		} finally {
+			buf.release();
+		}
+	}
+
+	@Test
+	public void testRequest() throws Exception {
+		List<StoredData> values = new ArrayList<StoredData>();
+		values.add(new StoredData(System.currentTimeMillis(), 3600, new SingleValue(VALUE, true), Signature.EMPTY_SIGNATURE));
+		List<FetchKindResponse> changes = new ArrayList<FetchKindResponse>();
+		changes.add(new FetchKindResponse(KIND, 7, values));
+
+		NotifyRequest req = roundTrip(NotifyRequest.class, new NotifyRequest(RES_ID, false, changes));
+
+		assertEquals(ContentType.NOTIFY_REQ, req.getType());
+		assertEquals(RES_ID, req.getResourceId());
+		assertFalse(req.isRebind());
+		assertEquals(1, req.getChanges().size());
+
+		FetchKindResponse change = req.getChanges().get(0);
+		assertEquals(KIND.getKindId(), change.getKind().getKindId());
+		assertEquals(7, change.getGeneration());
+		assertEquals(1, change.getValues().size());
+		assertArrayEquals(VALUE, ((SingleValue) change.getValues().get(0).getValue()).getValue());
+	}
+
+	@Test
+	public void testRebind() throws Exception {
+		NotifyRequest req = roundTrip(NotifyRequest.class, new NotifyRequest(RES_ID, true, Collections.<FetchKindResponse> emptyList()));
+
+		assertEquals(RES_ID, req.getResourceId());
+		assertTrue(req.isRebind());
+		assertTrue(req.getChanges().isEmpty());
+	}
+
+	@Test
+	public void testAnswer() throws Exception {
+		assertEquals(ContentType.NOTIFY_ANS, roundTrip(NotifyAnswer.class, new NotifyAnswer()).getType());
+	}
+}
@@ -0,0 +1,73 @@
+package com.github.reload.services.storage.net;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.junit.Test;
+import com.github.reload.net.codecs.Codec;
+import com.github.reload.net.codecs.header.ResourceID;
+
+public class SyncCodecTest {
+
+	private static final ResourceID RANGE_START = ResourceID.valueOf("40000000000000000000000000000000");
+	private static final ResourceID RANGE_END = ResourceID.valueOf("7fffffffffffffffffffffffffffffff");
+
+	private static final List<SyncTreeNode> NODES = Arrays.asList(new SyncTreeNode(0, new byte[]{1, 2, 3}), new SyncTreeNode(4095, new byte[20]));
+
+	private static <T> T roundTrip(Class<T> clazz, T obj) throws Exception {
+		Codec<T> codec = Codec.getCodec(clazz, null);
+		ByteBuf buf = Unpooled.buffer();
+		try {
+			codec.encode(obj, buf);
+			T decoded = codec.decode(buf);
+			assertEquals(0, buf.readableBytes());
+			return decoded;
+		} finally {
+			buf.release();
+		}
+	}
+
+	@Test
+	public void testTreeNode() throws Exception {
+		SyncTreeNode node = new SyncTreeNode(65535, new byte[]{(byte) 0xff, 0, 1});
+		assertEquals(node, roundTrip(SyncTreeNode.class, node));
+	}
+
+	@Test
+	public void testEntry() throws Exception {
+		SyncEntry entry = new SyncEntry(RANGE_START, 2020, Long.MAX_VALUE);
+		assertEquals(entry, roundTrip(SyncEntry.class, entry));
+	}
+
+	@Test
+	public void testRequest() throws Exception {
+		SyncRequest req = roundTrip(SyncRequest.class, new SyncRequest(RANGE_START, RANGE_END, (short) 3, NODES));
+
+		assertEquals(RANGE_START, req.getRangeStart());
+		assertEquals(RANGE_END, req.getRangeEnd());
+		assertEquals(3, req.getLevel());
+		assertEquals(NODES, req.getNodes());
+	}
+
+	@Test
+	public void testEmptyRequest() throws Exception {
+		SyncRequest req = roundTrip(SyncRequest.class, new SyncRequest(RANGE_START, RANGE_END, (short) 0, Collections.<SyncTreeNode> emptyList()));
+		assertTrue(req.getNodes().isEmpty());
+	}
+
+	@Test
+	public void testAnswer() throws Exception {
+		List<SyncEntry> entries = Arrays.asList(new SyncEntry(RANGE_START, 2020, 1), new SyncEntry(RANGE_END, 2050, 7));
+		SyncAnswer ans = roundTrip(SyncAnswer.class, new SyncAnswer((short) 2, NODES, entries));
+
+		assertEquals(2, ans.getLevel());
+		assertEquals(NODES, ans.getNodes());
+		assertEquals(entries, ans.getEntries());
+		assertArrayEquals(NODES.get(0).getHash(), ans.getNodes().get(0).getHash());
+	}
+}